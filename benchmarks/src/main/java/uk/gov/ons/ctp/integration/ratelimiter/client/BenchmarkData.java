@@ -0,0 +1,84 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.common.product.model.Product.DeliveryChannel;
+import uk.gov.ons.ctp.integration.common.product.model.Product.ProductGroup;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** Arguments and limiter responses shared by the benchmarks. */
+final class BenchmarkData {
+  static final String PASSWORD = "benchmark-password";
+  static final String IP_ADDRESS = "123.111.222.23";
+  static final String TEL_NO = "0171 3434333";
+  static final UniquePropertyReferenceNumber UPRN = new UniquePropertyReferenceNumber("24234234");
+  static final CaseType CASE_TYPE = CaseType.HH;
+  static final Product PRODUCT =
+      new Product(
+          "P1",
+          ProductGroup.QUESTIONNAIRE,
+          "Large print Welsh",
+          null,
+          true,
+          null,
+          DeliveryChannel.SMS,
+          null,
+          null,
+          null);
+
+  // Passes every call straight through, so that only the client is measured
+  static final CircuitBreaker CIRCUIT_BREAKER =
+      new CircuitBreaker() {
+        @Override
+        public <T> T run(Supplier<T> toRun, Function<Throwable, T> fallback) {
+          try {
+            return toRun.get();
+          } catch (RuntimeException e) {
+            return fallback.apply(e);
+          }
+        }
+      };
+
+  private BenchmarkData() {}
+
+  /**
+   * @param codes the code of each status, in the order of the request descriptors.
+   * @return a limiter response as envoy returns it.
+   */
+  static RateLimitResponse response(String... codes) {
+    List<LimitStatus> statuses = new ArrayList<>();
+    boolean breached = false;
+    for (String code : codes) {
+      breached |= LimitStatus.CODE_LIMIT_BREACHED.equals(code);
+      statuses.add(
+          LimitStatus.builder()
+              .code(code)
+              .currentLimit(new CurrentLimit(100, "HOUR"))
+              .limitRemaining(LimitStatus.CODE_OK.equals(code) ? 99 : 0)
+              .durationUntilReset("2310s")
+              .build());
+    }
+    return RateLimitResponse.builder()
+        .overallCode(breached ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK)
+        .statuses(statuses)
+        .build();
+  }
+
+  static String toJson(RateLimitResponse response) {
+    try {
+      return new ObjectMapper().writeValueAsString(response);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, which takes the usual JMH options. The gc
+ * profiler is always added, so that allocations per operation are reported alongside ops/s, and
+ * unless another format is asked for the results are also written as json, so that runs against
+ * different releases can be compared.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    ChainedOptionsBuilder options =
+        new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,70 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CASE_TYPE;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CIRCUIT_BREAKER;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.IP_ADDRESS;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PASSWORD;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PRODUCT;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.TEL_NO;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.UPRN;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Handling of a limit breach: parsing the limiter's 429 response, and describing the breached
+ * descriptors for the log, which encrypts the telephone number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BreachDescriptionBenchmark {
+  private RateLimiterClient client;
+  private RateLimitRequest request;
+  private RateLimitResponse response;
+  private String responseJson;
+
+  @Setup
+  public void setUp() throws CTPException {
+    client = new RateLimiterClient(InMemoryRestClient.returning(null), CIRCUIT_BREAKER, PASSWORD);
+    request =
+        client.prepareFulfilmentRequest(Domain.RH, PRODUCT, CASE_TYPE, IP_ADDRESS, UPRN, TEL_NO);
+    // The telephone number descriptors are breached, so that describing them encrypts it
+    response =
+        BenchmarkData.response(
+            LimitStatus.CODE_OK,
+            LimitStatus.CODE_LIMIT_BREACHED,
+            LimitStatus.CODE_OK,
+            LimitStatus.CODE_LIMIT_BREACHED,
+            LimitStatus.CODE_OK);
+    responseJson = BenchmarkData.toJson(response);
+  }
+
+  @Benchmark
+  public RateLimitResponse parseBreachResponse() throws IOException {
+    return RateLimitResponseDecoder.decode(responseJson, ResponseDetail.LIMITS);
+  }
+
+  @Benchmark
+  public String describeLimitBreach() {
+    return client.describeLimitBreach(request, response);
+  }
+}
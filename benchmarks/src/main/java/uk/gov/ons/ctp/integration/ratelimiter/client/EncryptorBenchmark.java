@@ -0,0 +1,40 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PASSWORD;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.TEL_NO;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ons.ctp.integration.ratelimiter.util.Encryptor;
+
+/**
+ * Encryption of telephone numbers for logging, through the static helper and through a shared
+ * instance as the client uses it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptorBenchmark {
+  private Encryptor encryptor = new Encryptor(PASSWORD);
+
+  @Benchmark
+  public String aesEncrypt() {
+    return Encryptor.aesEncrypt(PASSWORD, TEL_NO);
+  }
+
+  @Benchmark
+  public String encrypt() {
+    return encryptor.encrypt(TEL_NO);
+  }
+}
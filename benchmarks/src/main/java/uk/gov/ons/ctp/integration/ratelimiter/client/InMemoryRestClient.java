@@ -0,0 +1,68 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.rest.RestClient;
+import uk.gov.ons.ctp.common.rest.RestClientConfig;
+
+/**
+ * RestClient which answers every post from memory, so that benchmarks measure the client rather
+ * than the network. The request is still serialised, as the real RestClient would, and the limiter
+ * response is returned, or thrown as a 429, in the same form.
+ */
+class InMemoryRestClient extends RestClient {
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private byte[] responseBody;
+  private String breachJson;
+
+  private InMemoryRestClient(byte[] responseBody, String breachJson) {
+    super(unusedConfig(), errorMapping(), HttpStatus.INTERNAL_SERVER_ERROR);
+    this.responseBody = responseBody;
+    this.breachJson = breachJson;
+  }
+
+  /**
+   * @param responseBody the limiter's json response.
+   * @return a client whose posts all return the response.
+   */
+  static InMemoryRestClient returning(byte[] responseBody) {
+    return new InMemoryRestClient(responseBody, null);
+  }
+
+  /**
+   * @param breachJson the limiter's json response to an over limit request.
+   * @return a client whose posts all fail with a 429 holding the response.
+   */
+  static InMemoryRestClient breaching(String breachJson) {
+    return new InMemoryRestClient(null, breachJson);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T postResource(String path, Object objToPost, Class<T> clazz, Object... urlParams) {
+    try {
+      objectMapper.writeValueAsBytes(objToPost);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialise limiter request", e);
+    }
+    if (breachJson != null) {
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, breachJson);
+    }
+    return (T) responseBody;
+  }
+
+  // Never connected to, as nothing is sent
+  private static RestClientConfig unusedConfig() {
+    return new RestClientConfig("http", "localhost", "8181", "", "", 1, 1, 0, 0, 0);
+  }
+
+  private static Map<HttpStatus, HttpStatus> errorMapping() {
+    Map<HttpStatus, HttpStatus> httpErrorMapping = new HashMap<>();
+    httpErrorMapping.put(HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+    return httpErrorMapping;
+  }
+}
@@ -0,0 +1,88 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CASE_TYPE;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CIRCUIT_BREAKER;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.IP_ADDRESS;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PASSWORD;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PRODUCT;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.TEL_NO;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.UPRN;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+
+/**
+ * The three checks of the blocking client, from argument validation to decoding the limiter's
+ * response, against an in-memory RestClient. The breach benchmark also covers parsing the 429 and
+ * describing the breach.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterClientBenchmark {
+  private RateLimiterClient withinLimitClient;
+  private RateLimiterClient breachingClient;
+
+  @Setup
+  public void setUp() throws JsonProcessingException {
+    byte[] okJson =
+        new ObjectMapper().writeValueAsBytes(BenchmarkData.response(LimitStatus.CODE_OK));
+    withinLimitClient =
+        new RateLimiterClient(InMemoryRestClient.returning(okJson), CIRCUIT_BREAKER, PASSWORD);
+
+    String breachJson =
+        BenchmarkData.toJson(
+            BenchmarkData.response(
+                LimitStatus.CODE_OK,
+                LimitStatus.CODE_LIMIT_BREACHED,
+                LimitStatus.CODE_OK,
+                LimitStatus.CODE_OK,
+                LimitStatus.CODE_OK));
+    breachingClient =
+        new RateLimiterClient(InMemoryRestClient.breaching(breachJson), CIRCUIT_BREAKER, PASSWORD);
+  }
+
+  @Benchmark
+  public void checkFulfilmentRateLimit() throws CTPException {
+    withinLimitClient.checkFulfilmentRateLimit(
+        Domain.RH, PRODUCT, CASE_TYPE, IP_ADDRESS, UPRN, TEL_NO);
+  }
+
+  @Benchmark
+  public void checkWebformRateLimit() throws CTPException {
+    withinLimitClient.checkWebformRateLimit(Domain.RH, IP_ADDRESS);
+  }
+
+  @Benchmark
+  public void checkEqLaunchLimit() throws CTPException {
+    withinLimitClient.checkEqLaunchLimit(Domain.RH, IP_ADDRESS, 7);
+  }
+
+  @Benchmark
+  public RateLimitExceededException checkFulfilmentRateLimitBreached() throws CTPException {
+    try {
+      breachingClient.checkFulfilmentRateLimit(
+          Domain.RH, PRODUCT, CASE_TYPE, IP_ADDRESS, UPRN, TEL_NO);
+      throw new IllegalStateException("Expected the limit to be breached");
+    } catch (RateLimitExceededException e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CASE_TYPE;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.CIRCUIT_BREAKER;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.IP_ADDRESS;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PASSWORD;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.PRODUCT;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.TEL_NO;
+import static uk.gov.ons.ctp.integration.ratelimiter.client.BenchmarkData.UPRN;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.util.Ipv4;
+
+/**
+ * Building the descriptors of a fulfilment request, including IP address validation, and writing
+ * the request as json, both by the client's own writer and by Jackson for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBuildingBenchmark {
+  private RateLimiterClient client;
+  private RateLimitRequest request;
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  @Setup
+  public void setUp() throws CTPException {
+    client = new RateLimiterClient(InMemoryRestClient.returning(null), CIRCUIT_BREAKER, PASSWORD);
+    request =
+        client.prepareFulfilmentRequest(Domain.RH, PRODUCT, CASE_TYPE, IP_ADDRESS, UPRN, TEL_NO);
+  }
+
+  @Benchmark
+  public RateLimitRequest prepareFulfilmentRequest() throws CTPException {
+    return client.prepareFulfilmentRequest(
+        Domain.RH, PRODUCT, CASE_TYPE, IP_ADDRESS, UPRN, TEL_NO);
+  }
+
+  @Benchmark
+  public long parseIpAddress() {
+    return Ipv4.parse(IP_ADDRESS);
+  }
+
+  @Benchmark
+  public byte[] writeRequestJson() {
+    return RateLimitRequestJson.toBytes(request);
+  }
+
+  @Benchmark
+  public byte[] writeRequestJsonWithJackson() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(request);
+  }
+}
@@ -0,0 +1,251 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.BatchSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which combines checks made concurrently for the same domain into a single limiter
+ * request, whose descriptors are those of all the checks in turn.
+ *
+ * <p>The limiter returns one status for each descriptor in the order they were sent, so each check
+ * is given back the slice of statuses for its own descriptors, and its verdict is based on that
+ * slice alone. A check whose slice contains a breach is reported as a RateLimitExceededException
+ * with the json of its own slice, so it is described and logged exactly as if it had been sent
+ * alone.
+ *
+ * <p>The first check of a batch waits for up to the configured window for others to join, and
+ * then sends the batch on its own thread, so no additional threads are needed.
+ */
+public class BatchingRateLimiterTransport implements RateLimiterTransport {
+  private RateLimiterTransport delegate;
+  private long windowNanos;
+  private int maxBatchSize;
+  private Map<String, Batch> openBatches = new ConcurrentHashMap<>();
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Constructor.
+   *
+   * @param delegate transport used to call the limiter.
+   * @param settings batching settings.
+   */
+  public BatchingRateLimiterTransport(RateLimiterTransport delegate, BatchSettings settings) {
+    this.delegate = delegate;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(settings.getWindowMicros());
+    this.maxBatchSize = Math.max(1, settings.getMaxBatchSize());
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    // A combined request has a single hits addend, so weighted checks are sent on their own
+    if (maxBatchSize == 1
+        || request.getDescriptors().isEmpty()
+        || DescriptorKeys.hits(request) != 1) {
+      return delegate.checkLimit(request);
+    }
+
+    PendingCheck check = new PendingCheck(request);
+    Batch batch = join(check);
+    if (check.leader) {
+      batch.awaitClose(windowNanos);
+      openBatches.remove(batch.domain, batch);
+      send(batch);
+    }
+    return check.await();
+  }
+
+  /** Close the transport used to call the limiter. */
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  // Adds the check to the open batch for its domain, starting a new batch if there is none
+  private Batch join(PendingCheck check) {
+    String domain = check.request.getDomain();
+    while (true) {
+      Batch batch = openBatches.computeIfAbsent(domain, Batch::new);
+      int position = batch.add(check, maxBatchSize);
+      if (position >= 0) {
+        check.leader = position == 0;
+        return batch;
+      }
+      // The batch closed after we found it
+      openBatches.remove(domain, batch);
+    }
+  }
+
+  private void send(Batch batch) {
+    if (batch.checks.size() == 1) {
+      PendingCheck check = batch.checks.get(0);
+      try {
+        check.result.complete(delegate.checkLimit(check.request));
+      } catch (RuntimeException e) {
+        check.result.completeExceptionally(e);
+      }
+      return;
+    }
+
+    List<LimitDescriptor> descriptors = new ArrayList<>();
+    for (PendingCheck check : batch.checks) {
+      descriptors.addAll(check.request.getDescriptors());
+    }
+    RateLimitRequest combinedRequest =
+        RateLimitRequest.builder().domain(batch.domain).descriptors(descriptors).build();
+
+    RateLimitResponse combinedResponse;
+    try {
+      try {
+        combinedResponse = delegate.checkLimit(combinedRequest);
+      } catch (ResponseStatusException e) {
+        if (e.getStatus() != HttpStatus.TOO_MANY_REQUESTS) {
+          throw e;
+        }
+        // At least one check is over its limit, but the others may not be
+        combinedResponse =
+            e instanceof RateLimitExceededException
+                ? ((RateLimitExceededException) e).getLimiterResponse()
+                : fromJson(e.getReason());
+      }
+      int statusCount =
+          combinedResponse.getStatuses() == null ? 0 : combinedResponse.getStatuses().size();
+      if (statusCount != descriptors.size()) {
+        throw new IllegalStateException(
+            String.format(
+                "Limiter returned %d statuses for %d descriptors",
+                statusCount,
+                descriptors.size()));
+      }
+    } catch (RuntimeException e) {
+      for (PendingCheck check : batch.checks) {
+        check.result.completeExceptionally(e);
+      }
+      return;
+    }
+
+    int offset = 0;
+    for (PendingCheck check : batch.checks) {
+      int count = check.request.getDescriptors().size();
+      List<LimitStatus> statuses =
+          new ArrayList<>(combinedResponse.getStatuses().subList(offset, offset + count));
+      offset += count;
+      completeWithSlice(check, statuses);
+    }
+  }
+
+  private void completeWithSlice(PendingCheck check, List<LimitStatus> statuses) {
+    boolean breached =
+        statuses.stream().anyMatch(s -> LimitStatus.CODE_LIMIT_BREACHED.equals(s.getCode()));
+    String overallCode = breached ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK;
+    // Each status keeps its own reset time, but the limiters headers describe the whole batch
+    RateLimitResponse response =
+        RateLimitResponse.builder().overallCode(overallCode).statuses(statuses).build();
+    if (breached) {
+      try {
+        check.result.completeExceptionally(
+            new RateLimitExceededException(check.request, response, toJson(response)));
+      } catch (RuntimeException e) {
+        check.result.completeExceptionally(e);
+      }
+    } else {
+      check.result.complete(response);
+    }
+  }
+
+  private String toJson(RateLimitResponse response) {
+    try {
+      return objectMapper.writeValueAsString(response);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialise rate limiter response", e);
+    }
+  }
+
+  private RateLimitResponse fromJson(String json) {
+    RateLimitResponse response;
+    try {
+      response = RateLimitResponseDecoder.decode(json, ResponseDetail.LIMITS);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to parse rate limiter response", e);
+    }
+    if (response == null) {
+      throw new IllegalStateException("Rate limiter response has no body");
+    }
+    return response;
+  }
+
+  // A check waiting for the verdict on its batch
+  private static class PendingCheck {
+    private RateLimitRequest request;
+    private boolean leader;
+    private CompletableFuture<RateLimitResponse> result = new CompletableFuture<>();
+
+    PendingCheck(RateLimitRequest request) {
+      this.request = request;
+    }
+
+    RateLimitResponse await() {
+      try {
+        return result.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
+  // Checks collected for a domain. Once closed, no more checks may join.
+  private static class Batch {
+    private String domain;
+    private List<PendingCheck> checks = new ArrayList<>();
+    private boolean closed;
+
+    Batch(String domain) {
+      this.domain = domain;
+    }
+
+    // Returns the position of the check in the batch, or -1 if the batch has closed
+    synchronized int add(PendingCheck check, int maxBatchSize) {
+      if (closed) {
+        return -1;
+      }
+      checks.add(check);
+      if (checks.size() >= maxBatchSize) {
+        closed = true;
+        notifyAll();
+      }
+      return checks.size() - 1;
+    }
+
+    // Waits until the batch is full or the window has passed, and then closes it
+    synchronized void awaitClose(long windowNanos) {
+      long deadline = System.nanoTime() + windowNanos;
+      long remaining = windowNanos;
+      try {
+        while (!closed && remaining > 0) {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          remaining = deadline - System.nanoTime();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      closed = true;
+    }
+  }
+}
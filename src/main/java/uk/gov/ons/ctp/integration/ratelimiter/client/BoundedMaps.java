@@ -0,0 +1,79 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the in-process maps of descriptors within their maximum size without scanning a map for
+ * every entry added to it.
+ *
+ * <p>When a map is full a batch of entries is removed at once: first those which have expired, and
+ * then those which come first in the given order, such as the least recently learned. The scan is
+ * paid for once for every batch of new entries rather than for each one. Only one thread scans a
+ * map at a time, and the others carry on, so a map may hold a few more entries than its maximum
+ * while it is being scanned.
+ */
+final class BoundedMaps {
+  // Fraction of the maximum size freed by each scan
+  private static final int BATCH_DIVISOR = 8;
+
+  private BoundedMaps() {}
+
+  /**
+   * Make room in a map for a new entry, if it is full.
+   *
+   * @param map the map.
+   * @param maxEntries maximum number of entries in the map.
+   * @param scanning flag held by the thread scanning the map.
+   * @param expired whether an entry can be removed without loss.
+   * @param order the order in which to remove the other entries, lowest first.
+   * @param <V> type of the map values.
+   */
+  static <V> void makeRoom(
+      Map<String, V> map,
+      int maxEntries,
+      AtomicBoolean scanning,
+      Predicate<V> expired,
+      ToLongFunction<V> order) {
+    if (map.size() < maxEntries || !scanning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      map.values().removeIf(expired);
+      int target = maxEntries - Math.max(1, maxEntries / BATCH_DIVISOR);
+      int excess = map.size() - target;
+      if (excess > 0) {
+        removeLowest(map, excess, order);
+      }
+    } finally {
+      scanning.set(false);
+    }
+  }
+
+  // Remove the given number of entries which are lowest in the order
+  private static <V> void removeLowest(Map<String, V> map, int count, ToLongFunction<V> order) {
+    long[] orders = map.values().stream().mapToLong(order).toArray();
+    if (orders.length == 0) {
+      return;
+    }
+    Arrays.sort(orders);
+    long threshold = orders[Math.min(count, orders.length) - 1];
+    // Entries at the threshold are removed until the count is reached
+    int below = 0;
+    while (below < orders.length && orders[below] < threshold) {
+      below++;
+    }
+    int tiesToRemove = count - below;
+    Iterator<V> values = map.values().iterator();
+    while (values.hasNext()) {
+      long value = order.applyAsLong(values.next());
+      if (value < threshold || (value == threshold && tiesToRemove-- > 0)) {
+        values.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Approximate in-process limiting, for use while the limiter cannot be called.
+ *
+ * <p>The limit for each descriptor is learned from the limiter's responses. While the limiter is
+ * unavailable each learned limit is enforced by a token bucket holding this node's share of it,
+ * which is the limit divided by the number of nodes sharing the limiter. The bucket refills
+ * continuously over the limit's unit, so a node can go over its share for a fixed window by at
+ * most the capacity of the bucket. Descriptors whose limit has not been learned are not limited.
+ *
+ * <p>Limits are learned from every response, so when the limits held reach their maximum a batch
+ * is evicted at once: those not learned within their own unit, and then the least recently
+ * learned.
+ */
+public class DegradedModeLimiter {
+  private int nodeCount;
+  private int maxEntries;
+  private LongSupplier clock;
+  private Map<String, LearnedLimit> limits = new ConcurrentHashMap<>();
+  private AtomicBoolean evicting = new AtomicBoolean();
+
+  /**
+   * Constructor.
+   *
+   * @param nodeCount number of client nodes which share the limits.
+   * @param maxEntries maximum number of descriptors whose limits are held.
+   */
+  public DegradedModeLimiter(int nodeCount, int maxEntries) {
+    this(nodeCount, maxEntries, System::currentTimeMillis);
+  }
+
+  DegradedModeLimiter(int nodeCount, int maxEntries, LongSupplier clock) {
+    if (nodeCount <= 0) {
+      throw new IllegalArgumentException("Node count must be positive");
+    }
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Degraded mode limit count must be positive");
+    }
+    this.nodeCount = nodeCount;
+    this.maxEntries = maxEntries;
+    this.clock = clock;
+  }
+
+  /**
+   * Learn the limits of the descriptors from a limiter response.
+   *
+   * @param request the request sent to the limiter.
+   * @param response the limiters response, whose statuses are in the same order as the request
+   *     descriptors.
+   */
+  public void learnLimits(RateLimitRequest request, RateLimitResponse response) {
+    List<LimitStatus> statuses = response.getStatuses();
+    if (statuses == null) {
+      return;
+    }
+    long now = clock.getAsLong();
+    for (int i = 0; i < statuses.size() && i < request.getDescriptors().size(); i++) {
+      CurrentLimit currentLimit = statuses.get(i).getCurrentLimit();
+      if (currentLimit == null) {
+        continue;
+      }
+      LimitUnit unit = LimitUnit.fromName(currentLimit.getUnit());
+      if (unit == LimitUnit.UNKNOWN || currentLimit.getRequestsPerUnit() <= 0) {
+        continue;
+      }
+
+      String key = DescriptorKeys.of(request.getDomain(), request.getDescriptors().get(i));
+      LearnedLimit limit = limits.get(key);
+      if (limit == null) {
+        makeRoom(now);
+        limits.putIfAbsent(key, new LearnedLimit(currentLimit, nodeCount, now));
+      } else {
+        limit.update(currentLimit, nodeCount, now);
+      }
+    }
+  }
+
+  /**
+   * Check the request against the local share of the learned limits, consuming as many tokens as
+   * the request has hits from each of its limited descriptors.
+   *
+   * @param request the request which could not be sent to the limiter.
+   * @return null if the request is within the local limits. Otherwise a response in the same
+   *     shape as the limiter would return, in which the descriptors without a token are OVER_LIMIT.
+   */
+  public RateLimitResponse checkLocally(RateLimitRequest request) {
+    long now = clock.getAsLong();
+    int hits = DescriptorKeys.hits(request);
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    List<LimitStatus> statuses = new ArrayList<>(descriptors.size());
+    boolean breached = false;
+    for (LimitDescriptor descriptor : descriptors) {
+      LearnedLimit limit = limits.get(DescriptorKeys.of(request.getDomain(), descriptor));
+      LimitStatus status = new LimitStatus();
+      if (limit == null) {
+        status.setCode(LimitStatus.CODE_UNKNOWN);
+      } else {
+        status.setCurrentLimit(limit.currentLimit);
+        if (limit.tryAcquire(now, hits)) {
+          status.setCode(LimitStatus.CODE_OK);
+        } else {
+          status.setCode(LimitStatus.CODE_LIMIT_BREACHED);
+          breached = true;
+        }
+      }
+      statuses.add(status);
+    }
+
+    if (!breached) {
+      return null;
+    }
+    RateLimitResponse response = new RateLimitResponse();
+    response.setOverallCode(LimitStatus.CODE_LIMIT_BREACHED);
+    response.setStatuses(statuses);
+    return response;
+  }
+
+  /** @return the number of descriptors whose limits are held. */
+  public int size() {
+    return limits.size();
+  }
+
+  private void makeRoom(long now) {
+    BoundedMaps.makeRoom(
+        limits, maxEntries, evicting, limit -> limit.isStale(now), limit -> limit.learnedAtMillis);
+  }
+
+  // A learned limit, with a token bucket for this node's share of it
+  private static class LearnedLimit {
+    private CurrentLimit currentLimit;
+    private volatile long unitMillis;
+    private double capacity;
+    private double tokens;
+    private long refilledAtMillis;
+    private volatile long learnedAtMillis;
+
+    LearnedLimit(CurrentLimit currentLimit, int nodeCount, long now) {
+      update(currentLimit, nodeCount, now);
+      this.tokens = capacity;
+      this.refilledAtMillis = now;
+    }
+
+    synchronized void update(CurrentLimit currentLimit, int nodeCount, long now) {
+      this.currentLimit = currentLimit;
+      this.unitMillis = LimitUnit.fromName(currentLimit.getUnit()).getSeconds() * 1000;
+      this.capacity = Math.max(1.0, (double) currentLimit.getRequestsPerUnit() / nodeCount);
+      this.tokens = Math.min(tokens, capacity);
+      this.learnedAtMillis = now;
+    }
+
+    synchronized boolean tryAcquire(long now, int hits) {
+      if (now > refilledAtMillis) {
+        tokens = Math.min(capacity, tokens + capacity * (now - refilledAtMillis) / unitMillis);
+        refilledAtMillis = now;
+      }
+      if (tokens < hits) {
+        return false;
+      }
+      tokens -= hits;
+      return true;
+    }
+
+    boolean isStale(long now) {
+      return now - learnedAtMillis > unitMillis;
+    }
+  }
+}
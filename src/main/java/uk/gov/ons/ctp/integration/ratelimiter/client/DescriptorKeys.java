@@ -0,0 +1,99 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+
+/** Builds canonical keys which identify a limit descriptor within a domain. */
+final class DescriptorKeys {
+  // Separators which cannot appear in descriptor keys or values
+  private static final char ENTRY_SEPARATOR = '\u001f';
+  private static final char VALUE_SEPARATOR = '\u001e';
+  private static final char DESCRIPTOR_SEPARATOR = '\u001d';
+
+  private DescriptorKeys() {}
+
+  /**
+   * Build the key for a descriptor. The order of the entries is significant, as it is to the
+   * limiter.
+   *
+   * @param domain the domain of the request holding the descriptor.
+   * @param descriptor the descriptor.
+   * @return canonical key.
+   */
+  static String of(String domain, LimitDescriptor descriptor) {
+    StringBuilder key = new StringBuilder(domain);
+    DescriptorPlan plan = planOf(descriptor);
+    if (plan != null) {
+      plan.appendKey(
+          key,
+          ((DescriptorPlan.PlannedDescriptor) descriptor).getParameters(),
+          ENTRY_SEPARATOR,
+          VALUE_SEPARATOR);
+      return key.toString();
+    }
+    for (DescriptorEntry entry : descriptor.getEntries()) {
+      key.append(ENTRY_SEPARATOR).append(entry.getKey());
+      key.append(VALUE_SEPARATOR).append(entry.getValue());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Build the key for the descriptors of a whole request, so that requests with the same key and
+   * the same {@link #hits} would get the same verdict from the limiter. The order of the
+   * descriptors is significant.
+   *
+   * @param request the request.
+   * @return canonical key.
+   */
+  static String of(RateLimitRequest request) {
+    if (request.getDescriptors().size() == 1) {
+      return of(request.getDomain(), request.getDescriptors().get(0));
+    }
+    StringBuilder key = new StringBuilder();
+    for (LimitDescriptor descriptor : request.getDescriptors()) {
+      key.append(of(request.getDomain(), descriptor)).append(DESCRIPTOR_SEPARATOR);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Build the layout of a descriptor, which is its entry keys without their values.
+   *
+   * @param descriptor the descriptor.
+   * @return comma separated keys, such as 'request,modulo'.
+   */
+  static String layout(LimitDescriptor descriptor) {
+    DescriptorPlan plan = planOf(descriptor);
+    if (plan != null) {
+      return plan.getLayout();
+    }
+    StringBuilder layout = new StringBuilder();
+    for (DescriptorEntry entry : descriptor.getEntries()) {
+      if (layout.length() > 0) {
+        layout.append(',');
+      }
+      layout.append(entry.getKey());
+    }
+    return layout.toString();
+  }
+
+  // The plan of a descriptor built by one, unless its entries have since been replaced
+  private static DescriptorPlan planOf(LimitDescriptor descriptor) {
+    return descriptor instanceof DescriptorPlan.PlannedDescriptor
+        ? ((DescriptorPlan.PlannedDescriptor) descriptor).getPlan()
+        : null;
+  }
+
+  /**
+   * Find the number of hits which the request counts as, as the limiter does.
+   *
+   * @param request the request.
+   * @return the hits addend of the request, or 1 if it is not set.
+   */
+  static int hits(RateLimitRequest request) {
+    Integer hitsAddend = request.getHitsAddend();
+    return hitsAddend == null || hitsAddend <= 0 ? 1 : hitsAddend;
+  }
+}
@@ -0,0 +1,137 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+
+/**
+ * A descriptor layout compiled against a fixed list of parameter names, so that a descriptor can be
+ * built from an array of parameter values without looking up each value by name.
+ *
+ * <p>The descriptors it builds hold the parameter values rather than a list of entries. They are
+ * written as json from the plan's pre-encoded fragments, and their entries are only built if
+ * something else asks for them.
+ */
+final class DescriptorPlan {
+  private final String[] keys;
+  private final int[] positions;
+  private final String layout;
+  // The json before each value, and after the last one
+  private final byte[][] fragments;
+
+  /**
+   * Compile a layout.
+   *
+   * @param keys the descriptor entry keys, in the order they are sent to the limiter.
+   * @param parameterNames the names of the parameters, in the order their values are supplied.
+   */
+  DescriptorPlan(String[] keys, List<String> parameterNames) {
+    this.keys = keys.clone();
+    this.positions = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      positions[i] = parameterNames.indexOf(keys[i]);
+      if (positions[i] < 0) {
+        throw new IllegalArgumentException("Descriptor key '" + keys[i] + "' is not a parameter");
+      }
+    }
+    this.layout = String.join(",", keys);
+    this.fragments = RateLimitRequestJson.descriptorFragments(keys);
+  }
+
+  /**
+   * Build a descriptor.
+   *
+   * @param parameters parameter values, in the order of the names the plan was compiled against.
+   *     The array must not be changed once the descriptor is built.
+   * @return the descriptor.
+   */
+  LimitDescriptor describe(String[] parameters) {
+    return new PlannedDescriptor(this, parameters);
+  }
+
+  /**
+   * Write a descriptor as json.
+   *
+   * @param parameters parameter values, in the order of the names the plan was compiled against.
+   * @param buffer buffer to write to.
+   */
+  void writeJson(String[] parameters, RateLimitRequestJson.Buffer buffer) {
+    for (int i = 0; i < keys.length; i++) {
+      buffer.write(fragments[i]);
+      buffer.writeString(parameters[positions[i]]);
+    }
+    buffer.write(fragments[keys.length]);
+  }
+
+  /** @return the entry keys, comma separated, as {@link DescriptorKeys#layout} gives them. */
+  String getLayout() {
+    return layout;
+  }
+
+  /**
+   * Append the entries of a descriptor to its key, as {@link DescriptorKeys#of} does.
+   *
+   * @param key the key being built.
+   * @param parameters parameter values, in the order of the names the plan was compiled against.
+   * @param entrySeparator separator before each entry key.
+   * @param valueSeparator separator before each entry value.
+   */
+  void appendKey(StringBuilder key, String[] parameters, char entrySeparator, char valueSeparator) {
+    for (int i = 0; i < keys.length; i++) {
+      key.append(entrySeparator).append(keys[i]);
+      key.append(valueSeparator).append(parameters[positions[i]]);
+    }
+  }
+
+  private List<DescriptorEntry> entries(String[] parameters) {
+    List<DescriptorEntry> entries = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      entries.add(new DescriptorEntry(keys[i], parameters[positions[i]]));
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * A descriptor built by a plan. It behaves as any other descriptor, building its entries when
+   * they are first asked for, until they are replaced.
+   */
+  static final class PlannedDescriptor extends LimitDescriptor {
+    private final DescriptorPlan plan;
+    private final String[] parameters;
+    private volatile List<DescriptorEntry> entries;
+    // Cleared when the entries are replaced, so that they no longer come from the plan
+    private volatile boolean planned = true;
+
+    private PlannedDescriptor(DescriptorPlan plan, String[] parameters) {
+      this.plan = plan;
+      this.parameters = parameters;
+    }
+
+    @Override
+    public List<DescriptorEntry> getEntries() {
+      List<DescriptorEntry> current = entries;
+      if (current == null && planned) {
+        current = plan.entries(parameters);
+        entries = current;
+      }
+      return current;
+    }
+
+    @Override
+    public void setEntries(List<DescriptorEntry> entries) {
+      planned = false;
+      this.entries = entries;
+    }
+
+    /** @return the plan the entries come from, or null if they have been replaced. */
+    DescriptorPlan getPlan() {
+      return planned ? plan : null;
+    }
+
+    String[] getParameters() {
+      return parameters;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which answers requests in-process against limits loaded from envoy's configuration,
+ * instead of calling the limiter. This is only suitable when a single node enforces the limits,
+ * as the counts are not shared.
+ *
+ * <p>Hits are counted as envoy counts them, in fixed windows aligned to the epoch, with a counter
+ * for each distinct descriptor. Every descriptor of a request is counted by its hits addend, and
+ * is over its limit if its count then exceeds the limit. The response has the same shape as the
+ * limiter's, and an OVER_LIMIT response is reported as a RateLimitExceededException.
+ *
+ * <p>Counters are spread over shards by descriptor, and counted without locking. Each shard holds
+ * a bounded number of counters. When a shard is full, counters whose window has ended are evicted
+ * to make room, and then arbitrary counters if it is still full, which loses their counts.
+ */
+public class EmbeddedRateLimiterTransport implements RateLimiterTransport {
+  private EnvoyLimitConfig config;
+  private int maxCountersPerShard;
+  private LongSupplier clock;
+  private ConcurrentHashMap<String, Window>[] shards;
+
+  /**
+   * Constructor.
+   *
+   * @param config the limits to enforce.
+   * @param shardCount number of shards to spread the counters over.
+   * @param maxCounters maximum number of counters held.
+   */
+  public EmbeddedRateLimiterTransport(EnvoyLimitConfig config, int shardCount, int maxCounters) {
+    this(config, shardCount, maxCounters, System::currentTimeMillis);
+  }
+
+  @SuppressWarnings("unchecked")
+  EmbeddedRateLimiterTransport(
+      EnvoyLimitConfig config, int shardCount, int maxCounters, LongSupplier clock) {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive");
+    }
+    if (maxCounters < shardCount) {
+      throw new IllegalArgumentException("Counter count must be at least the shard count");
+    }
+    this.config = config;
+    this.maxCountersPerShard = maxCounters / shardCount;
+    this.clock = clock;
+    this.shards = new ConcurrentHashMap[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new ConcurrentHashMap<>();
+    }
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    long now = clock.getAsLong();
+    int hits = DescriptorKeys.hits(request);
+    boolean limited = config.getDomain().equals(request.getDomain());
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    List<LimitStatus> statuses = new ArrayList<>(descriptors.size());
+    for (LimitDescriptor descriptor : descriptors) {
+      CurrentLimit limit = limited ? config.find(descriptor) : null;
+      if (limit == null) {
+        statuses.add(FixedWindowResponses.unlimited());
+      } else {
+        long windowEnd = LimitUnit.fromName(limit.getUnit()).windowEndMillis(now);
+        String key = DescriptorKeys.of(request.getDomain(), descriptor);
+        long count = count(key, now, windowEnd, hits);
+        statuses.add(FixedWindowResponses.status(limit, count, windowEnd, now));
+      }
+    }
+    return FixedWindowResponses.respond(request, statuses);
+  }
+
+  /** @return the number of counters held. */
+  public int size() {
+    int size = 0;
+    for (ConcurrentHashMap<String, Window> shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  // Adds the hits to the descriptor's count for the window, replacing the count of an earlier one
+  private long count(String key, long now, long windowEnd, int hits) {
+    ConcurrentHashMap<String, Window> shard = shards[Math.floorMod(key.hashCode(), shards.length)];
+    while (true) {
+      Window window = shard.get(key);
+      if (window != null && window.end >= windowEnd) {
+        return window.count.addAndGet(hits);
+      }
+      Window next = new Window(windowEnd);
+      if (window == null) {
+        makeRoom(shard, now);
+        if (shard.putIfAbsent(key, next) == null) {
+          return next.count.addAndGet(hits);
+        }
+      } else if (shard.replace(key, window, next)) {
+        return next.count.addAndGet(hits);
+      }
+    }
+  }
+
+  // When full, first evict counters whose window has ended, and then arbitrary ones
+  private void makeRoom(ConcurrentHashMap<String, Window> shard, long now) {
+    if (shard.size() < maxCountersPerShard) {
+      return;
+    }
+    shard.values().removeIf(window -> window.end <= now);
+    Iterator<String> keys = shard.keySet().iterator();
+    while (shard.size() >= maxCountersPerShard && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  // The hits counted for a descriptor in the window ending at the given time
+  private static class Window {
+    private final long end;
+    private final AtomicLong count = new AtomicLong();
+
+    Window(long end) {
+      this.end = end;
+    }
+  }
+}
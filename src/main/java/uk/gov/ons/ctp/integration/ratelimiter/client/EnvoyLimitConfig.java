@@ -0,0 +1,147 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.yaml.snakeyaml.Yaml;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+
+/**
+ * The limits of a domain, as configured for envoy's ratelimit service.
+ *
+ * <p>The configuration is a domain and a tree of descriptors, each with a key, an optional value,
+ * an optional 'rate_limit' of 'unit' and 'requests_per_unit', an optional 'unlimited' flag, and
+ * optional nested 'descriptors'. As in envoy, a request descriptor is matched by walking its
+ * entries down the tree, where a node with a value only matches that value and is preferred to a
+ * node without one, and takes the limit of the node its last entry reaches.
+ */
+public final class EnvoyLimitConfig {
+  private String domain;
+  private Node root = new Node(null, null, null);
+
+  private EnvoyLimitConfig() {}
+
+  /**
+   * Load the limits from envoy's YAML configuration.
+   *
+   * @param yaml the configuration.
+   * @return the limits.
+   * @throws IllegalArgumentException if the configuration is not valid.
+   */
+  @SuppressWarnings("unchecked")
+  public static EnvoyLimitConfig load(Reader yaml) {
+    Object loaded = new Yaml().load(yaml);
+    if (!(loaded instanceof Map)) {
+      throw new IllegalArgumentException("Limit configuration is not a YAML map");
+    }
+    Map<String, Object> config = (Map<String, Object>) loaded;
+    EnvoyLimitConfig limits = new EnvoyLimitConfig();
+    limits.domain = (String) config.get("domain");
+    if (limits.domain == null || limits.domain.isEmpty()) {
+      throw new IllegalArgumentException("Limit configuration has no domain");
+    }
+    limits.root.addChildren(config.get("descriptors"), "");
+    return limits;
+  }
+
+  /** @return the domain whose limits these are. */
+  public String getDomain() {
+    return domain;
+  }
+
+  /**
+   * Find the limit of a descriptor.
+   *
+   * @param descriptor the request descriptor.
+   * @return its limit, or null if it is not limited.
+   */
+  CurrentLimit find(LimitDescriptor descriptor) {
+    Node node = root;
+    for (DescriptorEntry entry : descriptor.getEntries()) {
+      Node next = node.children.get(entry.getKey() + '=' + entry.getValue());
+      if (next == null) {
+        next = node.children.get(entry.getKey());
+      }
+      if (next == null) {
+        return null;
+      }
+      node = next;
+    }
+    return node.limit;
+  }
+
+  // A descriptor of the configuration, held by key, or by key and value if it has a value
+  private static class Node {
+    private String key;
+    private String value;
+    private CurrentLimit limit;
+    private Map<String, Node> children = new HashMap<>();
+
+    Node(String key, String value, CurrentLimit limit) {
+      this.key = key;
+      this.value = value;
+      this.limit = limit;
+    }
+
+    @SuppressWarnings("unchecked")
+    void addChildren(Object descriptors, String path) {
+      if (descriptors == null) {
+        return;
+      }
+      if (!(descriptors instanceof List)) {
+        throw new IllegalArgumentException("Descriptors of '" + path + "' are not a list");
+      }
+      for (Object item : (List<Object>) descriptors) {
+        if (!(item instanceof Map)) {
+          throw new IllegalArgumentException("Descriptor of '" + path + "' is not a map");
+        }
+        Map<String, Object> descriptor = (Map<String, Object>) item;
+        Object childKey = descriptor.get("key");
+        if (childKey == null) {
+          throw new IllegalArgumentException("Descriptor of '" + path + "' has no key");
+        }
+        Object childValue = descriptor.get("value");
+        Node child =
+            new Node(childKey.toString(), childValue == null ? null : childValue.toString(), null);
+        String childPath = path.isEmpty() ? child.id() : path + "." + child.id();
+        if (!Boolean.TRUE.equals(descriptor.get("unlimited"))) {
+          child.limit = toLimit(descriptor.get("rate_limit"), childPath);
+        }
+        child.addChildren(descriptor.get("descriptors"), childPath);
+        if (children.putIfAbsent(child.id(), child) != null) {
+          throw new IllegalArgumentException("Duplicate descriptor '" + childPath + "'");
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CurrentLimit toLimit(Object rateLimit, String path) {
+      if (rateLimit == null) {
+        return null;
+      }
+      if (!(rateLimit instanceof Map)) {
+        throw new IllegalArgumentException("Rate limit of '" + path + "' is not a map");
+      }
+      Map<String, Object> fields = (Map<String, Object>) rateLimit;
+      String unit = String.valueOf(fields.get("unit")).toUpperCase(Locale.ROOT);
+      if (LimitUnit.fromName(unit) == LimitUnit.UNKNOWN) {
+        throw new IllegalArgumentException("Rate limit of '" + path + "' has an unknown unit");
+      }
+      Object requestsPerUnit = fields.get("requests_per_unit");
+      if (!(requestsPerUnit instanceof Number) || ((Number) requestsPerUnit).intValue() < 0) {
+        throw new IllegalArgumentException(
+            "Rate limit of '" + path + "' has no valid requests_per_unit");
+      }
+      return new CurrentLimit(((Number) requestsPerUnit).intValue(), unit);
+    }
+
+    private String id() {
+      return value == null ? key : key + '=' + value;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Builds limiter responses, in the same shape as envoy's, for transports which count hits in
+ * fixed windows themselves rather than calling the limiter.
+ */
+final class FixedWindowResponses {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private FixedWindowResponses() {}
+
+  /** @return the status of a descriptor which has no limit. */
+  static LimitStatus unlimited() {
+    LimitStatus status = new LimitStatus();
+    status.setCode(LimitStatus.CODE_OK);
+    return status;
+  }
+
+  /**
+   * Build the status of a limited descriptor, which is over its limit if its count exceeds it.
+   *
+   * @param limit the descriptor's limit.
+   * @param count hits counted in the current window, including those of the request.
+   * @param windowEndMillis end of the current window in epoch milliseconds.
+   * @param nowMillis the time of the request in epoch milliseconds.
+   * @return the status.
+   */
+  static LimitStatus status(CurrentLimit limit, long count, long windowEndMillis, long nowMillis) {
+    boolean overLimit = count > limit.getRequestsPerUnit();
+    LimitStatus status = new LimitStatus();
+    status.setCode(overLimit ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK);
+    status.setCurrentLimit(limit);
+    status.setLimitRemaining((int) Math.max(0, limit.getRequestsPerUnit() - count));
+    status.setDurationUntilReset(((windowEndMillis - nowMillis + 999) / 1000) + "s");
+    return status;
+  }
+
+  /**
+   * Build the response to a request, reporting it as a breach if any descriptor is over its
+   * limit.
+   *
+   * @param request the request.
+   * @param statuses the status of each descriptor, in the same order as the request descriptors.
+   * @return the response, if the request is within its limits.
+   * @throws RateLimitExceededException if any descriptor is over its limit.
+   */
+  static RateLimitResponse respond(RateLimitRequest request, List<LimitStatus> statuses) {
+    boolean breached =
+        statuses.stream().anyMatch(s -> LimitStatus.CODE_LIMIT_BREACHED.equals(s.getCode()));
+    RateLimitResponse response = new RateLimitResponse();
+    response.setOverallCode(breached ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK);
+    response.setStatuses(statuses);
+    if (breached) {
+      throw new RateLimitExceededException(request, response, toJson(response));
+    }
+    return response;
+  }
+
+  private static String toJson(RateLimitResponse response) {
+    try {
+      return OBJECT_MAPPER.writeValueAsString(response);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialise rate limiter response", e);
+    }
+  }
+}
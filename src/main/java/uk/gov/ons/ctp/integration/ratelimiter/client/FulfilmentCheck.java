@@ -0,0 +1,27 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+
+/**
+ * One fulfilment of a bulk check. The fields have the same meaning, and are validated in the same
+ * way, as the arguments of {@link RateLimiterClient#checkFulfilmentRateLimit}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FulfilmentCheck {
+  private Product product;
+  private CaseType caseType;
+  private String ipAddress;
+  private UniquePropertyReferenceNumber uprn;
+  private String telNo;
+  // Number of fulfilments the check counts as. Null means 1
+  private Integer weight;
+}
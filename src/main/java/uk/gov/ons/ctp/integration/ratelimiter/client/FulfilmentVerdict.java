@@ -0,0 +1,21 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** The verdict on one fulfilment of a bulk check. */
+@Data
+@AllArgsConstructor
+public class FulfilmentVerdict {
+  private FulfilmentCheck check;
+  // The breach of the check's own limits, or null if it is within them
+  private RateLimitExceededException limitExceeded;
+
+  /**
+   * @return true if the fulfilment is within its limits, or if the limiter could not be asked and
+   *     the check failed open.
+   */
+  public boolean isAllowed() {
+    return limitExceeded == null;
+  }
+}
@@ -0,0 +1,98 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.stub.ClientCalls;
+import java.util.concurrent.TimeUnit;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which calls envoy's native RateLimitService.ShouldRateLimit gRPC method, instead of
+ * POSTing json to the limiter.
+ *
+ * <p>The channel is expected to be long lived, so that all calls are multiplexed over the same
+ * HTTP/2 connection. An OVER_LIMIT response is reported as a RateLimitExceededException, which is a
+ * ResponseStatusException in the same form as the json transport's, so the client handles both
+ * transports identically. gRPC failures are thrown as a StatusRuntimeException, which counts as a
+ * limiter failure.
+ */
+public class GrpcRateLimiterTransport implements RateLimiterTransport {
+  static final String SERVICE_NAME = "envoy.service.ratelimit.v3.RateLimitService";
+
+  static final MethodDescriptor<RateLimitRequest, RateLimitResponse> SHOULD_RATE_LIMIT =
+      MethodDescriptor.<RateLimitRequest, RateLimitResponse>newBuilder()
+          .setType(MethodType.UNARY)
+          .setFullMethodName(
+              MethodDescriptor.generateFullMethodName(SERVICE_NAME, "ShouldRateLimit"))
+          .setRequestMarshaller(RateLimitProtoCodec.REQUEST_MARSHALLER)
+          .setResponseMarshaller(RateLimitProtoCodec.RESPONSE_MARSHALLER)
+          .build();
+
+  private Channel channel;
+  private ManagedChannel ownedChannel;
+  private long deadlineMillis;
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Constructor.
+   *
+   * @param channel gRPC channel to the limiter.
+   * @param deadlineMillis maximum time to wait for each call to the limiter.
+   */
+  public GrpcRateLimiterTransport(Channel channel, long deadlineMillis) {
+    this.channel = channel;
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  /**
+   * Create a transport which shuts its channel down when it is closed.
+   *
+   * @param channel gRPC channel to the limiter, which is not used by anything else.
+   * @param deadlineMillis maximum time to wait for each call to the limiter.
+   * @return the transport.
+   */
+  static GrpcRateLimiterTransport owning(ManagedChannel channel, long deadlineMillis) {
+    GrpcRateLimiterTransport transport = new GrpcRateLimiterTransport(channel, deadlineMillis);
+    transport.ownedChannel = channel;
+    return transport;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    RateLimitResponse response =
+        ClientCalls.blockingUnaryCall(
+            channel,
+            SHOULD_RATE_LIMIT,
+            CallOptions.DEFAULT.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS),
+            request);
+
+    if (LimitStatus.CODE_LIMIT_BREACHED.equals(response.getOverallCode())) {
+      throw new RateLimitExceededException(request, response, toJson(response));
+    }
+    return response;
+  }
+
+  /** Shut the channel down, if it was created for this transport. */
+  @Override
+  public void close() {
+    if (ownedChannel != null) {
+      ownedChannel.shutdown();
+    }
+  }
+
+  private String toJson(RateLimitResponse response) {
+    try {
+      return objectMapper.writeValueAsString(response);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialise rate limiter response", e);
+    }
+  }
+}
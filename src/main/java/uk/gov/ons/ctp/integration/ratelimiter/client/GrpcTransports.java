@@ -0,0 +1,30 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import java.util.concurrent.TimeUnit;
+import uk.gov.ons.ctp.integration.ratelimiter.config.GrpcTransportSettings;
+
+/**
+ * Creates the gRPC transport. gRPC is an optional dependency, so its classes are only referenced
+ * from here, which is not loaded unless the gRPC transport is selected.
+ */
+final class GrpcTransports {
+
+  private GrpcTransports() {}
+
+  /**
+   * Create a transport with its own channel to the limiter.
+   *
+   * @param grpc gRPC transport settings.
+   * @return the transport, which shuts the channel down when it is closed.
+   */
+  static RateLimiterTransport create(GrpcTransportSettings grpc) {
+    ManagedChannel channel =
+        ManagedChannelBuilder.forAddress(grpc.getHost(), grpc.getPort())
+            .usePlaintext()
+            .keepAliveTime(grpc.getKeepAliveSeconds(), TimeUnit.SECONDS)
+            .build();
+    return GrpcRateLimiterTransport.owning(channel, grpc.getDeadlineMillis());
+  }
+}
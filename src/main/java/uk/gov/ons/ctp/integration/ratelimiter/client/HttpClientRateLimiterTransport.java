@@ -0,0 +1,318 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which POSTs json requests to the limiter using the JDK's HttpClient, so that calls can
+ * be multiplexed over a few HTTP/2 connections rather than each needing a pooled connection.
+ *
+ * <p>The HttpClient negotiates HTTP/2 with ALPN for https, and by an h2c upgrade for http, falling
+ * back to HTTP/1.1 if the limiter does not accept it. Envoy's json listener does not accept the h2c
+ * upgrade, so calls are only multiplexed over https, and over http they use HTTP/1.1, for which the
+ * HttpClient opens a new connection for every concurrent call without any limit. The number of
+ * calls in flight is therefore capped, and further calls wait for one to finish: blocking calls
+ * for at most the request timeout, and asynchronous calls in a bounded queue which is drained as
+ * calls complete. An asynchronous call fails at once if the queue is full, fails if its request
+ * timeout passes while it is queued, and is dropped from the queue if it is cancelled.
+ *
+ * <p>Calls can be made blocking, as a RateLimiterTransport, or asynchronously with {@link
+ * #checkLimitAsync} or {@link #reactive()}. Each call times out after the request timeout, both
+ * while it waits to be sent and once it has been. As for the RestClient, a 429 is reported by a
+ * ResponseStatusException whose reason is the limiter's json response, and any other error status
+ * by a ResponseStatusException with that status.
+ */
+public class HttpClientRateLimiterTransport implements RateLimiterTransport {
+  private HttpClient httpClient;
+  private URI uri;
+  private Duration requestTimeout;
+  private Semaphore permits;
+  private int maxQueuedRequests;
+  private Queue<QueuedCall> waiting = new ConcurrentLinkedQueue<>();
+  private AtomicInteger queued = new AtomicInteger();
+  private HttpClient ownedClient;
+
+  /**
+   * Constructor.
+   *
+   * @param httpClient http client, which should be shared by all calls to the limiter.
+   * @param baseUri base uri of the limiter, such as 'http://limiter:8181'.
+   * @param requestTimeout maximum time to wait for each call to the limiter.
+   */
+  public HttpClientRateLimiterTransport(
+      HttpClient httpClient, URI baseUri, Duration requestTimeout) {
+    this(httpClient, baseUri, requestTimeout, 64, 1024);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param httpClient http client, which should be shared by all calls to the limiter.
+   * @param baseUri base uri of the limiter, such as 'http://limiter:8181'.
+   * @param requestTimeout maximum time to wait for each call to the limiter.
+   * @param maxConcurrentRequests maximum number of calls to the limiter in flight at once.
+   * @param maxQueuedRequests maximum number of asynchronous calls waiting to be sent.
+   */
+  public HttpClientRateLimiterTransport(
+      HttpClient httpClient,
+      URI baseUri,
+      Duration requestTimeout,
+      int maxConcurrentRequests,
+      int maxQueuedRequests) {
+    this.httpClient = httpClient;
+    this.uri = baseUri.resolve(RATE_LIMITER_QUERY_PATH);
+    this.requestTimeout = requestTimeout;
+    this.permits = new Semaphore(Math.max(1, maxConcurrentRequests));
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  /**
+   * Create a transport which closes its http client when it is closed, on JDKs where the
+   * HttpClient can be closed.
+   *
+   * @param httpClient http client, which is not used by anything else.
+   * @param baseUri base uri of the limiter, such as 'http://limiter:8181'.
+   * @param requestTimeout maximum time to wait for each call to the limiter.
+   * @param maxConcurrentRequests maximum number of calls to the limiter in flight at once.
+   * @param maxQueuedRequests maximum number of asynchronous calls waiting to be sent.
+   * @return the transport.
+   */
+  static HttpClientRateLimiterTransport owning(
+      HttpClient httpClient,
+      URI baseUri,
+      Duration requestTimeout,
+      int maxConcurrentRequests,
+      int maxQueuedRequests) {
+    HttpClientRateLimiterTransport transport =
+        new HttpClientRateLimiterTransport(
+            httpClient, baseUri, requestTimeout, maxConcurrentRequests, maxQueuedRequests);
+    transport.ownedClient = httpClient;
+    return transport;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    return checkLimit(request, ResponseDetail.LIMITS);
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request, ResponseDetail detail)
+      throws ResponseStatusException {
+    HttpResponse<byte[]> response;
+    try {
+      if (!permits.tryAcquire(requestTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        throw new IllegalStateException("Timed out waiting to call rate limiter");
+      }
+      try {
+        HttpRequest httpRequest = toHttpRequest(request);
+        response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+      } finally {
+        release();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to call rate limiter", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted calling rate limiter", e);
+    }
+    return toLimiterResponse(response, detail);
+  }
+
+  /**
+   * Ask the limiter whether the request is within its limits, without blocking.
+   *
+   * @param request the request to send to the limiter.
+   * @param detail the parts of the response which the caller needs.
+   * @return a future which completes with the limiters response, or null if the limiter did not
+   *     return a body. It completes exceptionally in the same way as {@link #checkLimit}.
+   */
+  public CompletableFuture<RateLimitResponse> checkLimitAsync(
+      RateLimitRequest request, ResponseDetail detail) {
+    CompletableFuture<HttpResponse<byte[]>> sent = new CompletableFuture<>();
+    if (queued.incrementAndGet() > maxQueuedRequests) {
+      queued.decrementAndGet();
+      sent.completeExceptionally(
+          new IllegalStateException("Too many calls waiting to call rate limiter"));
+    } else {
+      QueuedCall call = new QueuedCall(toHttpRequest(request), sent);
+      waiting.add(call);
+      // A call leaves the queue when it is sent, or is taken out if it fails or is cancelled first
+      sent.whenComplete(
+          (response, e) -> {
+            if (!call.sending && waiting.remove(call)) {
+              queued.decrementAndGet();
+            }
+          });
+      sendWaiting();
+      if (!call.sending) {
+        CompletableFuture.delayedExecutor(requestTimeout.toNanos(), TimeUnit.NANOSECONDS)
+            .execute(call::expire);
+      }
+    }
+    CompletableFuture<RateLimitResponse> result =
+        sent.thenApply(response -> toLimiterResponse(response, detail));
+    result.whenComplete(
+        (response, e) -> {
+          if (result.isCancelled()) {
+            sent.cancel(false);
+          }
+        });
+    return result;
+  }
+
+  /** @return the number of asynchronous calls waiting for others to finish. */
+  int getWaitingCount() {
+    return queued.get();
+  }
+
+  /** Fail the calls waiting to be sent, and close the http client if the transport owns it. */
+  @Override
+  public void close() {
+    QueuedCall call;
+    while ((call = waiting.poll()) != null) {
+      queued.decrementAndGet();
+      call.fail(new IllegalStateException("Rate limiter transport closed"));
+    }
+    if (ownedClient instanceof AutoCloseable) {
+      // The HttpClient can only be closed from Java 21
+      try {
+        ((AutoCloseable) ownedClient).close();
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to close http client", e);
+      }
+    }
+  }
+
+  /** @return a non-blocking transport which makes its calls with this transport. */
+  public ReactiveRateLimiterTransport reactive() {
+    return new ReactiveRateLimiterTransport() {
+      @Override
+      public Mono<RateLimitResponse> checkLimit(RateLimitRequest request) {
+        return checkLimit(request, ResponseDetail.LIMITS);
+      }
+
+      @Override
+      public Mono<RateLimitResponse> checkLimit(RateLimitRequest request, ResponseDetail detail) {
+        return Mono.fromFuture(() -> checkLimitAsync(request, detail));
+      }
+    };
+  }
+
+  // Send a call holding a permit, which is given back when the call completes
+  private void sendAsync(QueuedCall call) {
+    HttpRequest httpRequest = call.httpRequest;
+    CompletableFuture<HttpResponse<byte[]>> sent = call.sent;
+    try {
+      httpClient
+          .sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+          .whenComplete(
+              (response, e) -> {
+                release();
+                if (e != null) {
+                  sent.completeExceptionally(e);
+                } else {
+                  sent.complete(response);
+                }
+              });
+    } catch (RuntimeException e) {
+      release();
+      sent.completeExceptionally(e);
+    }
+  }
+
+  private void release() {
+    permits.release();
+    sendWaiting();
+  }
+
+  // Send waiting calls while there are permits for them. The queue is checked again after giving
+  // back a permit which found nothing to send, so that a call queued meanwhile is not stranded
+  private void sendWaiting() {
+    while (!waiting.isEmpty() && permits.tryAcquire()) {
+      QueuedCall call = waiting.poll();
+      if (call != null) {
+        queued.decrementAndGet();
+      }
+      if (call == null || !call.start()) {
+        permits.release();
+      } else {
+        sendAsync(call);
+      }
+    }
+  }
+
+  private HttpRequest toHttpRequest(RateLimitRequest request) {
+    // The body is read when the request is sent, which may be after this thread has reused its
+    // json buffer, so it is sent from a copy
+    return HttpRequest.newBuilder(uri)
+        .timeout(requestTimeout)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofByteArray(RateLimitRequestJson.toBytes(request)))
+        .build();
+  }
+
+  // An asynchronous call waiting for a permit. It is either started, when it gets one, or expired,
+  // when its request timeout passes first, but not both.
+  private class QueuedCall {
+    private HttpRequest httpRequest;
+    private CompletableFuture<HttpResponse<byte[]>> sent;
+    private AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean sending;
+
+    QueuedCall(HttpRequest httpRequest, CompletableFuture<HttpResponse<byte[]>> sent) {
+      this.httpRequest = httpRequest;
+      this.sent = sent;
+    }
+
+    // Claim the call for sending, unless it has expired or been cancelled
+    boolean start() {
+      if (!claimed.compareAndSet(false, true) || sent.isDone()) {
+        return false;
+      }
+      sending = true;
+      return true;
+    }
+
+    void expire() {
+      fail(new IllegalStateException("Timed out waiting to call rate limiter"));
+    }
+
+    void fail(Exception e) {
+      if (claimed.compareAndSet(false, true)) {
+        sent.completeExceptionally(e);
+      }
+    }
+  }
+
+  private RateLimitResponse toLimiterResponse(
+      HttpResponse<byte[]> response, ResponseDetail detail) {
+    if (response.statusCode() >= 400) {
+      HttpStatus status = HttpStatus.resolve(response.statusCode());
+      String body = new String(response.body(), StandardCharsets.UTF_8);
+      throw new ResponseStatusException(
+          status == null ? HttpStatus.INTERNAL_SERVER_ERROR : status, body);
+    }
+    try {
+      return RateLimitResponseDecoder.decode(response.body(), detail);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to parse rate limiter response", e);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.LeaseSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which answers checks for low-cardinality descriptors from a locally leased allowance,
+ * only calling the limiter when the allowance is used up or its window has ended.
+ *
+ * <p>A lease is charged to the limiter before it is used: the call which refreshes it sends the
+ * request's own hits plus the allowance as 'hitsAddend', so every leased request has already been
+ * counted by the limiter and all nodes together can not exceed its limits. Only one caller at a
+ * time refreshes the lease of a descriptor, and any allowance left in the old lease is carried
+ * into the new one if both are for the same window. Callers which find the lease being refreshed
+ * are checked by the limiter without reserving anything.
+ *
+ * <p>The limiter counts the hits of a request even when it refuses it, so a reservation which
+ * takes a descriptor over its limit has already been charged, and the limiter's verdict on it is
+ * the verdict on the request; it is not checked again. To make that rare the allowance is a
+ * bounded fraction of the 'limitRemaining' that the limiter last returned for the descriptor, less
+ * a margin for the other nodes' traffic since then, and nothing is reserved once that is below
+ * the minimum lease size. The first call for a descriptor only learns how much may be reserved and
+ * the next call reserves it. The limiter's counts run ahead of the real traffic by the unused part
+ * of the current leases, which is lost when a lease's window ends.
+ *
+ * <p>Leases are held in striped counters which are consumed without locking, by as many units as
+ * each request has hits.
+ */
+public class LeasingRateLimiterTransport implements RateLimiterTransport {
+  private RateLimiterTransport delegate;
+  private Set<String> layouts;
+  private double leaseFraction;
+  private double reserveMarginFraction;
+  private int minLeaseSize;
+  private int maxLeaseSize;
+  private int maxLeases;
+  private int stripes;
+  private LongSupplier clock;
+  private Map<String, LeaseSlot> slots = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param delegate transport used to call the limiter.
+   * @param settings leasing settings.
+   */
+  public LeasingRateLimiterTransport(RateLimiterTransport delegate, LeaseSettings settings) {
+    this(delegate, settings, System::currentTimeMillis);
+  }
+
+  LeasingRateLimiterTransport(
+      RateLimiterTransport delegate, LeaseSettings settings, LongSupplier clock) {
+    this.delegate = delegate;
+    this.layouts = new HashSet<>();
+    for (String layout : settings.getLayouts()) {
+      layouts.add(layout.replace(" ", ""));
+    }
+    this.leaseFraction = settings.getLeaseFraction();
+    this.reserveMarginFraction = settings.getReserveMarginFraction();
+    this.minLeaseSize = Math.max(1, settings.getMinLeaseSize());
+    this.maxLeaseSize = settings.getMaxLeaseSize();
+    this.maxLeases = settings.getMaxLeases();
+    this.stripes = Math.max(1, settings.getStripes());
+    this.clock = clock;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    if (!isLeasable(request)) {
+      return delegate.checkLimit(request);
+    }
+
+    int hits = DescriptorKeys.hits(request);
+    long now = clock.getAsLong();
+    LeaseSlot slot = slotFor(DescriptorKeys.of(request), now);
+    if (slot == null) {
+      return delegate.checkLimit(request);
+    }
+    Lease lease = slot.lease;
+    if (lease != null && lease.expiresAtMillis > now && lease.tryAcquire(hits)) {
+      return lease.grantingResponse;
+    }
+
+    if (!slot.refreshing.compareAndSet(false, true)) {
+      // Another caller is refreshing the lease
+      return delegate.checkLimit(request);
+    }
+    try {
+      return refresh(slot, request, hits, now);
+    } finally {
+      slot.refreshing.set(false);
+    }
+  }
+
+  /** @return the number of leases currently held. */
+  public int getLeaseCount() {
+    int count = 0;
+    for (LeaseSlot slot : slots.values()) {
+      if (slot.lease != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Close the transport used to call the limiter. */
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  // Check the request together with the reservation for the next lease, and grant that lease.
+  // Whatever the limiter's verdict, the request is not checked again, as it has been counted.
+  private RateLimitResponse refresh(LeaseSlot slot, RateLimitRequest request, int hits, long now) {
+    int reservation = slot.nextReservation;
+    RateLimitRequest charged =
+        reservation > 0
+            ? new RateLimitRequest(
+                request.getDomain(), request.getDescriptors(), hits + reservation)
+            : request;
+    RateLimitResponse response;
+    try {
+      response = delegate.checkLimit(charged);
+    } catch (ResponseStatusException e) {
+      slot.lease = null;
+      slot.nextReservation = 0;
+      throw e;
+    }
+    if (response == null || !LimitStatus.CODE_OK.equals(response.getOverallCode())) {
+      slot.lease = null;
+      slot.nextReservation = 0;
+      return response;
+    }
+    grantLease(slot, response, reservation, now);
+    return response;
+  }
+
+  private void grantLease(LeaseSlot slot, RateLimitResponse response, int reserved, long now) {
+    long nextReservation = maxLeaseSize;
+    long expiresAtMillis = Long.MAX_VALUE;
+    List<LimitStatus> statuses =
+        response.getStatuses() == null ? List.of() : response.getStatuses();
+    for (LimitStatus status : statuses) {
+      if (status.getCurrentLimit() == null) {
+        // No limit is configured for this descriptor, so it does not constrain the lease
+        continue;
+      }
+      long requestsPerUnit = status.getCurrentLimit().getRequestsPerUnit();
+      long margin = (long) Math.ceil(requestsPerUnit * reserveMarginFraction);
+      long reservable = status.getLimitRemaining() - margin;
+      nextReservation = Math.min(nextReservation, (long) (reservable * leaseFraction));
+      nextReservation = Math.min(nextReservation, (long) (requestsPerUnit * leaseFraction));
+      LimitUnit unit = LimitUnit.fromName(status.getCurrentLimit().getUnit());
+      expiresAtMillis = Math.min(expiresAtMillis, unit.windowEndMillis(now));
+    }
+
+    // Without a known window there is nothing to say when the lease must be refreshed, and the
+    // reservation is not worth it if it would be used up almost at once
+    boolean known = expiresAtMillis > now && expiresAtMillis != Long.MAX_VALUE;
+    slot.nextReservation = known && nextReservation >= minLeaseSize ? (int) nextReservation : 0;
+
+    // Units left in a lease for the same window have been charged, so are kept
+    Lease old = slot.lease;
+    int leftover = old != null && old.expiresAtMillis == expiresAtMillis ? old.drain() : 0;
+    int allowance = reserved + leftover;
+    slot.lease =
+        known && allowance > 0 ? new Lease(allowance, stripes, expiresAtMillis, response) : null;
+  }
+
+  // The slot for the key, or null if there are too many to hold another
+  private LeaseSlot slotFor(String key, long now) {
+    LeaseSlot slot = slots.get(key);
+    if (slot != null) {
+      return slot;
+    }
+    if (slots.size() >= maxLeases) {
+      // Leasing is only for low-cardinality layouts, so this is rarely needed
+      slots.values().removeIf(s -> !s.refreshing.get() && s.isIdle(now));
+      if (slots.size() >= maxLeases) {
+        return null;
+      }
+    }
+    return slots.computeIfAbsent(key, k -> new LeaseSlot());
+  }
+
+  private boolean isLeasable(RateLimitRequest request) {
+    if (layouts.isEmpty() || request.getDescriptors().isEmpty()) {
+      return false;
+    }
+    for (LimitDescriptor descriptor : request.getDescriptors()) {
+      if (!layouts.contains(DescriptorKeys.layout(descriptor))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The lease of a descriptor, along with the allowance to reserve when it is next refreshed and
+  // the flag held by the one caller refreshing it
+  private static class LeaseSlot {
+    private volatile Lease lease;
+    private volatile int nextReservation;
+    private AtomicBoolean refreshing = new AtomicBoolean();
+
+    boolean isIdle(long now) {
+      Lease current = lease;
+      return current == null || current.expiresAtMillis <= now;
+    }
+  }
+
+  // An allowance already charged to the limiter, split across counters so that concurrent callers
+  // rarely contend
+  private static class Lease {
+    private AtomicInteger[] stripes;
+    private long expiresAtMillis;
+    private RateLimitResponse grantingResponse;
+
+    Lease(int allowance, int stripeCount, long expiresAtMillis, RateLimitResponse response) {
+      int count = Math.min(stripeCount, allowance);
+      this.stripes = new AtomicInteger[count];
+      for (int i = 0; i < count; i++) {
+        stripes[i] = new AtomicInteger(allowance / count + (i < allowance % count ? 1 : 0));
+      }
+      this.expiresAtMillis = expiresAtMillis;
+      this.grantingResponse = response;
+    }
+
+    // Take units from a single stripe, starting at this thread's stripe and moving on to others if
+    // it has too few
+    boolean tryAcquire(int units) {
+      int start = (int) (Thread.currentThread().getId() % stripes.length);
+      for (int i = 0; i < stripes.length; i++) {
+        AtomicInteger stripe = stripes[(start + i) % stripes.length];
+        int available = stripe.get();
+        while (available >= units) {
+          if (stripe.compareAndSet(available, available - units)) {
+            return true;
+          }
+          available = stripe.get();
+        }
+      }
+      return false;
+    }
+
+    // Take all the units which are left
+    int drain() {
+      int left = 0;
+      for (AtomicInteger stripe : stripes) {
+        left += stripe.getAndSet(0);
+      }
+      return left;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Bounded in-process cache of the descriptors which the limiter has reported as over their limit.
+ *
+ * <p>Once a descriptor has breached its limit the limiter will keep rejecting it until its window
+ * resets, so until then the client can reject requests containing it without calling the limiter.
+ * Entries expire when the limit resets: after the duration until reset if the limiter returned
+ * one, or otherwise at the end of the limiter window for the unit that the limiter returned. When
+ * the cache is full a batch of entries is evicted at once: those which have expired, and then
+ * those which would expire soonest.
+ */
+public class LimitBreachCache {
+  private int maxEntries;
+  private LongSupplier clock;
+  private Map<String, CachedBreach> breaches = new ConcurrentHashMap<>();
+  private AtomicBoolean evicting = new AtomicBoolean();
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries maximum number of breached descriptors to hold.
+   */
+  public LimitBreachCache(int maxEntries) {
+    this(maxEntries, System::currentTimeMillis);
+  }
+
+  LimitBreachCache(int maxEntries, LongSupplier clock) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Breach cache size must be positive");
+    }
+    this.maxEntries = maxEntries;
+    this.clock = clock;
+  }
+
+  /**
+   * Look for descriptors of the request which are known to be over their limit.
+   *
+   * @param request the request about to be sent to the limiter.
+   * @return null if no descriptor is known to be over its limit. Otherwise a response in the same
+   *     shape as the limiter would return, in which the cached descriptors are OVER_LIMIT, with
+   *     the time remaining until they reset, and the others have an UNKNOWN status.
+   */
+  public RateLimitResponse findBreach(RateLimitRequest request) {
+    long now = clock.getAsLong();
+    List<LimitStatus> statuses = null;
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    for (int i = 0; i < descriptors.size(); i++) {
+      String key = DescriptorKeys.of(request.getDomain(), descriptors.get(i));
+      CachedBreach breach = breaches.get(key);
+      if (breach != null && breach.expiresAtMillis <= now) {
+        breaches.remove(key, breach);
+        breach = null;
+      }
+      if (breach != null) {
+        if (statuses == null) {
+          statuses = unknownStatuses(descriptors.size());
+        }
+        statuses.set(i, breach.statusAt(now));
+      }
+    }
+
+    if (statuses == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    RateLimitResponse response = new RateLimitResponse();
+    response.setOverallCode(LimitStatus.CODE_LIMIT_BREACHED);
+    response.setStatuses(statuses);
+    return response;
+  }
+
+  /**
+   * Remember the descriptors which the limiter reported as over their limit.
+   *
+   * @param request the request sent to the limiter.
+   * @param response the limiters response, whose statuses are in the same order as the request
+   *     descriptors.
+   */
+  public void recordBreaches(RateLimitRequest request, RateLimitResponse response) {
+    long now = clock.getAsLong();
+    List<LimitStatus> statuses = response.getStatuses();
+    for (int i = 0; i < statuses.size() && i < request.getDescriptors().size(); i++) {
+      LimitStatus status = statuses.get(i);
+      if (!LimitStatus.CODE_LIMIT_BREACHED.equals(status.getCode())) {
+        continue;
+      }
+      long millisUntilReset = ResetTimes.millisUntilReset(status, now);
+      if (millisUntilReset > 0) {
+        long expiresAtMillis = now + millisUntilReset;
+        makeRoom(now);
+        String key = DescriptorKeys.of(request.getDomain(), request.getDescriptors().get(i));
+        breaches.put(key, new CachedBreach(status, expiresAtMillis));
+      }
+    }
+  }
+
+  /** @return the number of checks which were answered from the cache. */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /** @return the number of checks which had to be sent to the limiter. */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /** @return the number of descriptors currently held, including any not yet purged. */
+  public int size() {
+    return breaches.size();
+  }
+
+  private void makeRoom(long now) {
+    BoundedMaps.makeRoom(
+        breaches,
+        maxEntries,
+        evicting,
+        breach -> breach.expiresAtMillis <= now,
+        breach -> breach.expiresAtMillis);
+  }
+
+  private List<LimitStatus> unknownStatuses(int size) {
+    List<LimitStatus> statuses = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      LimitStatus status = new LimitStatus();
+      status.setCode(LimitStatus.CODE_UNKNOWN);
+      statuses.add(status);
+    }
+    return statuses;
+  }
+
+  private static class CachedBreach {
+    private LimitStatus status;
+    private long expiresAtMillis;
+
+    CachedBreach(LimitStatus status, long expiresAtMillis) {
+      this.status = status;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+
+    // The cached status, with its reset time brought up to date
+    LimitStatus statusAt(long now) {
+      return LimitStatus.builder()
+          .code(status.getCode())
+          .currentLimit(status.getCurrentLimit())
+          .limitRemaining(status.getLimitRemaining())
+          .durationUntilReset(ResetTimes.formatMillis(expiresAtMillis - now))
+          .build();
+    }
+  }
+}
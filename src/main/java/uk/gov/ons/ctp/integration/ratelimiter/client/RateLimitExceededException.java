@@ -0,0 +1,145 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.HeaderValue;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Thrown when a request is over one or more of its limits.
+ *
+ * <p>As for any other limit breach the status is HttpStatus.TOO_MANY_REQUESTS and the reason is the
+ * limiter's json response, so callers which handle a ResponseStatusException are unaffected. The
+ * response is also available already parsed, along with the descriptors which breached their
+ * limits, so that callers do not need to parse the reason themselves.
+ *
+ * <p>The time until the breached limits reset is given by {@link #getRetryAfter}, and {@link
+ * #getLimiterHeaders} holds the headers, including Retry-After, which a frontend can pass on so
+ * that its users know when to try again. They are also given as the exception's response headers,
+ * so that Spring MVC adds them to the 429 it sends when the exception is not handled.
+ */
+public class RateLimitExceededException extends ResponseStatusException {
+  private static final long serialVersionUID = 1L;
+
+  private transient RateLimitRequest request;
+  private transient RateLimitResponse limiterResponse;
+  private transient List<LimitDescriptor> breachedDescriptors = new ArrayList<>();
+  private transient List<CurrentLimit> breachedLimits = new ArrayList<>();
+  private transient Map<String, String> limiterHeaders = new LinkedHashMap<>();
+  private long retryAfterMillis = ResetTimes.UNKNOWN;
+
+  /**
+   * Constructor.
+   *
+   * @param request the request which breached its limits.
+   * @param limiterResponse the limiter's response, whose statuses are in the same order as the
+   *     request descriptors.
+   * @param responseJson the limiter's response as json.
+   */
+  public RateLimitExceededException(
+      RateLimitRequest request, RateLimitResponse limiterResponse, String responseJson) {
+    this(request, limiterResponse, responseJson, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param request the request which breached its limits.
+   * @param limiterResponse the limiter's response, whose statuses are in the same order as the
+   *     request descriptors.
+   * @param responseJson the limiter's response as json.
+   * @param cause the exception from which the response was parsed, if any.
+   */
+  public RateLimitExceededException(
+      RateLimitRequest request,
+      RateLimitResponse limiterResponse,
+      String responseJson,
+      Throwable cause) {
+    super(HttpStatus.TOO_MANY_REQUESTS, responseJson, cause);
+    this.request = request;
+    this.limiterResponse = limiterResponse;
+
+    long now = System.currentTimeMillis();
+    List<LimitStatus> statuses =
+        limiterResponse.getStatuses() == null ? List.of() : limiterResponse.getStatuses();
+    for (int i = 0; i < statuses.size() && i < request.getDescriptors().size(); i++) {
+      LimitStatus status = statuses.get(i);
+      if (LimitStatus.CODE_LIMIT_BREACHED.equals(status.getCode())) {
+        breachedDescriptors.add(request.getDescriptors().get(i));
+        breachedLimits.add(status.getCurrentLimit());
+        // The request is only allowed again once all of its breached limits have reset
+        retryAfterMillis = Math.max(retryAfterMillis, ResetTimes.millisUntilReset(status, now));
+      }
+    }
+
+    if (limiterResponse.getResponseHeadersToAdd() != null) {
+      for (HeaderValue header : limiterResponse.getResponseHeadersToAdd()) {
+        limiterHeaders.put(header.getKey(), header.getValue());
+      }
+    }
+    if (retryAfterMillis != ResetTimes.UNKNOWN) {
+      limiterHeaders.putIfAbsent(
+          HttpHeaders.RETRY_AFTER, String.valueOf(ResetTimes.retryAfterSeconds(retryAfterMillis)));
+    }
+  }
+
+  /** @return the request which breached its limits. */
+  public RateLimitRequest getRequest() {
+    return request;
+  }
+
+  /** @return the limiter's response. */
+  public RateLimitResponse getLimiterResponse() {
+    return limiterResponse;
+  }
+
+  /** @return the descriptors which are over their limits, in request order. */
+  public List<LimitDescriptor> getBreachedDescriptors() {
+    return Collections.unmodifiableList(breachedDescriptors);
+  }
+
+  /**
+   * @return the limits of the breached descriptors, in the same order as {@link
+   *     #getBreachedDescriptors}. An entry is null if the limiter did not return the limit.
+   */
+  public List<CurrentLimit> getBreachedLimits() {
+    return Collections.unmodifiableList(breachedLimits);
+  }
+
+  /**
+   * @return how long until all of the breached limits reset, as reported by the limiter or, for
+   *     limiters which do not report it, as found from the end of the limit's window. Null if this
+   *     cannot be determined.
+   */
+  public Duration getRetryAfter() {
+    return retryAfterMillis == ResetTimes.UNKNOWN ? null : Duration.ofMillis(retryAfterMillis);
+  }
+
+  /**
+   * @return the headers which the limiter asked to be added to the response, such as
+   *     x-ratelimit-reset, along with a Retry-After header in seconds if the reset time is known.
+   */
+  public Map<String, String> getLimiterHeaders() {
+    return Collections.unmodifiableMap(limiterHeaders);
+  }
+
+  /**
+   * @return the same headers as {@link #getLimiterHeaders}, which Spring adds to the response it
+   *     sends for the exception.
+   */
+  @Override
+  public Map<String, String> getResponseHeaders() {
+    return getLimiterHeaders();
+  }
+}
@@ -0,0 +1,490 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.grpc.MethodDescriptor.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.HeaderValue;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Protobuf wire format encoding of the envoy ratelimit v3 messages, written directly against our
+ * model classes so that no generated code is needed.
+ *
+ * <p>Only the fields used by this client are encoded. Unknown fields are skipped when decoding.
+ */
+final class RateLimitProtoCodec {
+  // envoy.service.ratelimit.v3.RateLimitRequest
+  private static final int REQUEST_DOMAIN = 1;
+  private static final int REQUEST_DESCRIPTORS = 2;
+  private static final int REQUEST_HITS_ADDEND = 3;
+
+  // envoy.extensions.common.ratelimit.v3.RateLimitDescriptor and its Entry
+  private static final int DESCRIPTOR_ENTRIES = 1;
+  private static final int ENTRY_KEY = 1;
+  private static final int ENTRY_VALUE = 2;
+
+  // envoy.service.ratelimit.v3.RateLimitResponse
+  private static final int RESPONSE_OVERALL_CODE = 1;
+  private static final int RESPONSE_STATUSES = 2;
+  private static final int RESPONSE_HEADERS_TO_ADD = 3;
+
+  // envoy.config.core.v3.HeaderValue
+  private static final int HEADER_KEY = 1;
+  private static final int HEADER_VALUE = 2;
+
+  // envoy.service.ratelimit.v3.RateLimitResponse.DescriptorStatus
+  private static final int STATUS_CODE = 1;
+  private static final int STATUS_CURRENT_LIMIT = 2;
+  private static final int STATUS_LIMIT_REMAINING = 3;
+  private static final int STATUS_DURATION_UNTIL_RESET = 4;
+
+  // google.protobuf.Duration
+  private static final int DURATION_SECONDS = 1;
+  private static final int DURATION_NANOS = 2;
+
+  // envoy.service.ratelimit.v3.RateLimitResponse.RateLimit
+  private static final int LIMIT_REQUESTS_PER_UNIT = 1;
+  private static final int LIMIT_UNIT = 2;
+
+  // Enum values, indexed by their protobuf number
+  private static final String[] CODES = {
+    "UNKNOWN", LimitStatus.CODE_OK, LimitStatus.CODE_LIMIT_BREACHED
+  };
+  private static final String[] UNITS = {
+    "UNKNOWN", "SECOND", "MINUTE", "HOUR", "DAY", "MONTH", "YEAR", "WEEK"
+  };
+
+  static final Marshaller<RateLimitRequest> REQUEST_MARSHALLER =
+      new Marshaller<RateLimitRequest>() {
+        @Override
+        public InputStream stream(RateLimitRequest request) {
+          return new ByteArrayInputStream(encodeRequest(request));
+        }
+
+        @Override
+        public RateLimitRequest parse(InputStream stream) {
+          try {
+            return decodeRequest(CodedInputStream.newInstance(stream));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      };
+
+  static final Marshaller<RateLimitResponse> RESPONSE_MARSHALLER =
+      new Marshaller<RateLimitResponse>() {
+        @Override
+        public InputStream stream(RateLimitResponse response) {
+          return new ByteArrayInputStream(encodeResponse(response));
+        }
+
+        @Override
+        public RateLimitResponse parse(InputStream stream) {
+          try {
+            return decodeResponse(CodedInputStream.newInstance(stream));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      };
+
+  private RateLimitProtoCodec() {}
+
+  static byte[] encodeRequest(RateLimitRequest request) {
+    List<LimitDescriptor> descriptors = descriptorsOf(request);
+    int size = stringSize(REQUEST_DOMAIN, request.getDomain());
+    for (LimitDescriptor descriptor : descriptors) {
+      size += messageSize(REQUEST_DESCRIPTORS, descriptorSize(descriptor));
+    }
+    int hitsAddend = hitsAddendOf(request);
+    if (hitsAddend != 0) {
+      size += CodedOutputStream.computeUInt32Size(REQUEST_HITS_ADDEND, hitsAddend);
+    }
+
+    byte[] result = new byte[size];
+    CodedOutputStream out = CodedOutputStream.newInstance(result);
+    try {
+      writeString(out, REQUEST_DOMAIN, request.getDomain());
+      for (LimitDescriptor descriptor : descriptors) {
+        writeMessageHeader(out, REQUEST_DESCRIPTORS, descriptorSize(descriptor));
+        for (DescriptorEntry entry : entriesOf(descriptor)) {
+          writeMessageHeader(out, DESCRIPTOR_ENTRIES, entrySize(entry));
+          writeString(out, ENTRY_KEY, entry.getKey());
+          writeString(out, ENTRY_VALUE, entry.getValue());
+        }
+      }
+      if (hitsAddend != 0) {
+        out.writeUInt32(REQUEST_HITS_ADDEND, hitsAddend);
+      }
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  static RateLimitRequest decodeRequest(CodedInputStream in) throws IOException {
+    RateLimitRequest request = new RateLimitRequest();
+    List<LimitDescriptor> descriptors = new ArrayList<>();
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case REQUEST_DOMAIN:
+          request.setDomain(in.readString());
+          break;
+        case REQUEST_DESCRIPTORS:
+          int limit = in.pushLimit(in.readRawVarint32());
+          descriptors.add(decodeDescriptor(in));
+          in.popLimit(limit);
+          break;
+        case REQUEST_HITS_ADDEND:
+          request.setHitsAddend(in.readUInt32());
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    request.setDescriptors(descriptors);
+    return request;
+  }
+
+  private static LimitDescriptor decodeDescriptor(CodedInputStream in) throws IOException {
+    List<DescriptorEntry> entries = new ArrayList<>();
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      if (WireFormat.getTagFieldNumber(tag) == DESCRIPTOR_ENTRIES) {
+        int limit = in.pushLimit(in.readRawVarint32());
+        entries.add(decodeEntry(in));
+        in.popLimit(limit);
+      } else {
+        in.skipField(tag);
+      }
+    }
+    LimitDescriptor descriptor = new LimitDescriptor();
+    descriptor.setEntries(entries);
+    return descriptor;
+  }
+
+  private static DescriptorEntry decodeEntry(CodedInputStream in) throws IOException {
+    DescriptorEntry entry = new DescriptorEntry("", "");
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case ENTRY_KEY:
+          entry.setKey(in.readString());
+          break;
+        case ENTRY_VALUE:
+          entry.setValue(in.readString());
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return entry;
+  }
+
+  static byte[] encodeResponse(RateLimitResponse response) {
+    List<LimitStatus> statuses =
+        response.getStatuses() == null ? List.of() : response.getStatuses();
+    List<HeaderValue> headers =
+        response.getResponseHeadersToAdd() == null ? List.of() : response.getResponseHeadersToAdd();
+    int size = enumSize(RESPONSE_OVERALL_CODE, CODES, response.getOverallCode());
+    for (LimitStatus status : statuses) {
+      size += messageSize(RESPONSE_STATUSES, statusSize(status));
+    }
+    for (HeaderValue header : headers) {
+      size += messageSize(RESPONSE_HEADERS_TO_ADD, headerSize(header));
+    }
+
+    byte[] result = new byte[size];
+    CodedOutputStream out = CodedOutputStream.newInstance(result);
+    try {
+      writeEnum(out, RESPONSE_OVERALL_CODE, CODES, response.getOverallCode());
+      for (LimitStatus status : statuses) {
+        writeMessageHeader(out, RESPONSE_STATUSES, statusSize(status));
+        writeEnum(out, STATUS_CODE, CODES, status.getCode());
+        CurrentLimit currentLimit = status.getCurrentLimit();
+        if (currentLimit != null) {
+          writeMessageHeader(out, STATUS_CURRENT_LIMIT, currentLimitSize(currentLimit));
+          if (currentLimit.getRequestsPerUnit() != 0) {
+            out.writeUInt32(LIMIT_REQUESTS_PER_UNIT, currentLimit.getRequestsPerUnit());
+          }
+          writeEnum(out, LIMIT_UNIT, UNITS, currentLimit.getUnit());
+        }
+        if (status.getLimitRemaining() != 0) {
+          out.writeUInt32(STATUS_LIMIT_REMAINING, status.getLimitRemaining());
+        }
+        long[] duration = ResetTimes.parseSecondsAndNanos(status.getDurationUntilReset());
+        if (duration != null) {
+          writeMessageHeader(out, STATUS_DURATION_UNTIL_RESET, durationSize(duration));
+          writeDuration(out, duration);
+        }
+      }
+      for (HeaderValue header : headers) {
+        writeMessageHeader(out, RESPONSE_HEADERS_TO_ADD, headerSize(header));
+        writeString(out, HEADER_KEY, header.getKey());
+        writeString(out, HEADER_VALUE, header.getValue());
+      }
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  static RateLimitResponse decodeResponse(CodedInputStream in) throws IOException {
+    RateLimitResponse response = new RateLimitResponse();
+    response.setOverallCode(CODES[0]);
+    response.setStatuses(new ArrayList<>());
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case RESPONSE_OVERALL_CODE:
+          response.setOverallCode(enumName(CODES, in.readEnum()));
+          break;
+        case RESPONSE_STATUSES:
+          int limit = in.pushLimit(in.readRawVarint32());
+          response.getStatuses().add(decodeStatus(in));
+          in.popLimit(limit);
+          break;
+        case RESPONSE_HEADERS_TO_ADD:
+          if (response.getResponseHeadersToAdd() == null) {
+            response.setResponseHeadersToAdd(new ArrayList<>());
+          }
+          int headerLimit = in.pushLimit(in.readRawVarint32());
+          response.getResponseHeadersToAdd().add(decodeHeader(in));
+          in.popLimit(headerLimit);
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return response;
+  }
+
+  private static LimitStatus decodeStatus(CodedInputStream in) throws IOException {
+    LimitStatus status = new LimitStatus();
+    status.setCode(CODES[0]);
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case STATUS_CODE:
+          status.setCode(enumName(CODES, in.readEnum()));
+          break;
+        case STATUS_CURRENT_LIMIT:
+          int limit = in.pushLimit(in.readRawVarint32());
+          status.setCurrentLimit(decodeCurrentLimit(in));
+          in.popLimit(limit);
+          break;
+        case STATUS_LIMIT_REMAINING:
+          status.setLimitRemaining(in.readUInt32());
+          break;
+        case STATUS_DURATION_UNTIL_RESET:
+          int durationLimit = in.pushLimit(in.readRawVarint32());
+          status.setDurationUntilReset(decodeDuration(in));
+          in.popLimit(durationLimit);
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return status;
+  }
+
+  private static CurrentLimit decodeCurrentLimit(CodedInputStream in) throws IOException {
+    CurrentLimit currentLimit = new CurrentLimit(0, UNITS[0]);
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case LIMIT_REQUESTS_PER_UNIT:
+          currentLimit.setRequestsPerUnit(in.readUInt32());
+          break;
+        case LIMIT_UNIT:
+          currentLimit.setUnit(enumName(UNITS, in.readEnum()));
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return currentLimit;
+  }
+
+  private static String decodeDuration(CodedInputStream in) throws IOException {
+    long seconds = 0;
+    int nanos = 0;
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case DURATION_SECONDS:
+          seconds = in.readInt64();
+          break;
+        case DURATION_NANOS:
+          nanos = in.readInt32();
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return ResetTimes.format(seconds, nanos);
+  }
+
+  private static HeaderValue decodeHeader(CodedInputStream in) throws IOException {
+    HeaderValue header = new HeaderValue("", "");
+    int tag;
+    while ((tag = in.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case HEADER_KEY:
+          header.setKey(in.readString());
+          break;
+        case HEADER_VALUE:
+          header.setValue(in.readString());
+          break;
+        default:
+          in.skipField(tag);
+      }
+    }
+    return header;
+  }
+
+  private static int descriptorSize(LimitDescriptor descriptor) {
+    int size = 0;
+    for (DescriptorEntry entry : entriesOf(descriptor)) {
+      size += messageSize(DESCRIPTOR_ENTRIES, entrySize(entry));
+    }
+    return size;
+  }
+
+  private static int entrySize(DescriptorEntry entry) {
+    return stringSize(ENTRY_KEY, entry.getKey()) + stringSize(ENTRY_VALUE, entry.getValue());
+  }
+
+  private static int statusSize(LimitStatus status) {
+    int size = enumSize(STATUS_CODE, CODES, status.getCode());
+    if (status.getCurrentLimit() != null) {
+      size += messageSize(STATUS_CURRENT_LIMIT, currentLimitSize(status.getCurrentLimit()));
+    }
+    if (status.getLimitRemaining() != 0) {
+      size +=
+          CodedOutputStream.computeUInt32Size(STATUS_LIMIT_REMAINING, status.getLimitRemaining());
+    }
+    long[] duration = ResetTimes.parseSecondsAndNanos(status.getDurationUntilReset());
+    if (duration != null) {
+      size += messageSize(STATUS_DURATION_UNTIL_RESET, durationSize(duration));
+    }
+    return size;
+  }
+
+  private static int durationSize(long[] secondsAndNanos) {
+    int size = 0;
+    if (secondsAndNanos[0] != 0) {
+      size += CodedOutputStream.computeInt64Size(DURATION_SECONDS, secondsAndNanos[0]);
+    }
+    if (secondsAndNanos[1] != 0) {
+      size += CodedOutputStream.computeInt32Size(DURATION_NANOS, (int) secondsAndNanos[1]);
+    }
+    return size;
+  }
+
+  private static void writeDuration(CodedOutputStream out, long[] secondsAndNanos)
+      throws IOException {
+    if (secondsAndNanos[0] != 0) {
+      out.writeInt64(DURATION_SECONDS, secondsAndNanos[0]);
+    }
+    if (secondsAndNanos[1] != 0) {
+      out.writeInt32(DURATION_NANOS, (int) secondsAndNanos[1]);
+    }
+  }
+
+  private static int headerSize(HeaderValue header) {
+    return stringSize(HEADER_KEY, header.getKey()) + stringSize(HEADER_VALUE, header.getValue());
+  }
+
+  private static int currentLimitSize(CurrentLimit currentLimit) {
+    int size = enumSize(LIMIT_UNIT, UNITS, currentLimit.getUnit());
+    if (currentLimit.getRequestsPerUnit() != 0) {
+      size +=
+          CodedOutputStream.computeUInt32Size(
+              LIMIT_REQUESTS_PER_UNIT, currentLimit.getRequestsPerUnit());
+    }
+    return size;
+  }
+
+  // Size of a length delimited field holding a message of the given size
+  private static int messageSize(int fieldNumber, int size) {
+    return CodedOutputStream.computeTagSize(fieldNumber)
+        + CodedOutputStream.computeUInt32SizeNoTag(size)
+        + size;
+  }
+
+  // Proto3 does not put default values on the wire, so empty strings are omitted
+  private static int stringSize(int fieldNumber, String value) {
+    return isEmpty(value) ? 0 : CodedOutputStream.computeStringSize(fieldNumber, value);
+  }
+
+  private static int enumSize(int fieldNumber, String[] names, String name) {
+    int number = enumNumber(names, name);
+    return number == 0 ? 0 : CodedOutputStream.computeEnumSize(fieldNumber, number);
+  }
+
+  private static void writeMessageHeader(CodedOutputStream out, int fieldNumber, int size)
+      throws IOException {
+    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(size);
+  }
+
+  private static void writeString(CodedOutputStream out, int fieldNumber, String value)
+      throws IOException {
+    if (!isEmpty(value)) {
+      out.writeString(fieldNumber, value);
+    }
+  }
+
+  private static void writeEnum(CodedOutputStream out, int fieldNumber, String[] names, String name)
+      throws IOException {
+    int number = enumNumber(names, name);
+    if (number != 0) {
+      out.writeEnum(fieldNumber, number);
+    }
+  }
+
+  private static int enumNumber(String[] names, String name) {
+    for (int i = 1; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private static String enumName(String[] names, int number) {
+    return number > 0 && number < names.length ? names[number] : names[0];
+  }
+
+  private static boolean isEmpty(String value) {
+    return value == null || value.isEmpty();
+  }
+
+  private static int hitsAddendOf(RateLimitRequest request) {
+    return request.getHitsAddend() == null ? 0 : request.getHitsAddend();
+  }
+
+  private static List<LimitDescriptor> descriptorsOf(RateLimitRequest request) {
+    return request.getDescriptors() == null ? List.of() : request.getDescriptors();
+  }
+
+  private static List<DescriptorEntry> entriesOf(LimitDescriptor descriptor) {
+    return descriptor.getEntries() == null ? List.of() : descriptor.getEntries();
+  }
+}
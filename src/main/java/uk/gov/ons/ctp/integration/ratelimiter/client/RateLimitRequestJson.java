@@ -0,0 +1,306 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+
+/**
+ * Writes limiter requests as json without going through Jackson's reflective serialisation.
+ *
+ * <p>The output is byte for byte the same as a default Jackson ObjectMapper produces for a {@link
+ * RateLimitRequest}, including its escaping of strings. Each thread writes into its own reusable
+ * buffer, and the fragments of json around the known descriptor keys are encoded once up front.
+ * Descriptors built by a {@link DescriptorPlan} are written by the plan, straight from their
+ * parameter values. Callers which copy the json straight away, such as into a socket buffer, can
+ * {@link #write} it from the buffer rather than taking a copy of it.
+ */
+final class RateLimitRequestJson {
+  // A buffer which has grown beyond this is not kept for reuse
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] REQUEST_START = ascii("{\"domain\":");
+  private static final byte[] DESCRIPTORS_FIELD = ascii(",\"descriptors\":");
+  private static final byte[] HITS_ADDEND_FIELD = ascii(",\"hitsAddend\":");
+  private static final byte[] ENTRIES_FIELD = ascii("{\"entries\":");
+  private static final byte[] KEY_FIELD = ascii("{\"key\":");
+  private static final byte[] VALUE_FIELD = ascii(",\"value\":");
+  private static final byte[] ENTRIES_START = ascii("{\"entries\":[");
+  private static final byte[] ENTRIES_END = ascii("]}");
+
+  // The start of each entry for the keys used by the client, up to and including ',"value":'
+  private static final Map<String, byte[]> ENTRY_STARTS = new HashMap<>();
+
+  static {
+    for (String key : RateLimiterClientBase.PARAMETER_NAMES) {
+      Buffer buffer = new Buffer();
+      buffer.write(KEY_FIELD);
+      buffer.writeString(key);
+      buffer.write(VALUE_FIELD);
+      ENTRY_STARTS.put(key, buffer.toByteArray());
+    }
+  }
+
+  private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+  private RateLimitRequestJson() {}
+
+  /** Receives json which is only valid until it returns. */
+  interface JsonSink<T> {
+    /**
+     * Take the json.
+     *
+     * @param bytes array holding the UTF-8 encoded json.
+     * @param offset start of the json in the array.
+     * @param length length of the json.
+     * @return the result of the sink.
+     */
+    T accept(byte[] bytes, int offset, int length);
+  }
+
+  /**
+   * Write a request as json.
+   *
+   * @param request the request.
+   * @return the UTF-8 encoded json.
+   */
+  static byte[] toBytes(RateLimitRequest request) {
+    return write(
+        request, (bytes, offset, length) -> Arrays.copyOfRange(bytes, offset, offset + length));
+  }
+
+  /**
+   * Write a request as json into this thread's buffer, and pass it to a sink. The sink must have
+   * finished with the buffer when it returns.
+   *
+   * @param request the request.
+   * @param sink sink for the UTF-8 encoded json.
+   * @return the result of the sink.
+   */
+  static <T> T write(RateLimitRequest request, JsonSink<T> sink) {
+    Buffer buffer = BUFFERS.get();
+    if (buffer.length > 0) {
+      // A sink is writing another request, so the buffer is still in use
+      buffer = new Buffer();
+    }
+    try {
+      write(request, buffer);
+      return sink.accept(buffer.bytes, 0, buffer.length);
+    } finally {
+      if (buffer.bytes.length > MAX_RETAINED_BUFFER) {
+        BUFFERS.remove();
+      } else {
+        buffer.length = 0;
+      }
+    }
+  }
+
+  /**
+   * Encode the json around the values of a descriptor with the given keys.
+   *
+   * @param keys the entry keys, in order.
+   * @return the json before each value, followed by the json after the last value.
+   */
+  static byte[][] descriptorFragments(String[] keys) {
+    byte[][] fragments = new byte[keys.length + 1][];
+    Buffer buffer = new Buffer();
+    buffer.write(ENTRIES_START);
+    for (int i = 0; i < keys.length; i++) {
+      if (i > 0) {
+        buffer.write('}');
+        buffer.write(',');
+      }
+      writeEntryStart(keys[i], buffer);
+      fragments[i] = buffer.toByteArray();
+      buffer.length = 0;
+    }
+    if (keys.length > 0) {
+      buffer.write('}');
+    }
+    buffer.write(ENTRIES_END);
+    fragments[keys.length] = buffer.toByteArray();
+    return fragments;
+  }
+
+  private static void write(RateLimitRequest request, Buffer buffer) {
+    buffer.write(REQUEST_START);
+    buffer.writeString(request.getDomain());
+    buffer.write(DESCRIPTORS_FIELD);
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    if (descriptors == null) {
+      buffer.write(NULL);
+    } else {
+      buffer.write('[');
+      for (int i = 0; i < descriptors.size(); i++) {
+        if (i > 0) {
+          buffer.write(',');
+        }
+        writeDescriptor(descriptors.get(i), buffer);
+      }
+      buffer.write(']');
+    }
+    // Left out when not set, as the model tells Jackson to
+    if (request.getHitsAddend() != null) {
+      buffer.write(HITS_ADDEND_FIELD);
+      buffer.write(ascii(request.getHitsAddend().toString()));
+    }
+    buffer.write('}');
+  }
+
+  private static void writeDescriptor(LimitDescriptor descriptor, Buffer buffer) {
+    if (descriptor == null) {
+      buffer.write(NULL);
+      return;
+    }
+    if (descriptor instanceof DescriptorPlan.PlannedDescriptor) {
+      DescriptorPlan.PlannedDescriptor planned = (DescriptorPlan.PlannedDescriptor) descriptor;
+      DescriptorPlan plan = planned.getPlan();
+      if (plan != null) {
+        plan.writeJson(planned.getParameters(), buffer);
+        return;
+      }
+    }
+    buffer.write(ENTRIES_FIELD);
+    List<DescriptorEntry> entries = descriptor.getEntries();
+    if (entries == null) {
+      buffer.write(NULL);
+    } else {
+      buffer.write('[');
+      for (int i = 0; i < entries.size(); i++) {
+        if (i > 0) {
+          buffer.write(',');
+        }
+        writeEntry(entries.get(i), buffer);
+      }
+      buffer.write(']');
+    }
+    buffer.write('}');
+  }
+
+  private static void writeEntry(DescriptorEntry entry, Buffer buffer) {
+    if (entry == null) {
+      buffer.write(NULL);
+      return;
+    }
+    writeEntryStart(entry.getKey(), buffer);
+    buffer.writeString(entry.getValue());
+    buffer.write('}');
+  }
+
+  private static void writeEntryStart(String key, Buffer buffer) {
+    byte[] entryStart = key == null ? null : ENTRY_STARTS.get(key);
+    if (entryStart != null) {
+      buffer.write(entryStart);
+    } else {
+      buffer.write(KEY_FIELD);
+      buffer.writeString(key);
+      buffer.write(VALUE_FIELD);
+    }
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  // A growable byte array
+  static final class Buffer {
+    private byte[] bytes = new byte[512];
+    private int length;
+
+    void write(int b) {
+      ensureCapacity(1);
+      bytes[length++] = (byte) b;
+    }
+
+    void write(byte[] fragment) {
+      ensureCapacity(fragment.length);
+      System.arraycopy(fragment, 0, bytes, length, fragment.length);
+      length += fragment.length;
+    }
+
+    // Writes a quoted and escaped string, as Jackson does, or null
+    void writeString(String text) {
+      if (text == null) {
+        write(NULL);
+        return;
+      }
+      // Every char takes at most 6 bytes (an escape), and quotes take 2
+      ensureCapacity(text.length() * 6 + 2);
+      bytes[length++] = '"';
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+          bytes[length++] = (byte) c;
+        } else if (c < 0x80) {
+          writeEscape(c);
+        } else if (c < 0x800) {
+          bytes[length++] = (byte) (0xc0 | (c >> 6));
+          bytes[length++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+          if (!Character.isHighSurrogate(c)
+              || i + 1 >= text.length()
+              || !Character.isLowSurrogate(text.charAt(i + 1))) {
+            throw new IllegalArgumentException("Incomplete surrogate pair in limiter request");
+          }
+          int codePoint = Character.toCodePoint(c, text.charAt(++i));
+          bytes[length++] = (byte) (0xf0 | (codePoint >> 18));
+          bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+          bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+          bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+          bytes[length++] = (byte) (0xe0 | (c >> 12));
+          bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+          bytes[length++] = (byte) (0x80 | (c & 0x3f));
+        }
+      }
+      bytes[length++] = '"';
+    }
+
+    private void writeEscape(char c) {
+      bytes[length++] = '\\';
+      switch (c) {
+        case '"':
+        case '\\':
+          bytes[length++] = (byte) c;
+          break;
+        case '\b':
+          bytes[length++] = 'b';
+          break;
+        case '\t':
+          bytes[length++] = 't';
+          break;
+        case '\n':
+          bytes[length++] = 'n';
+          break;
+        case '\f':
+          bytes[length++] = 'f';
+          break;
+        case '\r':
+          bytes[length++] = 'r';
+          break;
+        default:
+          bytes[length++] = 'u';
+          bytes[length++] = '0';
+          bytes[length++] = '0';
+          bytes[length++] = HEX[c >> 4];
+          bytes[length++] = HEX[c & 0xf];
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, length);
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.HeaderValue;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Decodes the limiters json response with a streaming parser, rather than binding it with an
+ * ObjectMapper. Only the fields needed for the requested {@link ResponseDetail} are read into the
+ * response; everything else, including fields this client does not know about, is skipped over
+ * without being materialised.
+ */
+final class RateLimitResponseDecoder {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private RateLimitResponseDecoder() {}
+
+  /**
+   * Decode the limiters response.
+   *
+   * @param json the response body. This can be null or empty if the limiter did not return a body.
+   * @param detail the fields to decode.
+   * @return the response, or null if there was no body.
+   * @throws IOException if the body is not a json limiter response.
+   */
+  static RateLimitResponse decode(byte[] json, ResponseDetail detail) throws IOException {
+    if (json == null || json.length == 0) {
+      return null;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      return decode(parser, detail);
+    }
+  }
+
+  /**
+   * Decode the limiters response, as held in the reason of a 429 exception.
+   *
+   * @param json the response body. This can be null or empty if the limiter did not return a body.
+   * @param detail the fields to decode.
+   * @return the response, or null if there was no body.
+   * @throws IOException if the body is not a json limiter response.
+   */
+  static RateLimitResponse decode(String json, ResponseDetail detail) throws IOException {
+    if (json == null || json.isEmpty()) {
+      return null;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      return decode(parser, detail);
+    }
+  }
+
+  private static RateLimitResponse decode(JsonParser parser, ResponseDetail detail)
+      throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null || token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    expect(parser, token, JsonToken.START_OBJECT);
+
+    RateLimitResponse response = new RateLimitResponse();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      token = parser.nextToken();
+      if ("overallCode".equals(field)) {
+        response.setOverallCode(parser.getValueAsString());
+      } else if ("statuses".equals(field)
+          && detail.includes(ResponseDetail.STATUSES)
+          && token != JsonToken.VALUE_NULL) {
+        response.setStatuses(decodeStatuses(parser, token, detail));
+      } else if ("responseHeadersToAdd".equals(field)
+          && detail.includes(ResponseDetail.LIMITS)
+          && token != JsonToken.VALUE_NULL) {
+        response.setResponseHeadersToAdd(decodeHeaders(parser, token));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return response;
+  }
+
+  private static List<LimitStatus> decodeStatuses(
+      JsonParser parser, JsonToken token, ResponseDetail detail) throws IOException {
+    expect(parser, token, JsonToken.START_ARRAY);
+    List<LimitStatus> statuses = new ArrayList<>();
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      expect(parser, token, JsonToken.START_OBJECT);
+      LimitStatus status = new LimitStatus();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        token = parser.nextToken();
+        if ("code".equals(field)) {
+          status.setCode(parser.getValueAsString());
+        } else if ("limitRemaining".equals(field)) {
+          status.setLimitRemaining(parser.getValueAsInt());
+        } else if ("durationUntilReset".equals(field) && token == JsonToken.VALUE_STRING) {
+          status.setDurationUntilReset(parser.getValueAsString());
+        } else if ("currentLimit".equals(field)
+            && detail.includes(ResponseDetail.LIMITS)
+            && token != JsonToken.VALUE_NULL) {
+          status.setCurrentLimit(decodeCurrentLimit(parser, token));
+        } else {
+          parser.skipChildren();
+        }
+      }
+      statuses.add(status);
+    }
+    return statuses;
+  }
+
+  private static CurrentLimit decodeCurrentLimit(JsonParser parser, JsonToken token)
+      throws IOException {
+    expect(parser, token, JsonToken.START_OBJECT);
+    CurrentLimit limit = new CurrentLimit();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("requestsPerUnit".equals(field)) {
+        limit.setRequestsPerUnit(parser.getValueAsInt());
+      } else if ("unit".equals(field)) {
+        limit.setUnit(parser.getValueAsString());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return limit;
+  }
+
+  private static List<HeaderValue> decodeHeaders(JsonParser parser, JsonToken token)
+      throws IOException {
+    expect(parser, token, JsonToken.START_ARRAY);
+    List<HeaderValue> headers = new ArrayList<>();
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      expect(parser, token, JsonToken.START_OBJECT);
+      HeaderValue header = new HeaderValue();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("key".equals(field)) {
+          header.setKey(parser.getValueAsString());
+        } else if ("value".equals(field)) {
+          header.setValue(parser.getValueAsString());
+        } else {
+          parser.skipChildren();
+        }
+      }
+      headers.add(header);
+    }
+    return headers;
+  }
+
+  private static void expect(JsonParser parser, JsonToken actual, JsonToken expected)
+      throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException(
+          parser, "Expected " + expected + " in limiter response but found " + actual);
+    }
+  }
+}
@@ -1,17 +1,20 @@
 package uk.gov.ons.ctp.integration.ratelimiter.client;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.godaddy.logging.Logger;
 import com.godaddy.logging.LoggerFactory;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.validator.routines.InetAddressValidator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import lombok.Setter;
 import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
@@ -21,16 +24,27 @@ import uk.gov.ons.ctp.common.error.CTPException;
 import uk.gov.ons.ctp.common.error.CTPException.Fault;
 import uk.gov.ons.ctp.common.rest.RestClient;
 import uk.gov.ons.ctp.integration.common.product.model.Product;
-import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterMetrics.Verdict;
+import uk.gov.ons.ctp.integration.ratelimiter.config.BulkCheckSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.RateLimiterSettings;
 import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
 import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
 import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
 import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
-import uk.gov.ons.ctp.integration.ratelimiter.util.Encryptor;
 
-public class RateLimiterClient {
+public class RateLimiterClient extends RateLimiterClientBase {
   private static final Logger log = LoggerFactory.getLogger(RateLimiterClient.class);
 
+  // Threads for the limiter requests of bulk checks, shared by all clients. They are only created
+  // when needed, and end after a minute without work.
+  private static final ExecutorService BULK_CHECK_EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "ratelimiter-bulk-check");
+            thread.setDaemon(true);
+            return thread;
+          });
+
   // Enum with domains known to limiter
   public enum Domain {
     RH("respondenthome");
@@ -40,41 +54,35 @@ public class RateLimiterClient {
     private Domain(String domainName) {
       this.domainName = domainName;
     }
+
+    String getDomainName() {
+      return domainName;
+    }
   }
 
-  // Names of descriptor entries for limiter requests
-  private static final String DESC_PRODUCT_GROUP = "productGroup";
-  private static final String DESC_INDIVIDUAL = "individual";
-  private static final String DESC_DELIVERY_CHANNEL = "deliveryChannel";
-  private static final String DESC_CASE_TYPE = "caseType";
-  private static final String DESC_IP_ADDRESS = "ipAddress";
-  private static final String DESC_UPRN = "uprn";
-  private static final String DESC_TEL_NO = "telNo";
-  private static final String DESC_REQUEST = "request";
-  private static final String DESC_MODULO = "modulo";
-
-  // Lists of descriptors to be sent to the limiter. Fulfilment requests only.
-  private static String[] DESCRIPTORS_WITH_UPRN = {
-    DESC_DELIVERY_CHANNEL, DESC_PRODUCT_GROUP, DESC_INDIVIDUAL, DESC_CASE_TYPE, DESC_UPRN
-  };
-  private static String[] DESCRIPTORS_WITH_TEL_NO = {
-    DESC_DELIVERY_CHANNEL, DESC_PRODUCT_GROUP, DESC_INDIVIDUAL, DESC_CASE_TYPE, DESC_TEL_NO
-  };
-  private static String[] DELIVERYCHANNEL_WITH_ONLY_UPRN = {DESC_DELIVERY_CHANNEL, DESC_UPRN};
-  private static String[] DELIVERYCHANNEL_WITH_ONLY_TEL_NO = {DESC_DELIVERY_CHANNEL, DESC_TEL_NO};
-  private static String[] DELIVERYCHANNEL_WITH_ONLY_IP_ADDRESS = {
-    DESC_DELIVERY_CHANNEL, DESC_IP_ADDRESS
-  };
-
-  private static String[] DESCRIPTORS_WEBFORM = {DESC_REQUEST, DESC_IP_ADDRESS};
-  private static String[] DESCRIPTORS_EQ_LAUNCH = {DESC_REQUEST, DESC_MODULO};
-
-  private static final String RATE_LIMITER_QUERY_PATH = "/json";
-
-  private RestClient envoyLimiterRestClient;
+  private RateLimiterTransport transport;
   private CircuitBreaker circuitBreaker;
-  private String encryptionPassword;
-  private ObjectMapper objectMapper = new ObjectMapper();
+
+  /**
+   * Optional cache of descriptors known to be over their limit. If set, then requests containing
+   * such a descriptor are rejected without calling the limiter.
+   */
+  @Setter private LimitBreachCache limitBreachCache;
+
+  /**
+   * Optional local limiter, which learns limits from the limiter's responses. If set, then it
+   * enforces approximate local limits while the circuit breaker is open.
+   */
+  @Setter private DegradedModeLimiter degradedModeLimiter;
+
+  /**
+   * Optional Micrometer metrics of the limiter calls and verdicts. If set, then the remaining
+   * limits are also decoded from each limiter response.
+   */
+  @Setter private RateLimiterMetrics metrics;
+
+  /** Settings for {@link #checkFulfilmentRateLimits}. */
+  @Setter private BulkCheckSettings bulkCheckSettings = new BulkCheckSettings();
 
   /**
    * Constructor.
@@ -86,17 +94,40 @@ public class RateLimiterClient {
    */
   public RateLimiterClient(
       RestClient envoyLimiterRestClient, CircuitBreaker circuitBreaker, String encryptionPassword) {
-    super();
-    this.envoyLimiterRestClient = envoyLimiterRestClient;
-    this.circuitBreaker = circuitBreaker;
-    this.encryptionPassword = encryptionPassword;
+    this(
+        new RestClientRateLimiterTransport(envoyLimiterRestClient),
+        circuitBreaker,
+        encryptionPassword);
+  }
 
-    if (StringUtils.isBlank(encryptionPassword)) {
-      throw new IllegalArgumentException("Encryption password must be configured");
-    }
+  /**
+   * Constructor.
+   *
+   * @param transport transport used to send requests to the limiter
+   * @param circuitBreaker circuit breaker
+   * @param encryptionPassword encryption password (for encrypting the logging of telephone number.
+   *     This cannot be null or empty.
+   */
+  public RateLimiterClient(
+      RateLimiterTransport transport, CircuitBreaker circuitBreaker, String encryptionPassword) {
+    super(encryptionPassword);
+    this.transport = transport;
+    this.circuitBreaker = circuitBreaker;
+  }
 
-    this.objectMapper = new ObjectMapper();
-    this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+  /**
+   * Constructor.
+   *
+   * @param settings rate limiter settings, which select the transport and set the bulk check
+   *     settings.
+   * @param circuitBreaker circuit breaker
+   * @param encryptionPassword encryption password (for encrypting the logging of telephone number.
+   *     This cannot be null or empty.
+   */
+  public RateLimiterClient(
+      RateLimiterSettings settings, CircuitBreaker circuitBreaker, String encryptionPassword) {
+    this(RateLimiterTransportFactory.create(settings), circuitBreaker, encryptionPassword);
+    this.bulkCheckSettings = settings.getBulkChecks();
   }
 
   /**
@@ -129,44 +160,224 @@ public class RateLimiterClient {
       UniquePropertyReferenceNumber uprn,
       String telNo)
       throws CTPException, ResponseStatusException {
+    checkFulfilmentRateLimit(domain, product, caseType, ipAddress, uprn, telNo, 1);
+  }
+
+  /**
+   * Send a weighted fulfilment limit request to the limiter, which counts as the given number of
+   * fulfilments against every limit. This lets a multi-item order consume all of its units in a
+   * single call, and get a single verdict: either all of the units are within the limits, or the
+   * check fails. Otherwise this is the same as {@link #checkFulfilmentRateLimit(Domain, Product,
+   * CaseType, String, UniquePropertyReferenceNumber, String)}.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param product is the product used by the caller. This value is mandatory.
+   * @param caseType is the case type for the current request. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we do not add
+   *     it to the rate limit descriptors.
+   * @param uprn is the uprn to limit requests against. This value is mandatory.
+   * @param telNo is the end users telephone number. This value can be null, but if supplied then it
+   *     cannot be an empty string.
+   * @param weight is the number of fulfilments that the request counts as. This must be at least 1.
+   * @throws CTPException if an invalid argument is supplied.
+   * @throws ResponseStatusException if the request limit has been breached. In this case the
+   *     exception status will be HttpStatus.TOO_MANY_REQUESTS and the exception's reason field will
+   *     contain the limiters json response.
+   */
+  public void checkFulfilmentRateLimit(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo,
+      int weight)
+      throws CTPException, ResponseStatusException {
+    RateLimitRequest request =
+        prepareFulfilmentRequest(domain, product, caseType, ipAddress, uprn, telNo, weight);
+
+    // Send request to limiter
+    invokeRateLimiter("fulfilments", request);
+  }
+
+  /**
+   * Asynchronous version of {@link #checkFulfilmentRateLimit}.
+   *
+   * <p>The arguments are validated on the calling thread, and any validation failure is thrown
+   * immediately. The call to the limiter is then run on the supplied executor, so the calling
+   * thread is not blocked for the duration of the round trip. The circuit breaker and fail-open
+   * behaviour are the same as for the synchronous check.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param product is the product used by the caller. This value is mandatory.
+   * @param caseType is the case type for the current request. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we do not add
+   *     it to the rate limit descriptors.
+   * @param uprn is the uprn to limit requests against. This value is mandatory.
+   * @param telNo is the end users telephone number. This value can be null, but if supplied then it
+   *     cannot be an empty string.
+   * @param executor is the executor used to call the limiter. This value is mandatory.
+   * @return a future which completes normally if no limit has been breached, or completes
+   *     exceptionally with a ResponseStatusException (with status HttpStatus.TOO_MANY_REQUESTS) if
+   *     the request limit has been breached.
+   * @throws CTPException if an invalid argument is supplied.
+   */
+  public CompletableFuture<Void> checkFulfilmentRateLimitAsync(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo,
+      Executor executor)
+      throws CTPException {
+    return checkFulfilmentRateLimitAsync(
+        domain, product, caseType, ipAddress, uprn, telNo, 1, executor);
+  }
+
+  /**
+   * Asynchronous version of the weighted {@link #checkFulfilmentRateLimit(Domain, Product,
+   * CaseType, String, UniquePropertyReferenceNumber, String, int)}, which behaves in the same way
+   * as {@link #checkFulfilmentRateLimitAsync(Domain, Product, CaseType, String,
+   * UniquePropertyReferenceNumber, String, Executor)}.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param product is the product used by the caller. This value is mandatory.
+   * @param caseType is the case type for the current request. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we do not add
+   *     it to the rate limit descriptors.
+   * @param uprn is the uprn to limit requests against. This value is mandatory.
+   * @param telNo is the end users telephone number. This value can be null, but if supplied then it
+   *     cannot be an empty string.
+   * @param weight is the number of fulfilments that the request counts as. This must be at least 1.
+   * @param executor is the executor used to call the limiter. This value is mandatory.
+   * @return a future which completes normally if no limit has been breached, or completes
+   *     exceptionally with a ResponseStatusException (with status HttpStatus.TOO_MANY_REQUESTS) if
+   *     the request limit has been breached.
+   * @throws CTPException if an invalid argument is supplied.
+   */
+  public CompletableFuture<Void> checkFulfilmentRateLimitAsync(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo,
+      int weight,
+      Executor executor)
+      throws CTPException {
+    verifyArgumentSupplied("executor", executor);
+    RateLimitRequest request =
+        prepareFulfilmentRequest(domain, product, caseType, ipAddress, uprn, telNo, weight);
+    return invokeRateLimiterAsync("fulfilments", request, executor);
+  }
 
-    // Fail if caller doesn't meet interface requirements
+  /**
+   * Check a list of fulfilments, such as those of a print file or bulk request, against their
+   * limits.
+   *
+   * <p>Each fulfilment has the same descriptors as it would have if checked alone, but the
+   * descriptors of many fulfilments are packed into each limiter request, and several requests are
+   * kept in flight at once, as set by the {@link BulkCheckSettings}. The limiter returns a status
+   * for each descriptor, so each fulfilment gets a verdict based on its own descriptors alone, and
+   * a breach does not stop the other fulfilments from being checked. Fulfilments with different
+   * weights are sent in different requests, as the weight applies to a whole request.
+   *
+   * <p>The requests are sent on a pool of threads shared by all clients. The circuit breaker, limit
+   * breach cache and degraded mode limiter apply to each request as they do to a single check.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param checks are the fulfilments to check. Each one is validated as for {@link
+   *     #checkFulfilmentRateLimit}, and they are all validated before any are sent.
+   * @return a verdict for each fulfilment, in the same order as the checks.
+   * @throws CTPException if an invalid argument is supplied.
+   */
+  public List<FulfilmentVerdict> checkFulfilmentRateLimits(
+      Domain domain, List<FulfilmentCheck> checks) throws CTPException {
+    return checkFulfilmentRateLimits(domain, checks, BULK_CHECK_EXECUTOR);
+  }
+
+  /**
+   * Version of {@link #checkFulfilmentRateLimits(Domain, List)} which sends the limiter requests
+   * on the supplied executor. No more than the configured number of requests are given to the
+   * executor at once, and the calling thread waits until they have all completed.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param checks are the fulfilments to check. Each one is validated as for {@link
+   *     #checkFulfilmentRateLimit}, and they are all validated before any are sent.
+   * @param executor is the executor used to call the limiter. This value is mandatory.
+   * @return a verdict for each fulfilment, in the same order as the checks.
+   * @throws CTPException if an invalid argument is supplied.
+   */
+  public List<FulfilmentVerdict> checkFulfilmentRateLimits(
+      Domain domain, List<FulfilmentCheck> checks, Executor executor) throws CTPException {
     verifyArgumentSupplied("domain", domain);
-    verifyArgumentSupplied("product", product);
-    verifyArgumentSupplied("caseType", caseType);
-    verifyArgumentSupplied("uprn", uprn);
-    verifyArgumentNotEmpty("telNo", telNo);
+    verifyArgumentSupplied("checks", checks);
+    verifyArgumentSupplied("executor", executor);
 
-    if (!isValidIpAddress(ipAddress)) {
-      ipAddress = null;
+    // Fail before anything is sent if any check is invalid
+    List<RateLimitRequest> requests = new ArrayList<>(checks.size());
+    for (int i = 0; i < checks.size(); i++) {
+      requests.add(prepareBulkFulfilmentRequest(domain, checks.get(i), i));
     }
 
-    log.with("domain", domain.domainName)
-        .with("productGroup", product.getProductGroup().name())
-        .with("individual", product.getIndividual().toString())
-        .with("deliveryChannel", product.getDeliveryChannel().name())
-        .with("caseType", caseType.name())
-        .with("ipAddress", ipAddress)
-        .with("uprn", uprn.getValue())
-        .with("encrypted-telNo", encrypt(telNo))
-        .info("Fulfilment rate limit. Going to call Rate Limiter Service");
-
-    // Make it easy to access limiter parameters by adding to a hashmap
-    Map<String, String> params = new HashMap<String, String>();
-    params.put(DESC_PRODUCT_GROUP, product.getProductGroup().name());
-    params.put(DESC_INDIVIDUAL, product.getIndividual().toString());
-    params.put(DESC_DELIVERY_CHANNEL, product.getDeliveryChannel().name());
-    params.put(DESC_CASE_TYPE, caseType.name());
-    params.put(DESC_IP_ADDRESS, ipAddress);
-    params.put(DESC_UPRN, Long.toString(uprn.getValue()));
-    params.put(DESC_TEL_NO, telNo);
-
-    // Create request
-    RateLimitRequest request = createRateLimitRequestForFulfilment(domain, params);
-    log.with(request).debug("RateLimiterRequest for fulfilment");
+    FulfilmentVerdict[] verdicts = new FulfilmentVerdict[checks.size()];
+    List<PackedRequest> packedRequests = new ArrayList<>();
+    Map<Integer, PackedRequest> openRequests = new HashMap<>();
+    int maxDescriptors = bulkCheckSettings.getMaxDescriptorsPerRequest();
+    for (int i = 0; i < checks.size(); i++) {
+      RateLimitRequest request = requests.get(i);
+      RateLimitExceededException cachedBreach = findCachedBreach("bulk fulfilments", request);
+      if (cachedBreach != null) {
+        verdicts[i] = new FulfilmentVerdict(checks.get(i), cachedBreach);
+        continue;
+      }
+      // Requests with the same weight share a limiter request until it is full
+      PackedRequest packed = openRequests.get(DescriptorKeys.hits(request));
+      if (packed == null || packed.isFull(request, maxDescriptors)) {
+        packed = new PackedRequest(request);
+        openRequests.put(DescriptorKeys.hits(request), packed);
+        packedRequests.add(packed);
+      }
+      packed.add(i, request);
+    }
 
-    // Send request to limiter
-    invokeRateLimiter("fulfilments", request);
+    Semaphore inFlight = new Semaphore(Math.max(1, bulkCheckSettings.getMaxRequestsInFlight()));
+    List<CompletableFuture<Void>> results = new ArrayList<>(packedRequests.size());
+    for (PackedRequest packed : packedRequests) {
+      inFlight.acquireUninterruptibly();
+      CompletableFuture<Void> result = new CompletableFuture<>();
+      try {
+        executor.execute(
+            () -> {
+              try {
+                checkPackedRequest(packed, checks, verdicts);
+                result.complete(null);
+              } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+              } finally {
+                inFlight.release();
+              }
+            });
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
+      }
+      results.add(result);
+    }
+    try {
+      CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+
+    log.with("checks", checks.size())
+        .with("limiterRequests", packedRequests.size())
+        .info("Bulk fulfilment rate limits checked");
+    return Arrays.asList(verdicts);
   }
 
   /**
@@ -185,30 +396,34 @@ public class RateLimiterClient {
    */
   public void checkWebformRateLimit(Domain domain, String ipAddress)
       throws CTPException, ResponseStatusException {
+    RateLimitRequest request = prepareWebformRequest(domain, ipAddress);
 
-    // Fail if caller doesn't meet interface requirements
-    verifyArgumentSupplied("domain", domain);
-
-    if (!isValidIpAddress(ipAddress)) {
-      log.with("ipAddress", ipAddress)
-          .info("Webform rate limit not checked due to invalid IP address");
-      return;
+    // Send request to limiter
+    if (request != null) {
+      invokeRateLimiter("webform", request);
     }
+  }
 
-    log.with("ipAddress", ipAddress).info("Check webform rate limit");
-
-    // Make it easy to access limiter parameters by adding to a hashmap
-    Map<String, String> params = new HashMap<String, String>();
-    params.put(DESC_REQUEST, "WEBFORM");
-    params.put(DESC_IP_ADDRESS, ipAddress);
-
-    // Create request
-    RateLimitRequest request =
-        createRateLimitRequestWithAllDescriptors(domain, params, DESCRIPTORS_WEBFORM);
-    log.with(request).debug("RateLimiterRequest for Webform");
-
-    // Send request to limiter
-    invokeRateLimiter("webform", request);
+  /**
+   * Asynchronous version of {@link #checkWebformRateLimit}.
+   *
+   * <p>The arguments are validated on the calling thread, and any validation failure is thrown
+   * immediately. The call to the limiter is then run on the supplied executor.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we skip the
+   *     check and return an already completed future.
+   * @param executor is the executor used to call the limiter. This value is mandatory.
+   * @return a future which completes normally if no limit has been breached, or completes
+   *     exceptionally with a ResponseStatusException (with status HttpStatus.TOO_MANY_REQUESTS) if
+   *     the request limit has been breached.
+   * @throws CTPException if there is an invalid argument is supplied.
+   */
+  public CompletableFuture<Void> checkWebformRateLimitAsync(
+      Domain domain, String ipAddress, Executor executor) throws CTPException {
+    verifyArgumentSupplied("executor", executor);
+    RateLimitRequest request = prepareWebformRequest(domain, ipAddress);
+    return invokeRateLimiterAsync("webform", request, executor);
   }
 
   /**
@@ -229,132 +444,62 @@ public class RateLimiterClient {
    */
   public void checkEqLaunchLimit(Domain domain, String ipAddress, int loadSheddingModulus)
       throws CTPException, ResponseStatusException {
-    verifyArgumentSupplied("domain", domain);
-    verifyLoadSheddingModulus(loadSheddingModulus);
-
-    if (!isValidIpAddress(ipAddress)) {
-      log.with("ipAddress", ipAddress)
-          .info("EQ Launch rate limit not checked due to invalid IP address");
-      return;
-    }
-    log.with("ipAddress", ipAddress)
-        .with("loadSheddingModulus", loadSheddingModulus)
-        .info("Check EQ Launch limit");
-
-    Integer modulo = lastOctet(ipAddress) % loadSheddingModulus;
-
-    var params = new HashMap<String, String>();
-    params.put(DESC_REQUEST, "EQLAUNCH");
-    params.put(DESC_MODULO, modulo.toString());
-
-    RateLimitRequest request =
-        createRateLimitRequestWithAllDescriptors(domain, params, DESCRIPTORS_EQ_LAUNCH);
-    log.with(request).debug("RateLimiterRequest for EQ Launch");
-
-    invokeRateLimiter("EQ Launch", request);
-  }
-
-  private Integer lastOctet(String ipAddress) {
-    return Integer.valueOf(ipAddress.substring(ipAddress.lastIndexOf('.') + 1));
-  }
-
-  private boolean isValidIpAddress(String ipAddress) {
-    boolean valid = true;
-    if (StringUtils.isBlank(ipAddress)) {
-      log.with("ipAddress", ipAddress)
-          .warn("Cannot accept blank IP address. This will not be used for rate limit check");
-      valid = false;
-    }
-    if (!InetAddressValidator.getInstance().isValidInet4Address(ipAddress)) {
-      log.with("ipAddress", ipAddress)
-          .warn("IP address is not valid IPv4 format. This will not be used for rate limit check");
-      valid = false;
-    }
-    return valid;
-  }
+    RateLimitRequest request = prepareEqLaunchRequest(domain, ipAddress, loadSheddingModulus);
 
-  private void verifyLoadSheddingModulus(int loadSheddingModulus) throws CTPException {
-    if (loadSheddingModulus == 0) {
-      throw new CTPException(Fault.SYSTEM_ERROR, "Argument 'loadSheddingModulus' cannot be zero");
+    if (request != null) {
+      invokeRateLimiter("EQ Launch", request);
     }
   }
 
-  // Throws CTPException is the argument is null
-  private void verifyArgumentSupplied(String argName, Object argValue) throws CTPException {
-    if (argValue == null) {
-      throw new CTPException(Fault.SYSTEM_ERROR, "Argument '" + argName + "' cannot be null");
-    }
-  }
-
-  // Throws CTPException if an argument is supplied but it is blank
-  private void verifyArgumentNotEmpty(String argName, String argValue) throws CTPException {
-    if (argValue != null && argValue.isBlank()) {
-      throw new CTPException(
-          Fault.SYSTEM_ERROR, "Argument '" + argName + "' cannot be blank (" + argValue + ")");
-    }
-  }
-
-  // This is a key method that bunches together the various arguments that the limiter will be using
-  // to decide if the request has breached any limits.
-  private RateLimitRequest createRateLimitRequestForFulfilment(
-      Domain domain, Map<String, String> descriptorData) {
-
-    List<LimitDescriptor> descriptors = new ArrayList<>();
-    descriptors.add(createLimitDescriptor(DESCRIPTORS_WITH_UPRN, descriptorData));
-    if (descriptorData.get(DESC_TEL_NO) != null) {
-      descriptors.add(createLimitDescriptor(DESCRIPTORS_WITH_TEL_NO, descriptorData));
-    }
-    descriptors.add(createLimitDescriptor(DELIVERYCHANNEL_WITH_ONLY_UPRN, descriptorData));
-    if (descriptorData.get(DESC_TEL_NO) != null) {
-      descriptors.add(createLimitDescriptor(DELIVERYCHANNEL_WITH_ONLY_TEL_NO, descriptorData));
-    }
-    if (descriptorData.get(DESC_IP_ADDRESS) != null) {
-      descriptors.add(createLimitDescriptor(DELIVERYCHANNEL_WITH_ONLY_IP_ADDRESS, descriptorData));
-    }
-
-    RateLimitRequest request =
-        RateLimitRequest.builder().domain(domain.domainName).descriptors(descriptors).build();
-    return request;
-  }
-
-  private RateLimitRequest createRateLimitRequestWithAllDescriptors(
-      Domain domain, Map<String, String> descriptorData, String[] descriptorNames) {
-
-    List<LimitDescriptor> descriptors = new ArrayList<>();
-    descriptors.add(createLimitDescriptor(descriptorNames, descriptorData));
-
-    RateLimitRequest request =
-        RateLimitRequest.builder().domain(domain.domainName).descriptors(descriptors).build();
-    return request;
-  }
-
-  private LimitDescriptor createLimitDescriptor(
-      String[] descriptorNames, Map<String, String> descriptorData) {
-
-    List<DescriptorEntry> entries = new ArrayList<>();
-    for (String descriptorName : descriptorNames) {
-      String descriptorValue = descriptorData.get(descriptorName);
-      entries.add(new DescriptorEntry(descriptorName, descriptorValue));
-    }
-
-    LimitDescriptor limitDescriptor = new LimitDescriptor();
-    limitDescriptor.setEntries(entries);
-
-    return limitDescriptor;
+  /**
+   * Asynchronous version of {@link #checkEqLaunchLimit}.
+   *
+   * <p>The arguments are validated on the calling thread, and any validation failure is thrown
+   * immediately. The call to the limiter is then run on the supplied executor.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we skip the
+   *     check and return an already completed future.
+   * @param loadSheddingModulus an integer for modulus calculations against the last octet of the IP
+   *     address. This cannot be zero.
+   * @param executor is the executor used to call the limiter. This value is mandatory.
+   * @return a future which completes normally if no limit has been breached, or completes
+   *     exceptionally with a ResponseStatusException (with status HttpStatus.TOO_MANY_REQUESTS) if
+   *     the request limit has been breached.
+   * @throws CTPException if there is an invalid argument is supplied.
+   */
+  public CompletableFuture<Void> checkEqLaunchLimitAsync(
+      Domain domain, String ipAddress, int loadSheddingModulus, Executor executor)
+      throws CTPException {
+    verifyArgumentSupplied("executor", executor);
+    RateLimitRequest request = prepareEqLaunchRequest(domain, ipAddress, loadSheddingModulus);
+    return invokeRateLimiterAsync("EQ Launch", request, executor);
   }
 
   /**
    * Call the rate limiter using a circuit breaker. This will return without exception if 1) the
    * request is within the rate limits, or 2) the call to the rate limiter fails in some way, or 3)
    * due to previous failures the circuit breaker is 'open'. If the request is above the rate limits
-   * then a ResponseStatusException is thrown.
+   * then a ResponseStatusException is thrown. While the circuit breaker is 'open' the degraded mode
+   * limiter, if set, decides whether the request is above the rate limits.
    */
   private void invokeRateLimiter(String requestDescription, RateLimitRequest request) {
+    RateLimitExceededException cachedBreach = findCachedBreach(requestDescription, request);
+    if (cachedBreach != null) {
+      throw cachedBreach;
+    }
+    invokeRateLimiterWithCircuitBreaker(requestDescription, request);
+  }
+
+  // As invokeRateLimiter, but without looking in the limit breach cache
+  private void invokeRateLimiterWithCircuitBreaker(
+      String requestDescription, RateLimitRequest request) {
     ResponseStatusException limitException =
         circuitBreaker.run(
             () -> {
               try {
                 doInvokeRateLimiter(requestDescription, request);
+                recordVerdict(requestDescription, request, Verdict.OK);
                 return null;
               } catch (CTPException e) {
                 // we should get here if the rate-limiter is failing or not communicating
@@ -364,6 +509,7 @@ public class RateLimiterClient {
                 // we have got a 429 but don't rethrow it otherwise this will count against
                 // the circuit-breaker accounting, so instead we return it to later throw
                 // outside the circuit-breaker mechanism.
+                recordVerdict(requestDescription, request, Verdict.OVER_LIMIT);
                 return e;
               }
             },
@@ -377,9 +523,14 @@ public class RateLimiterClient {
               // or we are in circuit-breaker OPEN state.
               if (throwable instanceof CallNotPermittedException) {
                 log.info("Circuit breaker is OPEN calling rate limiter for " + requestDescription);
+                recordVerdict(requestDescription, request, Verdict.CIRCUIT_OPEN);
+                if (degradedModeLimiter != null) {
+                  return checkDegradedMode(request);
+                }
               } else {
                 log.with("error", throwable.getMessage())
                     .error(throwable, "Rate limiter failure for " + requestDescription);
+                recordVerdict(requestDescription, request, Verdict.ERROR);
               }
               return null;
             });
@@ -389,105 +540,243 @@ public class RateLimiterClient {
     }
   }
 
-  /** Make the rest call to the limiter */
-  private RateLimitResponse doInvokeRateLimiter(String requestDescription, RateLimitRequest request)
-      throws CTPException {
-    RateLimitResponse response;
+  // Returns the 429 to report, without calling the limiter, if a descriptor is known to be over
+  // its limit. Otherwise null.
+  private RateLimitExceededException findCachedBreach(
+      String requestDescription, RateLimitRequest request) {
+    if (limitBreachCache == null) {
+      return null;
+    }
+    RateLimitResponse cachedResponse = limitBreachCache.findBreach(request);
+    if (cachedResponse == null) {
+      return null;
+    }
+    RateLimitExceededException limitException;
     try {
-      response =
-          envoyLimiterRestClient.postResource(
-              RATE_LIMITER_QUERY_PATH, request, RateLimitResponse.class);
-
-    } catch (ResponseStatusException limiterException) {
-      HttpStatus httpStatus = limiterException.getStatus();
-      if (httpStatus == HttpStatus.TOO_MANY_REQUESTS) {
-        // An expected failure scenario. Record the breach and make sure caller
-        // knows by re-throwing the exception
-        String breachDescription = describeLimitBreach(request, limiterException);
-        log.info(breachDescription);
-        throw limiterException;
-      } else {
-        // Something unexpected went wrong
-        log.warn("Limiter request for " + requestDescription + " failed");
-        throw new CTPException(
-            Fault.SYSTEM_ERROR,
-            limiterException,
-            "POST request to limiter (for "
-                + requestDescription
-                + ") failed with http status: "
-                + httpStatus.value()
-                + "("
-                + httpStatus.name()
-                + ")");
-      }
+      limitException = limitBreachException(request, cachedResponse);
+    } catch (CTPException e) {
+      // Not expected, but there is still the limiter to ask
+      log.with("error", e.getMessage()).warn("Failed to report cached limit breach");
+      return null;
     }
-
-    return response;
+    log.info(describeLimitBreach(request, cachedResponse) + " (cached)");
+    recordVerdict(requestDescription, request, Verdict.OVER_LIMIT);
+    return limitException;
   }
 
-  // Builds a String which lists the LimitDescriptor(s) that triggered a limit breach
-  private String describeLimitBreach(
-      RateLimitRequest request, ResponseStatusException limiterException) throws CTPException {
-
-    StringBuilder failureDescription = new StringBuilder("Rate limit(s) breached:");
-    String responseJson = limiterException.getReason();
-    log.with("responseJson", responseJson).debug("Limiter response");
-    RateLimitResponse limiterResponse = convertJsonToObject(responseJson);
-    for (int i = 0; i < limiterResponse.getStatuses().size(); i++) {
-      LimitStatus breachedLimit = limiterResponse.getStatuses().get(i);
-      if (breachedLimit.getCode().equals(LimitStatus.CODE_LIMIT_BREACHED)) {
-        failureDescription.append(" ");
-        failureDescription.append(describeSingleBreach(request, i));
-      }
+  private void recordVerdict(String requestDescription, RateLimitRequest request, Verdict verdict) {
+    if (metrics != null) {
+      metrics.recordVerdict(requestDescription, request, verdict);
     }
+  }
 
-    return failureDescription.toString();
+  private void recordCall(
+      String requestDescription, RateLimitRequest request, Verdict outcome, long startNanos) {
+    if (metrics != null) {
+      metrics.recordCall(requestDescription, request, outcome, System.nanoTime() - startNanos);
+    }
   }
 
-  // Build a string to summarise the limitDescriptor which triggered a limit breach
-  private String describeSingleBreach(RateLimitRequest request, int i) {
-    int failureNumber = i + 1;
-    StringBuilder desc = new StringBuilder("(" + failureNumber + ") ");
+  // Identifies the check that failed validation, as a bulk check may hold thousands
+  private RateLimitRequest prepareBulkFulfilmentRequest(
+      Domain domain, FulfilmentCheck check, int index) throws CTPException {
+    verifyArgumentSupplied("checks[" + index + "]", check);
+    int weight = check.getWeight() == null ? 1 : check.getWeight();
+    try {
+      return prepareFulfilmentRequest(
+          domain,
+          check.getProduct(),
+          check.getCaseType(),
+          check.getIpAddress(),
+          check.getUprn(),
+          check.getTelNo(),
+          weight);
+    } catch (CTPException e) {
+      throw new CTPException(
+          Fault.SYSTEM_ERROR, e, "Invalid fulfilment check " + index + ": " + e.getMessage());
+    }
+  }
 
-    LimitDescriptor failingDescriptor = request.getDescriptors().get(i);
+  // Sends a packed request, and records the verdict on each of its checks
+  private void checkPackedRequest(
+      PackedRequest packed, List<FulfilmentCheck> checks, FulfilmentVerdict[] verdicts) {
+    RateLimitExceededException limitExceeded = null;
+    try {
+      invokeRateLimiterWithCircuitBreaker("bulk fulfilments", packed.toRequest());
+    } catch (RateLimitExceededException e) {
+      limitExceeded = e;
+    }
 
-    boolean needComma = false;
-    for (DescriptorEntry descriptorEntry : failingDescriptor.getEntries()) {
-      if (needComma) {
-        desc.append(", ");
-      } else {
-        needComma = true;
+    List<LimitStatus> statuses =
+        limitExceeded == null ? null : limitExceeded.getLimiterResponse().getStatuses();
+    boolean statusesMatch = statuses != null && statuses.size() == packed.descriptors.size();
+    int offset = 0;
+    for (int i = 0; i < packed.checkIndexes.size(); i++) {
+      int checkIndex = packed.checkIndexes.get(i);
+      RateLimitRequest request = packed.requests.get(i);
+      int count = request.getDescriptors().size();
+      RateLimitExceededException checkExceeded = null;
+      if (limitExceeded != null) {
+        // A check sent on its own keeps the limiter's breach, with its json, and without a status
+        // for each descriptor every check shares the breach of the whole request
+        checkExceeded =
+            statusesMatch && packed.checkIndexes.size() > 1
+                ? sliceBreach(request, statuses.subList(offset, offset + count))
+                : limitExceeded;
       }
+      verdicts[checkIndex] = new FulfilmentVerdict(checks.get(checkIndex), checkExceeded);
+      offset += count;
+    }
+  }
 
-      String descriptorKey = descriptorEntry.getKey();
-      String descriptorValue = descriptorEntry.getValue();
-      if (descriptorKey.equals(DESC_TEL_NO)) {
-        descriptorKey = "encrypted-" + descriptorKey;
-        descriptorValue = encrypt(descriptorValue);
-      }
+  // Returns the breach reported by a check's own statuses, or null if they are within the limits
+  private RateLimitExceededException sliceBreach(
+      RateLimitRequest request, List<LimitStatus> statuses) {
+    boolean breached =
+        statuses.stream().anyMatch(s -> LimitStatus.CODE_LIMIT_BREACHED.equals(s.getCode()));
+    if (!breached) {
+      return null;
+    }
+    // Each status keeps its own reset time, but the limiters headers describe the whole request
+    RateLimitResponse response =
+        RateLimitResponse.builder()
+            .overallCode(LimitStatus.CODE_LIMIT_BREACHED)
+            .statuses(new ArrayList<>(statuses))
+            .build();
+    try {
+      return limitBreachException(request, response);
+    } catch (CTPException e) {
+      throw new IllegalStateException("Failed to report bulk limit breach", e);
+    }
+  }
 
-      desc.append(descriptorKey + "=" + descriptorValue);
+  // Returns a 429 if the request is over the local limits, otherwise null
+  private ResponseStatusException checkDegradedMode(RateLimitRequest request) {
+    RateLimitResponse localResponse = degradedModeLimiter.checkLocally(request);
+    if (localResponse == null) {
+      return null;
     }
+    try {
+      ResponseStatusException limitException = limitBreachException(request, localResponse);
+      log.info(describeLimitBreach(request, localResponse) + " (degraded mode)");
+      return limitException;
+    } catch (CTPException e) {
+      // Not expected, and failing open is what would happen without degraded mode
+      log.with("error", e.getMessage()).warn("Failed to report degraded mode limit breach");
+      return null;
+    }
+  }
 
-    return desc.toString();
+  /**
+   * Call the rate limiter on the supplied executor. The returned future completes in the same way
+   * as {@link #invokeRateLimiter} returns, except that a limit breach completes the future
+   * exceptionally with the ResponseStatusException rather than throwing it. A null request means
+   * that the check has been skipped, so an already completed future is returned.
+   */
+  private CompletableFuture<Void> invokeRateLimiterAsync(
+      String requestDescription, RateLimitRequest request, Executor executor) {
+    if (request == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    executor.execute(
+        () -> {
+          try {
+            invokeRateLimiter(requestDescription, request);
+            result.complete(null);
+          } catch (Throwable t) {
+            // Errors too, as otherwise the future would never complete
+            result.completeExceptionally(t);
+          }
+        });
+    return result;
   }
 
-  private RateLimitResponse convertJsonToObject(String responseJson) throws CTPException {
+  /** Make the call to the limiter */
+  private RateLimitResponse doInvokeRateLimiter(String requestDescription, RateLimitRequest request)
+      throws CTPException {
     RateLimitResponse response;
-
+    // Only the verdict is needed, unless the degraded mode limiter is learning the limits or the
+    // remaining limits are being measured
+    ResponseDetail detail =
+        degradedModeLimiter != null
+            ? ResponseDetail.LIMITS
+            : metrics != null ? ResponseDetail.STATUSES : ResponseDetail.OVERALL_CODE;
+    long startNanos = System.nanoTime();
     try {
-      response = objectMapper.readValue(responseJson, RateLimitResponse.class);
-    } catch (JsonProcessingException jsonException) {
-      log.with("jsonResponse", responseJson)
-          .warn("Failed to parse rate limiter exception response");
-      throw new CTPException(
-          Fault.SYSTEM_ERROR, jsonException, "Failed to parse rate limiter exception response");
+      response = transport.checkLimit(request, detail);
+      recordCall(requestDescription, request, Verdict.OK, startNanos);
+
+    } catch (ResponseStatusException limiterException) {
+      HttpStatus httpStatus = limiterException.getStatus();
+      if (httpStatus == HttpStatus.TOO_MANY_REQUESTS) {
+        recordCall(requestDescription, request, Verdict.OVER_LIMIT, startNanos);
+        // An expected failure scenario. Record the breach and make sure caller
+        // knows by re-throwing the exception
+        RateLimitExceededException limitExceeded = limitExceeded(request, limiterException);
+        RateLimitResponse limiterResponse = limitExceeded.getLimiterResponse();
+        log.info(describeLimitBreach(request, limiterResponse));
+        if (limitBreachCache != null) {
+          limitBreachCache.recordBreaches(request, limiterResponse);
+        }
+        if (degradedModeLimiter != null) {
+          degradedModeLimiter.learnLimits(request, limiterResponse);
+        }
+        if (metrics != null) {
+          metrics.recordRemaining(request, limiterResponse);
+        }
+        throw limitExceeded;
+      } else {
+        // Something unexpected went wrong
+        recordCall(requestDescription, request, Verdict.ERROR, startNanos);
+        throw limiterFailure(requestDescription, limiterException);
+      }
+    } catch (RuntimeException e) {
+      recordCall(requestDescription, request, Verdict.ERROR, startNanos);
+      throw e;
     }
 
+    if (degradedModeLimiter != null && response != null) {
+      degradedModeLimiter.learnLimits(request, response);
+    }
+    if (metrics != null) {
+      metrics.recordRemaining(request, response);
+    }
     return response;
   }
 
-  private String encrypt(String telNo) {
-    return telNo == null ? null : Encryptor.aesEncrypt(encryptionPassword, telNo);
+  // The checks of a bulk check which are sent to the limiter together
+  private static class PackedRequest {
+    private String domain;
+    private Integer hitsAddend;
+    private List<Integer> checkIndexes = new ArrayList<>();
+    private List<RateLimitRequest> requests = new ArrayList<>();
+    private List<LimitDescriptor> descriptors = new ArrayList<>();
+
+    PackedRequest(RateLimitRequest first) {
+      this.domain = first.getDomain();
+      this.hitsAddend = first.getHitsAddend();
+    }
+
+    // A request which alone has too many descriptors is still sent, in a packed request of its own
+    boolean isFull(RateLimitRequest request, int maxDescriptors) {
+      return !descriptors.isEmpty()
+          && descriptors.size() + request.getDescriptors().size() > maxDescriptors;
+    }
+
+    void add(int checkIndex, RateLimitRequest request) {
+      checkIndexes.add(checkIndex);
+      requests.add(request);
+      descriptors.addAll(request.getDescriptors());
+    }
+
+    RateLimitRequest toRequest() {
+      return RateLimitRequest.builder()
+          .domain(domain)
+          .descriptors(descriptors)
+          .hitsAddend(hitsAddend)
+          .build();
+    }
   }
 }
@@ -0,0 +1,424 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.common.error.CTPException.Fault;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+import uk.gov.ons.ctp.integration.ratelimiter.util.Encryptor;
+import uk.gov.ons.ctp.integration.ratelimiter.util.Ipv4;
+import uk.gov.ons.ctp.integration.ratelimiter.util.Pseudonymiser;
+
+/**
+ * Request building and breach description shared by the blocking and reactive limiter clients.
+ *
+ * <p>Subclasses are only responsible for sending the prepared request to the limiter.
+ */
+abstract class RateLimiterClientBase {
+  private static final Logger log = LoggerFactory.getLogger(RateLimiterClientBase.class);
+
+  // Names of descriptor entries for limiter requests
+  static final String DESC_PRODUCT_GROUP = "productGroup";
+  static final String DESC_INDIVIDUAL = "individual";
+  static final String DESC_DELIVERY_CHANNEL = "deliveryChannel";
+  static final String DESC_CASE_TYPE = "caseType";
+  static final String DESC_IP_ADDRESS = "ipAddress";
+  static final String DESC_UPRN = "uprn";
+  static final String DESC_TEL_NO = "telNo";
+  static final String DESC_REQUEST = "request";
+  static final String DESC_MODULO = "modulo";
+
+  // Names of all the parameters of limiter requests, in the order their values are held
+  static final List<String> PARAMETER_NAMES =
+      List.of(
+          DESC_PRODUCT_GROUP,
+          DESC_INDIVIDUAL,
+          DESC_DELIVERY_CHANNEL,
+          DESC_CASE_TYPE,
+          DESC_IP_ADDRESS,
+          DESC_UPRN,
+          DESC_TEL_NO,
+          DESC_REQUEST,
+          DESC_MODULO);
+
+  private static final int PARAM_PRODUCT_GROUP = PARAMETER_NAMES.indexOf(DESC_PRODUCT_GROUP);
+  private static final int PARAM_INDIVIDUAL = PARAMETER_NAMES.indexOf(DESC_INDIVIDUAL);
+  private static final int PARAM_DELIVERY_CHANNEL = PARAMETER_NAMES.indexOf(DESC_DELIVERY_CHANNEL);
+  private static final int PARAM_CASE_TYPE = PARAMETER_NAMES.indexOf(DESC_CASE_TYPE);
+  private static final int PARAM_IP_ADDRESS = PARAMETER_NAMES.indexOf(DESC_IP_ADDRESS);
+  private static final int PARAM_UPRN = PARAMETER_NAMES.indexOf(DESC_UPRN);
+  private static final int PARAM_TEL_NO = PARAMETER_NAMES.indexOf(DESC_TEL_NO);
+  private static final int PARAM_REQUEST = PARAMETER_NAMES.indexOf(DESC_REQUEST);
+  private static final int PARAM_MODULO = PARAMETER_NAMES.indexOf(DESC_MODULO);
+
+  // Lists of descriptors to be sent to the limiter. Fulfilment requests only.
+  private static String[] DESCRIPTORS_WITH_UPRN = {
+    DESC_DELIVERY_CHANNEL, DESC_PRODUCT_GROUP, DESC_INDIVIDUAL, DESC_CASE_TYPE, DESC_UPRN
+  };
+  private static String[] DESCRIPTORS_WITH_TEL_NO = {
+    DESC_DELIVERY_CHANNEL, DESC_PRODUCT_GROUP, DESC_INDIVIDUAL, DESC_CASE_TYPE, DESC_TEL_NO
+  };
+  private static String[] DELIVERYCHANNEL_WITH_ONLY_UPRN = {DESC_DELIVERY_CHANNEL, DESC_UPRN};
+  private static String[] DELIVERYCHANNEL_WITH_ONLY_TEL_NO = {DESC_DELIVERY_CHANNEL, DESC_TEL_NO};
+  private static String[] DELIVERYCHANNEL_WITH_ONLY_IP_ADDRESS = {
+    DESC_DELIVERY_CHANNEL, DESC_IP_ADDRESS
+  };
+
+  private static String[] DESCRIPTORS_WEBFORM = {DESC_REQUEST, DESC_IP_ADDRESS};
+  private static String[] DESCRIPTORS_EQ_LAUNCH = {DESC_REQUEST, DESC_MODULO};
+
+  // The above lists compiled against the parameter names
+  private static final DescriptorPlan PLAN_WITH_UPRN = plan(DESCRIPTORS_WITH_UPRN);
+  private static final DescriptorPlan PLAN_WITH_TEL_NO = plan(DESCRIPTORS_WITH_TEL_NO);
+  private static final DescriptorPlan PLAN_ONLY_UPRN = plan(DELIVERYCHANNEL_WITH_ONLY_UPRN);
+  private static final DescriptorPlan PLAN_ONLY_TEL_NO = plan(DELIVERYCHANNEL_WITH_ONLY_TEL_NO);
+  private static final DescriptorPlan PLAN_ONLY_IP_ADDRESS =
+      plan(DELIVERYCHANNEL_WITH_ONLY_IP_ADDRESS);
+  private static final DescriptorPlan PLAN_WEBFORM = plan(DESCRIPTORS_WEBFORM);
+  private static final DescriptorPlan PLAN_EQ_LAUNCH = plan(DESCRIPTORS_EQ_LAUNCH);
+
+  private Encryptor encryptor;
+  private ObjectMapper objectMapper;
+
+  /**
+   * Optional pseudonymiser for telephone numbers in log entries. If set, then telephone numbers are
+   * logged as a deterministic pseudonym, in a 'pseudonymised-telNo' field, instead of encrypted.
+   */
+  @Setter private Pseudonymiser telNoPseudonymiser;
+
+  /**
+   * Constructor.
+   *
+   * @param encryptionPassword encryption password (for encrypting the logging of telephone number.
+   *     This cannot be null or empty.
+   */
+  RateLimiterClientBase(String encryptionPassword) {
+    if (StringUtils.isBlank(encryptionPassword)) {
+      throw new IllegalArgumentException("Encryption password must be configured");
+    }
+    this.encryptor = new Encryptor(encryptionPassword);
+    this.objectMapper = new ObjectMapper();
+  }
+
+  RateLimitRequest prepareFulfilmentRequest(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo)
+      throws CTPException {
+    return prepareFulfilmentRequest(domain, product, caseType, ipAddress, uprn, telNo, 1);
+  }
+
+  RateLimitRequest prepareFulfilmentRequest(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo,
+      int weight)
+      throws CTPException {
+
+    // Fail if caller doesn't meet interface requirements
+    verifyArgumentSupplied("domain", domain);
+    verifyArgumentSupplied("product", product);
+    verifyArgumentSupplied("caseType", caseType);
+    verifyArgumentSupplied("uprn", uprn);
+    verifyArgumentNotEmpty("telNo", telNo);
+    verifyWeight(weight);
+
+    if (parseIpAddress(ipAddress) == Ipv4.INVALID) {
+      ipAddress = null;
+    }
+
+    log.with("domain", domain.getDomainName())
+        .with("productGroup", product.getProductGroup().name())
+        .with("individual", product.getIndividual().toString())
+        .with("deliveryChannel", product.getDeliveryChannel().name())
+        .with("caseType", caseType.name())
+        .with("ipAddress", ipAddress)
+        .with("uprn", uprn.getValue())
+        .with(protectedTelNoField(), protectTelNo(telNo))
+        .with("weight", weight)
+        .info("Fulfilment rate limit. Going to call Rate Limiter Service");
+
+    // Hold the limiter parameters in the order that the descriptor plans expect
+    String[] params = new String[PARAMETER_NAMES.size()];
+    params[PARAM_PRODUCT_GROUP] = product.getProductGroup().name();
+    params[PARAM_INDIVIDUAL] = product.getIndividual().toString();
+    params[PARAM_DELIVERY_CHANNEL] = product.getDeliveryChannel().name();
+    params[PARAM_CASE_TYPE] = caseType.name();
+    params[PARAM_IP_ADDRESS] = ipAddress;
+    params[PARAM_UPRN] = Long.toString(uprn.getValue());
+    params[PARAM_TEL_NO] = telNo;
+
+    // Create request
+    RateLimitRequest request = createRateLimitRequestForFulfilment(domain, params, weight);
+    log.with(request).debug("RateLimiterRequest for fulfilment");
+    return request;
+  }
+
+  // Returns null if the check is to be skipped
+  RateLimitRequest prepareWebformRequest(Domain domain, String ipAddress) throws CTPException {
+
+    // Fail if caller doesn't meet interface requirements
+    verifyArgumentSupplied("domain", domain);
+
+    if (parseIpAddress(ipAddress) == Ipv4.INVALID) {
+      log.with("ipAddress", ipAddress)
+          .info("Webform rate limit not checked due to invalid IP address");
+      return null;
+    }
+
+    log.with("ipAddress", ipAddress).info("Check webform rate limit");
+
+    String[] params = new String[PARAMETER_NAMES.size()];
+    params[PARAM_REQUEST] = "WEBFORM";
+    params[PARAM_IP_ADDRESS] = ipAddress;
+
+    // Create request
+    RateLimitRequest request = createRateLimitRequest(domain, PLAN_WEBFORM, params);
+    log.with(request).debug("RateLimiterRequest for Webform");
+    return request;
+  }
+
+  // Returns null if the check is to be skipped
+  RateLimitRequest prepareEqLaunchRequest(Domain domain, String ipAddress, int loadSheddingModulus)
+      throws CTPException {
+    verifyArgumentSupplied("domain", domain);
+    verifyLoadSheddingModulus(loadSheddingModulus);
+
+    long packedIpAddress = parseIpAddress(ipAddress);
+    if (packedIpAddress == Ipv4.INVALID) {
+      log.with("ipAddress", ipAddress)
+          .info("EQ Launch rate limit not checked due to invalid IP address");
+      return null;
+    }
+    log.with("ipAddress", ipAddress)
+        .with("loadSheddingModulus", loadSheddingModulus)
+        .info("Check EQ Launch limit");
+
+    int modulo = Ipv4.lastOctet(packedIpAddress) % loadSheddingModulus;
+
+    String[] params = new String[PARAMETER_NAMES.size()];
+    params[PARAM_REQUEST] = "EQLAUNCH";
+    params[PARAM_MODULO] = Integer.toString(modulo);
+
+    RateLimitRequest request = createRateLimitRequest(domain, PLAN_EQ_LAUNCH, params);
+    log.with(request).debug("RateLimiterRequest for EQ Launch");
+    return request;
+  }
+
+  // Returns the packed address, or Ipv4.INVALID if it cannot be used for the rate limit check
+  private long parseIpAddress(String ipAddress) {
+    if (StringUtils.isBlank(ipAddress)) {
+      log.with("ipAddress", ipAddress)
+          .warn("Cannot accept blank IP address. This will not be used for rate limit check");
+      return Ipv4.INVALID;
+    }
+    long packedIpAddress = Ipv4.parse(ipAddress);
+    if (packedIpAddress == Ipv4.INVALID) {
+      log.with("ipAddress", ipAddress)
+          .warn("IP address is not valid IPv4 format. This will not be used for rate limit check");
+    }
+    return packedIpAddress;
+  }
+
+  private void verifyLoadSheddingModulus(int loadSheddingModulus) throws CTPException {
+    if (loadSheddingModulus == 0) {
+      throw new CTPException(Fault.SYSTEM_ERROR, "Argument 'loadSheddingModulus' cannot be zero");
+    }
+  }
+
+  private void verifyWeight(int weight) throws CTPException {
+    if (weight < 1) {
+      throw new CTPException(
+          Fault.SYSTEM_ERROR, "Argument 'weight' must be at least 1 (" + weight + ")");
+    }
+  }
+
+  // Throws CTPException is the argument is null
+  void verifyArgumentSupplied(String argName, Object argValue) throws CTPException {
+    if (argValue == null) {
+      throw new CTPException(Fault.SYSTEM_ERROR, "Argument '" + argName + "' cannot be null");
+    }
+  }
+
+  // Throws CTPException if an argument is supplied but it is blank
+  private void verifyArgumentNotEmpty(String argName, String argValue) throws CTPException {
+    if (argValue != null && argValue.isBlank()) {
+      throw new CTPException(
+          Fault.SYSTEM_ERROR, "Argument '" + argName + "' cannot be blank (" + argValue + ")");
+    }
+  }
+
+  // This is a key method that bunches together the various arguments that the limiter will be using
+  // to decide if the request has breached any limits.
+  private RateLimitRequest createRateLimitRequestForFulfilment(
+      Domain domain, String[] params, int weight) {
+
+    List<LimitDescriptor> descriptors = new ArrayList<>(5);
+    descriptors.add(PLAN_WITH_UPRN.describe(params));
+    if (params[PARAM_TEL_NO] != null) {
+      descriptors.add(PLAN_WITH_TEL_NO.describe(params));
+    }
+    descriptors.add(PLAN_ONLY_UPRN.describe(params));
+    if (params[PARAM_TEL_NO] != null) {
+      descriptors.add(PLAN_ONLY_TEL_NO.describe(params));
+    }
+    if (params[PARAM_IP_ADDRESS] != null) {
+      descriptors.add(PLAN_ONLY_IP_ADDRESS.describe(params));
+    }
+
+    // A weight of 1 is the limiter's default, so it is left off the request
+    Integer hitsAddend = weight == 1 ? null : weight;
+    return new RateLimitRequest(domain.getDomainName(), descriptors, hitsAddend);
+  }
+
+  private RateLimitRequest createRateLimitRequest(
+      Domain domain, DescriptorPlan plan, String[] params) {
+    List<LimitDescriptor> descriptors = new ArrayList<>(1);
+    descriptors.add(plan.describe(params));
+    return new RateLimitRequest(domain.getDomainName(), descriptors, null);
+  }
+
+  private static DescriptorPlan plan(String[] descriptorNames) {
+    return new DescriptorPlan(descriptorNames, PARAMETER_NAMES);
+  }
+
+  // Wraps a non-429 limiter response, so that it can be counted as a limiter failure
+  CTPException limiterFailure(String requestDescription, ResponseStatusException limiterException) {
+    HttpStatus httpStatus = limiterException.getStatus();
+    log.warn("Limiter request for " + requestDescription + " failed");
+    return new CTPException(
+        Fault.SYSTEM_ERROR,
+        limiterException,
+        "POST request to limiter (for "
+            + requestDescription
+            + ") failed with http status: "
+            + httpStatus.value()
+            + "("
+            + httpStatus.name()
+            + ")");
+  }
+
+  // Converts a 429 from the transport into a RateLimitExceededException. The limiters json
+  // response, which the transport puts in the reason, is parsed unless the transport already has.
+  RateLimitExceededException limitExceeded(
+      RateLimitRequest request, ResponseStatusException limiterException) throws CTPException {
+    if (limiterException instanceof RateLimitExceededException) {
+      return (RateLimitExceededException) limiterException;
+    }
+    String responseJson = limiterException.getReason();
+    log.with("responseJson", responseJson).debug("Limiter response");
+    RateLimitResponse limiterResponse = convertJsonToObject(responseJson);
+    return new RateLimitExceededException(request, limiterResponse, responseJson, limiterException);
+  }
+
+  // Creates the exception reporting a breach which the client found without a 429 from the limiter,
+  // in the same form as the limiter transport does. Breaches reported by the limiter keep its json.
+  RateLimitExceededException limitBreachException(
+      RateLimitRequest request, RateLimitResponse limiterResponse) throws CTPException {
+    try {
+      String responseJson = objectMapper.writeValueAsString(limiterResponse);
+      return new RateLimitExceededException(request, limiterResponse, responseJson);
+    } catch (JsonProcessingException jsonException) {
+      throw new CTPException(
+          Fault.SYSTEM_ERROR, jsonException, "Failed to serialise rate limiter response");
+    }
+  }
+
+  // Builds a String which lists the LimitDescriptor(s) that triggered a limit breach
+  String describeLimitBreach(RateLimitRequest request, RateLimitResponse limiterResponse) {
+
+    StringBuilder failureDescription = new StringBuilder("Rate limit(s) breached:");
+    for (int i = 0; i < limiterResponse.getStatuses().size(); i++) {
+      LimitStatus breachedLimit = limiterResponse.getStatuses().get(i);
+      if (breachedLimit.getCode().equals(LimitStatus.CODE_LIMIT_BREACHED)) {
+        failureDescription.append(" ");
+        failureDescription.append(describeSingleBreach(request, i));
+      }
+    }
+
+    return failureDescription.toString();
+  }
+
+  // Build a string to summarise the limitDescriptor which triggered a limit breach
+  private String describeSingleBreach(RateLimitRequest request, int i) {
+    int failureNumber = i + 1;
+    StringBuilder desc = new StringBuilder("(" + failureNumber + ") ");
+
+    LimitDescriptor failingDescriptor = request.getDescriptors().get(i);
+
+    boolean needComma = false;
+    for (DescriptorEntry descriptorEntry : failingDescriptor.getEntries()) {
+      if (needComma) {
+        desc.append(", ");
+      } else {
+        needComma = true;
+      }
+
+      String descriptorKey = descriptorEntry.getKey();
+      String descriptorValue = descriptorEntry.getValue();
+      if (descriptorKey.equals(DESC_TEL_NO)) {
+        descriptorKey = protectedTelNoField();
+        descriptorValue = protectTelNo(descriptorValue);
+      }
+
+      desc.append(descriptorKey + "=" + descriptorValue);
+    }
+
+    return desc.toString();
+  }
+
+  private RateLimitResponse convertJsonToObject(String responseJson) throws CTPException {
+    RateLimitResponse response;
+
+    try {
+      response = RateLimitResponseDecoder.decode(responseJson, ResponseDetail.LIMITS);
+    } catch (IOException jsonException) {
+      log.with("jsonResponse", responseJson)
+          .warn("Failed to parse rate limiter exception response");
+      throw new CTPException(
+          Fault.SYSTEM_ERROR, jsonException, "Failed to parse rate limiter exception response");
+    }
+    if (response == null) {
+      log.warn("Rate limiter exception response has no body");
+      throw new CTPException(Fault.SYSTEM_ERROR, "Rate limiter exception response has no body");
+    }
+
+    return response;
+  }
+
+  private String protectedTelNoField() {
+    return telNoPseudonymiser == null ? "encrypted-telNo" : "pseudonymised-telNo";
+  }
+
+  private String protectTelNo(String telNo) {
+    if (telNo == null) {
+      return null;
+    }
+    return telNoPseudonymiser == null
+        ? encryptor.encrypt(telNo)
+        : telNoPseudonymiser.pseudonymise(telNo);
+  }
+}
@@ -0,0 +1,232 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Records the limiter calls and verdicts of a client with Micrometer.
+ *
+ * <p>Meters are tagged with the check, such as 'fulfilments' or 'webform', and with the layout of
+ * the request, which is the distinct layouts of its descriptors, such as
+ * 'deliveryChannel,uprn;deliveryChannel,ipAddress'. Both are drawn from the small fixed set of
+ * descriptor plans, so the number of meters is bounded.
+ *
+ * <ul>
+ *   <li>ratelimiter.client.calls - timer, with a percentile histogram, of each call to the
+ *       limiter, tagged with its outcome: OK, OVER_LIMIT or ERROR.
+ *   <li>ratelimiter.client.verdicts - counter of the verdict on each check: OK, OVER_LIMIT, ERROR
+ *       or CIRCUIT_OPEN. ERROR and CIRCUIT_OPEN checks are allowed through, unless the degraded
+ *       mode limiter rejects them. Breaches found in the limit breach cache count as OVER_LIMIT.
+ *   <li>ratelimiter.client.limit.remaining.min - gauge, for each descriptor layout, of the lowest
+ *       'limitRemaining' of the descriptors with that layout in the limiter responses of the
+ *       current and previous window, which is a minute by default. Windows are fixed in time, so
+ *       every reader of the gauge sees the same value, and it reads as NaN if there have been no
+ *       responses for the layout in either window.
+ * </ul>
+ */
+public class RateLimiterMetrics {
+  static final String CALLS = "ratelimiter.client.calls";
+  static final String VERDICTS = "ratelimiter.client.verdicts";
+  static final String MIN_REMAINING = "ratelimiter.client.limit.remaining.min";
+
+  static final String TAG_CHECK = "check";
+  static final String TAG_LAYOUT = "layout";
+  static final String TAG_OUTCOME = "outcome";
+  static final String TAG_VERDICT = "verdict";
+
+  /** Outcomes of limiter calls, and verdicts on checks. */
+  public enum Verdict {
+    OK,
+    OVER_LIMIT,
+    ERROR,
+    CIRCUIT_OPEN
+  }
+
+  private MeterRegistry registry;
+  private long windowMillis;
+  private LongSupplier clock;
+  private Map<String, Timer> timers = new ConcurrentHashMap<>();
+  private Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private Map<String, RollingMinimum> minRemaining = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param registry the registry to publish the meters to.
+   */
+  public RateLimiterMetrics(MeterRegistry registry) {
+    this(registry, Duration.ofMinutes(1), System::currentTimeMillis);
+  }
+
+  RateLimiterMetrics(MeterRegistry registry, Duration window, LongSupplier clock) {
+    this.registry = registry;
+    this.windowMillis = window.toMillis();
+    this.clock = clock;
+  }
+
+  /**
+   * Record a call to the limiter.
+   *
+   * @param check the check the call was made for.
+   * @param request the request sent.
+   * @param outcome OK, OVER_LIMIT or ERROR.
+   * @param nanos how long the call took.
+   */
+  void recordCall(String check, RateLimitRequest request, Verdict outcome, long nanos) {
+    String layout = requestLayout(request);
+    Timer timer =
+        timers.computeIfAbsent(
+            check + '|' + layout + '|' + outcome,
+            k ->
+                Timer.builder(CALLS)
+                    .description("Calls to the rate limiter")
+                    .tag(TAG_CHECK, check)
+                    .tag(TAG_LAYOUT, layout)
+                    .tag(TAG_OUTCOME, outcome.name())
+                    .publishPercentileHistogram()
+                    .register(registry));
+    timer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record the verdict on a check.
+   *
+   * @param check the check.
+   * @param request the request checked.
+   * @param verdict the verdict.
+   */
+  void recordVerdict(String check, RateLimitRequest request, Verdict verdict) {
+    String layout = requestLayout(request);
+    Counter counter =
+        counters.computeIfAbsent(
+            check + '|' + layout + '|' + verdict,
+            k ->
+                Counter.builder(VERDICTS)
+                    .description("Verdicts on rate limit checks")
+                    .tag(TAG_CHECK, check)
+                    .tag(TAG_LAYOUT, layout)
+                    .tag(TAG_VERDICT, verdict.name())
+                    .register(registry));
+    counter.increment();
+  }
+
+  /**
+   * Record the remaining limits reported by the limiter.
+   *
+   * @param request the request sent.
+   * @param response the limiters response, whose statuses are in the same order as the request
+   *     descriptors. Nothing is recorded if it has no statuses.
+   */
+  void recordRemaining(RateLimitRequest request, RateLimitResponse response) {
+    List<LimitStatus> statuses = response == null ? null : response.getStatuses();
+    if (statuses == null) {
+      return;
+    }
+    // The lowest remaining of each layout in this response
+    Map<String, Integer> lowest = new HashMap<>();
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    for (int i = 0; i < statuses.size() && i < descriptors.size(); i++) {
+      lowest.merge(
+          DescriptorKeys.layout(descriptors.get(i)),
+          statuses.get(i).getLimitRemaining(),
+          Math::min);
+    }
+    lowest.forEach((layout, remaining) -> gaugeFor(layout).record(remaining));
+  }
+
+  private RollingMinimum gaugeFor(String layout) {
+    return minRemaining.computeIfAbsent(
+        layout,
+        k -> {
+          RollingMinimum value = new RollingMinimum(windowMillis, clock);
+          Gauge.builder(MIN_REMAINING, value, RollingMinimum::get)
+              .description("Lowest limitRemaining of the descriptor layout in recent responses")
+              .tag(TAG_LAYOUT, layout)
+              .register(registry);
+          return value;
+        });
+  }
+
+  // The distinct layouts of the request descriptors, in order, which is the same for every
+  // request built from the same descriptor plans however many checks it holds
+  private static String requestLayout(RateLimitRequest request) {
+    Set<String> layouts = new LinkedHashSet<>();
+    for (LimitDescriptor descriptor : request.getDescriptors()) {
+      layouts.add(DescriptorKeys.layout(descriptor));
+    }
+    return String.join(";", layouts);
+  }
+
+  // The lowest value recorded in the current and previous windows, which are aligned to the epoch.
+  // Reading it changes nothing, so any number of registries and scrapers can share it.
+  private static class RollingMinimum {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private long windowMillis;
+    private LongSupplier clock;
+    private volatile Window current;
+    private volatile Window previous;
+
+    RollingMinimum(long windowMillis, LongSupplier clock) {
+      this.windowMillis = Math.max(1, windowMillis);
+      this.clock = clock;
+      long start = clock.getAsLong() / this.windowMillis * this.windowMillis;
+      this.current = new Window(start);
+      this.previous = new Window(start - this.windowMillis);
+    }
+
+    void record(int value) {
+      windowAt(clock.getAsLong()).min.accumulateAndGet(value, Math::min);
+    }
+
+    double get() {
+      Window window = windowAt(clock.getAsLong());
+      Window before = previous;
+      int min = window.min.get();
+      if (before.start + windowMillis == window.start) {
+        min = Math.min(min, before.min.get());
+      }
+      return min == NONE ? Double.NaN : min;
+    }
+
+    private Window windowAt(long now) {
+      Window window = current;
+      if (now - window.start < windowMillis) {
+        return window;
+      }
+      synchronized (this) {
+        window = current;
+        if (now - window.start >= windowMillis) {
+          previous = window;
+          current = new Window(now / windowMillis * windowMillis);
+        }
+        return current;
+      }
+    }
+  }
+
+  private static class Window {
+    private long start;
+    private AtomicInteger min = new AtomicInteger(RollingMinimum.NONE);
+
+    Window(long start) {
+      this.start = start;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Sends a rate limit request to the limiter and waits for its verdict.
+ *
+ * <p>Implementations must report a limit breach by throwing a ResponseStatusException with a status
+ * of HttpStatus.TOO_MANY_REQUESTS, whose reason field contains the limiters json response. Any
+ * other failure to get a verdict is reported by throwing a runtime exception, which the client
+ * treats as a limiter failure.
+ *
+ * <p>Transports which hold connections to the limiter release them when closed.
+ */
+public interface RateLimiterTransport extends AutoCloseable {
+  /** Path of the limiters json endpoint. */
+  String RATE_LIMITER_QUERY_PATH = "/json";
+
+  /**
+   * Ask the limiter whether the request is within its limits.
+   *
+   * @param request the request to send to the limiter.
+   * @return the limiters response. This can be null if the limiter did not return a body.
+   * @throws ResponseStatusException if the request limit has been breached, or if the limiter
+   *     responded with an unexpected http status.
+   */
+  RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException;
+
+  /**
+   * Ask the limiter whether the request is within its limits, when the caller only needs some of
+   * the limiters response. Transports which decode the json themselves can skip the rest of the
+   * response; by default the whole response is returned.
+   *
+   * @param request the request to send to the limiter.
+   * @param detail the parts of the response which the caller needs.
+   * @return the limiters response, holding at least the detail asked for. This can be null if the
+   *     limiter did not return a body.
+   * @throws ResponseStatusException if the request limit has been breached, or if the limiter
+   *     responded with an unexpected http status.
+   */
+  default RateLimitResponse checkLimit(RateLimitRequest request, ResponseDetail detail)
+      throws ResponseStatusException {
+    return checkLimit(request);
+  }
+
+  /** Release any connections to the limiter. By default there is nothing to release. */
+  @Override
+  default void close() {}
+}
@@ -0,0 +1,124 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import uk.gov.ons.ctp.common.rest.RestClient;
+import uk.gov.ons.ctp.integration.ratelimiter.config.EmbeddedLimiterSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.HttpClientTransportSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.RateLimiterSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.UnixSocketTransportSettings;
+
+/**
+ * Creates the transport selected by the rate limiter settings.
+ *
+ * <p>Transports whose dependencies are optional are created by holder classes, GrpcTransports and
+ * RedisTransports, so that their classes are only loaded when they are selected.
+ */
+public final class RateLimiterTransportFactory {
+
+  private RateLimiterTransportFactory() {}
+
+  /**
+   * Create a transport for calling the limiter, wrapped by any optional stages that the settings
+   * enable.
+   *
+   * @param settings rate limiter settings, which select and configure the transport.
+   * @return the transport, which should be closed when it is no longer needed, to release its
+   *     connections to the limiter.
+   */
+  public static RateLimiterTransport create(RateLimiterSettings settings) {
+    RateLimiterTransport transport = createLimiterTransport(settings);
+    if (settings.getBatching().isEnabled()) {
+      transport = new BatchingRateLimiterTransport(transport, settings.getBatching());
+    }
+    if (settings.getSingleFlight().isEnabled()) {
+      transport = new SingleFlightRateLimiterTransport(transport, settings.getSingleFlight());
+    }
+    if (settings.getLeasing().isEnabled()) {
+      transport = new LeasingRateLimiterTransport(transport, settings.getLeasing());
+    }
+    return transport;
+  }
+
+  private static RateLimiterTransport createLimiterTransport(RateLimiterSettings settings) {
+    switch (settings.getTransport()) {
+      case GRPC:
+        return GrpcTransports.create(settings.getGrpc());
+      case HTTP_CLIENT:
+        return createHttpClientTransport(settings.getHttpClient());
+      case UNIX_SOCKET:
+        return createUnixSocketTransport(settings.getUnixSocket());
+      case EMBEDDED:
+        return createEmbeddedTransport(settings.getEmbedded());
+      case REDIS:
+        return RedisTransports.create(
+            settings.getRedis(), loadLimitConfig(settings.getRedis().getConfigFile()));
+      case REST:
+      default:
+        return createRestClientTransport(settings);
+    }
+  }
+
+  private static RateLimiterTransport createRestClientTransport(RateLimiterSettings settings) {
+    // The limiter's json response must be preserved on a 429, so that breaches can be described
+    Map<HttpStatus, HttpStatus> httpErrorMapping = new HashMap<>();
+    httpErrorMapping.put(HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+    RestClient restClient =
+        new RestClient(
+            settings.getRestClientConfig(), httpErrorMapping, HttpStatus.INTERNAL_SERVER_ERROR);
+    return new RestClientRateLimiterTransport(restClient);
+  }
+
+  private static RateLimiterTransport createHttpClientTransport(
+      HttpClientTransportSettings settings) {
+    boolean http2 =
+        settings.getHttp2() == null
+            ? "https".equalsIgnoreCase(settings.getScheme())
+            : settings.getHttp2();
+    HttpClient httpClient =
+        HttpClient.newBuilder()
+            .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMillis()))
+            .build();
+    URI baseUri =
+        URI.create(settings.getScheme() + "://" + settings.getHost() + ":" + settings.getPort());
+    return HttpClientRateLimiterTransport.owning(
+        httpClient,
+        baseUri,
+        Duration.ofMillis(settings.getRequestTimeoutMillis()),
+        settings.getMaxConcurrentRequests(),
+        settings.getMaxQueuedRequests());
+  }
+
+  private static RateLimiterTransport createUnixSocketTransport(
+      UnixSocketTransportSettings settings) {
+    return new UnixSocketRateLimiterTransport(
+        Paths.get(settings.getSocketPath()),
+        settings.getPoolSize(),
+        settings.getBufferSize(),
+        settings.getTimeoutMillis());
+  }
+
+  private static RateLimiterTransport createEmbeddedTransport(EmbeddedLimiterSettings embedded) {
+    return new EmbeddedRateLimiterTransport(
+        loadLimitConfig(embedded.getConfigFile()),
+        embedded.getShards(),
+        embedded.getMaxCounters());
+  }
+
+  private static EnvoyLimitConfig loadLimitConfig(String configFile) {
+    try (Reader reader = Files.newBufferedReader(Paths.get(configFile))) {
+      return EnvoyLimitConfig.load(reader);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read limit configuration: " + configFile, e);
+    }
+  }
+}
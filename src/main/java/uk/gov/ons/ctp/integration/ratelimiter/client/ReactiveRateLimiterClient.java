@@ -0,0 +1,187 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import java.util.Optional;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+
+/**
+ * Non-blocking version of {@link RateLimiterClient}, for use by WebFlux services.
+ *
+ * <p>Each check returns a Mono which completes empty if no limit has been breached. If a limit is
+ * breached then it errors with a ResponseStatusException, whose status will be
+ * HttpStatus.TOO_MANY_REQUESTS and whose reason field will contain the limiters json response. An
+ * invalid argument is signalled by erroring with a CTPException.
+ *
+ * <p>As with the blocking client, a failing limiter or an open circuit breaker lets the check pass.
+ */
+public class ReactiveRateLimiterClient extends RateLimiterClientBase {
+  private static final Logger log = LoggerFactory.getLogger(ReactiveRateLimiterClient.class);
+
+  private ReactiveRateLimiterTransport transport;
+  private ReactiveCircuitBreaker circuitBreaker;
+
+  /**
+   * Constructor.
+   *
+   * @param transport transport used to send requests to the limiter
+   * @param circuitBreaker reactive circuit breaker
+   * @param encryptionPassword encryption password (for encrypting the logging of telephone number.
+   *     This cannot be null or empty.
+   */
+  public ReactiveRateLimiterClient(
+      ReactiveRateLimiterTransport transport,
+      ReactiveCircuitBreaker circuitBreaker,
+      String encryptionPassword) {
+    super(encryptionPassword);
+    this.transport = transport;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Send fulfilment limit request to the limiter.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param product is the product used by the caller. This value is mandatory.
+   * @param caseType is the case type for the current request. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we do not add
+   *     it to the rate limit descriptors.
+   * @param uprn is the uprn to limit requests against. This value is mandatory.
+   * @param telNo is the end users telephone number. This value can be null, but if supplied then it
+   *     cannot be an empty string.
+   * @return a Mono which completes empty if no limit has been breached.
+   */
+  public Mono<Void> checkFulfilmentRateLimit(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo) {
+    return checkFulfilmentRateLimit(domain, product, caseType, ipAddress, uprn, telNo, 1);
+  }
+
+  /**
+   * Send a weighted fulfilment limit request to the limiter, which counts as the given number of
+   * fulfilments against every limit, so that a multi-item order gets a single verdict.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param product is the product used by the caller. This value is mandatory.
+   * @param caseType is the case type for the current request. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we do not add
+   *     it to the rate limit descriptors.
+   * @param uprn is the uprn to limit requests against. This value is mandatory.
+   * @param telNo is the end users telephone number. This value can be null, but if supplied then it
+   *     cannot be an empty string.
+   * @param weight is the number of fulfilments that the request counts as. This must be at least 1.
+   * @return a Mono which completes empty if no limit has been breached.
+   */
+  public Mono<Void> checkFulfilmentRateLimit(
+      Domain domain,
+      Product product,
+      CaseType caseType,
+      String ipAddress,
+      UniquePropertyReferenceNumber uprn,
+      String telNo,
+      int weight) {
+    return Mono.fromCallable(
+            () ->
+                prepareFulfilmentRequest(
+                    domain, product, caseType, ipAddress, uprn, telNo, weight))
+        .flatMap(request -> invokeRateLimiter("fulfilments", request));
+  }
+
+  /**
+   * Send webform limit request to the limiter.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we skip the
+   *     check.
+   * @return a Mono which completes empty if no limit has been breached.
+   */
+  public Mono<Void> checkWebformRateLimit(Domain domain, String ipAddress) {
+    return Mono.fromCallable(() -> prepareWebformRequest(domain, ipAddress))
+        .flatMap(request -> invokeRateLimiter("webform", request));
+  }
+
+  /**
+   * Send EQ Launch rate limit request to the limiter.
+   *
+   * @param domain is the domain to query against. This value is mandatory.
+   * @param ipAddress is the end users IP address. If this is not a valid IPv4 address we skip the
+   *     check.
+   * @param loadSheddingModulus an integer for modulus calculations against the last octet of the IP
+   *     address. This cannot be zero.
+   * @return a Mono which completes empty if no limit has been breached.
+   */
+  public Mono<Void> checkEqLaunchLimit(Domain domain, String ipAddress, int loadSheddingModulus) {
+    return Mono.fromCallable(() -> prepareEqLaunchRequest(domain, ipAddress, loadSheddingModulus))
+        .flatMap(request -> invokeRateLimiter("EQ Launch", request));
+  }
+
+  /**
+   * Call the rate limiter using a reactive circuit breaker. This follows the same rules as the
+   * blocking client: a 429 is carried through the circuit breaker as a value, so that it does not
+   * count as a failure, and is only turned back into an error once outside of it.
+   */
+  private Mono<Void> invokeRateLimiter(String requestDescription, RateLimitRequest request) {
+    Mono<Optional<ResponseStatusException>> limiterCall =
+        transport
+            .checkLimit(request, ResponseDetail.OVERALL_CODE)
+            .map(response -> Optional.<ResponseStatusException>empty())
+            .defaultIfEmpty(Optional.empty())
+            .onErrorResume(
+                ResponseStatusException.class,
+                e -> handleLimiterException(requestDescription, request, e));
+
+    return circuitBreaker
+        .run(limiterCall, throwable -> handleLimiterFailure(requestDescription, throwable))
+        .flatMap(
+            limitException ->
+                limitException.isPresent()
+                    ? Mono.<Void>error(limitException.get())
+                    : Mono.<Void>empty());
+  }
+
+  private Mono<Optional<ResponseStatusException>> handleLimiterException(
+      String requestDescription,
+      RateLimitRequest request,
+      ResponseStatusException limiterException) {
+    if (limiterException.getStatus() == HttpStatus.TOO_MANY_REQUESTS) {
+      // An expected failure scenario. Record the breach and pass it on to the caller
+      RateLimitExceededException limitExceeded;
+      try {
+        limitExceeded = limitExceeded(request, limiterException);
+      } catch (CTPException e) {
+        return Mono.error(e);
+      }
+      log.info(describeLimitBreach(request, limitExceeded.getLimiterResponse()));
+      return Mono.just(Optional.of(limitExceeded));
+    }
+
+    // Something unexpected went wrong
+    return Mono.error(limiterFailure(requestDescription, limiterException));
+  }
+
+  // Tolerate limiter failures, in the same way as the blocking client's fallback
+  private Mono<Optional<ResponseStatusException>> handleLimiterFailure(
+      String requestDescription, Throwable throwable) {
+    if (throwable instanceof CallNotPermittedException) {
+      log.info("Circuit breaker is OPEN calling rate limiter for " + requestDescription);
+    } else {
+      log.with("error", throwable.getMessage())
+          .error(throwable, "Rate limiter failure for " + requestDescription);
+    }
+    return Mono.just(Optional.empty());
+  }
+}
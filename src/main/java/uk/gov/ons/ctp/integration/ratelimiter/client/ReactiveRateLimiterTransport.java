@@ -0,0 +1,37 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Non-blocking equivalent of {@link RateLimiterTransport}.
+ *
+ * <p>Implementations must report a limit breach by erroring with a ResponseStatusException with a
+ * status of HttpStatus.TOO_MANY_REQUESTS, whose reason field contains the limiters json response.
+ */
+public interface ReactiveRateLimiterTransport {
+
+  /**
+   * Ask the limiter whether the request is within its limits.
+   *
+   * @param request the request to send to the limiter.
+   * @return a Mono which emits the limiters response, or completes empty if the limiter did not
+   *     return a body. It errors with a ResponseStatusException if the request limit has been
+   *     breached or if the limiter responded with an unexpected http status.
+   */
+  Mono<RateLimitResponse> checkLimit(RateLimitRequest request);
+
+  /**
+   * Ask the limiter whether the request is within its limits, when the caller only needs some of
+   * the limiters response. By default the whole response is emitted.
+   *
+   * @param request the request to send to the limiter.
+   * @param detail the parts of the response which the caller needs.
+   * @return a Mono which emits the limiters response, holding at least the detail asked for, in
+   *     the same way as {@link #checkLimit(RateLimitRequest)}.
+   */
+  default Mono<RateLimitResponse> checkLimit(RateLimitRequest request, ResponseDetail detail) {
+    return checkLimit(request);
+  }
+}
@@ -0,0 +1,161 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import org.springframework.web.server.ResponseStatusException;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which counts hits in the limiter's Redis itself, instead of calling the limiter, with
+ * limits taken from a local copy of the limiter's configuration.
+ *
+ * <p>The counters are the ones envoy's ratelimit service keeps, so the client and the limiter can
+ * share them. Each limited descriptor is counted under the key envoy uses, which is the key prefix,
+ * domain, and each entry's key and value, separated by underscores, followed by the start of the
+ * current window in epoch seconds. As in envoy, the hits of all of a request's descriptors are
+ * added with an INCRBY, and each key given an EXPIRE of its unit plus a random jitter, in a single
+ * pipelined round trip. Redis failures are thrown as a JedisException, which counts as a limiter
+ * failure.
+ */
+public class RedisRateLimiterTransport implements RateLimiterTransport {
+  private EnvoyLimitConfig config;
+  private JedisPool pool;
+  private boolean ownsPool;
+  private String keyPrefix;
+  private int expirationJitterMaxSeconds;
+  private LongSupplier clock;
+
+  /**
+   * Constructor.
+   *
+   * @param config the limits to enforce, which must be the same as the limiter's.
+   * @param pool pool of connections to the limiter's Redis.
+   * @param keyPrefix prefix of the keys, which must be the same as the limiter's CACHE_KEY_PREFIX.
+   * @param expirationJitterMaxSeconds maximum random time added to the expiry of each key, as for
+   *     the limiter's EXPIRATION_JITTER_MAX_SECONDS.
+   */
+  public RedisRateLimiterTransport(
+      EnvoyLimitConfig config, JedisPool pool, String keyPrefix, int expirationJitterMaxSeconds) {
+    this(config, pool, keyPrefix, expirationJitterMaxSeconds, System::currentTimeMillis);
+  }
+
+  RedisRateLimiterTransport(
+      EnvoyLimitConfig config,
+      JedisPool pool,
+      String keyPrefix,
+      int expirationJitterMaxSeconds,
+      LongSupplier clock) {
+    this.config = config;
+    this.pool = pool;
+    this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+    this.expirationJitterMaxSeconds = expirationJitterMaxSeconds;
+    this.clock = clock;
+  }
+
+  /**
+   * Create a transport which closes its pool when it is closed.
+   *
+   * @param config the limits to enforce, which must be the same as the limiter's.
+   * @param pool pool of connections to the limiter's Redis, which is not used by anything else.
+   * @param keyPrefix prefix of the keys, which must be the same as the limiter's CACHE_KEY_PREFIX.
+   * @param expirationJitterMaxSeconds maximum random time added to the expiry of each key.
+   * @return the transport.
+   */
+  static RedisRateLimiterTransport owning(
+      EnvoyLimitConfig config, JedisPool pool, String keyPrefix, int expirationJitterMaxSeconds) {
+    RedisRateLimiterTransport transport =
+        new RedisRateLimiterTransport(config, pool, keyPrefix, expirationJitterMaxSeconds);
+    transport.ownsPool = true;
+    return transport;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    long now = clock.getAsLong();
+    int hits = DescriptorKeys.hits(request);
+    boolean limited = config.getDomain().equals(request.getDomain());
+    List<LimitDescriptor> descriptors = request.getDescriptors();
+    List<CurrentLimit> limits = new ArrayList<>(descriptors.size());
+    boolean anyLimited = false;
+    for (LimitDescriptor descriptor : descriptors) {
+      CurrentLimit limit = limited ? config.find(descriptor) : null;
+      limits.add(limit);
+      anyLimited |= limit != null;
+    }
+
+    List<Response<Long>> counts = new ArrayList<>(descriptors.size());
+    if (anyLimited) {
+      try (Jedis jedis = pool.getResource()) {
+        Pipeline pipeline = jedis.pipelined();
+        for (int i = 0; i < descriptors.size(); i++) {
+          CurrentLimit limit = limits.get(i);
+          if (limit == null) {
+            counts.add(null);
+          } else {
+            long unitSeconds = LimitUnit.fromName(limit.getUnit()).getSeconds();
+            String key = cacheKey(request.getDomain(), descriptors.get(i), unitSeconds, now);
+            counts.add(pipeline.incrBy(key, hits));
+            pipeline.expire(key, (int) (unitSeconds + expirationJitter()));
+          }
+        }
+        pipeline.sync();
+      }
+    }
+
+    List<LimitStatus> statuses = new ArrayList<>(descriptors.size());
+    for (int i = 0; i < descriptors.size(); i++) {
+      CurrentLimit limit = limits.get(i);
+      if (limit == null) {
+        statuses.add(FixedWindowResponses.unlimited());
+      } else {
+        long windowEnd = LimitUnit.fromName(limit.getUnit()).windowEndMillis(now);
+        statuses.add(FixedWindowResponses.status(limit, counts.get(i).get(), windowEnd, now));
+      }
+    }
+    return FixedWindowResponses.respond(request, statuses);
+  }
+
+  /**
+   * Build the key under which the limiter counts a descriptor.
+   *
+   * @param domain the request domain.
+   * @param descriptor the descriptor.
+   * @param unitSeconds length of the descriptor's limit unit.
+   * @param nowMillis the time of the request in epoch milliseconds.
+   * @return the key.
+   */
+  String cacheKey(String domain, LimitDescriptor descriptor, long unitSeconds, long nowMillis) {
+    StringBuilder key = new StringBuilder(keyPrefix).append(domain).append('_');
+    for (DescriptorEntry entry : descriptor.getEntries()) {
+      key.append(entry.getKey()).append('_').append(entry.getValue()).append('_');
+    }
+    long nowSeconds = nowMillis / 1000;
+    return key.append((nowSeconds / unitSeconds) * unitSeconds).toString();
+  }
+
+  /** Close the pool, if it was created for this transport. */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.close();
+    }
+  }
+
+  private int expirationJitter() {
+    return expirationJitterMaxSeconds <= 0
+        ? 0
+        : ThreadLocalRandom.current().nextInt(expirationJitterMaxSeconds);
+  }
+}
@@ -0,0 +1,31 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import uk.gov.ons.ctp.integration.ratelimiter.config.RedisLimiterSettings;
+
+/**
+ * Creates the Redis transport. Jedis is an optional dependency, so its classes are only referenced
+ * from here, which is not loaded unless the Redis transport is selected.
+ */
+final class RedisTransports {
+
+  private RedisTransports() {}
+
+  /**
+   * Create a transport with its own pool of connections to the limiter's Redis.
+   *
+   * @param redis Redis transport settings.
+   * @param config the limits to enforce.
+   * @return the transport, which closes the pool when it is closed.
+   */
+  static RateLimiterTransport create(RedisLimiterSettings redis, EnvoyLimitConfig config) {
+    JedisPoolConfig poolConfig = new JedisPoolConfig();
+    poolConfig.setMaxTotal(redis.getMaxConnections());
+    poolConfig.setMaxIdle(redis.getMaxConnections());
+    JedisPool pool =
+        new JedisPool(poolConfig, redis.getHost(), redis.getPort(), redis.getTimeoutMillis());
+    return RedisRateLimiterTransport.owning(
+        config, pool, redis.getKeyPrefix(), redis.getExpirationJitterMaxSeconds());
+  }
+}
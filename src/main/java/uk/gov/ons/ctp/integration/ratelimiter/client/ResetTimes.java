@@ -0,0 +1,119 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitUnit;
+
+/**
+ * Works out when a limit resets. Newer limiters return the time until reset with each status, in
+ * the protobuf json form of a duration such as '2310s' or '0.250s'. Older limiters do not, but as
+ * their windows are aligned to the epoch the reset time can still be found from the limit's unit.
+ */
+final class ResetTimes {
+  /** Returned when the reset time cannot be determined. */
+  static final long UNKNOWN = -1;
+
+  private static final BigDecimal NANOS_PER_SECOND = BigDecimal.valueOf(1_000_000_000L);
+
+  private ResetTimes() {}
+
+  /**
+   * Find how long it is until the limit of a status resets.
+   *
+   * @param status the limiter status.
+   * @param nowMillis the current time in epoch milliseconds.
+   * @return milliseconds until reset, or UNKNOWN if the status has neither a reset duration nor a
+   *     limit with a known unit.
+   */
+  static long millisUntilReset(LimitStatus status, long nowMillis) {
+    long millis = parseMillis(status.getDurationUntilReset());
+    if (millis == UNKNOWN && status.getCurrentLimit() != null) {
+      LimitUnit unit = LimitUnit.fromName(status.getCurrentLimit().getUnit());
+      if (unit != LimitUnit.UNKNOWN) {
+        millis = unit.windowEndMillis(nowMillis) - nowMillis;
+      }
+    }
+    return millis;
+  }
+
+  /**
+   * Parse a protobuf json duration, rounding up to the next millisecond.
+   *
+   * @param duration the duration, such as '2310s'. This can be null.
+   * @return the duration in milliseconds, or UNKNOWN if it is null, malformed or negative.
+   */
+  static long parseMillis(String duration) {
+    BigDecimal seconds = parseSeconds(duration);
+    if (seconds == null || seconds.signum() < 0) {
+      return UNKNOWN;
+    }
+    return seconds.movePointRight(3).setScale(0, RoundingMode.CEILING).longValue();
+  }
+
+  /**
+   * Parse a protobuf json duration into its seconds and nanos, as held in a protobuf Duration.
+   *
+   * @param duration the duration, such as '2310s'. This can be null.
+   * @return a two element array of seconds and nanos, or null if the duration is null or malformed.
+   */
+  static long[] parseSecondsAndNanos(String duration) {
+    BigDecimal seconds = parseSeconds(duration);
+    if (seconds == null) {
+      return null;
+    }
+    BigDecimal whole = seconds.setScale(0, RoundingMode.DOWN);
+    long nanos = seconds.subtract(whole).multiply(NANOS_PER_SECOND).longValue();
+    return new long[] {whole.longValue(), nanos};
+  }
+
+  /**
+   * Format milliseconds as a protobuf json duration.
+   *
+   * @param millis the duration in milliseconds.
+   * @return the duration, such as '2310s' or '0.250s'.
+   */
+  static String formatMillis(long millis) {
+    return format(millis / 1000, (int) (millis % 1000) * 1_000_000);
+  }
+
+  /**
+   * Format the seconds and nanos of a protobuf Duration in its json form.
+   *
+   * @param seconds whole seconds.
+   * @param nanos fraction of a second, with the same sign as the seconds.
+   * @return the duration, such as '2310s' or '0.250s'.
+   */
+  static String format(long seconds, int nanos) {
+    if (nanos == 0) {
+      return seconds + "s";
+    }
+    BigDecimal value =
+        BigDecimal.valueOf(seconds).add(BigDecimal.valueOf(nanos).divide(NANOS_PER_SECOND));
+    // As protobuf does, show 3, 6 or 9 fractional digits
+    int scale = value.stripTrailingZeros().scale();
+    return value.setScale(scale <= 3 ? 3 : scale <= 6 ? 6 : 9).toPlainString() + "s";
+  }
+
+  /**
+   * Convert milliseconds to the whole seconds of a Retry-After header, rounding up so that a caller
+   * who waits that long will find the limit reset.
+   *
+   * @param millis milliseconds until reset.
+   * @return seconds until reset.
+   */
+  static long retryAfterSeconds(long millis) {
+    return (millis + 999) / 1000;
+  }
+
+  private static BigDecimal parseSeconds(String duration) {
+    if (duration == null || duration.length() < 2 || !duration.endsWith("s")) {
+      return null;
+    }
+    try {
+      return new BigDecimal(duration.substring(0, duration.length() - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+/**
+ * How much of the limiters response a caller needs. Transports which decode the limiters json
+ * themselves only decode the fields asked for, and leave the others unset.
+ */
+public enum ResponseDetail {
+  /** Only the overall code of the response. The statuses are left null. */
+  OVERALL_CODE,
+  /** The overall code, and the code, remaining limit and reset time of each status. */
+  STATUSES,
+  /** The whole response, including the current limit of each status and the limiters headers. */
+  LIMITS;
+
+  /**
+   * @param other the detail to compare with.
+   * @return true if this detail decodes at least as much as the other.
+   */
+  public boolean includes(ResponseDetail other) {
+    return compareTo(other) >= 0;
+  }
+}
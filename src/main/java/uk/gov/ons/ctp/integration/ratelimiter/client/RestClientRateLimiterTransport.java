@@ -0,0 +1,56 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.IOException;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.rest.RestClient;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which POSTs json requests to the limiter using the blocking RestClient. The request is
+ * posted as the bytes written by {@link RateLimitRequestJson}, so that RestClient does not
+ * serialise it by reflection. The response body is fetched as raw bytes and decoded by the {@link
+ * RateLimitResponseDecoder}, so that only the detail the caller asks for is read.
+ */
+public class RestClientRateLimiterTransport implements RateLimiterTransport {
+  private static final Map<String, String> JSON_HEADERS =
+      Map.of(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+
+  private RestClient envoyLimiterRestClient;
+
+  /**
+   * Constructor.
+   *
+   * @param envoyLimiterRestClient rest client
+   */
+  public RestClientRateLimiterTransport(RestClient envoyLimiterRestClient) {
+    this.envoyLimiterRestClient = envoyLimiterRestClient;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    return checkLimit(request, ResponseDetail.LIMITS);
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request, ResponseDetail detail)
+      throws ResponseStatusException {
+    // The RestClient can only post a whole array, so the json is copied from this thread's buffer
+    byte[] responseJson =
+        envoyLimiterRestClient.postResource(
+            RATE_LIMITER_QUERY_PATH,
+            RateLimitRequestJson.toBytes(request),
+            byte[].class,
+            JSON_HEADERS,
+            new LinkedMultiValueMap<>());
+    try {
+      return RateLimitResponseDecoder.decode(responseJson, detail);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to parse rate limiter response", e);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.godaddy.logging.Logger;
+import com.godaddy.logging.LoggerFactory;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.SingleFlightSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.SingleFlightSettings.FollowerPolicy;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which lets concurrent identical checks share a single limiter call.
+ *
+ * <p>Checks are identical if their requests have the same canonical key and hits addend. The first
+ * such check (the leader) calls the limiter, and any identical checks arriving while that call is
+ * in flight (the followers) wait for it and are given the same result, including any limit breach
+ * or failure.
+ *
+ * <p>With the COUNT follower policy the followers are then reported to the limiter, by a further
+ * call whose hits addend covers every follower, so that the limiter's counts still include every
+ * check. The verdict of that call is not used. Reports are sent in the background, so that the
+ * leader is not delayed, and reports for the same request which are waiting to be sent are merged
+ * into one call. Until a report has been sent the limiter under-counts by its followers, so checks
+ * made in that time, on any node, may be allowed although the followers took the descriptor over
+ * its limit.
+ */
+public class SingleFlightRateLimiterTransport implements RateLimiterTransport {
+  private static final Logger log = LoggerFactory.getLogger(SingleFlightRateLimiterTransport.class);
+
+  private RateLimiterTransport delegate;
+  private FollowerPolicy followerPolicy;
+  private Map<String, Flight> flights = new ConcurrentHashMap<>();
+  private Map<String, FollowerReport> reports = new ConcurrentHashMap<>();
+  private Executor reportExecutor;
+  private ExecutorService ownedExecutor;
+  private LongAdder limiterCalls = new LongAdder();
+  private LongAdder collapsedCalls = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param delegate transport used to call the limiter.
+   * @param settings single flight settings.
+   */
+  public SingleFlightRateLimiterTransport(
+      RateLimiterTransport delegate, SingleFlightSettings settings) {
+    this(delegate, settings, null);
+    if (followerPolicy == FollowerPolicy.COUNT) {
+      ownedExecutor =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "ratelimiter-follower-reports");
+                thread.setDaemon(true);
+                return thread;
+              });
+      reportExecutor = ownedExecutor;
+    }
+  }
+
+  SingleFlightRateLimiterTransport(
+      RateLimiterTransport delegate, SingleFlightSettings settings, Executor reportExecutor) {
+    this.delegate = delegate;
+    this.followerPolicy = settings.getFollowerPolicy();
+    this.reportExecutor = reportExecutor;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    int hits = DescriptorKeys.hits(request);
+    String key = hits == 1 ? DescriptorKeys.of(request) : DescriptorKeys.of(request) + '#' + hits;
+    Flight flight = new Flight();
+    Flight inFlight = flights.putIfAbsent(key, flight);
+    if (inFlight != null && inFlight.join()) {
+      collapsedCalls.increment();
+      return inFlight.await();
+    }
+    if (inFlight != null) {
+      // The call has just completed, so it cannot be shared
+      return checkLimit(request);
+    }
+
+    limiterCalls.increment();
+    try {
+      flight.result.complete(delegate.checkLimit(request));
+    } catch (RuntimeException e) {
+      flight.result.completeExceptionally(e);
+    } finally {
+      flights.remove(key, flight);
+    }
+
+    int followers = flight.land();
+    if (followerPolicy == FollowerPolicy.COUNT && followers > 0) {
+      reportFollowers(key, request, followers * hits);
+    }
+    return flight.await();
+  }
+
+  /** @return the number of checks which have called the limiter. */
+  public long getLimiterCallCount() {
+    return limiterCalls.sum();
+  }
+
+  /** @return the number of checks which have shared the limiter call of an identical check. */
+  public long getCollapsedCallCount() {
+    return collapsedCalls.sum();
+  }
+
+  /** Stop sending follower reports, and close the transport used to call the limiter. */
+  @Override
+  public void close() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+    delegate.close();
+  }
+
+  // Adds the followers' hits to the report waiting to be sent for the request, or schedules a new
+  // report if there is none
+  private void reportFollowers(String key, RateLimitRequest request, int hits) {
+    while (true) {
+      FollowerReport report = reports.get(key);
+      if (report != null && report.add(hits)) {
+        return;
+      }
+      FollowerReport created = new FollowerReport(request, hits);
+      boolean scheduled =
+          report == null
+              ? reports.putIfAbsent(key, created) == null
+              : reports.replace(key, report, created);
+      if (scheduled) {
+        try {
+          reportExecutor.execute(() -> send(key, created));
+        } catch (RejectedExecutionException e) {
+          reports.remove(key, created);
+          log.with("error", e.getMessage()).warn("Failed to report followers to limiter");
+        }
+        return;
+      }
+    }
+  }
+
+  // Reports the followers as hits. A breach is expected once the limit is reached, and is ignored.
+  private void send(String key, FollowerReport report) {
+    reports.remove(key, report);
+    RateLimitRequest followersRequest =
+        RateLimitRequest.builder()
+            .domain(report.request.getDomain())
+            .descriptors(report.request.getDescriptors())
+            .hitsAddend(report.close())
+            .build();
+    try {
+      delegate.checkLimit(followersRequest);
+    } catch (ResponseStatusException e) {
+      if (e.getStatus() != HttpStatus.TOO_MANY_REQUESTS) {
+        log.with("error", e.getMessage()).warn("Failed to report followers to limiter");
+      }
+    } catch (RuntimeException e) {
+      log.with("error", e.getMessage()).warn("Failed to report followers to limiter");
+    }
+  }
+
+  // Followers' hits waiting to be reported to the limiter
+  private static class FollowerReport {
+    private RateLimitRequest request;
+    // The hits to report, or -1 once the report is being sent
+    private AtomicInteger hits;
+
+    FollowerReport(RateLimitRequest request, int hits) {
+      this.request = request;
+      this.hits = new AtomicInteger(hits);
+    }
+
+    boolean add(int moreHits) {
+      int count = hits.get();
+      while (count >= 0) {
+        if (hits.compareAndSet(count, count + moreHits)) {
+          return true;
+        }
+        count = hits.get();
+      }
+      return false;
+    }
+
+    int close() {
+      return hits.getAndSet(-1);
+    }
+  }
+
+  // A limiter call in progress, with a count of the followers waiting for it
+  private static class Flight {
+    private CompletableFuture<RateLimitResponse> result = new CompletableFuture<>();
+    // The number of followers, or -1 once the leader has stopped accepting them
+    private AtomicInteger followers = new AtomicInteger();
+
+    boolean join() {
+      int count = followers.get();
+      while (count >= 0) {
+        if (followers.compareAndSet(count, count + 1)) {
+          return true;
+        }
+        count = followers.get();
+      }
+      return false;
+    }
+
+    int land() {
+      return followers.getAndSet(-1);
+    }
+
+    RateLimitResponse await() {
+      try {
+        return result.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+}
@@ -0,0 +1,486 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which POSTs json requests to a sidecar limiter over a Unix domain socket, avoiding the
+ * TCP loopback stack.
+ *
+ * <p>Calls are made over a small pool of persistent HTTP/1.1 connections, each with its own direct
+ * buffers which are reused for every call it makes. A caller waits for a free connection if all
+ * are in use. If a reused connection turns out to have been closed by the limiter before it sent
+ * any response, the call is retried once on a new connection. Each call has a deadline, covering
+ * the wait for a connection as well as the request and response, which are written and read
+ * without blocking so that they can be timed out. A call which misses its deadline fails, and its
+ * connection is closed. As for the RestClient, a 429 is reported by a ResponseStatusException
+ * whose reason is the limiter's json response, and any other error status by a
+ * ResponseStatusException with that status.
+ *
+ * <p>Unix domain socket channels are only available from Java 16. As this library is built for
+ * Java 11 they are opened reflectively, and the transport cannot be created on earlier versions.
+ */
+public class UnixSocketRateLimiterTransport implements RateLimiterTransport {
+  private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+  // Java 16 methods for opening Unix domain socket channels, or null on earlier versions
+  private static final Method ADDRESS_OF;
+  private static final Method OPEN_CHANNEL;
+  private static final ProtocolFamily UNIX;
+
+  static {
+    Method addressOf = null;
+    Method openChannel = null;
+    ProtocolFamily unix = null;
+    try {
+      addressOf =
+          Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+      openChannel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      unix = StandardProtocolFamily.valueOf("UNIX");
+    } catch (ReflectiveOperationException | IllegalArgumentException e) {
+      addressOf = null;
+      openChannel = null;
+      unix = null;
+    }
+    ADDRESS_OF = addressOf;
+    OPEN_CHANNEL = openChannel;
+    UNIX = unix;
+  }
+
+  private static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
+  private SocketAddress address;
+  private int bufferSize;
+  private long timeoutNanos;
+  private byte[] requestHead;
+  private Semaphore permits;
+  private Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param socketPath path of the limiter's Unix domain socket.
+   * @param poolSize maximum number of connections to the limiter.
+   * @param bufferSize initial size of each connection's request and response buffers. They grow if
+   *     a request or response does not fit.
+   * @throws IllegalStateException if Unix domain sockets are not supported by this Java version.
+   */
+  public UnixSocketRateLimiterTransport(Path socketPath, int poolSize, int bufferSize) {
+    this(socketPath, poolSize, bufferSize, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param socketPath path of the limiter's Unix domain socket.
+   * @param poolSize maximum number of connections to the limiter.
+   * @param bufferSize initial size of each connection's request and response buffers. They grow if
+   *     a request or response does not fit.
+   * @param timeoutMillis maximum time for each call, including the wait for a free connection.
+   * @throws IllegalStateException if Unix domain sockets are not supported by this Java version.
+   */
+  public UnixSocketRateLimiterTransport(
+      Path socketPath, int poolSize, int bufferSize, long timeoutMillis) {
+    if (!isSupported()) {
+      throw new IllegalStateException("Unix domain socket transport needs Java 16 or later");
+    }
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("Pool size must be positive");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("Timeout must be positive");
+    }
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.address = (SocketAddress) invoke(ADDRESS_OF, socketPath);
+    this.bufferSize = bufferSize;
+    this.permits = new Semaphore(poolSize);
+    this.requestHead =
+        ("POST "
+                + RATE_LIMITER_QUERY_PATH
+                + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: ")
+            .getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /** @return true if this Java version supports Unix domain socket channels. */
+  public static boolean isSupported() {
+    return ADDRESS_OF != null;
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request) throws ResponseStatusException {
+    return checkLimit(request, ResponseDetail.LIMITS);
+  }
+
+  @Override
+  public RateLimitResponse checkLimit(RateLimitRequest request, ResponseDetail detail)
+      throws ResponseStatusException {
+    // The json is copied into the connection's buffer, so is written from the thread's buffer
+    HttpReply reply = RateLimitRequestJson.write(request, this::call);
+    if (reply.status >= 400) {
+      HttpStatus status = HttpStatus.resolve(reply.status);
+      throw new ResponseStatusException(
+          status == null ? HttpStatus.INTERNAL_SERVER_ERROR : status,
+          new String(reply.body, StandardCharsets.UTF_8));
+    }
+    try {
+      return RateLimitResponseDecoder.decode(reply.body, detail);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to parse rate limiter response", e);
+    }
+  }
+
+  /**
+   * Close the idle connections. Connections which are in use are closed when their calls complete,
+   * and no further calls can be made.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      connection.close();
+    }
+  }
+
+  /** @return the number of idle connections held for reuse. */
+  int getIdleCount() {
+    return idle.size();
+  }
+
+  private HttpReply call(byte[] json, int offset, int length) {
+    if (closed) {
+      throw new IllegalStateException("Rate limiter transport is closed");
+    }
+    long deadline = System.nanoTime() + timeoutNanos;
+    try {
+      if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw new IllegalStateException("Timed out waiting for rate limiter connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for rate limiter connection", e);
+    }
+    try {
+      Connection connection = idle.poll();
+      if (connection != null) {
+        try {
+          return exchange(connection, json, offset, length, deadline);
+        } catch (StaleConnectionException e) {
+          // The limiter closed the idle connection, so retry on a new one
+        }
+      }
+      return exchange(new Connection(), json, offset, length, deadline);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to call rate limiter", e);
+    } finally {
+      permits.release();
+    }
+  }
+
+  // Makes a call over the connection, returning it to the pool if it can be reused
+  private HttpReply exchange(
+      Connection connection, byte[] json, int offset, int length, long deadline)
+      throws IOException {
+    HttpReply reply;
+    try {
+      reply = connection.exchange(json, offset, length, deadline);
+    } catch (IOException e) {
+      connection.close();
+      throw e;
+    }
+    if (reply.keepAlive && !closed) {
+      idle.offer(connection);
+      // The transport may have been closed while the connection was being returned
+      if (closed && idle.remove(connection)) {
+        connection.close();
+      }
+    } else {
+      connection.close();
+    }
+    return reply;
+  }
+
+  private static Object invoke(Method method, Object... args) {
+    try {
+      return method.invoke(null, args);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Failed to call " + method, e);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("Failed to call " + method, cause);
+    }
+  }
+
+  // A persistent connection to the limiter, with its own buffers, and a selector to wait on it
+  // until the deadline of the current call
+  private class Connection {
+    private SocketChannel channel;
+    private Selector selector;
+    private SelectionKey key;
+    private ByteBuffer out = ByteBuffer.allocateDirect(bufferSize);
+    private ByteBuffer in = ByteBuffer.allocateDirect(bufferSize);
+    private boolean used;
+    private long deadline;
+
+    Connection() throws IOException {
+      try {
+        channel = (SocketChannel) OPEN_CHANNEL.invoke(null, UNIX);
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IllegalStateException("Failed to open rate limiter channel", e.getCause());
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Failed to open rate limiter channel", e);
+      }
+      try {
+        channel.connect(address);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, 0);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    HttpReply exchange(byte[] json, int offset, int length, long deadline) throws IOException {
+      boolean reused = used;
+      used = true;
+      this.deadline = deadline;
+      try {
+        writeRequest(json, offset, length);
+      } catch (IOException e) {
+        throw reused ? new StaleConnectionException() : e;
+      }
+      return readReply(reused);
+    }
+
+    private void writeRequest(byte[] json, int offset, int length) throws IOException {
+      byte[] contentLength = Integer.toString(length).getBytes(StandardCharsets.US_ASCII);
+      int size = requestHead.length + contentLength.length + HEADER_END.length + length;
+      if (out.capacity() < size) {
+        out = ByteBuffer.allocateDirect(Math.max(size, out.capacity() * 2));
+      }
+      out.clear();
+      out.put(requestHead).put(contentLength).put(HEADER_END).put(json, offset, length).flip();
+      while (out.hasRemaining()) {
+        if (channel.write(out) == 0) {
+          await(SelectionKey.OP_WRITE);
+        }
+      }
+    }
+
+    // Reads the status line and headers, then the body by its content length or its chunks
+    private HttpReply readReply(boolean reused) throws IOException {
+      in.clear();
+      int headerEnd;
+      while ((headerEnd = indexOf(HEADER_END, 0)) < 0) {
+        if (read() < 0) {
+          if (reused && in.position() == 0) {
+            throw new StaleConnectionException();
+          }
+          throw new EOFException("Rate limiter closed connection before sending its response");
+        }
+      }
+
+      HttpReply reply = new HttpReply();
+      int contentLength = -1;
+      boolean chunked = false;
+      String[] lines = ascii(0, headerEnd).split("\r\n");
+      String[] statusLine = lines[0].split(" ", 3);
+      if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/1.")) {
+        throw new IOException("Unexpected rate limiter status line: " + lines[0]);
+      }
+      boolean http10 = statusLine[0].equals("HTTP/1.0");
+      reply.status = Integer.parseInt(statusLine[1]);
+      reply.keepAlive = !http10;
+      for (int i = 1; i < lines.length; i++) {
+        int colon = lines[i].indexOf(':');
+        if (colon < 0) {
+          continue;
+        }
+        String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        String value = lines[i].substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+        if (name.equals("content-length")) {
+          contentLength = Integer.parseInt(value);
+        } else if (name.equals("transfer-encoding")) {
+          chunked = value.contains("chunked");
+        } else if (name.equals("connection")) {
+          reply.keepAlive = !value.contains("close") && (!http10 || value.contains("keep-alive"));
+        }
+      }
+
+      int bodyStart = headerEnd + HEADER_END.length;
+      if (chunked) {
+        reply.body = readChunks(bodyStart);
+      } else if (contentLength >= 0) {
+        reply.body = readBytes(bodyStart, contentLength);
+      } else {
+        // Without a length the body runs to the end of the connection
+        while (read() >= 0) {}
+        reply.body = bytes(bodyStart, in.position() - bodyStart);
+        reply.keepAlive = false;
+      }
+      return reply;
+    }
+
+    private byte[] readChunks(int start) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      int position = start;
+      while (true) {
+        int lineEnd = readLine(position);
+        int size = Integer.parseInt(ascii(position, lineEnd).split(";", 2)[0].trim(), 16);
+        position = lineEnd + 2;
+        if (size == 0) {
+          // Skip any trailers up to the final empty line
+          while ((lineEnd = readLine(position)) != position) {
+            position = lineEnd + 2;
+          }
+          return body.toByteArray();
+        }
+        body.write(readBytes(position, size));
+        position = readLine(position + size) + 2;
+      }
+    }
+
+    // Reads up to the end of the line starting at the position, returning where its CRLF is
+    private int readLine(int start) throws IOException {
+      int lineEnd;
+      while ((lineEnd = indexOf(HEADER_END, start, 2)) < 0) {
+        readOrFail();
+      }
+      return lineEnd;
+    }
+
+    private byte[] readBytes(int start, int length) throws IOException {
+      while (in.position() < start + length) {
+        readOrFail();
+      }
+      return bytes(start, length);
+    }
+
+    private void readOrFail() throws IOException {
+      if (read() < 0) {
+        throw new EOFException("Rate limiter closed connection during its response");
+      }
+    }
+
+    // Reads more of the response, growing the buffer if it is full
+    private int read() throws IOException {
+      if (!in.hasRemaining()) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(in.capacity() * 2);
+        in.flip();
+        larger.put(in);
+        in = larger;
+      }
+      int count;
+      while ((count = channel.read(in)) == 0) {
+        await(SelectionKey.OP_READ);
+      }
+      return count;
+    }
+
+    // Waits until the channel is ready, failing if the call's deadline passes first
+    private void await(int operation) throws IOException {
+      key.interestOps(operation);
+      long remaining = deadline - System.nanoTime();
+      while (remaining > 0) {
+        int ready = selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        selector.selectedKeys().clear();
+        if (ready > 0) {
+          return;
+        }
+        remaining = deadline - System.nanoTime();
+      }
+      throw new SocketTimeoutException("Timed out calling rate limiter");
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+      return indexOf(pattern, from, pattern.length);
+    }
+
+    // Finds the first 'length' bytes of the pattern in what has been read
+    private int indexOf(byte[] pattern, int from, int length) {
+      for (int i = from; i + length <= in.position(); i++) {
+        int j = 0;
+        while (j < length && in.get(i + j) == pattern[j]) {
+          j++;
+        }
+        if (j == length) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private byte[] bytes(int start, int length) {
+      byte[] bytes = new byte[length];
+      ByteBuffer view = in.duplicate();
+      view.position(start);
+      view.get(bytes);
+      return bytes;
+    }
+
+    private String ascii(int start, int end) {
+      return new String(bytes(start, end - start), StandardCharsets.US_ASCII);
+    }
+
+    void close() {
+      try {
+        if (selector != null) {
+          selector.close();
+        }
+        if (channel != null) {
+          channel.close();
+        }
+      } catch (IOException e) {
+        // Nothing more can be done with it
+      }
+    }
+  }
+
+  // The parts of the limiter's http response which the transport uses
+  private static class HttpReply {
+    private int status;
+    private boolean keepAlive;
+    private byte[] body;
+  }
+
+  // Thrown when an idle connection was closed by the limiter before it answered
+  private static class StaleConnectionException extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+}
@@ -0,0 +1,67 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterTransport.RATE_LIMITER_QUERY_PATH;
+
+import java.io.IOException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Transport which POSTs json requests to the limiter using a Reactor based WebClient. The request
+ * json is written directly, rather than by the WebClient's Jackson encoder, and the response is
+ * decoded by the {@link RateLimitResponseDecoder} rather than by its Jackson decoder.
+ */
+public class WebClientRateLimiterTransport implements ReactiveRateLimiterTransport {
+
+  private WebClient webClient;
+
+  /**
+   * Constructor.
+   *
+   * @param webClient web client, whose base url points at the limiter.
+   */
+  public WebClientRateLimiterTransport(WebClient webClient) {
+    this.webClient = webClient;
+  }
+
+  @Override
+  public Mono<RateLimitResponse> checkLimit(RateLimitRequest request) {
+    return checkLimit(request, ResponseDetail.LIMITS);
+  }
+
+  @Override
+  public Mono<RateLimitResponse> checkLimit(RateLimitRequest request, ResponseDetail detail) {
+    // The body is written once subscribed to, so it is sent from a copy of this thread's buffer
+    return webClient
+        .post()
+        .uri(RATE_LIMITER_QUERY_PATH)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(RateLimitRequestJson.toBytes(request))
+        .retrieve()
+        .onStatus(HttpStatus::isError, this::toResponseStatusException)
+        .bodyToMono(byte[].class)
+        .flatMap(body -> decode(body, detail));
+  }
+
+  private Mono<RateLimitResponse> decode(byte[] body, ResponseDetail detail) {
+    try {
+      return Mono.justOrEmpty(RateLimitResponseDecoder.decode(body, detail));
+    } catch (IOException e) {
+      return Mono.error(new IllegalStateException("Failed to parse rate limiter response", e));
+    }
+  }
+
+  // Mirrors the RestClient, which puts the limiters response body into the exception's reason
+  private Mono<ResponseStatusException> toResponseStatusException(ClientResponse response) {
+    return response
+        .bodyToMono(String.class)
+        .defaultIfEmpty("")
+        .map(body -> new ResponseStatusException(response.statusCode(), body));
+  }
+}
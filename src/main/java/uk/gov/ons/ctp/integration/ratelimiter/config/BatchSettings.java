@@ -0,0 +1,15 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for combining concurrent checks for a domain into a single limiter request. */
+@Data
+public class BatchSettings {
+  private boolean enabled;
+
+  // How long the first check of a batch waits for others to join it
+  private long windowMicros = 200;
+
+  // A batch is sent as soon as it holds this many checks
+  private int maxBatchSize = 20;
+}
@@ -0,0 +1,14 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for checking a list of fulfilments with as few limiter requests as possible. */
+@Data
+public class BulkCheckSettings {
+  // Fulfilments are packed into a limiter request until it would hold more than this many
+  // descriptors
+  private int maxDescriptorsPerRequest = 100;
+
+  // How many limiter requests may be in flight at once
+  private int maxRequestsInFlight = 4;
+}
@@ -0,0 +1,12 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for enforcing the limits in-process, without calling the limiter. */
+@Data
+public class EmbeddedLimiterSettings {
+  // Path of the limits file, in envoy's ratelimit YAML configuration format
+  private String configFile;
+  private int shards = 16;
+  private int maxCounters = 100000;
+}
@@ -0,0 +1,12 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for calling the limiter over its native gRPC API. */
+@Data
+public class GrpcTransportSettings {
+  private String host;
+  private int port = 8081;
+  private long deadlineMillis = 1000;
+  private long keepAliveSeconds = 30;
+}
@@ -0,0 +1,21 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for calling the limiter's json endpoint with the JDK's HTTP/2 capable HttpClient. */
+@Data
+public class HttpClientTransportSettings {
+  // Calls are only multiplexed over https. Over http they use one HTTP/1.1 connection each, up to
+  // maxConcurrentRequests.
+  private String scheme = "http";
+  private String host;
+  private int port = 8181;
+
+  // Whether to ask for HTTP/2. If not set it is asked for over https only, as envoy's json listener
+  // rejects the h2c upgrade which would be sent over http with every new connection.
+  private Boolean http2;
+  private long connectTimeoutMillis = 1000;
+  private long requestTimeoutMillis = 1000;
+  private int maxConcurrentRequests = 64;
+  private int maxQueuedRequests = 1024;
+}
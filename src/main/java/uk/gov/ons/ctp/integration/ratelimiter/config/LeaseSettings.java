@@ -0,0 +1,28 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+/** Settings for locally leasing quota from the limiter for low-cardinality descriptors. */
+@Data
+public class LeaseSettings {
+  private boolean enabled;
+
+  // Descriptor layouts eligible for leasing, each a comma separated list of descriptor keys, such
+  // as 'request,modulo'. A request is leased only if all of its descriptors have a listed layout.
+  private List<String> layouts = new ArrayList<>();
+
+  // Fraction of the remaining quota which may be leased
+  private double leaseFraction = 0.1;
+
+  // Fraction of each limit which is never reserved, as other nodes may have used it since the
+  // limiter last reported the remaining quota
+  private double reserveMarginFraction = 0.1;
+
+  // Smallest allowance worth reserving; below it every request is checked by the limiter
+  private int minLeaseSize = 2;
+  private int maxLeaseSize = 1000;
+  private int maxLeases = 1000;
+  private int stripes = 8;
+}
@@ -5,6 +5,26 @@ import uk.gov.ons.ctp.common.rest.RestClientConfig;
 
 @Data
 public class RateLimiterSettings {
+  // Ways of sending requests to the limiter
+  public enum TransportType {
+    REST,
+    GRPC,
+    EMBEDDED,
+    REDIS,
+    HTTP_CLIENT,
+    UNIX_SOCKET
+  }
+
   private String limitRequestPath;
   private RestClientConfig restClientConfig;
+  private TransportType transport = TransportType.REST;
+  private GrpcTransportSettings grpc = new GrpcTransportSettings();
+  private HttpClientTransportSettings httpClient = new HttpClientTransportSettings();
+  private UnixSocketTransportSettings unixSocket = new UnixSocketTransportSettings();
+  private EmbeddedLimiterSettings embedded = new EmbeddedLimiterSettings();
+  private RedisLimiterSettings redis = new RedisLimiterSettings();
+  private LeaseSettings leasing = new LeaseSettings();
+  private BatchSettings batching = new BatchSettings();
+  private SingleFlightSettings singleFlight = new SingleFlightSettings();
+  private BulkCheckSettings bulkChecks = new BulkCheckSettings();
 }
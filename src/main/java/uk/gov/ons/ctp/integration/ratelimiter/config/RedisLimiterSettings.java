@@ -0,0 +1,18 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for counting hits directly in the limiter's Redis, without calling the limiter. */
+@Data
+public class RedisLimiterSettings {
+  // Path of a copy of the limiter's limits file, in envoy's ratelimit YAML configuration format
+  private String configFile;
+  private String host;
+  private int port = 6379;
+  private int timeoutMillis = 1000;
+  private int maxConnections = 16;
+
+  // As set for the limiter, so that the client and limiter share counters
+  private String keyPrefix = "";
+  private int expirationJitterMaxSeconds = 300;
+}
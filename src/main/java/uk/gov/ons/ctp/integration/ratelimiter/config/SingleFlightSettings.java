@@ -0,0 +1,19 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for sharing one limiter call between concurrent identical checks. */
+@Data
+public class SingleFlightSettings {
+  // How checks which share another check's limiter call are counted by the limiter
+  public enum FollowerPolicy {
+    // Followers share the verdict, and are not counted as hits
+    SHARE,
+    // Followers share the verdict, and are then reported to the limiter as additional hits, in the
+    // background. Until they are reported the limiter's counts are short by the followers.
+    COUNT
+  }
+
+  private boolean enabled;
+  private FollowerPolicy followerPolicy = FollowerPolicy.SHARE;
+}
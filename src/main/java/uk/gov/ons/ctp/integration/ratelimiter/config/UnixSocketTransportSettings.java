@@ -0,0 +1,14 @@
+package uk.gov.ons.ctp.integration.ratelimiter.config;
+
+import lombok.Data;
+
+/** Settings for calling a sidecar limiter's json endpoint over a Unix domain socket. */
+@Data
+public class UnixSocketTransportSettings {
+  private String socketPath;
+  private int poolSize = 4;
+  private int bufferSize = 8192;
+
+  // Maximum time for each call, including the wait for a free connection
+  private long timeoutMillis = 1000;
+}
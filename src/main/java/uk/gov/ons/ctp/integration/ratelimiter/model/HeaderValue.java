@@ -0,0 +1,15 @@
+package uk.gov.ons.ctp.integration.ratelimiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HeaderValue {
+  private String key;
+  private String value;
+}
@@ -12,8 +12,11 @@ import lombok.NoArgsConstructor;
 public class LimitStatus {
   public static final String CODE_LIMIT_BREACHED = "OVER_LIMIT";
   public static final String CODE_OK = "OK";
+  public static final String CODE_UNKNOWN = "UNKNOWN";
 
   private String code;
   private CurrentLimit currentLimit;
   private int limitRemaining;
+  // Time until the limit resets, in protobuf json form such as '2310s'. Null if not returned
+  private String durationUntilReset;
 }
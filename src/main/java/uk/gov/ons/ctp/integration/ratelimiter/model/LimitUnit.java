@@ -0,0 +1,54 @@
+package uk.gov.ons.ctp.integration.ratelimiter.model;
+
+/**
+ * The units of time in which the limiter counts requests, as used by {@link CurrentLimit#getUnit}.
+ *
+ * <p>The limiter uses fixed windows which are aligned to the epoch, so the end of the current
+ * window can be calculated from the unit alone.
+ */
+public enum LimitUnit {
+  UNKNOWN(0),
+  SECOND(1),
+  MINUTE(60),
+  HOUR(60 * 60),
+  DAY(60 * 60 * 24),
+  MONTH(60 * 60 * 24 * 30),
+  YEAR(60 * 60 * 24 * 365),
+  WEEK(60 * 60 * 24 * 7);
+
+  private long seconds;
+
+  private LimitUnit(long seconds) {
+    this.seconds = seconds;
+  }
+
+  public long getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * Find the end of the window containing the given time.
+   *
+   * @param nowMillis time in epoch milliseconds.
+   * @return the end of the window in epoch milliseconds, or nowMillis if the unit is UNKNOWN.
+   */
+  public long windowEndMillis(long nowMillis) {
+    long windowMillis = seconds * 1000;
+    return windowMillis == 0 ? nowMillis : (nowMillis / windowMillis + 1) * windowMillis;
+  }
+
+  /**
+   * Convert the limiters name for a unit.
+   *
+   * @param name unit name, such as 'HOUR'.
+   * @return the matching unit, or UNKNOWN if the name is null or not recognised.
+   */
+  public static LimitUnit fromName(String name) {
+    for (LimitUnit unit : values()) {
+      if (unit.name().equals(name)) {
+        return unit;
+      }
+    }
+    return UNKNOWN;
+  }
+}
@@ -1,5 +1,6 @@
 package uk.gov.ons.ctp.integration.ratelimiter.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,4 +14,7 @@ import lombok.NoArgsConstructor;
 public class RateLimitRequest {
   private String domain;
   private List<LimitDescriptor> descriptors;
+  // Number of hits the request counts as against each descriptor. Null, as for 0, means 1
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Integer hitsAddend;
 }
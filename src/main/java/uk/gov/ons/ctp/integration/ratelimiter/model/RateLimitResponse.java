@@ -13,4 +13,6 @@ import lombok.NoArgsConstructor;
 public class RateLimitResponse {
   private String overallCode;
   private List<LimitStatus> statuses;
+  // Headers, such as x-ratelimit-reset, which the limiter asks to be added to the response
+  private List<HeaderValue> responseHeadersToAdd;
 }
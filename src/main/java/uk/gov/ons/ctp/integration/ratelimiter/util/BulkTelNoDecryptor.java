@@ -0,0 +1,402 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decrypts the encrypted telephone numbers in log files, for use in abuse investigations.
+ *
+ * <p>Logs are read in chunks of whole lines, which are decrypted in parallel and then written out
+ * in their original order. Only a bounded number of chunks are held at once, so memory use does
+ * not depend on the size of the logs. Log files are memory mapped, and each chunk is a slice of
+ * the mapping which its worker decodes and splits into lines, so the reading thread only looks for
+ * the line ends at the chunk boundaries. Each 'encrypted-telNo' value, in either json
+ * ('"encrypted-telNo":"...') or breach description ('encrypted-telNo=...') form, is replaced by its
+ * clear text under a 'decrypted-telNo' key. Values which cannot be decrypted are left unchanged.
+ *
+ * <p>It can be run from the command line:
+ *
+ * <pre>
+ * ENCRYPTION_PASSWORD=... java -cp ... BulkTelNoDecryptor [-t threads] [-o output] input...
+ * </pre>
+ *
+ * <p>The decrypting threads are kept until the decryptor is closed.
+ */
+public class BulkTelNoDecryptor implements AutoCloseable {
+  static final String PASSWORD_VARIABLE = "ENCRYPTION_PASSWORD";
+
+  private static final Pattern ENCRYPTED_TEL_NO =
+      Pattern.compile("encrypted-telNo(\"?\\s*[:=]\\s*)(\"?)([A-Za-z0-9+/]+={0,2})");
+
+  private static final int LINES_PER_CHUNK = 1000;
+  private static final int CHUNK_BYTES = 128 * 1024;
+  private static final int MAPPING_BYTES = 64 * 1024 * 1024;
+
+  private Encryptor encryptor;
+  private int threads;
+  private int chunkBytes;
+  private int mappingBytes;
+  private ExecutorService executor;
+
+  /**
+   * Constructor.
+   *
+   * @param password the password that the values were encrypted with.
+   * @param threads the number of threads to decrypt with.
+   */
+  public BulkTelNoDecryptor(String password, int threads) {
+    this(password, threads, CHUNK_BYTES, MAPPING_BYTES);
+  }
+
+  BulkTelNoDecryptor(String password, int threads, int chunkBytes, int mappingBytes) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+    this.encryptor = new Encryptor(password);
+    this.threads = threads;
+    this.chunkBytes = chunkBytes;
+    this.mappingBytes = mappingBytes;
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "telno-decryptor");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Decrypt a stream of log lines.
+   *
+   * @param reader the log lines.
+   * @param writer receives the log lines with their telephone numbers decrypted.
+   * @return counts of what was decrypted.
+   * @throws IOException if the logs cannot be read or written.
+   * @throws InterruptedException if interrupted while waiting for decryption.
+   */
+  public Summary decrypt(BufferedReader reader, Writer writer)
+      throws IOException, InterruptedException {
+    Summary summary = new Summary();
+    Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+    List<String> lines = new ArrayList<>(LINES_PER_CHUNK);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines.add(line);
+      if (lines.size() == LINES_PER_CHUNK) {
+        List<String> chunkLines = lines;
+        submit(() -> decryptChunk(chunkLines), chunks, writer, summary);
+        lines = new ArrayList<>(LINES_PER_CHUNK);
+      }
+    }
+    if (!lines.isEmpty()) {
+      List<String> chunkLines = lines;
+      submit(() -> decryptChunk(chunkLines), chunks, writer, summary);
+    }
+    finish(chunks, writer, summary);
+    return summary;
+  }
+
+  /**
+   * Decrypt log files, writing them one after another to the output file.
+   *
+   * @param inputs the log files.
+   * @param output the file to write.
+   * @return counts of what was decrypted.
+   * @throws IOException if the logs cannot be read or written.
+   * @throws InterruptedException if interrupted while waiting for decryption.
+   */
+  public Summary decrypt(List<Path> inputs, Path output) throws IOException, InterruptedException {
+    try (Writer writer = Files.newBufferedWriter(output, UTF_8)) {
+      return decrypt(inputs, writer);
+    }
+  }
+
+  private Summary decrypt(List<Path> inputs, Writer writer)
+      throws IOException, InterruptedException {
+    Summary summary = new Summary();
+    for (Path input : inputs) {
+      summary.add(decrypt(input, writer));
+    }
+    return summary;
+  }
+
+  // Maps the file a region at a time, ending each region after its last line end so that lines
+  // are never split, unless a single line is longer than a region
+  private Summary decrypt(Path input, Writer writer) throws IOException, InterruptedException {
+    Summary summary = new Summary();
+    Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+    try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        long length = Math.min(mappingBytes, size - position);
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int regionEnd = (int) length;
+        if (position + length < size) {
+          regionEnd = afterLastLineEnd(region, 0, regionEnd);
+        }
+        int start = 0;
+        while (start < regionEnd) {
+          int end = chunkEnd(region, start, regionEnd);
+          ByteBuffer slice = region.duplicate();
+          slice.position(start).limit(end);
+          ByteBuffer chunk = slice.slice();
+          submit(() -> decryptChunk(chunk), chunks, writer, summary);
+          start = end;
+        }
+        position += regionEnd;
+      }
+    }
+    finish(chunks, writer, summary);
+    return summary;
+  }
+
+  // The end of a chunk starting at 'start', after its last whole line within the chunk size, or
+  // after its first line if that is longer
+  private int chunkEnd(ByteBuffer region, int start, int regionEnd) {
+    if (start + chunkBytes >= regionEnd) {
+      return regionEnd;
+    }
+    for (int i = start + chunkBytes - 1; i >= start; i--) {
+      if (region.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    for (int i = start + chunkBytes; i < regionEnd; i++) {
+      if (region.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return regionEnd;
+  }
+
+  // The position after the last line end before 'end', or 'end' if there is none after 'start'
+  private static int afterLastLineEnd(ByteBuffer buffer, int start, int end) {
+    for (int i = end - 1; i >= start; i--) {
+      if (buffer.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return end;
+  }
+
+  // Queues a chunk for decryption, writing out the oldest chunk if enough are queued to keep every
+  // thread busy, so that no more is read ahead
+  private void submit(
+      Callable<Chunk> decryption, Deque<Future<Chunk>> chunks, Writer writer, Summary summary)
+      throws IOException, InterruptedException {
+    chunks.add(executor.submit(decryption));
+    if (chunks.size() >= threads * 2) {
+      write(chunks.removeFirst(), writer, summary);
+    }
+  }
+
+  private void finish(Deque<Future<Chunk>> chunks, Writer writer, Summary summary)
+      throws IOException, InterruptedException {
+    while (!chunks.isEmpty()) {
+      write(chunks.removeFirst(), writer, summary);
+    }
+    writer.flush();
+  }
+
+  /** Stop the decrypting threads. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Decrypt a single value.
+   *
+   * @param encrypted the base64 encoded encryption, as logged.
+   * @return the clear text.
+   * @throws GeneralSecurityException if the value cannot be decrypted.
+   */
+  public String decryptValue(String encrypted) throws GeneralSecurityException {
+    byte[] inBytes;
+    try {
+      inBytes = Base64.getDecoder().decode(encrypted);
+    } catch (IllegalArgumentException e) {
+      throw new GeneralSecurityException("Value is not base64 encoded", e);
+    }
+    if (!Encryptor.hasSaltedMagic(inBytes)) {
+      throw new GeneralSecurityException("Value is not in the OpenSSL salted format");
+    }
+
+    byte[] keyAndIv = encryptor.makeKeyAndIv(Encryptor.salt(inBytes));
+    return encryptor.decrypt(inBytes, keyAndIv);
+  }
+
+  // Decodes a mapped chunk, and splits it into lines at each '\n' or '\r\n'
+  private Chunk decryptChunk(ByteBuffer bytes) {
+    String text = UTF_8.decode(bytes).toString();
+    List<String> lines = new ArrayList<>();
+    int start = 0;
+    while (start < text.length()) {
+      int end = text.indexOf('\n', start);
+      int next = end < 0 ? text.length() : end + 1;
+      end = end < 0 ? text.length() : end;
+      if (end > start && text.charAt(end - 1) == '\r') {
+        end--;
+      }
+      lines.add(text.substring(start, end));
+      start = next;
+    }
+    return decryptChunk(lines);
+  }
+
+  private Chunk decryptChunk(List<String> lines) {
+    Chunk chunk = new Chunk();
+    for (String line : lines) {
+      decryptLine(line, chunk);
+      chunk.text.append(System.lineSeparator());
+    }
+    return chunk;
+  }
+
+  private void decryptLine(String line, Chunk chunk) {
+    Matcher matcher = ENCRYPTED_TEL_NO.matcher(line);
+    int end = 0;
+    while (matcher.find()) {
+      String clearText;
+      try {
+        clearText = decryptValue(matcher.group(3));
+      } catch (GeneralSecurityException e) {
+        chunk.summary.failed++;
+        continue;
+      }
+      chunk.summary.decrypted++;
+      boolean quoted = !matcher.group(2).isEmpty();
+      chunk.text.append(line, end, matcher.start());
+      chunk.text.append("decrypted-telNo").append(matcher.group(1)).append(matcher.group(2));
+      chunk.text.append(quoted ? escapeJson(clearText) : clearText);
+      end = matcher.end();
+    }
+    chunk.text.append(line, end, line.length());
+    chunk.summary.lines++;
+  }
+
+  private String escapeJson(String text) {
+    return text.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private void write(Future<Chunk> future, Writer writer, Summary summary)
+      throws IOException, InterruptedException {
+    Chunk chunk;
+    try {
+      chunk = future.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to decrypt log lines", e.getCause());
+    }
+    writer.append(chunk.text);
+    summary.add(chunk.summary);
+  }
+
+  // Decrypted lines, with counts of what was decrypted in them
+  private static class Chunk {
+    private StringBuilder text = new StringBuilder();
+    private Summary summary = new Summary();
+  }
+
+  /** Counts of what has been decrypted. */
+  public static class Summary {
+    private long lines;
+    private long decrypted;
+    private long failed;
+
+    /** @return the number of log lines read. */
+    public long getLines() {
+      return lines;
+    }
+
+    /** @return the number of values decrypted. */
+    public long getDecrypted() {
+      return decrypted;
+    }
+
+    /** @return the number of values which could not be decrypted. */
+    public long getFailed() {
+      return failed;
+    }
+
+    private void add(Summary other) {
+      lines += other.lines;
+      decrypted += other.decrypted;
+      failed += other.failed;
+    }
+  }
+
+  /**
+   * Command line entry point. The password is read from the ENCRYPTION_PASSWORD environment
+   * variable, so that it does not appear in the process list.
+   *
+   * @param args [-t threads] [-o output] input...
+   * @throws Exception if decryption fails.
+   */
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    Path output = null;
+    List<Path> inputs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if ("-t".equals(args[i]) && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("-o".equals(args[i]) && i + 1 < args.length) {
+        output = Paths.get(args[++i]);
+      } else {
+        inputs.add(Paths.get(args[i]));
+      }
+    }
+    String password = System.getenv(PASSWORD_VARIABLE);
+    if (inputs.isEmpty() || password == null || password.isBlank()) {
+      System.err.println(
+          "Usage: "
+              + PASSWORD_VARIABLE
+              + "=... BulkTelNoDecryptor [-t threads] [-o output] input...");
+      System.exit(2);
+    }
+
+    Summary summary;
+    try (BulkTelNoDecryptor decryptor = new BulkTelNoDecryptor(password, threads)) {
+      if (output == null) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), 1 << 16);
+        summary = decryptor.decrypt(inputs, writer);
+        writer.flush();
+      } else {
+        summary = decryptor.decrypt(inputs, output);
+      }
+    }
+    System.err.println(
+        "Read "
+            + summary.getLines()
+            + " lines, decrypted "
+            + summary.getDecrypted()
+            + " values, failed to decrypt "
+            + summary.getFailed());
+  }
+}
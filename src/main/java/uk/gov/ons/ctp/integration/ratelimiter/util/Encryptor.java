@@ -3,17 +3,15 @@ package uk.gov.ons.ctp.integration.ratelimiter.util;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Base64;
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -22,6 +20,9 @@ import javax.crypto.spec.SecretKeySpec;
  *
  * <p>Adapted from:
  * https://stackoverflow.com/questions/32508961/java-equivalent-of-an-openssl-aes-cbc-encryption
+ *
+ * <p>An instance holds its password and is safe to share between threads. Salts come from a shared
+ * DRBG, which does not block once seeded, and each thread reuses its own Cipher and MessageDigest.
  */
 public final class Encryptor {
   /** OpenSSL's magic initial bytes. */
@@ -31,66 +32,111 @@ public final class Encryptor {
   private static final int FULL_SALT_LENGTH = GENERATED_SALT_LENGTH + SALTED_STR.length();
   private static final byte[] SALTED_MAGIC = SALTED_STR.getBytes(US_ASCII);
 
-  private Encryptor() {}
+  private static final int KEY_LENGTH = 32;
+  private static final int IV_LENGTH = 16;
+  private static final int MD5_LENGTH = 16;
+
+  private static final SecureRandom SALT_SOURCE = createSaltSource();
+
+  private static final ThreadLocal<Cipher> CIPHERS =
+      ThreadLocal.withInitial(() -> newInstance(() -> Cipher.getInstance("AES/CBC/PKCS5Padding")));
+  private static final ThreadLocal<MessageDigest> DIGESTS =
+      ThreadLocal.withInitial(() -> newInstance(() -> MessageDigest.getInstance("MD5")));
+
+  private final byte[] password;
+
+  /**
+   * Constructor.
+   *
+   * @param password the password from which keys are derived.
+   */
+  public Encryptor(String password) {
+    this.password = password.getBytes(US_ASCII);
+  }
 
   public static String aesEncrypt(String password, String value) {
+    return new Encryptor(password).encrypt(value);
+  }
+
+  /**
+   * Encrypt a value, in the same format as 'openssl enc -aes-256-cbc -md md5 | base64'.
+   *
+   * @param clearText the value to encrypt.
+   * @return the base64 encoded encryption.
+   */
+  public String encrypt(String clearText) {
     try {
-      return encrypt(password, value);
-    } catch (Exception e) {
+      byte[] salt = new byte[GENERATED_SALT_LENGTH];
+      SALT_SOURCE.nextBytes(salt);
+      Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, makeKeyAndIv(salt));
+      byte[] clear = clearText.getBytes(UTF_8);
+
+      // Write the magic, salt and encrypted data into one array
+      byte[] data = new byte[FULL_SALT_LENGTH + cipher.getOutputSize(clear.length)];
+      System.arraycopy(SALTED_MAGIC, 0, data, 0, SALTED_MAGIC.length);
+      System.arraycopy(salt, 0, data, SALTED_MAGIC.length, GENERATED_SALT_LENGTH);
+      int length =
+          FULL_SALT_LENGTH + cipher.doFinal(clear, 0, clear.length, data, FULL_SALT_LENGTH);
+
+      ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(data, 0, length));
+      return new String(encoded.array(), 0, encoded.limit(), US_ASCII);
+    } catch (GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private static String encrypt(String password, String clearText)
-      throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
-          InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
-
-    final byte[] salt = (new SecureRandom()).generateSeed(GENERATED_SALT_LENGTH);
-    byte[] keyAndIv = makeKeyAndIv(password, salt);
-    final Cipher cipher = createCipher(Cipher.ENCRYPT_MODE, keyAndIv);
-    byte[] data = cipher.doFinal(clearText.getBytes(UTF_8));
-    data = array_concat(array_concat(SALTED_MAGIC, salt), data);
-    return Base64.getEncoder().encodeToString(data);
+  static String decrypt(String password, String source) throws GeneralSecurityException {
+    return new Encryptor(password).decrypt(source);
   }
 
-  static String decrypt(String password, String source)
-      throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
-          InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+  String decrypt(String source) throws GeneralSecurityException {
     if (!isValidEncryptedFormat(source)) {
       throw new IllegalArgumentException(
           "Initial bytes from input do not match OpenSSL SALTED_MAGIC salt value.");
     }
 
     final byte[] inBytes = Base64.getDecoder().decode(source);
-    final byte[] salt = Arrays.copyOfRange(inBytes, SALTED_MAGIC.length, FULL_SALT_LENGTH);
-    byte[] keyAndIv = makeKeyAndIv(password, salt);
-    final Cipher cipher = createCipher(Cipher.DECRYPT_MODE, keyAndIv);
+    return decrypt(inBytes, makeKeyAndIv(salt(inBytes)));
+  }
+
+  // Decrypts decoded input, using the key and IV already derived from its salt
+  String decrypt(byte[] inBytes, byte[] keyAndIv) throws GeneralSecurityException {
+    final Cipher cipher = initCipher(Cipher.DECRYPT_MODE, keyAndIv);
     final byte[] clear =
         cipher.doFinal(inBytes, FULL_SALT_LENGTH, inBytes.length - FULL_SALT_LENGTH);
     return new String(clear, UTF_8);
   }
 
-  private static Cipher createCipher(int mode, byte[] keyAndIv)
-      throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
-          InvalidAlgorithmParameterException {
-    final byte[] keyValue = Arrays.copyOfRange(keyAndIv, 0, 32);
-    final byte[] iv = Arrays.copyOfRange(keyAndIv, 32, 48);
-    final SecretKeySpec key = new SecretKeySpec(keyValue, "AES");
-    final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-    cipher.init(mode, key, new IvParameterSpec(iv));
+  static byte[] salt(byte[] inBytes) {
+    return Arrays.copyOfRange(inBytes, SALTED_MAGIC.length, FULL_SALT_LENGTH);
+  }
+
+  static boolean hasSaltedMagic(byte[] inBytes) {
+    return inBytes.length > FULL_SALT_LENGTH
+        && Arrays.equals(inBytes, 0, SALTED_MAGIC.length, SALTED_MAGIC, 0, SALTED_MAGIC.length);
+  }
+
+  // Initialises this thread's cipher with a key and IV derived by makeKeyAndIv
+  private Cipher initCipher(int mode, byte[] keyAndIv) throws GeneralSecurityException {
+    final Cipher cipher = CIPHERS.get();
+    cipher.init(
+        mode,
+        new SecretKeySpec(keyAndIv, 0, KEY_LENGTH, "AES"),
+        new IvParameterSpec(keyAndIv, KEY_LENGTH, IV_LENGTH));
     return cipher;
   }
 
-  private static byte[] makeKeyAndIv(String password, byte[] salt) throws NoSuchAlgorithmException {
-    final byte[] pass = password.getBytes(US_ASCII);
-    final byte[] passAndSalt = array_concat(pass, salt);
-    byte[] hash = new byte[0];
-    byte[] keyAndIv = new byte[0];
-    for (int i = 0; i < 3 && keyAndIv.length < 48; i++) {
-      final byte[] hashData = array_concat(hash, passAndSalt);
-      final MessageDigest md = MessageDigest.getInstance("MD5");
-      hash = md.digest(hashData);
-      keyAndIv = array_concat(keyAndIv, hash);
+  // OpenSSL's EVP_BytesToKey with MD5 and one iteration: D(i) = MD5(D(i-1) + password + salt)
+  byte[] makeKeyAndIv(byte[] salt) throws GeneralSecurityException {
+    final MessageDigest md = DIGESTS.get();
+    byte[] keyAndIv = new byte[KEY_LENGTH + IV_LENGTH];
+    for (int offset = 0; offset < keyAndIv.length; offset += MD5_LENGTH) {
+      if (offset > 0) {
+        md.update(keyAndIv, offset - MD5_LENGTH, MD5_LENGTH);
+      }
+      md.update(password);
+      md.update(salt);
+      md.digest(keyAndIv, offset, MD5_LENGTH);
     }
     return keyAndIv;
   }
@@ -101,10 +147,25 @@ public final class Encryptor {
     return Arrays.equals(shouldBeMagic, SALTED_MAGIC);
   }
 
-  private static byte[] array_concat(final byte[] a, final byte[] b) {
-    final byte[] c = new byte[a.length + b.length];
-    System.arraycopy(a, 0, c, 0, a.length);
-    System.arraycopy(b, 0, c, a.length, b.length);
-    return c;
+  // Salts need to be unpredictable, but do not need fresh entropy, so generateSeed is not used
+  private static SecureRandom createSaltSource() {
+    try {
+      return SecureRandom.getInstance(
+          "DRBG", DrbgParameters.instantiation(128, DrbgParameters.Capability.RESEED_ONLY, null));
+    } catch (NoSuchAlgorithmException e) {
+      return new SecureRandom();
+    }
+  }
+
+  private interface SecuritySupplier<T> {
+    T get() throws GeneralSecurityException;
+  }
+
+  private static <T> T newInstance(SecuritySupplier<T> supplier) {
+    try {
+      return supplier.get();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
   }
 }
@@ -0,0 +1,66 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+/**
+ * Single pass IPv4 address parsing. Accepts the same dotted decimal addresses as the
+ * commons-validator InetAddressValidator that it replaced: four parts of 1 to 3 digits, each no
+ * more than 255 and without leading zeros.
+ */
+public final class Ipv4 {
+  /** Returned by {@link #parse} for a string which is not a valid IPv4 address. */
+  public static final long INVALID = -1;
+
+  private Ipv4() {}
+
+  /**
+   * Parse an IPv4 address without allocating.
+   *
+   * @param address the address, such as '123.111.222.23'. May be null.
+   * @return the address packed into the low 32 bits, with the first part in the most significant
+   *     byte, or INVALID.
+   */
+  public static long parse(CharSequence address) {
+    if (address == null) {
+      return INVALID;
+    }
+    int length = address.length();
+    long packed = 0;
+    int parts = 0;
+    int i = 0;
+    while (i < length && parts < 4) {
+      int start = i;
+      int part = 0;
+      while (i < length && i - start < 4) {
+        char c = address.charAt(i);
+        if (c < '0' || c > '9') {
+          break;
+        }
+        part = part * 10 + (c - '0');
+        i++;
+      }
+      int digits = i - start;
+      if (digits == 0 || digits > 3 || part > 255 || (digits > 1 && address.charAt(start) == '0')) {
+        return INVALID;
+      }
+      packed = (packed << 8) | part;
+      parts++;
+
+      if (parts < 4) {
+        if (i >= length || address.charAt(i) != '.') {
+          return INVALID;
+        }
+        i++;
+      }
+    }
+    return parts == 4 && i == length ? packed : INVALID;
+  }
+
+  /**
+   * Get the last part of a parsed address.
+   *
+   * @param packed an address returned by {@link #parse}, which must not be INVALID.
+   * @return the last part, from 0 to 255.
+   */
+  public static int lastOctet(long packed) {
+    return (int) (packed & 0xff);
+  }
+}
@@ -0,0 +1,149 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Replaces values with deterministic keyed pseudonyms, so that log entries for the same value can
+ * be grouped and counted without being decrypted.
+ *
+ * <p>A pseudonym is the url-safe base64 of the first 16 bytes of the HMAC-SHA256 of the value.
+ * Without the key it cannot be reversed, or checked against guessed values. Pseudonyms are
+ * remembered in a bounded cache, so that repeated values do not need the HMAC. The cache is read
+ * without locking, and reading an entry marks it as used. When the cache is full a clock hand moves
+ * round it, giving each used entry a second chance by clearing its mark, and evicts the first entry
+ * which has not been used since the hand last passed it. Values which keep being seen so stay
+ * cached while one-off values come and go.
+ */
+public final class Pseudonymiser {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int PSEUDONYM_BYTES = 16;
+
+  private final SecretKeySpec key;
+  private final ThreadLocal<Mac> macs;
+  private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+  private final int cacheSize;
+  // The clock hand, which is only moved while holding the lock on the cache
+  private Iterator<Map.Entry<String, Cached>> hand;
+
+  /**
+   * Constructor.
+   *
+   * @param secret the secret HMAC key. This cannot be null or empty.
+   * @param cacheSize the maximum number of values whose pseudonyms are remembered. May be zero.
+   */
+  public Pseudonymiser(String secret, int cacheSize) {
+    if (secret == null || secret.isEmpty()) {
+      throw new IllegalArgumentException("Pseudonym secret must be configured");
+    }
+    this.key = new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM);
+    this.macs = ThreadLocal.withInitial(this::createMac);
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * Get the pseudonym for a value.
+   *
+   * @param value the value, such as a telephone number.
+   * @return the pseudonym, or null if the value is null.
+   */
+  public String pseudonymise(String value) {
+    if (value == null) {
+      return null;
+    }
+    Cached cached = cache.get(value);
+    if (cached != null) {
+      cached.markUsed();
+      return cached.pseudonym;
+    }
+
+    byte[] hmac = Arrays.copyOf(macs.get().doFinal(value.getBytes(UTF_8)), PSEUDONYM_BYTES);
+    String pseudonym = Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+    if (cacheSize > 0) {
+      // Concurrent callers may briefly take the cache a little over its size
+      if (cache.size() >= cacheSize) {
+        evictOne();
+      }
+      cache.put(value, new Cached(pseudonym));
+    }
+    return pseudonym;
+  }
+
+  /** @return the number of pseudonyms remembered. */
+  int getCachedCount() {
+    return cache.size();
+  }
+
+  /**
+   * @param value the value.
+   * @return true if the pseudonym of the value is remembered.
+   */
+  boolean isCached(String value) {
+    return cache.containsKey(value);
+  }
+
+  private void evictOne() {
+    synchronized (cache) {
+      // Every mark has been cleared by the time the hand has been round twice, unless values are
+      // being marked again as fast as it moves, when the last entry it reaches is evicted anyway
+      int limit = 2 * cache.size() + 1;
+      for (int i = 0; i < limit; i++) {
+        if (hand == null || !hand.hasNext()) {
+          hand = cache.entrySet().iterator();
+          if (!hand.hasNext()) {
+            return;
+          }
+        }
+        Map.Entry<String, Cached> entry = hand.next();
+        if (!entry.getValue().clearUsed() || i == limit - 1) {
+          hand.remove();
+          return;
+        }
+      }
+    }
+  }
+
+  // A pseudonym, marked when it is used
+  private static final class Cached {
+    private final String pseudonym;
+    private volatile boolean used;
+
+    Cached(String pseudonym) {
+      this.pseudonym = pseudonym;
+    }
+
+    void markUsed() {
+      // Only written when it changes, so that hot entries are not written on every read
+      if (!used) {
+        used = true;
+      }
+    }
+
+    // Clear the mark, returning whether it was set
+    boolean clearUsed() {
+      if (used) {
+        used = false;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private Mac createMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.BatchSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+public class BatchingRateLimiterTransportTest {
+  private static final String BREACHING_VALUE = "bad";
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  private List<RateLimitRequest> limiterCalls = new ArrayList<>();
+
+  // Behaves like the limiter: one status per descriptor, and a 429 if any is over its limit
+  private RateLimiterTransport limiter =
+      request -> {
+        synchronized (limiterCalls) {
+          limiterCalls.add(request);
+        }
+        List<LimitStatus> statuses =
+            request.getDescriptors().stream()
+                .map(d -> BREACHING_VALUE.equals(d.getEntries().get(0).getValue()))
+                .map(b -> b ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK)
+                .map(code -> LimitStatus.builder().code(code).build())
+                .collect(Collectors.toList());
+        boolean breached =
+            statuses.stream().anyMatch(s -> s.getCode().equals(LimitStatus.CODE_LIMIT_BREACHED));
+        String overallCode = breached ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK;
+        RateLimitResponse response = new RateLimitResponse(overallCode, statuses, null);
+        if (breached) {
+          throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, toJson(response));
+        }
+        return response;
+      };
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldSendSingleCheckUnchanged() {
+    BatchingRateLimiterTransport transport = batching(limiter, 100, 10);
+    RateLimitRequest request = request("a", "b");
+
+    RateLimitResponse response = transport.checkLimit(request);
+
+    assertEquals(1, limiterCalls.size());
+    assertSame(request, limiterCalls.get(0));
+    assertEquals(2, response.getStatuses().size());
+  }
+
+  @Test
+  public void shouldSendWeightedCheckWithoutWaitingForBatch() {
+    // A batch would wait far longer than the test for two more checks
+    BatchingRateLimiterTransport transport = batching(limiter, 100_000_000, 3);
+    RateLimitRequest request = request("a", "b");
+    request.setHitsAddend(3);
+
+    transport.checkLimit(request);
+
+    assertEquals(1, limiterCalls.size());
+    assertSame(request, limiterCalls.get(0));
+  }
+
+  @Test
+  public void shouldCombineConcurrentChecks() throws Exception {
+    BatchingRateLimiterTransport transport = batching(limiter, 10_000_000, 3);
+
+    List<CompletableFuture<RateLimitResponse>> results =
+        checkConcurrently(transport, request("a"), request("b", "c"), request("d"));
+
+    assertEquals(1, limiterCalls.size());
+    assertEquals(4, limiterCalls.get(0).getDescriptors().size());
+    assertEquals(1, results.get(0).get().getStatuses().size());
+    assertEquals(2, results.get(1).get().getStatuses().size());
+    assertEquals(1, results.get(2).get().getStatuses().size());
+  }
+
+  @Test
+  public void shouldReportBreachOnlyToBreachingCheck() throws Exception {
+    BatchingRateLimiterTransport transport = batching(limiter, 10_000_000, 3);
+
+    List<CompletableFuture<RateLimitResponse>> results =
+        checkConcurrently(transport, request("a"), request("b", BREACHING_VALUE), request("d"));
+
+    assertEquals(1, limiterCalls.size());
+    assertEquals(LimitStatus.CODE_OK, results.get(0).get().getOverallCode());
+    assertEquals(LimitStatus.CODE_OK, results.get(2).get().getOverallCode());
+
+    ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(1).get());
+    ResponseStatusException breach = (ResponseStatusException) e.getCause();
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, breach.getStatus());
+    RateLimitResponse slice = objectMapper.readValue(breach.getReason(), RateLimitResponse.class);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, slice.getOverallCode());
+    assertEquals(2, slice.getStatuses().size());
+    assertEquals(LimitStatus.CODE_OK, slice.getStatuses().get(0).getCode());
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, slice.getStatuses().get(1).getCode());
+  }
+
+  @Test
+  public void shouldFailAllChecksWhenLimiterFails() throws Exception {
+    IllegalStateException failure = new IllegalStateException("limiter down");
+    BatchingRateLimiterTransport transport =
+        batching(
+            request -> {
+              throw failure;
+            },
+            10_000_000,
+            2);
+
+    List<CompletableFuture<RateLimitResponse>> results =
+        checkConcurrently(transport, request("a"), request("b"));
+
+    for (CompletableFuture<RateLimitResponse> result : results) {
+      ExecutionException e = assertThrows(ExecutionException.class, result::get);
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void shouldFailAllChecksWhenStatusesDoNotMatchDescriptors() throws Exception {
+    RateLimitResponse noStatuses =
+        new RateLimitResponse(LimitStatus.CODE_OK, new ArrayList<>(), null);
+    BatchingRateLimiterTransport transport = batching(request -> noStatuses, 10_000_000, 2);
+
+    List<CompletableFuture<RateLimitResponse>> results =
+        checkConcurrently(transport, request("a"), request("b"));
+
+    for (CompletableFuture<RateLimitResponse> result : results) {
+      ExecutionException e = assertThrows(ExecutionException.class, result::get);
+      assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+  }
+
+  // Each check runs on its own thread. The batch size is expected to match the number of checks,
+  // so that the batch is sent as soon as they have all joined it.
+  private List<CompletableFuture<RateLimitResponse>> checkConcurrently(
+      RateLimiterTransport transport, RateLimitRequest... requests) {
+    List<CompletableFuture<RateLimitResponse>> results =
+        List.of(requests).stream()
+            .map(r -> CompletableFuture.supplyAsync(() -> transport.checkLimit(r), executor))
+            .collect(Collectors.toList());
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+        .handle((v, e) -> null)
+        .join();
+    return results;
+  }
+
+  private BatchingRateLimiterTransport batching(
+      RateLimiterTransport delegate, long windowMicros, int maxBatchSize) {
+    BatchSettings settings = new BatchSettings();
+    settings.setEnabled(true);
+    settings.setWindowMicros(windowMicros);
+    settings.setMaxBatchSize(maxBatchSize);
+    return new BatchingRateLimiterTransport(delegate, settings);
+  }
+
+  private RateLimitRequest request(String... values) {
+    List<LimitDescriptor> descriptors =
+        List.of(values).stream()
+            .map(v -> new LimitDescriptor(List.of(new DescriptorEntry("request", v))))
+            .collect(Collectors.toList());
+    return new RateLimitRequest("respondenthome", descriptors, null);
+  }
+
+  private String toJson(RateLimitResponse response) {
+    try {
+      return objectMapper.writeValueAsString(response);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+public class DegradedModeLimiterTest {
+  private static final long START = 1600000000000L;
+
+  private long now = START;
+
+  // 2 nodes, so each node gets half of a learned limit
+  private DegradedModeLimiter limiter = new DegradedModeLimiter(2, 100, () -> now);
+
+  private LimitDescriptor uprnDescriptor = descriptor("uprn", "24234234");
+  private LimitDescriptor telNoDescriptor = descriptor("telNo", "0171 3434");
+
+  @Test
+  public void shouldAllowDescriptorsWithoutLearnedLimit() {
+    for (int i = 0; i < 100; i++) {
+      assertNull(limiter.checkLocally(request(uprnDescriptor)));
+    }
+  }
+
+  @Test
+  public void shouldEnforceNodeShareOfLearnedLimit() {
+    limiter.learnLimits(request(uprnDescriptor), response(status(10, "MINUTE")));
+
+    for (int i = 0; i < 5; i++) {
+      assertNull(limiter.checkLocally(request(uprnDescriptor)));
+    }
+    RateLimitResponse breach = limiter.checkLocally(request(uprnDescriptor));
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, breach.getOverallCode());
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, breach.getStatuses().get(0).getCode());
+    assertEquals(10, breach.getStatuses().get(0).getCurrentLimit().getRequestsPerUnit());
+  }
+
+  @Test
+  public void shouldRefillOverUnit() {
+    limiter.learnLimits(request(uprnDescriptor), response(status(10, "MINUTE")));
+    for (int i = 0; i < 5; i++) {
+      limiter.checkLocally(request(uprnDescriptor));
+    }
+
+    // A fifth of a minute refills one of the 5 tokens
+    now += 12_000;
+    assertNull(limiter.checkLocally(request(uprnDescriptor)));
+    assertEquals(
+        LimitStatus.CODE_LIMIT_BREACHED,
+        limiter.checkLocally(request(uprnDescriptor)).getOverallCode());
+  }
+
+  @Test
+  public void shouldReportEachDescriptorOfBreachingRequest() {
+    limiter.learnLimits(
+        request(uprnDescriptor, telNoDescriptor),
+        response(status(2, "HOUR"), status(100, "HOUR")));
+    limiter.checkLocally(request(uprnDescriptor));
+
+    RateLimitResponse breach = limiter.checkLocally(request(telNoDescriptor, uprnDescriptor));
+    assertEquals(LimitStatus.CODE_OK, breach.getStatuses().get(0).getCode());
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, breach.getStatuses().get(1).getCode());
+  }
+
+  @Test
+  public void shouldConsumeTokenForEachHit() {
+    limiter.learnLimits(request(uprnDescriptor), response(status(10, "MINUTE")));
+    RateLimitRequest weighted = request(uprnDescriptor);
+    weighted.setHitsAddend(3);
+
+    assertNull(limiter.checkLocally(weighted));
+    // Only 2 of the 5 tokens are left
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, limiter.checkLocally(weighted).getOverallCode());
+    assertNull(limiter.checkLocally(request(uprnDescriptor)));
+  }
+
+  @Test
+  public void shouldBoundNumberOfLimits() {
+    DegradedModeLimiter smallLimiter = new DegradedModeLimiter(1, 2, () -> now);
+    smallLimiter.learnLimits(
+        request(uprnDescriptor, telNoDescriptor, descriptor("ipAddress", "1.2.3.4")),
+        response(status(10, "HOUR"), status(10, "HOUR"), status(10, "HOUR")));
+
+    assertEquals(2, smallLimiter.size());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyLearnedInBatch() {
+    DegradedModeLimiter smallLimiter = new DegradedModeLimiter(1, 16, () -> now);
+    for (int i = 0; i < 17; i++) {
+      now++;
+      smallLimiter.learnLimits(request(descriptor("uprn", "" + i)), response(status(1, "HOUR")));
+    }
+
+    // a batch of 2 was evicted to make room, so the next limit is added without evicting
+    assertEquals(15, smallLimiter.size());
+    smallLimiter.learnLimits(request(descriptor("uprn", "17")), response(status(1, "HOUR")));
+    assertEquals(16, smallLimiter.size());
+
+    // the limits learned first are no longer enforced
+    RateLimitRequest first = request(descriptor("uprn", "0"));
+    smallLimiter.checkLocally(first);
+    assertNull(smallLimiter.checkLocally(first));
+    RateLimitRequest third = request(descriptor("uprn", "2"));
+    smallLimiter.checkLocally(third);
+    assertNotNull(smallLimiter.checkLocally(third));
+  }
+
+  private LimitDescriptor descriptor(String key, String value) {
+    return new LimitDescriptor(
+        List.of(new DescriptorEntry("deliveryChannel", "SMS"), new DescriptorEntry(key, value)));
+  }
+
+  private RateLimitRequest request(LimitDescriptor... descriptors) {
+    return RateLimitRequest.builder()
+        .domain("respondenthome")
+        .descriptors(List.of(descriptors))
+        .build();
+  }
+
+  private RateLimitResponse response(LimitStatus... statuses) {
+    return RateLimitResponse.builder()
+        .overallCode(LimitStatus.CODE_OK)
+        .statuses(List.of(statuses))
+        .build();
+  }
+
+  private LimitStatus status(int requestsPerUnit, String unit) {
+    return LimitStatus.builder()
+        .code(LimitStatus.CODE_OK)
+        .currentLimit(new CurrentLimit(requestsPerUnit, unit))
+        .build();
+  }
+}
@@ -0,0 +1,172 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests the in-process enforcement of envoy limits. */
+public class EmbeddedRateLimiterTransportTest {
+  private static final String LIMITS =
+      String.join(
+          "\n",
+          "domain: d",
+          "descriptors:",
+          "  - key: ip",
+          "    rate_limit: {unit: minute, requests_per_unit: 3}",
+          "  - key: uprn",
+          "    rate_limit: {unit: hour, requests_per_unit: 1000000}");
+
+  // Ten seconds into a minute
+  private AtomicLong now = new AtomicLong(1000 * 60_000L + 10_000);
+
+  @Test
+  public void shouldReturnLimiterResponseWhenWithinLimits() {
+    EmbeddedRateLimiterTransport transport = transport(4, 100);
+
+    RateLimitResponse response = transport.checkLimit(request(null, "ip", "1", "uprn", "2"));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    LimitStatus ip = response.getStatuses().get(0);
+    assertEquals(LimitStatus.CODE_OK, ip.getCode());
+    assertEquals(3, ip.getCurrentLimit().getRequestsPerUnit());
+    assertEquals("MINUTE", ip.getCurrentLimit().getUnit());
+    assertEquals(2, ip.getLimitRemaining());
+    assertEquals("50s", ip.getDurationUntilReset());
+    assertEquals(999999, response.getStatuses().get(1).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldThrowBreachDescribingOverLimitDescriptors() {
+    EmbeddedRateLimiterTransport transport = transport(4, 100);
+    transport.checkLimit(request(3, "ip", "1", "uprn", "2"));
+
+    RateLimitExceededException exception =
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> transport.checkLimit(request(null, "ip", "1", "uprn", "2")));
+
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, exception.getLimiterResponse().getOverallCode());
+    assertEquals(1, exception.getBreachedDescriptors().size());
+    assertEquals("ip", exception.getBreachedDescriptors().get(0).getEntries().get(0).getKey());
+    assertTrue(exception.getReason(), exception.getReason().contains("OVER_LIMIT"));
+  }
+
+  @Test
+  public void shouldStartNewWindowAtEndOfUnit() {
+    EmbeddedRateLimiterTransport transport = transport(4, 100);
+    transport.checkLimit(request(3, "ip", "1"));
+
+    now.addAndGet(50_000);
+
+    RateLimitResponse response = transport.checkLimit(request(null, "ip", "1"));
+    assertEquals(2, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals("60s", response.getStatuses().get(0).getDurationUntilReset());
+    assertEquals(1, transport.size());
+  }
+
+  @Test
+  public void shouldNotLimitOtherDomains() {
+    EmbeddedRateLimiterTransport transport = transport(4, 100);
+
+    for (int i = 0; i < 5; i++) {
+      RateLimitResponse response =
+          transport.checkLimit(new RateLimitRequest("other", List.of(descriptor("ip", "1")), null));
+      assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    }
+    assertEquals(0, transport.size());
+  }
+
+  @Test
+  public void shouldEvictEndedWindowsBeforeLiveCounters() {
+    EmbeddedRateLimiterTransport transport = transport(1, 3);
+    transport.checkLimit(request(null, "ip", "1"));
+    transport.checkLimit(request(null, "ip", "2"));
+    now.addAndGet(50_000);
+    transport.checkLimit(request(2, "ip", "3"));
+
+    transport.checkLimit(request(null, "ip", "4"));
+
+    assertEquals(2, transport.size());
+    RateLimitResponse response = transport.checkLimit(request(null, "ip", "3"));
+    assertEquals(0, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldBoundCounters() {
+    EmbeddedRateLimiterTransport transport = transport(4, 40);
+
+    for (int i = 0; i < 1000; i++) {
+      transport.checkLimit(request(null, "uprn", Integer.toString(i)));
+    }
+
+    assertTrue("size: " + transport.size(), transport.size() <= 40);
+  }
+
+  @Test
+  public void shouldCountEveryHitFromConcurrentChecks() throws Exception {
+    EmbeddedRateLimiterTransport transport = transport(4, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int j = 0; j < 1000; j++) {
+                    transport.checkLimit(request(null, "uprn", "1"));
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    RateLimitResponse response = transport.checkLimit(request(null, "uprn", "1"));
+    assertEquals(1000000 - 8001, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldRejectInvalidSizes() {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(new StringReader(LIMITS));
+
+    assertThrows(
+        IllegalArgumentException.class, () -> new EmbeddedRateLimiterTransport(config, 0, 10));
+    assertThrows(
+        IllegalArgumentException.class, () -> new EmbeddedRateLimiterTransport(config, 8, 4));
+  }
+
+  private EmbeddedRateLimiterTransport transport(int shards, int maxCounters) {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(new StringReader(LIMITS));
+    return new EmbeddedRateLimiterTransport(config, shards, maxCounters, now::get);
+  }
+
+  // A request with a descriptor of one entry for each key and value
+  private RateLimitRequest request(Integer hitsAddend, String... keysAndValues) {
+    List<LimitDescriptor> descriptors = new ArrayList<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      descriptors.add(descriptor(keysAndValues[i], keysAndValues[i + 1]));
+    }
+    return new RateLimitRequest("d", descriptors, hitsAddend);
+  }
+
+  private LimitDescriptor descriptor(String key, String value) {
+    return new LimitDescriptor(List.of(new DescriptorEntry(key, value)));
+  }
+}
@@ -0,0 +1,106 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+
+/** This class tests the loading and matching of envoy's limit configuration. */
+public class EnvoyLimitConfigTest {
+
+  @Test
+  public void shouldLoadLimitsFile() {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(FakeEnvoyLimiterTest.limits());
+
+    assertEquals("respondenthome", config.getDomain());
+    assertEquals(
+        new CurrentLimit(100, "HOUR"),
+        config.find(descriptor("request", "WEBFORM", "ipAddress", "1.2.3.4")));
+    assertEquals(
+        new CurrentLimit(10, "HOUR"),
+        config.find(
+            descriptor(
+                "deliveryChannel", "SMS",
+                "productGroup", "UAC",
+                "individual", "false",
+                "caseType", "HH",
+                "telNo", "0771111")));
+  }
+
+  @Test
+  public void shouldPreferDescriptorWithMatchingValue() {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(FakeEnvoyLimiterTest.limits());
+
+    assertEquals(
+        new CurrentLimit(0, "SECOND"),
+        config.find(descriptor("request", "EQLAUNCH", "modulo", "0")));
+    assertEquals(
+        new CurrentLimit(1000, "SECOND"),
+        config.find(descriptor("request", "EQLAUNCH", "modulo", "7")));
+  }
+
+  @Test
+  public void shouldNotLimitUnmatchedOrPartialDescriptors() {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(FakeEnvoyLimiterTest.limits());
+
+    assertNull(config.find(descriptor("request", "OTHER", "ipAddress", "1.2.3.4")));
+    assertNull(config.find(descriptor("request", "WEBFORM")));
+    assertNull(config.find(descriptor("request", "WEBFORM", "ipAddress", "1", "extra", "2")));
+  }
+
+  @Test
+  public void shouldNotLimitUnlimitedDescriptor() {
+    EnvoyLimitConfig config =
+        load(
+            "domain: d",
+            "descriptors:",
+            "  - key: a",
+            "    unlimited: true",
+            "    rate_limit: {unit: minute, requests_per_unit: 1}");
+
+    assertNull(config.find(descriptor("a", "x")));
+  }
+
+  @Test
+  public void shouldRejectInvalidConfiguration() {
+    assertInvalid("no domain", "descriptors: []");
+    assertInvalid(
+        "unknown unit",
+        "domain: d",
+        "descriptors: [{key: a, rate_limit: {unit: fortnight, requests_per_unit: 1}}]");
+    assertInvalid(
+        "requests_per_unit", "domain: d", "descriptors: [{key: a, rate_limit: {unit: hour}}]");
+    assertInvalid("no key", "domain: d", "descriptors: [{value: a}]");
+    assertInvalid(
+        "Duplicate descriptor 'a=b'",
+        "domain: d",
+        "descriptors: [{key: a, value: b}, {key: a, value: b}]");
+    assertInvalid("not a YAML map", "- a");
+  }
+
+  private void assertInvalid(String message, String... lines) {
+    IllegalArgumentException exception =
+        assertThrows(IllegalArgumentException.class, () -> load(lines));
+    assertTrue(exception.getMessage(), exception.getMessage().contains(message));
+  }
+
+  private EnvoyLimitConfig load(String... lines) {
+    return EnvoyLimitConfig.load(new StringReader(String.join("\n", lines)));
+  }
+
+  private LimitDescriptor descriptor(String... keysAndValues) {
+    List<DescriptorEntry> entries = new ArrayList<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      entries.add(new DescriptorEntry(keysAndValues[i], keysAndValues[i + 1]));
+    }
+    return new LimitDescriptor(entries);
+  }
+}
@@ -0,0 +1,167 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * In-process HTTP server which answers the limiter's '/json' endpoint as envoy's ratelimit service
+ * does, so that the client can be load tested without a limiter container.
+ *
+ * <p>Requests are checked by an {@link EmbeddedRateLimiterTransport}, so limits are read from a
+ * limits file in envoy's YAML format and hits are counted as envoy counts them.
+ *
+ * <p>Latency and errors can be injected, and, as for the limiter used by RateLimiterClient_IT, a
+ * POST to '/limit?enabled=true' makes every descriptor over its limit until it is disabled again.
+ */
+public class FakeEnvoyLimiter implements AutoCloseable {
+  private static final String OVER_LIMIT = LimitStatus.CODE_LIMIT_BREACHED;
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private ObjectMapper objectMapper =
+      new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+  private EmbeddedRateLimiterTransport engine;
+
+  private volatile boolean forceOverLimit;
+  private volatile long latencyMicros;
+  private volatile double errorRate;
+  private volatile int errorStatus = 500;
+
+  private FakeEnvoyLimiter(Reader limits, LongSupplier clock) {
+    engine = new EmbeddedRateLimiterTransport(EnvoyLimitConfig.load(limits), 16, 100_000, clock);
+  }
+
+  /**
+   * Start a limiter on a free local port.
+   *
+   * @param limits the limits file, in envoy's YAML format.
+   * @return the running limiter.
+   * @throws IOException if the server cannot be started.
+   */
+  public static FakeEnvoyLimiter start(Reader limits) throws IOException {
+    return start(limits, System::currentTimeMillis);
+  }
+
+  static FakeEnvoyLimiter start(Reader limits, LongSupplier clock) throws IOException {
+    FakeEnvoyLimiter limiter = new FakeEnvoyLimiter(limits, clock);
+    limiter.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    limiter.server.createContext("/json", limiter::handleCheck);
+    limiter.server.createContext("/limit", limiter::handleLimitSwitch);
+    limiter.executor = Executors.newCachedThreadPool();
+    limiter.server.setExecutor(limiter.executor);
+    limiter.server.start();
+    return limiter;
+  }
+
+  /** @return the port the limiter is listening on. */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /** @param latency added to every response before it is sent. */
+  public void setLatency(Duration latency) {
+    this.latencyMicros = latency.toNanos() / 1000;
+  }
+
+  /**
+   * Fail a fraction of checks, without counting them.
+   *
+   * @param errorRate fraction of checks to fail, from 0 to 1.
+   * @param errorStatus the http status of the failures.
+   */
+  public void setErrors(double errorRate, int errorStatus) {
+    this.errorRate = errorRate;
+    this.errorStatus = errorStatus;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Check a request as the limiter does, counting its hits.
+   *
+   * @param request the request.
+   * @return the limiter's response.
+   */
+  RateLimitResponse check(RateLimitRequest request) {
+    RateLimitResponse response;
+    try {
+      response = engine.checkLimit(request);
+    } catch (RateLimitExceededException e) {
+      response = e.getLimiterResponse();
+    }
+    if (forceOverLimit) {
+      response.setOverallCode(OVER_LIMIT);
+      response.getStatuses().stream()
+          .filter(status -> status.getCurrentLimit() != null)
+          .forEach(status -> status.setCode(OVER_LIMIT));
+    }
+    return response;
+  }
+
+  private void handleCheck(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      pause();
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        exchange.sendResponseHeaders(errorStatus, -1);
+        return;
+      }
+      RateLimitRequest request;
+      try (InputStream body = exchange.getRequestBody()) {
+        request = objectMapper.readValue(body, RateLimitRequest.class);
+      }
+      RateLimitResponse response = check(request);
+      byte[] json = objectMapper.writeValueAsBytes(response);
+      int status = OVER_LIMIT.equals(response.getOverallCode()) ? 429 : 200;
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, json.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(json);
+      }
+    }
+  }
+
+  private void handleLimitSwitch(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String query = exchange.getRequestURI().getQuery();
+      forceOverLimit = query != null && query.contains("enabled=true");
+      byte[] body = ("limit enabled: " + forceOverLimit).getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private void pause() {
+    long micros = latencyMicros;
+    if (micros > 0) {
+      try {
+        Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
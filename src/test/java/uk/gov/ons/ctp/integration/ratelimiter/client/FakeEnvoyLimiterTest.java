@@ -0,0 +1,199 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.rest.RestClient;
+import uk.gov.ons.ctp.common.rest.RestClientConfig;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests the fake limiter's accounting, and the client against it over http. */
+public class FakeEnvoyLimiterTest {
+  private static final String DOMAIN = Domain.RH.getDomainName();
+  private static final String AN_IPv4_ADDRESS = "123.111.222.23";
+  private static final long HOUR_MILLIS = 3600_000L;
+
+  // Ten minutes into an hour
+  private AtomicLong now = new AtomicLong(1000 * HOUR_MILLIS + 600_000);
+  private FakeEnvoyLimiter limiter;
+
+  @Before
+  public void setUp() throws Exception {
+    limiter = FakeEnvoyLimiter.start(limits(), now::get);
+  }
+
+  @After
+  public void tearDown() {
+    limiter.close();
+  }
+
+  @Test
+  public void shouldCountHitsUntilOverLimit() {
+    RateLimitRequest request = webform(AN_IPv4_ADDRESS, null);
+
+    for (int i = 1; i <= 100; i++) {
+      RateLimitResponse response = limiter.check(request);
+      assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+      assertEquals(100 - i, response.getStatuses().get(0).getLimitRemaining());
+    }
+    RateLimitResponse response = limiter.check(request);
+
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+    LimitStatus status = response.getStatuses().get(0);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, status.getCode());
+    assertEquals(0, status.getLimitRemaining());
+    assertEquals(100, status.getCurrentLimit().getRequestsPerUnit());
+    assertEquals("HOUR", status.getCurrentLimit().getUnit());
+    assertEquals("3000s", status.getDurationUntilReset());
+  }
+
+  @Test
+  public void shouldCountEachDescriptorSeparately() {
+    for (int i = 0; i < 100; i++) {
+      limiter.check(webform(AN_IPv4_ADDRESS, null));
+    }
+
+    RateLimitResponse response = limiter.check(webform("123.111.222.24", null));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(99, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldResetAtEndOfWindow() {
+    limiter.check(webform(AN_IPv4_ADDRESS, 100));
+    assertEquals(
+        LimitStatus.CODE_LIMIT_BREACHED,
+        limiter.check(webform(AN_IPv4_ADDRESS, null)).getOverallCode());
+
+    now.addAndGet(3000_000L);
+
+    RateLimitResponse response = limiter.check(webform(AN_IPv4_ADDRESS, null));
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(99, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldCountHitsAddend() {
+    RateLimitResponse response = limiter.check(webform(AN_IPv4_ADDRESS, 40));
+    assertEquals(60, response.getStatuses().get(0).getLimitRemaining());
+
+    response = limiter.check(webform(AN_IPv4_ADDRESS, 61));
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+  }
+
+  @Test
+  public void shouldPreferDescriptorWithMatchingValue() {
+    RateLimitResponse response =
+        limiter.check(request(null, descriptor("request", "EQLAUNCH", "modulo", "0")));
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+
+    response = limiter.check(request(null, descriptor("request", "EQLAUNCH", "modulo", "3")));
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(1000, response.getStatuses().get(0).getCurrentLimit().getRequestsPerUnit());
+    assertEquals("1s", response.getStatuses().get(0).getDurationUntilReset());
+  }
+
+  @Test
+  public void shouldNotLimitUnknownDescriptors() {
+    RateLimitResponse response =
+        limiter.check(request(null, descriptor("request", "UNKNOWN", "ipAddress", "1.2.3.4")));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertNull(response.getStatuses().get(0).getCurrentLimit());
+  }
+
+  @Test
+  public void shouldCheckClientRequestsOverHttp() throws Exception {
+    RateLimiterClient client = new RateLimiterClient(restClient(), circuitBreaker(), "password");
+    for (int i = 0; i < 100; i++) {
+      client.checkWebformRateLimit(Domain.RH, AN_IPv4_ADDRESS);
+    }
+
+    ResponseStatusException exception =
+        assertThrows(
+            ResponseStatusException.class,
+            () -> client.checkWebformRateLimit(Domain.RH, AN_IPv4_ADDRESS));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+  }
+
+  @Test
+  public void shouldFailOpenWithoutCountingInjectedErrors() throws Exception {
+    limiter.setErrors(1.0, 503);
+    RateLimiterClient client = new RateLimiterClient(restClient(), circuitBreaker(), "password");
+
+    for (int i = 0; i < 3; i++) {
+      client.checkWebformRateLimit(Domain.RH, AN_IPv4_ADDRESS);
+    }
+
+    limiter.setErrors(0, 500);
+    RateLimitResponse response = limiter.check(webform(AN_IPv4_ADDRESS, null));
+    assertEquals(99, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  private RateLimitRequest webform(String ipAddress, Integer hitsAddend) {
+    return request(hitsAddend, descriptor("request", "WEBFORM", "ipAddress", ipAddress));
+  }
+
+  private RateLimitRequest request(Integer hitsAddend, LimitDescriptor... descriptors) {
+    return new RateLimitRequest(DOMAIN, List.of(descriptors), hitsAddend);
+  }
+
+  private LimitDescriptor descriptor(String... keysAndValues) {
+    List<DescriptorEntry> entries = new ArrayList<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      entries.add(new DescriptorEntry(keysAndValues[i], keysAndValues[i + 1]));
+    }
+    return new LimitDescriptor(entries);
+  }
+
+  private RestClient restClient() {
+    RestClientConfig config =
+        new RestClientConfig(
+            "http", "127.0.0.1", Integer.toString(limiter.getPort()), "", "", 5, 5, 0, 0, 0);
+    Map<HttpStatus, HttpStatus> httpErrorMapping = new HashMap<>();
+    httpErrorMapping.put(HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+    return new RestClient(config, httpErrorMapping, HttpStatus.INTERNAL_SERVER_ERROR);
+  }
+
+  private CircuitBreaker circuitBreaker() {
+    return new CircuitBreaker() {
+      public <T> T run(Supplier<T> toRun, Function<Throwable, T> fallback) {
+        try {
+          return toRun.get();
+        } catch (Throwable t) {
+          return fallback.apply(t);
+        }
+      }
+    };
+  }
+
+  static Reader limits() {
+    return new InputStreamReader(
+        FakeEnvoyLimiterTest.class.getResourceAsStream("envoy-limits.yaml"),
+        StandardCharsets.UTF_8);
+  }
+}
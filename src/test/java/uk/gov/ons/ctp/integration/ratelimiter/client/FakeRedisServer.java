@@ -0,0 +1,191 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal in-process stand-in for Redis, speaking enough of its protocol for the commands the
+ * limiter uses, so that Redis clients can be tested without a Redis server.
+ *
+ * <p>Supports PING, GET, SET, INCR, INCRBY, EXPIRE and TTL on string values. Expiry times are
+ * recorded but keys are never expired. Every command received is logged, in order.
+ */
+public class FakeRedisServer implements AutoCloseable {
+  private ServerSocket serverSocket;
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  private Map<String, String> values = new HashMap<>();
+  private Map<String, Long> ttls = new HashMap<>();
+  private List<List<String>> commands = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Start a server on a free local port.
+   *
+   * @return the running server.
+   * @throws IOException if the server cannot be started.
+   */
+  public static FakeRedisServer start() throws IOException {
+    FakeRedisServer server = new FakeRedisServer();
+    server.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    server.executor.execute(server::acceptConnections);
+    return server;
+  }
+
+  /** @return the port the server is listening on. */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** @return the commands received, each as its name and arguments. */
+  public List<List<String>> getCommands() {
+    synchronized (commands) {
+      return new ArrayList<>(commands);
+    }
+  }
+
+  /**
+   * @param key the key.
+   * @return its value, or null if it is not set.
+   */
+  public synchronized String get(String key) {
+    return values.get(key);
+  }
+
+  /**
+   * @param key the key.
+   * @param value the value to set.
+   */
+  public synchronized void set(String key, String value) {
+    values.put(key, value);
+    ttls.remove(key);
+  }
+
+  /**
+   * @param key the key.
+   * @return its time to live in seconds, -1 if it has none, or -2 if it is not set.
+   */
+  public synchronized long ttl(String key) {
+    return !values.containsKey(key) ? -2 : ttls.getOrDefault(key, -1L);
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> serve(socket));
+      } catch (IOException e) {
+        // Closed
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket;
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      while (true) {
+        List<String> command = readCommand(in);
+        commands.add(command);
+        out.write(execute(command).getBytes(StandardCharsets.UTF_8));
+        // Replies to pipelined commands are sent together, once all have been read
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      // Disconnected
+    }
+  }
+
+  private synchronized String execute(List<String> command) {
+    String name = command.get(0).toUpperCase(Locale.ROOT);
+    switch (name) {
+      case "PING":
+        return "+PONG\r\n";
+      case "GET":
+        return bulk(values.get(command.get(1)));
+      case "SET":
+        values.put(command.get(1), command.get(2));
+        ttls.remove(command.get(1));
+        return "+OK\r\n";
+      case "INCR":
+      case "INCRBY":
+        String key = command.get(1);
+        long increment = name.equals("INCR") ? 1 : Long.parseLong(command.get(2));
+        long value = Long.parseLong(values.getOrDefault(key, "0")) + increment;
+        values.put(key, Long.toString(value));
+        return ":" + value + "\r\n";
+      case "EXPIRE":
+        if (!values.containsKey(command.get(1))) {
+          return ":0\r\n";
+        }
+        ttls.put(command.get(1), Long.parseLong(command.get(2)));
+        return ":1\r\n";
+      case "TTL":
+        return ":" + ttl(command.get(1)) + "\r\n";
+      default:
+        return "-ERR unknown command '" + command.get(0) + "'\r\n";
+    }
+  }
+
+  private String bulk(String value) {
+    if (value == null) {
+      return "$-1\r\n";
+    }
+    return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+  }
+
+  // Reads a command sent as an array of bulk strings
+  private List<String> readCommand(InputStream in) throws IOException {
+    String header = readLine(in);
+    if (!header.startsWith("*")) {
+      throw new IOException("Expected array but found: " + header);
+    }
+    int count = Integer.parseInt(header.substring(1));
+    List<String> command = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String length = readLine(in);
+      if (!length.startsWith("$")) {
+        throw new IOException("Expected bulk string but found: " + length);
+      }
+      byte[] data = in.readNBytes(Integer.parseInt(length.substring(1)));
+      readLine(in);
+      command.add(new String(data, StandardCharsets.UTF_8));
+    }
+    return command;
+  }
+
+  private String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\r') {
+      if (c == -1) {
+        throw new EOFException();
+      }
+      line.append((char) c);
+    }
+    in.read();
+    return line.toString();
+  }
+}
@@ -0,0 +1,209 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCalls;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.HeaderValue;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests the gRPC transport against an in-process stub of envoy's RateLimitService. */
+public class GrpcRateLimiterTransportTest {
+
+  private Server server;
+  private ManagedChannel channel;
+  private GrpcRateLimiterTransport transport;
+
+  private List<RateLimitRequest> receivedRequests = new ArrayList<>();
+  private RateLimitResponse nextResponse;
+  private Status nextFailure;
+
+  @Before
+  public void setUp() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+
+    ServerServiceDefinition service =
+        ServerServiceDefinition.builder(GrpcRateLimiterTransport.SERVICE_NAME)
+            .addMethod(
+                GrpcRateLimiterTransport.SHOULD_RATE_LIMIT,
+                ServerCalls.asyncUnaryCall(
+                    (request, responseObserver) -> {
+                      receivedRequests.add(request);
+                      if (nextFailure != null) {
+                        responseObserver.onError(nextFailure.asRuntimeException());
+                      } else {
+                        responseObserver.onNext(nextResponse);
+                        responseObserver.onCompleted();
+                      }
+                    }))
+            .build();
+
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(service)
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    transport = new GrpcRateLimiterTransport(channel, 5000);
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void shouldSendDescriptorsAsProtobuf() {
+    nextResponse = response(LimitStatus.CODE_OK, status(LimitStatus.CODE_OK, 10, "HOUR", 7));
+
+    RateLimitRequest request =
+        RateLimitRequest.builder()
+            .domain("respondenthome")
+            .descriptors(
+                List.of(
+                    descriptor("deliveryChannel", "SMS", "uprn", "24234234"),
+                    descriptor("request", "WEBFORM", "ipAddress", "1.2.3.4")))
+            .build();
+    transport.checkLimit(request);
+
+    assertEquals(1, receivedRequests.size());
+    assertEquals(request, receivedRequests.get(0));
+  }
+
+  @Test
+  public void shouldSendHitsAddend() {
+    nextResponse = response(LimitStatus.CODE_OK, status(LimitStatus.CODE_OK, 10, "HOUR", 3));
+
+    RateLimitRequest request =
+        RateLimitRequest.builder()
+            .domain("respondenthome")
+            .descriptors(List.of(descriptor("deliveryChannel", "SMS", "uprn", "24234234")))
+            .hitsAddend(4)
+            .build();
+    transport.checkLimit(request);
+
+    assertEquals(request, receivedRequests.get(0));
+  }
+
+  @Test
+  public void shouldMapOkResponse() {
+    nextResponse =
+        response(
+            LimitStatus.CODE_OK,
+            status(LimitStatus.CODE_OK, 100, "HOUR", 99),
+            status(LimitStatus.CODE_OK, 5, "SECOND", 0));
+
+    RateLimitResponse response = transport.checkLimit(webformRequest());
+
+    assertEquals(nextResponse, response);
+  }
+
+  @Test
+  public void shouldThrowTooManyRequestsWithJsonResponseWhenOverLimit() throws Exception {
+    nextResponse =
+        response(
+            LimitStatus.CODE_LIMIT_BREACHED,
+            status(LimitStatus.CODE_OK, 100, "HOUR", 12),
+            status(LimitStatus.CODE_LIMIT_BREACHED, 200, "DAY", 0));
+
+    ResponseStatusException e =
+        assertThrows(ResponseStatusException.class, () -> transport.checkLimit(webformRequest()));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+    assertEquals(
+        nextResponse, new ObjectMapper().readValue(e.getReason(), RateLimitResponse.class));
+  }
+
+  @Test
+  public void shouldMapResetDurationsAndHeaders() {
+    LimitStatus hourly = status(LimitStatus.CODE_LIMIT_BREACHED, 100, "HOUR", 0);
+    hourly.setDurationUntilReset("2310s");
+    LimitStatus perSecond = status(LimitStatus.CODE_LIMIT_BREACHED, 5, "SECOND", 0);
+    perSecond.setDurationUntilReset("0.250s");
+    nextResponse = response(LimitStatus.CODE_LIMIT_BREACHED, hourly, perSecond);
+    nextResponse.setResponseHeadersToAdd(
+        List.of(
+            new HeaderValue("x-ratelimit-limit", "100"),
+            new HeaderValue("x-ratelimit-reset", "2310")));
+
+    RateLimitExceededException e =
+        assertThrows(
+            RateLimitExceededException.class, () -> transport.checkLimit(webformRequest()));
+
+    assertEquals(nextResponse, e.getLimiterResponse());
+    assertEquals(Duration.ofSeconds(2310), e.getRetryAfter());
+    assertEquals("2310", e.getLimiterHeaders().get("x-ratelimit-reset"));
+    assertEquals("2310", e.getLimiterHeaders().get(HttpHeaders.RETRY_AFTER));
+    assertEquals(e.getLimiterHeaders(), e.getResponseHeaders());
+  }
+
+  @Test
+  public void shouldPropagateGrpcFailure() {
+    nextFailure = Status.UNAVAILABLE.withDescription("limiter down");
+
+    StatusRuntimeException e =
+        assertThrows(StatusRuntimeException.class, () -> transport.checkLimit(webformRequest()));
+
+    assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+  }
+
+  @Test
+  public void shouldShutDownOwnedChannelWhenClosed() {
+    transport.close();
+    assertFalse(channel.isShutdown());
+
+    GrpcRateLimiterTransport owning = GrpcRateLimiterTransport.owning(channel, 5000);
+    owning.close();
+    assertTrue(channel.isShutdown());
+  }
+
+  private RateLimitRequest webformRequest() {
+    return RateLimitRequest.builder()
+        .domain("respondenthome")
+        .descriptors(List.of(descriptor("request", "WEBFORM", "ipAddress", "1.2.3.4")))
+        .build();
+  }
+
+  private LimitDescriptor descriptor(String key1, String value1, String key2, String value2) {
+    return new LimitDescriptor(
+        List.of(new DescriptorEntry(key1, value1), new DescriptorEntry(key2, value2)));
+  }
+
+  private RateLimitResponse response(String overallCode, LimitStatus... statuses) {
+    return RateLimitResponse.builder().overallCode(overallCode).statuses(List.of(statuses)).build();
+  }
+
+  private LimitStatus status(String code, int requestsPerUnit, String unit, int limitRemaining) {
+    return LimitStatus.builder()
+        .code(code)
+        .currentLimit(new CurrentLimit(requestsPerUnit, unit))
+        .limitRemaining(limitRemaining)
+        .build();
+  }
+}
@@ -0,0 +1,223 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests calling the limiter with the JDK's HttpClient. */
+public class HttpClientRateLimiterTransportTest {
+  private FakeEnvoyLimiter limiter;
+  private HttpClientRateLimiterTransport transport;
+
+  @Before
+  public void setUp() throws Exception {
+    limiter = FakeEnvoyLimiter.start(FakeEnvoyLimiterTest.limits());
+    transport = transport(Duration.ofSeconds(5));
+  }
+
+  @After
+  public void tearDown() {
+    limiter.close();
+  }
+
+  @Test
+  public void shouldDecodeLimiterResponse() {
+    RateLimitResponse response = transport.checkLimit(webform(null));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(99, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals(100, response.getStatuses().get(0).getCurrentLimit().getRequestsPerUnit());
+  }
+
+  @Test
+  public void shouldDecodeOnlyDetailAskedFor() {
+    RateLimitResponse response = transport.checkLimit(webform(null), ResponseDetail.OVERALL_CODE);
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertNull(response.getStatuses());
+  }
+
+  @Test
+  public void shouldReportBreachWithLimiterResponseAsReason() throws Exception {
+    ResponseStatusException exception =
+        assertThrows(ResponseStatusException.class, () -> transport.checkLimit(webform(101)));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+    RateLimitResponse response =
+        RateLimitResponseDecoder.decode(exception.getReason(), ResponseDetail.LIMITS);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+  }
+
+  @Test
+  public void shouldReportErrorStatus() {
+    limiter.setErrors(1.0, 503);
+
+    ResponseStatusException exception =
+        assertThrows(ResponseStatusException.class, () -> transport.checkLimit(webform(null)));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+  }
+
+  @Test
+  public void shouldTimeOutEachRequest() {
+    limiter.setLatency(Duration.ofMillis(500));
+    transport = transport(Duration.ofMillis(50));
+
+    IllegalStateException exception =
+        assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform(null)));
+
+    Throwable cause = exception.getCause();
+    assertTrue(String.valueOf(cause), cause instanceof HttpTimeoutException);
+  }
+
+  @Test
+  public void shouldCheckConcurrentlyWithoutBlocking() throws Exception {
+    List<CompletableFuture<RateLimitResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      futures.add(transport.checkLimitAsync(webform(null), ResponseDetail.STATUSES));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+    RateLimitResponse response = transport.checkLimit(webform(null));
+    assertEquals(49, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldQueueAsyncChecksOverConcurrencyCap() throws Exception {
+    limiter.setLatency(Duration.ofMillis(100));
+    transport = transport(Duration.ofSeconds(5), 2);
+
+    List<CompletableFuture<RateLimitResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      futures.add(transport.checkLimitAsync(webform(null), ResponseDetail.STATUSES));
+    }
+    assertEquals(4, transport.getWaitingCount());
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+    assertEquals(0, transport.getWaitingCount());
+    RateLimitResponse response = transport.checkLimit(webform(null));
+    assertEquals(93, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldTimeOutWaitingForConcurrencyCap() throws Exception {
+    limiter.setLatency(Duration.ofMillis(500));
+    transport = transport(Duration.ofMillis(100), 1);
+    CompletableFuture<RateLimitResponse> inFlight =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+
+    IllegalStateException exception =
+        assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform(null)));
+
+    assertEquals("Timed out waiting to call rate limiter", exception.getMessage());
+    assertThrows(ExecutionException.class, inFlight::get);
+  }
+
+  @Test
+  public void shouldFailAsyncCheckWhenQueueIsFull() throws Exception {
+    limiter.setLatency(Duration.ofMillis(200));
+    transport = transport(Duration.ofSeconds(5), 1, 1);
+    CompletableFuture<RateLimitResponse> inFlight =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+    CompletableFuture<RateLimitResponse> queued =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+
+    CompletableFuture<RateLimitResponse> rejected =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+
+    ExecutionException exception = assertThrows(ExecutionException.class, rejected::get);
+    assertTrue(exception.getCause() instanceof IllegalStateException);
+    assertEquals(LimitStatus.CODE_OK, inFlight.get().getOverallCode());
+    assertEquals(LimitStatus.CODE_OK, queued.get().getOverallCode());
+  }
+
+  @Test
+  public void shouldTimeOutAsyncCheckWaitingInQueue() throws Exception {
+    limiter.setLatency(Duration.ofMillis(500));
+    transport = transport(Duration.ofMillis(100), 1, 10);
+    transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+    CompletableFuture<RateLimitResponse> queued =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+
+    ExecutionException exception = assertThrows(ExecutionException.class, queued::get);
+
+    assertEquals("Timed out waiting to call rate limiter", exception.getCause().getMessage());
+    assertEquals(0, transport.getWaitingCount());
+  }
+
+  @Test
+  public void shouldDropCancelledAsyncCheckFromQueue() throws Exception {
+    limiter.setLatency(Duration.ofMillis(200));
+    transport = transport(Duration.ofSeconds(5), 1, 10);
+    CompletableFuture<RateLimitResponse> inFlight =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+    CompletableFuture<RateLimitResponse> queued =
+        transport.checkLimitAsync(webform(null), ResponseDetail.OVERALL_CODE);
+
+    queued.cancel(false);
+    assertEquals(0, transport.getWaitingCount());
+    inFlight.get();
+
+    // only the call in flight reached the limiter
+    RateLimitResponse response = transport.checkLimit(webform(null));
+    assertEquals(98, response.getStatuses().get(0).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldCheckReactively() {
+    ReactiveRateLimiterTransport reactive = transport.reactive();
+
+    RateLimitResponse response = reactive.checkLimit(webform(null)).block();
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+
+    ResponseStatusException exception =
+        assertThrows(
+            ResponseStatusException.class, () -> reactive.checkLimit(webform(100)).block());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+  }
+
+  private HttpClientRateLimiterTransport transport(Duration requestTimeout) {
+    return transport(requestTimeout, 64);
+  }
+
+  private HttpClientRateLimiterTransport transport(
+      Duration requestTimeout, int maxConcurrentRequests) {
+    return transport(requestTimeout, maxConcurrentRequests, 1024);
+  }
+
+  private HttpClientRateLimiterTransport transport(
+      Duration requestTimeout, int maxConcurrentRequests, int maxQueuedRequests) {
+    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+    URI baseUri = URI.create("http://127.0.0.1:" + limiter.getPort());
+    return new HttpClientRateLimiterTransport(
+        httpClient, baseUri, requestTimeout, maxConcurrentRequests, maxQueuedRequests);
+  }
+
+  private RateLimitRequest webform(Integer hitsAddend) {
+    List<DescriptorEntry> entries =
+        List.of(new DescriptorEntry("request", "WEBFORM"), new DescriptorEntry("ipAddress", "1"));
+    return new RateLimitRequest(
+        Domain.RH.getDomainName(), List.of(new LimitDescriptor(entries)), hitsAddend);
+  }
+}
@@ -0,0 +1,318 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.LeaseSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+public class LeasingRateLimiterTransportTest {
+  // Start of a minute, in epoch millis
+  private static final long START = 1600000020L * 1000;
+
+  private long now = START;
+  private List<RateLimitRequest> limiterCalls = new ArrayList<>();
+  private RateLimitResponse nextResponse;
+  private ResponseStatusException nextException;
+  private boolean refuseReservations;
+  private LeasingRateLimiterTransport transport;
+
+  @Before
+  public void setUp() {
+    LeaseSettings settings = new LeaseSettings();
+    settings.setEnabled(true);
+    settings.setLayouts(List.of("request, modulo"));
+    settings.setLeaseFraction(0.1);
+    settings.setMaxLeaseSize(5);
+    settings.setStripes(2);
+
+    RateLimiterTransport limiter =
+        request -> {
+          limiterCalls.add(request);
+          if (nextException != null) {
+            throw nextException;
+          }
+          if (refuseReservations && request.getHitsAddend() != null) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "{}");
+          }
+          return nextResponse;
+        };
+    transport = new LeasingRateLimiterTransport(limiter, settings, () -> now);
+  }
+
+  @Test
+  public void shouldAnswerFromLeaseUntilExhausted() {
+    nextResponse = okResponse(1000, 900);
+
+    // first call learns that a lease of 5 may be reserved, capped by the maximum lease size, and
+    // the second call reserves it
+    for (int i = 0; i < 7; i++) {
+      transport.checkLimit(eqLaunchRequest("3"));
+    }
+    assertEquals(2, limiterCalls.size());
+    assertNull(limiterCalls.get(0).getHitsAddend());
+    assertEquals(6, limiterCalls.get(1).getHitsAddend().intValue());
+
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertEquals(3, limiterCalls.size());
+    assertEquals(6, limiterCalls.get(2).getHitsAddend().intValue());
+  }
+
+  @Test
+  public void shouldBoundLeaseByRemainingQuotaLessMargin() {
+    // 10% of the limit is kept back, so 3 of the 30 remaining above it may be reserved
+    nextResponse = okResponse(1000, 130);
+
+    for (int i = 0; i < 5; i++) {
+      transport.checkLimit(eqLaunchRequest("3"));
+    }
+    assertEquals(2, limiterCalls.size());
+    assertEquals(4, limiterCalls.get(1).getHitsAddend().intValue());
+
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertEquals(3, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldReportRefusedReservationWithoutCheckingAgain() {
+    nextResponse = okResponse(1000, 900);
+    transport.checkLimit(eqLaunchRequest("3"));
+
+    refuseReservations = true;
+    assertThrows(ResponseStatusException.class, () -> transport.checkLimit(eqLaunchRequest("3")));
+
+    // the refused reservation was counted, so the request was not sent again
+    assertEquals(2, limiterCalls.size());
+    assertEquals(6, limiterCalls.get(1).getHitsAddend().intValue());
+    assertEquals(0, transport.getLeaseCount());
+
+    // nothing is reserved until the limiter reports room for it again
+    refuseReservations = false;
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertNull(limiterCalls.get(2).getHitsAddend());
+  }
+
+  @Test
+  public void shouldCarryUnusedAllowanceIntoRefreshedLease() {
+    nextResponse = okResponse(1000, 900);
+    transport.checkLimit(eqLaunchRequest("3"));
+    transport.checkLimit(eqLaunchRequest("3"));
+
+    // after one unit is used, the 4 left are split across both stripes so a request for 4 hits
+    // refreshes the lease
+    transport.checkLimit(eqLaunchRequest("3"));
+    transport.checkLimit(eqLaunchRequest("3", 4));
+    assertEquals(3, limiterCalls.size());
+    assertEquals(9, limiterCalls.get(2).getHitsAddend().intValue());
+
+    // the 4 units left over are added to the 5 reserved
+    for (int i = 0; i < 9; i++) {
+      transport.checkLimit(eqLaunchRequest("3"));
+    }
+    assertEquals(3, limiterCalls.size());
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertEquals(4, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldRefreshLeaseOnceWhenCallersRace() throws Exception {
+    int threads = 8;
+    int requestsPerThread = 200;
+    AtomicLong charged = new AtomicLong();
+    RateLimiterTransport limiter =
+        request -> {
+          charged.addAndGet(DescriptorKeys.hits(request));
+          try {
+            Thread.sleep(2);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return okResponse(1_000_000, 900_000);
+        };
+    LeaseSettings settings = new LeaseSettings();
+    settings.setLayouts(List.of("request,modulo"));
+    settings.setMaxLeaseSize(50);
+    LeasingRateLimiterTransport racing =
+        new LeasingRateLimiterTransport(limiter, settings, () -> now);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < requestsPerThread; i++) {
+                    racing.checkLimit(eqLaunchRequest("3"));
+                  }
+                }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // every charged unit was used, other than those of the last lease
+    long requests = threads * requestsPerThread;
+    assertTrue(charged.get() >= requests);
+    assertTrue(charged.get() <= requests + 50, charged + " charged for " + requests);
+  }
+
+  @Test
+  public void shouldNotAllowMoreThanLimitAcrossNodes() {
+    String limits =
+        String.join(
+            "\n",
+            "domain: respondenthome",
+            "descriptors:",
+            "  - key: request",
+            "    value: EQLAUNCH",
+            "    descriptors:",
+            "      - key: modulo",
+            "        rate_limit: {unit: minute, requests_per_unit: 100}");
+    EmbeddedRateLimiterTransport engine =
+        new EmbeddedRateLimiterTransport(
+            EnvoyLimitConfig.load(new StringReader(limits)), 1, 100, () -> now);
+    AtomicLong charged = new AtomicLong();
+    RateLimiterTransport limiter =
+        request -> {
+          RateLimitResponse response = engine.checkLimit(request);
+          charged.addAndGet(DescriptorKeys.hits(request));
+          return response;
+        };
+    LeaseSettings settings = new LeaseSettings();
+    settings.setLayouts(List.of("request,modulo"));
+    settings.setLeaseFraction(0.5);
+    settings.setMaxLeaseSize(20);
+    List<LeasingRateLimiterTransport> nodes =
+        List.of(
+            new LeasingRateLimiterTransport(limiter, settings, () -> now),
+            new LeasingRateLimiterTransport(limiter, settings, () -> now));
+
+    int allowed = 0;
+    for (int i = 0; i < 300; i++) {
+      try {
+        nodes.get(i % 2).checkLimit(eqLaunchRequest("3"));
+        allowed++;
+      } catch (RateLimitExceededException e) {
+        // over the limit
+      }
+    }
+
+    // every allowed request was charged to the limiter, and no more were charged than it allows
+    assertTrue(allowed > 0);
+    assertTrue(allowed <= charged.get(), allowed + " allowed, " + charged + " charged");
+    assertTrue(charged.get() <= 100, charged + " charged");
+  }
+
+  @Test
+  public void shouldNotLeaseWhenLittleQuotaRemains() {
+    nextResponse = okResponse(1000, 9);
+
+    transport.checkLimit(eqLaunchRequest("3"));
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertEquals(2, limiterCalls.size());
+    assertEquals(0, transport.getLeaseCount());
+  }
+
+  @Test
+  public void shouldRefreshLeaseAtEndOfWindow() {
+    nextResponse = okResponse(1000, 900);
+    transport.checkLimit(eqLaunchRequest("3"));
+    transport.checkLimit(eqLaunchRequest("3"));
+
+    now = START + 60 * 1000;
+    transport.checkLimit(eqLaunchRequest("3"));
+    assertEquals(3, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldLeaseEachDescriptorSeparately() {
+    nextResponse = okResponse(1000, 900);
+    for (int i = 0; i < 3; i++) {
+      transport.checkLimit(eqLaunchRequest("3"));
+      transport.checkLimit(eqLaunchRequest("4"));
+    }
+
+    assertEquals(4, limiterCalls.size());
+    assertEquals(2, transport.getLeaseCount());
+  }
+
+  @Test
+  public void shouldAlwaysCallLimiterForOtherLayouts() {
+    nextResponse = okResponse(1000, 900);
+    RateLimitRequest webform = request(descriptor("request", "WEBFORM", "ipAddress", "1.2.3.4"));
+    transport.checkLimit(webform);
+    transport.checkLimit(webform);
+
+    assertEquals(2, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldPassOnBreachAndDropLease() {
+    nextResponse = okResponse(1000, 900);
+    transport.checkLimit(eqLaunchRequest("3"));
+
+    now = START + 60 * 1000;
+    nextException = new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "{}");
+    assertThrows(ResponseStatusException.class, () -> transport.checkLimit(eqLaunchRequest("3")));
+    assertEquals(0, transport.getLeaseCount());
+  }
+
+  private RateLimitRequest eqLaunchRequest(String modulo) {
+    return request(descriptor("request", "EQLAUNCH", "modulo", modulo));
+  }
+
+  private RateLimitRequest eqLaunchRequest(String modulo, int hits) {
+    return RateLimitRequest.builder()
+        .domain("respondenthome")
+        .descriptors(List.of(descriptor("request", "EQLAUNCH", "modulo", modulo)))
+        .hitsAddend(hits)
+        .build();
+  }
+
+  private RateLimitRequest request(LimitDescriptor descriptor) {
+    return RateLimitRequest.builder()
+        .domain("respondenthome")
+        .descriptors(List.of(descriptor))
+        .build();
+  }
+
+  private LimitDescriptor descriptor(String key1, String value1, String key2, String value2) {
+    return new LimitDescriptor(
+        List.of(new DescriptorEntry(key1, value1), new DescriptorEntry(key2, value2)));
+  }
+
+  private RateLimitResponse okResponse(int requestsPerUnit, int limitRemaining) {
+    LimitStatus status =
+        LimitStatus.builder()
+            .code(LimitStatus.CODE_OK)
+            .currentLimit(new CurrentLimit(requestsPerUnit, "MINUTE"))
+            .limitRemaining(limitRemaining)
+            .build();
+    return RateLimitResponse.builder()
+        .overallCode(LimitStatus.CODE_OK)
+        .statuses(List.of(status))
+        .build();
+  }
+}
@@ -0,0 +1,156 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+public class LimitBreachCacheTest {
+  // 10:30:00 on some day, in epoch millis
+  private static final long HALF_PAST_TEN = ((19000L * 24 + 10) * 3600 + 30 * 60) * 1000;
+
+  private long now = HALF_PAST_TEN;
+  private LimitBreachCache cache = new LimitBreachCache(100, () -> now);
+
+  private LimitDescriptor uprnDescriptor = descriptor("uprn", "24234234");
+  private LimitDescriptor telNoDescriptor = descriptor("telNo", "0171 3434");
+
+  @Test
+  public void shouldMissWhenNothingRecorded() {
+    assertNull(cache.findBreach(request(uprnDescriptor)));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void shouldHitOnlyBreachedDescriptors() {
+    cache.recordBreaches(
+        request(uprnDescriptor, telNoDescriptor),
+        response(
+            status(LimitStatus.CODE_OK, "HOUR"), status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR")));
+
+    assertNull(cache.findBreach(request(uprnDescriptor)));
+
+    // Descriptor positions follow the new request, not the one that was recorded
+    RateLimitResponse cached = cache.findBreach(request(telNoDescriptor, uprnDescriptor));
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, cached.getOverallCode());
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, cached.getStatuses().get(0).getCode());
+    assertEquals(LimitStatus.CODE_UNKNOWN, cached.getStatuses().get(1).getCode());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void shouldNotMatchOtherDomain() {
+    cache.recordBreaches(
+        request(uprnDescriptor), response(status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR")));
+
+    RateLimitRequest otherDomain = request(uprnDescriptor);
+    otherDomain.setDomain("otherdomain");
+    assertNull(cache.findBreach(otherDomain));
+  }
+
+  @Test
+  public void shouldExpireAtEndOfLimiterWindow() {
+    cache.recordBreaches(
+        request(uprnDescriptor), response(status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR")));
+
+    now = HALF_PAST_TEN + 29 * 60 * 1000;
+    RateLimitResponse cached = cache.findBreach(request(uprnDescriptor));
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, cached.getOverallCode());
+
+    now = HALF_PAST_TEN + 30 * 60 * 1000;
+    assertNull(cache.findBreach(request(uprnDescriptor)));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void shouldExpireAfterDurationUntilReset() {
+    LimitStatus breach = status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR");
+    breach.setDurationUntilReset("90s");
+    cache.recordBreaches(request(uprnDescriptor), response(breach));
+
+    now = HALF_PAST_TEN + 60 * 1000;
+    RateLimitResponse cached = cache.findBreach(request(uprnDescriptor));
+    assertEquals("30s", cached.getStatuses().get(0).getDurationUntilReset());
+
+    now = HALF_PAST_TEN + 90 * 1000;
+    assertNull(cache.findBreach(request(uprnDescriptor)));
+  }
+
+  @Test
+  public void shouldReportTimeUntilWindowEnd() {
+    cache.recordBreaches(
+        request(uprnDescriptor), response(status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR")));
+
+    now = HALF_PAST_TEN + 500;
+    RateLimitResponse cached = cache.findBreach(request(uprnDescriptor));
+    assertEquals("1799.500s", cached.getStatuses().get(0).getDurationUntilReset());
+  }
+
+  @Test
+  public void shouldNotCacheUnknownUnit() {
+    cache.recordBreaches(
+        request(uprnDescriptor), response(status(LimitStatus.CODE_LIMIT_BREACHED, "FORTNIGHT")));
+
+    assertNull(cache.findBreach(request(uprnDescriptor)));
+  }
+
+  @Test
+  public void shouldStayWithinMaximumSize() {
+    LimitBreachCache smallCache = new LimitBreachCache(2, () -> now);
+    for (int i = 0; i < 5; i++) {
+      smallCache.recordBreaches(
+          request(descriptor("uprn", "" + i)),
+          response(status(LimitStatus.CODE_LIMIT_BREACHED, "MINUTE")));
+    }
+    assertEquals(2, smallCache.size());
+  }
+
+  @Test
+  public void shouldEvictSoonestToExpireInBatch() {
+    LimitBreachCache smallCache = new LimitBreachCache(16, () -> now);
+    for (int i = 0; i < 17; i++) {
+      LimitStatus breach = status(LimitStatus.CODE_LIMIT_BREACHED, "HOUR");
+      breach.setDurationUntilReset((i + 1) * 10 + "s");
+      smallCache.recordBreaches(request(descriptor("uprn", "" + i)), response(breach));
+    }
+
+    // a batch of 2 was evicted to make room
+    assertEquals(15, smallCache.size());
+    assertNull(smallCache.findBreach(request(descriptor("uprn", "0"))));
+    assertNull(smallCache.findBreach(request(descriptor("uprn", "1"))));
+    assertNotNull(smallCache.findBreach(request(descriptor("uprn", "2"))));
+  }
+
+  private LimitDescriptor descriptor(String key, String value) {
+    return new LimitDescriptor(
+        List.of(new DescriptorEntry("deliveryChannel", "SMS"), new DescriptorEntry(key, value)));
+  }
+
+  private RateLimitRequest request(LimitDescriptor... descriptors) {
+    return RateLimitRequest.builder()
+        .domain("respondenthome")
+        .descriptors(List.of(descriptors))
+        .build();
+  }
+
+  private RateLimitResponse response(LimitStatus... statuses) {
+    return RateLimitResponse.builder()
+        .overallCode(LimitStatus.CODE_LIMIT_BREACHED)
+        .statuses(List.of(statuses))
+        .build();
+  }
+
+  private LimitStatus status(String code, String unit) {
+    return LimitStatus.builder().code(code).currentLimit(new CurrentLimit(10, unit)).build();
+  }
+}
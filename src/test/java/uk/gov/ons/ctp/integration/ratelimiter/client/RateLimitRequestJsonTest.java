@@ -0,0 +1,135 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+
+public class RateLimitRequestJsonTest {
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void shouldMatchJacksonForFulfilmentRequest() throws Exception {
+    verifyMatchesJackson(
+        request(
+            new LimitDescriptor(
+                List.of(
+                    new DescriptorEntry("deliveryChannel", "SMS"),
+                    new DescriptorEntry("productGroup", "QUESTIONNAIRE"),
+                    new DescriptorEntry("individual", "true"),
+                    new DescriptorEntry("caseType", "HH"),
+                    new DescriptorEntry("uprn", "24234234"))),
+            descriptor("deliveryChannel", "SMS", "telNo", "0171 3434"),
+            descriptor("deliveryChannel", "SMS", "ipAddress", "123.111.222.23")));
+  }
+
+  @Test
+  public void shouldMatchJacksonForUnknownKeys() throws Exception {
+    verifyMatchesJackson(request(descriptor("someOtherKey", "value", "", "")));
+  }
+
+  @Test
+  public void shouldMatchJacksonForNulls() throws Exception {
+    verifyMatchesJackson(new RateLimitRequest(null, null, null));
+    verifyMatchesJackson(new RateLimitRequest("respondenthome", new ArrayList<>(), null));
+    verifyMatchesJackson(request(new LimitDescriptor(null), null));
+    verifyMatchesJackson(request(descriptor("uprn", null, null, "x")));
+    verifyMatchesJackson(request(new LimitDescriptor(Arrays.asList((DescriptorEntry) null))));
+  }
+
+  @Test
+  public void shouldMatchJacksonForEscapedAndNonAsciiCharacters() throws Exception {
+    String awkward = "q\"b\\s/ c\u0000\u0001\b\t\n\f\r\u001f\u007f é € 😀 end";
+    verifyMatchesJackson(request(descriptor("telNo", awkward, awkward, "ok")));
+  }
+
+  @Test
+  public void shouldMatchJacksonForLargeRequest() throws Exception {
+    List<LimitDescriptor> descriptors = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      descriptors.add(descriptor("uprn", Integer.toString(i), "telNo", "0171 " + i));
+    }
+    verifyMatchesJackson(new RateLimitRequest("respondenthome", descriptors, null));
+
+    // The buffer is still usable after a large request
+    verifyMatchesJackson(request(descriptor("uprn", "1", "telNo", "2")));
+  }
+
+  @Test
+  public void shouldMatchJacksonForHitsAddend() throws Exception {
+    RateLimitRequest request = request(descriptor("uprn", "1", "telNo", "2"));
+    request.setHitsAddend(5);
+    verifyMatchesJackson(request);
+
+    request.setHitsAddend(null);
+    verifyMatchesJackson(request);
+  }
+
+  @Test
+  public void shouldMatchJacksonForPlannedDescriptors() throws Exception {
+    DescriptorPlan plan =
+        new DescriptorPlan(
+            new String[] {"deliveryChannel", "telNo"}, List.of("telNo", "deliveryChannel", "uprn"));
+    String awkward = "q\"b\\s/ c\u0000\n\u007f é € 😀 end";
+    LimitDescriptor planned = plan.describe(new String[] {awkward, "SMS", "1"});
+    LimitDescriptor plain = descriptor("deliveryChannel", "SMS", "telNo", awkward);
+    verifyMatchesJackson(request(planned, plan.describe(new String[3])));
+
+    assertEquals(plain, planned);
+    assertEquals(
+        DescriptorKeys.of("respondenthome", plain), DescriptorKeys.of("respondenthome", planned));
+    assertEquals("deliveryChannel,telNo", DescriptorKeys.layout(planned));
+
+    // Once replaced, the entries are written instead of the plan
+    planned.setEntries(List.of(new DescriptorEntry("uprn", "1")));
+    verifyMatchesJackson(request(planned));
+    assertEquals("uprn", DescriptorKeys.layout(planned));
+  }
+
+  @Test
+  public void shouldWriteRequestFromSinkToSeparateBuffer() throws Exception {
+    RateLimitRequest outer = request(descriptor("uprn", "1", "telNo", "2"));
+    RateLimitRequest inner = request(descriptor("ipAddress", "123.111.222.23"));
+    byte[] expectedInner = objectMapper.writeValueAsBytes(inner);
+
+    byte[] written =
+        RateLimitRequestJson.write(
+            outer,
+            (bytes, offset, length) -> {
+              assertArrayEquals(expectedInner, RateLimitRequestJson.toBytes(inner));
+              return Arrays.copyOfRange(bytes, offset, offset + length);
+            });
+    assertArrayEquals(objectMapper.writeValueAsBytes(outer), written);
+  }
+
+  @Test
+  public void shouldRejectIncompleteSurrogatePair() {
+    RateLimitRequest request = request(descriptor("telNo", "bad \uD83D", "uprn", "1"));
+    assertThrows(IllegalArgumentException.class, () -> RateLimitRequestJson.toBytes(request));
+  }
+
+  private void verifyMatchesJackson(RateLimitRequest request) throws Exception {
+    assertArrayEquals(
+        objectMapper.writeValueAsBytes(request), RateLimitRequestJson.toBytes(request));
+  }
+
+  private RateLimitRequest request(LimitDescriptor... descriptors) {
+    return new RateLimitRequest("respondenthome", Arrays.asList(descriptors), null);
+  }
+
+  private LimitDescriptor descriptor(String... keysAndValues) {
+    List<DescriptorEntry> entries = new ArrayList<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      entries.add(new DescriptorEntry(keysAndValues[i], keysAndValues[i + 1]));
+    }
+    return new LimitDescriptor(entries);
+  }
+}
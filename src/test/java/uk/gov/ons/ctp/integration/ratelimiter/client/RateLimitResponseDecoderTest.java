@@ -0,0 +1,96 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import uk.gov.ons.ctp.common.FixtureHelper;
+import uk.gov.ons.ctp.integration.ratelimiter.model.HeaderValue;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests the streaming decoding of limiter responses. */
+public class RateLimitResponseDecoderTest {
+  // As envoy returns it, with fields which this client does not model
+  private static final String ENVOY_JSON =
+      "{\"overallCode\":\"OVER_LIMIT\","
+          + "\"statuses\":[{\"code\":\"OVER_LIMIT\","
+          + "\"currentLimit\":{\"name\":\"fulfilment\",\"requestsPerUnit\":100,\"unit\":\"HOUR\"},"
+          + "\"limitRemaining\":0,\"durationUntilReset\":\"2310s\"},"
+          + "{\"code\":\"OK\",\"currentLimit\":{\"requestsPerUnit\":5,\"unit\":\"MINUTE\"},"
+          + "\"limitRemaining\":4}],"
+          + "\"responseHeadersToAdd\":[{\"key\":\"x-ratelimit-limit\",\"value\":\"100\"}],"
+          + "\"rawBody\":null}";
+
+  @Test
+  public void shouldDecodeOnlyOverallCode() throws Exception {
+    RateLimitResponse response = decode(ENVOY_JSON, ResponseDetail.OVERALL_CODE);
+
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+    assertNull(response.getStatuses());
+    assertNull(response.getResponseHeadersToAdd());
+  }
+
+  @Test
+  public void shouldDecodeStatusCodesAndRemainingWithoutLimits() throws Exception {
+    RateLimitResponse response = decode(ENVOY_JSON, ResponseDetail.STATUSES);
+
+    assertEquals(2, response.getStatuses().size());
+    LimitStatus first = response.getStatuses().get(0);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, first.getCode());
+    assertEquals(0, first.getLimitRemaining());
+    assertEquals("2310s", first.getDurationUntilReset());
+    assertNull(first.getCurrentLimit());
+    assertEquals(LimitStatus.CODE_OK, response.getStatuses().get(1).getCode());
+    assertEquals(4, response.getStatuses().get(1).getLimitRemaining());
+  }
+
+  @Test
+  public void shouldDecodeLimits() throws Exception {
+    RateLimitResponse response = decode(ENVOY_JSON, ResponseDetail.LIMITS);
+
+    assertEquals(100, response.getStatuses().get(0).getCurrentLimit().getRequestsPerUnit());
+    assertEquals("HOUR", response.getStatuses().get(0).getCurrentLimit().getUnit());
+    assertEquals("MINUTE", response.getStatuses().get(1).getCurrentLimit().getUnit());
+    assertEquals(
+        new HeaderValue("x-ratelimit-limit", "100"), response.getResponseHeadersToAdd().get(0));
+  }
+
+  @Test
+  public void shouldMatchObjectMapperForFixture() throws Exception {
+    RateLimitResponse fixture = FixtureHelper.loadPackageFixtures(RateLimitResponse[].class).get(0);
+    String json = new ObjectMapper().writeValueAsString(fixture);
+
+    assertEquals(fixture, decode(json, ResponseDetail.LIMITS));
+    assertEquals(
+        fixture,
+        RateLimitResponseDecoder.decode(
+            json.getBytes(StandardCharsets.UTF_8), ResponseDetail.LIMITS));
+  }
+
+  @Test
+  public void shouldReturnNullWithoutBody() throws Exception {
+    assertNull(decode(null, ResponseDetail.LIMITS));
+    assertNull(decode("", ResponseDetail.LIMITS));
+    assertNull(decode("null", ResponseDetail.LIMITS));
+    assertNull(RateLimitResponseDecoder.decode(new byte[0], ResponseDetail.LIMITS));
+  }
+
+  @Test
+  public void shouldRejectMalformedJson() {
+    assertThrows(IOException.class, () -> decode("aoeu<.p#$%^EOUAEOU3245", ResponseDetail.LIMITS));
+    assertThrows(IOException.class, () -> decode("[1,2]", ResponseDetail.LIMITS));
+    assertThrows(
+        IOException.class, () -> decode("{\"statuses\":[{\"code\":", ResponseDetail.STATUSES));
+    assertThrows(
+        IOException.class, () -> decode("{\"statuses\":{\"code\":1}}", ResponseDetail.STATUSES));
+  }
+
+  private RateLimitResponse decode(String json, ResponseDetail detail) throws IOException {
+    return RateLimitResponseDecoder.decode(json, detail);
+  }
+}
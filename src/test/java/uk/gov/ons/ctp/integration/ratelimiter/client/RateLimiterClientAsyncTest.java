@@ -0,0 +1,191 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.common.product.model.Product.DeliveryChannel;
+import uk.gov.ons.ctp.integration.common.product.model.Product.ProductGroup;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+
+/** This class contains unit tests for the asynchronous variants of the limit checks. */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterClientAsyncTest extends RateLimiterClientTestBase {
+
+  // Runs the limiter call on the calling thread, so that the tests are deterministic
+  private Executor directExecutor = Runnable::run;
+
+  private Product product =
+      new Product(
+          "P1",
+          ProductGroup.QUESTIONNAIRE,
+          "Large print Welsh",
+          null,
+          true,
+          null,
+          DeliveryChannel.SMS,
+          null,
+          null,
+          null);
+
+  private UniquePropertyReferenceNumber uprn = new UniquePropertyReferenceNumber("24234234");
+
+  @Test
+  public void shouldCompleteFulfilmentCheckBelowThreshold() throws Exception {
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkFulfilmentRateLimitAsync(
+            domain, product, CaseType.HH, AN_IPv4_ADDRESS, uprn, "0171 3434", directExecutor);
+
+    assertTrue(result.isDone());
+    result.get();
+    RateLimitRequest request = verifiedRequestSentToLimiter();
+    assertEquals(5, request.getDescriptors().size());
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyWhenFulfilmentAboveThreshold() throws Exception {
+    ResponseStatusException failureException = overTheLimitException();
+    mockRateLimitException(failureException);
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkFulfilmentRateLimitAsync(
+            domain, product, CaseType.HH, AN_IPv4_ADDRESS, uprn, "0171 3434", directExecutor);
+
+    verifyCompletedWithLimitBreach(result, failureException);
+  }
+
+  @Test
+  public void shouldRejectInvalidFulfilmentArgumentsOnCallingThread() {
+    CTPException exception =
+        assertThrows(
+            CTPException.class,
+            () ->
+                rateLimiterClient.checkFulfilmentRateLimitAsync(
+                    domain, null, CaseType.HH, null, uprn, null, directExecutor));
+    assertTrue(exception.getMessage(), exception.getMessage().contains("cannot be null"));
+    verifyEnvoyLimiterNotCalled();
+  }
+
+  @Test
+  public void shouldRejectNullExecutor() {
+    CTPException exception =
+        assertThrows(
+            CTPException.class,
+            () -> rateLimiterClient.checkWebformRateLimitAsync(domain, AN_IPv4_ADDRESS, null));
+    assertTrue(
+        exception.getMessage(), exception.getMessage().contains("'executor' cannot be null"));
+    verifyEnvoyLimiterNotCalled();
+  }
+
+  @Test
+  public void shouldCompleteWebformCheckBelowThreshold() throws Exception {
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkWebformRateLimitAsync(domain, AN_IPv4_ADDRESS, directExecutor);
+
+    result.get();
+    verifiedRequestSentToLimiter();
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyWhenWebformAboveThreshold() throws Exception {
+    ResponseStatusException failureException = overTheLimitException();
+    mockRateLimitException(failureException);
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkWebformRateLimitAsync(domain, AN_IPv4_ADDRESS, directExecutor);
+
+    verifyCompletedWithLimitBreach(result, failureException);
+  }
+
+  @Test
+  public void shouldSkipWebformCheckForInvalidIpAddress() throws Exception {
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkWebformRateLimitAsync(domain, "badlyformatted", directExecutor);
+
+    assertTrue(result.isDone());
+    result.get();
+    verifyEnvoyLimiterNotCalled();
+  }
+
+  @Test
+  public void shouldCompleteEqLaunchCheckBelowThreshold() throws Exception {
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkEqLaunchLimitAsync(domain, "124.125.126.123", 10, directExecutor);
+
+    result.get();
+    RateLimitRequest request = verifiedRequestSentToLimiter();
+    verifyEntry(request.getDescriptors().get(0), 1, "modulo", "3");
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyWhenEqLaunchAboveThreshold() throws Exception {
+    ResponseStatusException failureException = overTheLimitException();
+    mockRateLimitException(failureException);
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkEqLaunchLimitAsync(domain, AN_IPv4_ADDRESS, 10, directExecutor);
+
+    verifyCompletedWithLimitBreach(result, failureException);
+  }
+
+  @Test
+  public void shouldCompleteNormallyWithLimiterOtherError() throws Exception {
+    mockRateLimitException(badRequestException());
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkEqLaunchLimitAsync(domain, AN_IPv4_ADDRESS, 10, directExecutor);
+
+    result.get();
+    verifiedRequestSentToLimiter();
+  }
+
+  @Test
+  public void shouldCompleteNormallyWithCircuitBreakerOpen() throws Exception {
+    mockRateLimitException(circuitBreakerOpenException);
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkWebformRateLimitAsync(domain, AN_IPv4_ADDRESS, directExecutor);
+
+    result.get();
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyWhenLimiterCallThrowsError() throws Exception {
+    Error error = new StackOverflowError("limiter call");
+    doThrow(error).when(circuitBreaker).run(any(), any());
+
+    CompletableFuture<Void> result =
+        rateLimiterClient.checkWebformRateLimitAsync(domain, AN_IPv4_ADDRESS, directExecutor);
+
+    assertTrue(result.isCompletedExceptionally());
+    ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+    assertSame(error, exception.getCause());
+  }
+
+  private void verifyCompletedWithLimitBreach(
+      CompletableFuture<Void> result, ResponseStatusException expected) throws Exception {
+    assertTrue(result.isCompletedExceptionally());
+    try {
+      result.get();
+      fail();
+    } catch (ExecutionException e) {
+      verifyLimitBreach(expected, e.getCause());
+    }
+    verifiedRequestSentToLimiter();
+  }
+}
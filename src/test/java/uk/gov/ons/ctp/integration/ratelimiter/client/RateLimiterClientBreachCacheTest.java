@@ -0,0 +1,100 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.FixtureHelper;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class contains unit tests for rejecting cached breaches without calling the limiter. */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterClientBreachCacheTest extends RateLimiterClientTestBase {
+
+  private LimitBreachCache limitBreachCache = new LimitBreachCache(100);
+
+  @Before
+  public void setUpCache() {
+    rateLimiterClient.setLimitBreachCache(limitBreachCache);
+  }
+
+  @Test
+  public void shouldRejectRepeatBreachWithoutCallingLimiter() throws Exception {
+    mockRateLimitException(overTheLimitException());
+
+    assertThrows(
+        ResponseStatusException.class,
+        () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+    ResponseStatusException e =
+        assertThrows(
+            ResponseStatusException.class,
+            () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+    RateLimitResponse cachedResponse =
+        new ObjectMapper().readValue(e.getReason(), RateLimitResponse.class);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, cachedResponse.getStatuses().get(0).getCode());
+    assertEquals("HOUR", cachedResponse.getStatuses().get(0).getCurrentLimit().getUnit());
+
+    // Only the first check reached the limiter
+    verifiedRequestSentToLimiter();
+    assertEquals(1, limitBreachCache.getHitCount());
+    assertEquals(1, limitBreachCache.getMissCount());
+  }
+
+  @Test
+  public void shouldTellCallerWhenToRetry() throws Exception {
+    RateLimitResponse resp = FixtureHelper.loadPackageFixtures(RateLimitResponse[].class).get(0);
+    resp.getStatuses().get(0).setDurationUntilReset("120s");
+    mockRateLimitException(overTheLimitException(resp));
+
+    RateLimitExceededException first =
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+    RateLimitExceededException cached =
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    assertEquals(Duration.ofSeconds(120), first.getRetryAfter());
+    assertEquals("120", first.getLimiterHeaders().get(HttpHeaders.RETRY_AFTER));
+    assertEquals("120", first.getResponseHeaders().get(HttpHeaders.RETRY_AFTER));
+    long cachedRetryAfter = cached.getRetryAfter().getSeconds();
+    assertTrue(cachedRetryAfter > 100 && cachedRetryAfter <= 120, "" + cachedRetryAfter);
+    verifiedRequestSentToLimiter();
+  }
+
+  @Test
+  public void shouldStillCallLimiterForOtherDescriptors() throws Exception {
+    mockRateLimitException(overTheLimitException());
+
+    assertThrows(
+        ResponseStatusException.class,
+        () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+    assertThrows(
+        ResponseStatusException.class,
+        () -> rateLimiterClient.checkWebformRateLimit(domain, "10.11.12.13"));
+
+    assertEquals(0, limitBreachCache.getHitCount());
+    assertEquals(2, limitBreachCache.getMissCount());
+  }
+
+  @Test
+  public void shouldNotCacheWhenBelowThreshold() throws Exception {
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+
+    verifiedRequestSentToLimiter();
+    assertEquals(0, limitBreachCache.size());
+  }
+}
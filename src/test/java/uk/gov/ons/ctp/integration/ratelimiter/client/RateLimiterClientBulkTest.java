@@ -0,0 +1,253 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.common.product.model.Product.DeliveryChannel;
+import uk.gov.ons.ctp.integration.common.product.model.Product.ProductGroup;
+import uk.gov.ons.ctp.integration.ratelimiter.config.BulkCheckSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class contains unit tests for checking lists of fulfilments. */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterClientBulkTest extends RateLimiterClientTestBase {
+  private static final long BREACHING_UPRN = 666;
+
+  private Product product =
+      new Product(
+          "P1",
+          ProductGroup.QUESTIONNAIRE,
+          "Large print Welsh",
+          null,
+          true,
+          null,
+          DeliveryChannel.SMS,
+          null,
+          null,
+          null);
+
+  private List<RateLimitRequest> limiterCalls = new ArrayList<>();
+  private AtomicInteger inFlight = new AtomicInteger();
+  private AtomicInteger maxInFlight = new AtomicInteger();
+  private BulkCheckSettings settings = new BulkCheckSettings();
+
+  // Behaves like the limiter: one status per descriptor, and a 429 if any is over its limit
+  private RateLimiterTransport limiter =
+      request -> {
+        synchronized (limiterCalls) {
+          limiterCalls.add(request);
+        }
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          inFlight.decrementAndGet();
+        }
+        List<LimitStatus> statuses =
+            request.getDescriptors().stream()
+                .map(d -> d.getEntries().get(d.getEntries().size() - 1).getValue())
+                .map(v -> v.equals(Long.toString(BREACHING_UPRN)))
+                .map(b -> b ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK)
+                .map(code -> LimitStatus.builder().code(code).durationUntilReset("60s").build())
+                .collect(Collectors.toList());
+        boolean breached =
+            statuses.stream().anyMatch(s -> s.getCode().equals(LimitStatus.CODE_LIMIT_BREACHED));
+        String overallCode = breached ? LimitStatus.CODE_LIMIT_BREACHED : LimitStatus.CODE_OK;
+        RateLimitResponse response = new RateLimitResponse(overallCode, statuses, null);
+        if (breached) {
+          throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, toJson(response));
+        }
+        return response;
+      };
+
+  @Before
+  public void setUpBulk() {
+    rateLimiterClient = new RateLimiterClient(limiter, circuitBreaker, ENCRYPT_PASSWORD);
+    rateLimiterClient.setBulkCheckSettings(settings);
+  }
+
+  @Test
+  public void shouldPackChecksAndGiveEachItsOwnVerdict() throws Exception {
+    List<FulfilmentCheck> checks =
+        List.of(check(1, "0171 1111", null), check(BREACHING_UPRN, null, null), check(3, null, 1));
+
+    List<FulfilmentVerdict> verdicts = rateLimiterClient.checkFulfilmentRateLimits(domain, checks);
+
+    assertEquals(1, limiterCalls.size());
+    assertEquals(8, limiterCalls.get(0).getDescriptors().size());
+    assertEquals(3, verdicts.size());
+    assertTrue(verdicts.get(0).isAllowed());
+    assertFalse(verdicts.get(1).isAllowed());
+    assertTrue(verdicts.get(2).isAllowed());
+
+    // The breach describes only the breaching check
+    FulfilmentVerdict breach = verdicts.get(1);
+    assertEquals(checks.get(1), breach.getCheck());
+    assertEquals(2, breach.getLimitExceeded().getRequest().getDescriptors().size());
+    assertEquals(2, breach.getLimitExceeded().getBreachedDescriptors().size());
+    for (LimitDescriptor descriptor : breach.getLimitExceeded().getBreachedDescriptors()) {
+      verifyEntry(descriptor, descriptor.getEntries().size() - 1, "uprn", "666");
+    }
+  }
+
+  @Test
+  public void shouldKeepLimiterBreachForCheckSentOnItsOwn() throws Exception {
+    List<FulfilmentCheck> checks = List.of(check(BREACHING_UPRN, null, null));
+
+    List<FulfilmentVerdict> verdicts = rateLimiterClient.checkFulfilmentRateLimits(domain, checks);
+
+    RateLimitExceededException breach = verdicts.get(0).getLimitExceeded();
+    assertTrue(breach.getCause() instanceof ResponseStatusException);
+    assertEquals(((ResponseStatusException) breach.getCause()).getReason(), breach.getReason());
+    assertEquals(2, breach.getBreachedDescriptors().size());
+  }
+
+  @Test
+  public void shouldNotPackMoreThanMaxDescriptors() throws Exception {
+    settings.setMaxDescriptorsPerRequest(5);
+    List<FulfilmentCheck> checks = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      checks.add(check(i + 1, null, null));
+    }
+
+    List<FulfilmentVerdict> verdicts = rateLimiterClient.checkFulfilmentRateLimits(domain, checks);
+
+    // Each check has 2 descriptors, so only 2 checks fit in a request
+    assertEquals(3, limiterCalls.size());
+    assertTrue(limiterCalls.stream().allMatch(r -> r.getDescriptors().size() <= 4));
+    assertTrue(verdicts.stream().allMatch(FulfilmentVerdict::isAllowed));
+  }
+
+  @Test
+  public void shouldSendDifferentWeightsInDifferentRequests() throws Exception {
+    List<FulfilmentCheck> checks =
+        List.of(check(1, null, null), check(2, null, 3), check(3, null, 1), check(4, null, 3));
+
+    rateLimiterClient.checkFulfilmentRateLimits(domain, checks);
+
+    assertEquals(2, limiterCalls.size());
+    for (RateLimitRequest request : limiterCalls) {
+      assertEquals(4, request.getDescriptors().size());
+      if (request.getHitsAddend() != null) {
+        assertEquals(3, request.getHitsAddend().intValue());
+        verifyEntry(request.getDescriptors().get(0), 4, "uprn", "2");
+      } else {
+        verifyEntry(request.getDescriptors().get(0), 4, "uprn", "1");
+      }
+    }
+  }
+
+  @Test
+  public void shouldLimitRequestsInFlight() throws Exception {
+    settings.setMaxDescriptorsPerRequest(2);
+    settings.setMaxRequestsInFlight(2);
+    List<FulfilmentCheck> checks = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      checks.add(check(i + 1, null, null));
+    }
+
+    List<FulfilmentVerdict> verdicts = rateLimiterClient.checkFulfilmentRateLimits(domain, checks);
+
+    assertEquals(8, limiterCalls.size());
+    assertTrue("in flight: " + maxInFlight.get(), maxInFlight.get() <= 2);
+    assertTrue(verdicts.stream().allMatch(FulfilmentVerdict::isAllowed));
+  }
+
+  @Test
+  public void shouldRejectInvalidCheckBeforeSendingAny() {
+    List<FulfilmentCheck> checks = List.of(check(1, null, null), check(2, "", null));
+
+    CTPException exception =
+        assertThrows(
+            CTPException.class, () -> rateLimiterClient.checkFulfilmentRateLimits(domain, checks));
+
+    assertTrue(exception.getMessage(), exception.getMessage().contains("check 1"));
+    assertTrue(exception.getMessage(), exception.getMessage().contains("cannot be blank"));
+    assertEquals(0, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldRejectMissingDomainForEmptyList() {
+    assertThrows(
+        CTPException.class, () -> rateLimiterClient.checkFulfilmentRateLimits(null, List.of()));
+  }
+
+  @Test
+  public void shouldAcceptEmptyList() throws Exception {
+    assertTrue(rateLimiterClient.checkFulfilmentRateLimits(domain, List.of()).isEmpty());
+    assertEquals(0, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldAnswerCachedBreachesWithoutSendingThem() throws Exception {
+    rateLimiterClient.setLimitBreachCache(new LimitBreachCache(100));
+    rateLimiterClient.checkFulfilmentRateLimits(domain, List.of(check(BREACHING_UPRN, null, null)));
+
+    List<FulfilmentVerdict> verdicts =
+        rateLimiterClient.checkFulfilmentRateLimits(
+            domain, List.of(check(BREACHING_UPRN, null, null), check(2, null, null)));
+
+    assertEquals(2, limiterCalls.size());
+    assertEquals(2, limiterCalls.get(1).getDescriptors().size());
+    assertFalse(verdicts.get(0).isAllowed());
+    assertTrue(verdicts.get(1).isAllowed());
+  }
+
+  @Test
+  public void shouldFailOpenWhenLimiterFails() throws Exception {
+    rateLimiterClient =
+        new RateLimiterClient(
+            request -> {
+              throw new IllegalStateException("limiter down");
+            },
+            circuitBreaker,
+            ENCRYPT_PASSWORD);
+
+    List<FulfilmentVerdict> verdicts =
+        rateLimiterClient.checkFulfilmentRateLimits(domain, List.of(check(1, null, null)));
+
+    assertTrue(verdicts.get(0).isAllowed());
+    assertNull(verdicts.get(0).getLimitExceeded());
+  }
+
+  private FulfilmentCheck check(long uprn, String telNo, Integer weight) {
+    return FulfilmentCheck.builder()
+        .product(product)
+        .caseType(CaseType.HH)
+        .uprn(new UniquePropertyReferenceNumber(Long.toString(uprn)))
+        .telNo(telNo)
+        .weight(weight)
+        .build();
+  }
+
+  private String toJson(RateLimitResponse response) {
+    try {
+      return new ObjectMapper().writeValueAsString(response);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
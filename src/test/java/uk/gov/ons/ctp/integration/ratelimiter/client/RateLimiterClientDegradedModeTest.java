@@ -0,0 +1,85 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class contains unit tests for local limiting while the circuit breaker is open. */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterClientDegradedModeTest extends RateLimiterClientTestBase {
+
+  @Before
+  public void setUpDegradedMode() {
+    rateLimiterClient.setDegradedModeLimiter(new DegradedModeLimiter(1, 100));
+  }
+
+  @Test
+  public void shouldLimitLocallyWithCircuitBreakerOpen() throws Exception {
+    // The limiter answers once, and then the circuit breaker opens
+    when(restClient.postResource(eq("/json"), any(), eq(byte[].class), any(), any()))
+        .thenReturn(responseBody(okResponse(2)))
+        .thenThrow(circuitBreakerOpenException);
+
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+    ResponseStatusException e =
+        assertThrows(
+            ResponseStatusException.class,
+            () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+    RateLimitResponse localResponse =
+        new ObjectMapper().readValue(e.getReason(), RateLimitResponse.class);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, localResponse.getStatuses().get(0).getCode());
+  }
+
+  @Test
+  public void shouldFailOpenForUnlearnedDescriptors() throws Exception {
+    mockRateLimitException(circuitBreakerOpenException);
+
+    for (int i = 0; i < 10; i++) {
+      rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+    }
+  }
+
+  @Test
+  public void shouldLearnLimitsFromBreach() throws Exception {
+    when(restClient.postResource(eq("/json"), any(), eq(byte[].class), any(), any()))
+        .thenThrow(overTheLimitException())
+        .thenThrow(circuitBreakerOpenException);
+
+    assertThrows(
+        ResponseStatusException.class,
+        () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    // The fixture limit of 100 per hour leaves tokens for this node
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+  }
+
+  private RateLimitResponse okResponse(int requestsPerUnit) {
+    LimitStatus status =
+        LimitStatus.builder()
+            .code(LimitStatus.CODE_OK)
+            .currentLimit(new CurrentLimit(requestsPerUnit, "HOUR"))
+            .build();
+    return RateLimitResponse.builder()
+        .overallCode(LimitStatus.CODE_OK)
+        .statuses(List.of(status))
+        .build();
+  }
+}
@@ -8,7 +8,6 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import uk.gov.ons.ctp.common.error.CTPException;
 import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
@@ -110,8 +109,7 @@ public class RateLimiterClientEqLaunchTest extends RateLimiterClientTestBase {
       rateLimiterClient.checkEqLaunchLimit(domain, AN_IPv4_ADDRESS, 10);
       fail();
     } catch (ResponseStatusException e) {
-      assertEquals(failureException, e);
-      assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+      verifyLimitBreach(failureException, e);
     }
     verifiedRequestSentToLimiter();
   }
@@ -1,5 +1,6 @@
 package uk.gov.ons.ctp.integration.ratelimiter.client;
 
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -8,7 +9,6 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import uk.gov.ons.ctp.common.FixtureHelper;
 import uk.gov.ons.ctp.common.domain.CaseType;
@@ -123,10 +123,13 @@ public class RateLimiterClientFulfilmentTest extends RateLimiterClientTestBase {
           domain, product, caseType, AN_IPv4_ADDRESS, uprn, "0171 3434");
       fail();
     } catch (ResponseStatusException e) {
-      assertEquals(failureException, e);
-      assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+      RateLimitExceededException breach = verifyLimitBreach(failureException, e);
+      RateLimitRequest request = verifiedRequestSentToLimiter();
+      assertEquals(request.getDescriptors().subList(0, 3), breach.getBreachedDescriptors());
+      assertEquals(3, breach.getBreachedLimits().size());
+      assertEquals(100, breach.getBreachedLimits().get(0).getRequestsPerUnit());
+      assertEquals(200, breach.getBreachedLimits().get(2).getRequestsPerUnit());
     }
-    verifiedRequestSentToLimiter();
   }
 
   @Test
@@ -213,6 +216,36 @@ public class RateLimiterClientFulfilmentTest extends RateLimiterClientTestBase {
     assertTrue(exception.getMessage(), exception.getMessage().contains("cannot be blank"));
   }
 
+  @Test
+  public void shouldSendWeightAsHitsAddend() throws Exception {
+    rateLimiterClient.checkFulfilmentRateLimit(
+        domain, product, caseType, AN_IPv4_ADDRESS, uprn, "0123 3434333", 5);
+
+    RateLimitRequest request = verifiedRequestSentToLimiter();
+    assertEquals(5, request.getHitsAddend().intValue());
+    assertEquals(5, request.getDescriptors().size());
+  }
+
+  @Test
+  public void shouldNotSendHitsAddendForSingleFulfilment() throws Exception {
+    rateLimiterClient.checkFulfilmentRateLimit(
+        domain, product, caseType, AN_IPv4_ADDRESS, uprn, "0123 3434333", 1);
+
+    assertNull(verifiedRequestSentToLimiter().getHitsAddend());
+  }
+
+  @Test
+  public void checkFulfilmentRateLimit_zeroWeight() {
+    CTPException exception =
+        assertThrows(
+            CTPException.class,
+            () ->
+                rateLimiterClient.checkFulfilmentRateLimit(
+                    domain, product, caseType, AN_IPv4_ADDRESS, uprn, "0171 3434", 0));
+    assertTrue(exception.getMessage(), exception.getMessage().contains("'weight' must be"));
+    verifyEnvoyLimiterNotCalled();
+  }
+
   private void docheckFulfilmentRateLimit_belowThreshold(boolean useTelNo, boolean useIpAddress)
       throws CTPException {
 
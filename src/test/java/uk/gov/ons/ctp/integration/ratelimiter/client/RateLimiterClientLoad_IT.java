@@ -0,0 +1,226 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.rest.RestClient;
+import uk.gov.ons.ctp.common.rest.RestClientConfig;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.common.product.model.Product.DeliveryChannel;
+import uk.gov.ons.ctp.integration.common.product.model.Product.ProductGroup;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+
+/**
+ * This is a program for measuring the throughput and latency of the client against the in-process
+ * {@link FakeEnvoyLimiter}. It is not run by the build, but can be run with, for example:
+ *
+ * <pre>
+ * mvn test -Dtest=RateLimiterClientLoad_IT -Dload.concurrency=32 -Dload.seconds=30
+ * </pre>
+ *
+ * <p>Each check method is driven in turn by 'load.concurrency' threads, each calling it
+ * back-to-back for 'load.warmupSeconds' and then 'load.seconds'. The limiter can be made to
+ * respond after 'load.latencyMillis', and to fail a fraction 'load.errorRate' of checks. The
+ * latency percentiles and throughput of the measured calls are printed for each method.
+ */
+public class RateLimiterClientLoad_IT {
+  private static final String PASSWORD = "password";
+
+  private int concurrency = Integer.getInteger("load.concurrency", 16);
+  private int warmupSeconds = Integer.getInteger("load.warmupSeconds", 2);
+  private int seconds = Integer.getInteger("load.seconds", 10);
+  private int latencyMillis = Integer.getInteger("load.latencyMillis", 0);
+  private double errorRate = Double.parseDouble(System.getProperty("load.errorRate", "0"));
+
+  private FakeEnvoyLimiter limiter;
+  private RateLimiterClient client;
+  private ExecutorService executor;
+
+  private Product product =
+      new Product(
+          "F1",
+          ProductGroup.QUESTIONNAIRE,
+          "Big print",
+          null,
+          true,
+          null,
+          DeliveryChannel.SMS,
+          null,
+          null,
+          null);
+
+  @Before
+  public void setUp() throws Exception {
+    limiter = FakeEnvoyLimiter.start(FakeEnvoyLimiterTest.limits());
+    limiter.setLatency(Duration.ofMillis(latencyMillis));
+    limiter.setErrors(errorRate, 500);
+
+    RestClientConfig restClientConfig =
+        new RestClientConfig(
+            "http",
+            "127.0.0.1",
+            Integer.toString(limiter.getPort()),
+            "",
+            "",
+            concurrency,
+            concurrency,
+            0,
+            0,
+            0);
+    Map<HttpStatus, HttpStatus> httpErrorMapping = new HashMap<>();
+    httpErrorMapping.put(HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+    RestClient restClient =
+        new RestClient(restClientConfig, httpErrorMapping, HttpStatus.INTERNAL_SERVER_ERROR);
+
+    // Minimalist circuit breaker, which never opens
+    CircuitBreaker circuitBreaker =
+        new CircuitBreaker() {
+          public <T> T run(Supplier<T> toRun, Function<Throwable, T> fallback) {
+            try {
+              return toRun.get();
+            } catch (Throwable t) {
+              return fallback.apply(t);
+            }
+          }
+        };
+
+    client = new RateLimiterClient(restClient, circuitBreaker, PASSWORD);
+    executor = Executors.newFixedThreadPool(concurrency);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    limiter.close();
+  }
+
+  @Test
+  public void loadFulfilmentChecks() throws Exception {
+    run(
+        "fulfilment",
+        random ->
+            client.checkFulfilmentRateLimit(
+                Domain.RH,
+                product,
+                CaseType.HH,
+                randomIpAddress(random),
+                new UniquePropertyReferenceNumber(Long.toString(1 + random.nextInt(1_000_000))),
+                "0771" + (100_000 + random.nextInt(900_000))));
+  }
+
+  @Test
+  public void loadWebformChecks() throws Exception {
+    run("webform", random -> client.checkWebformRateLimit(Domain.RH, randomIpAddress(random)));
+  }
+
+  @Test
+  public void loadEqLaunchChecks() throws Exception {
+    run("eqLaunch", random -> client.checkEqLaunchLimit(Domain.RH, randomIpAddress(random), 10));
+  }
+
+  private void run(String name, Check check) throws Exception {
+    drive(check, warmupSeconds);
+    Result result = drive(check, seconds);
+
+    long[] nanos = result.nanos;
+    Arrays.sort(nanos);
+    System.out.printf(
+        "%n%s: %d threads, %d calls in %ds (%d over limit), %.0f calls/s%n"
+            + "  p50 %.3fms  p99 %.3fms  p999 %.3fms  max %.3fms%n",
+        name,
+        concurrency,
+        nanos.length,
+        seconds,
+        result.overLimit,
+        nanos.length / (double) seconds,
+        millis(percentile(nanos, 0.50)),
+        millis(percentile(nanos, 0.99)),
+        millis(percentile(nanos, 0.999)),
+        millis(nanos.length == 0 ? 0 : nanos[nanos.length - 1]));
+  }
+
+  // Calls the check from every thread until the time is up, recording the time of each call
+  private Result drive(Check check, int durationSeconds) throws Exception {
+    long endNanos = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+    Future<?>[] workers = new Future<?>[concurrency];
+    Result[] results = new Result[concurrency];
+    for (int i = 0; i < concurrency; i++) {
+      Result result = new Result();
+      results[i] = result;
+      workers[i] =
+          executor.submit(
+              () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long start;
+                while ((start = System.nanoTime()) < endNanos) {
+                  try {
+                    check.run(random);
+                  } catch (ResponseStatusException e) {
+                    result.overLimit++;
+                  }
+                  result.add(System.nanoTime() - start);
+                }
+                return null;
+              });
+    }
+
+    Result total = new Result();
+    for (int i = 0; i < concurrency; i++) {
+      workers[i].get();
+      total.overLimit += results[i].overLimit;
+      for (int j = 0; j < results[i].count; j++) {
+        total.add(results[i].nanos[j]);
+      }
+    }
+    total.nanos = Arrays.copyOf(total.nanos, total.count);
+    return total;
+  }
+
+  private String randomIpAddress(ThreadLocalRandom random) {
+    return "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+  }
+
+  private long percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+  }
+
+  private double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private interface Check {
+    void run(ThreadLocalRandom random) throws Exception;
+  }
+
+  // Call times of a worker, held unboxed so recording them does not disturb the measurement
+  private static class Result {
+    private long[] nanos = new long[1024];
+    private int count;
+    private long overLimit;
+
+    void add(long callNanos) {
+      if (count == nanos.length) {
+        nanos = Arrays.copyOf(nanos, count * 2);
+      }
+      nanos[count++] = callNanos;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class contains unit tests for the metrics of limiter calls and verdicts. */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterClientMetricsTest extends RateLimiterClientTestBase {
+  private static final String WEBFORM_LAYOUT = "request,ipAddress";
+
+  private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @Before
+  public void setUpMetrics() {
+    rateLimiterClient.setMetrics(new RateLimiterMetrics(registry));
+  }
+
+  @Test
+  public void shouldTimeCallAndCountOkVerdict() throws Exception {
+    RateLimitResponse ok =
+        new RateLimitResponse(
+            LimitStatus.CODE_OK,
+            List.of(LimitStatus.builder().code(LimitStatus.CODE_OK).limitRemaining(42).build()),
+            null);
+    when(restClient.postResource(eq("/json"), any(), eq(byte[].class), any(), any()))
+        .thenReturn(responseBody(ok));
+
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+
+    assertEquals(1, verdicts("OK").count());
+    assertEquals(1, calls("OK").count());
+    assertEquals(42, minRemaining(WEBFORM_LAYOUT));
+  }
+
+  @Test
+  public void shouldCountOverLimitVerdict() throws Exception {
+    mockRateLimitException(overTheLimitException());
+
+    assertThrows(
+        ResponseStatusException.class,
+        () -> rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    assertEquals(1, verdicts("OVER_LIMIT").count());
+    assertEquals(1, calls("OVER_LIMIT").count());
+    assertEquals(999, minRemaining(WEBFORM_LAYOUT));
+  }
+
+  @Test
+  public void shouldGaugeLowestRemainingOfRecentWindows() {
+    AtomicLong now = new AtomicLong(60_000);
+    RateLimiterMetrics metrics = new RateLimiterMetrics(registry, Duration.ofMinutes(1), now::get);
+    RateLimitRequest request =
+        new RateLimitRequest(
+            domain.getDomainName(),
+            List.of(
+                new LimitDescriptor(
+                    List.of(
+                        new DescriptorEntry("request", "WEBFORM"),
+                        new DescriptorEntry("ipAddress", AN_IPv4_ADDRESS)))),
+            null);
+
+    metrics.recordRemaining(request, remaining(42));
+    metrics.recordRemaining(request, remaining(7));
+    metrics.recordRemaining(request, remaining(30));
+
+    // reading the gauge does not change it
+    assertEquals(7, minRemaining(WEBFORM_LAYOUT));
+    assertEquals(7, minRemaining(WEBFORM_LAYOUT));
+
+    // the previous window still counts
+    now.set(120_000);
+    metrics.recordRemaining(request, remaining(50));
+    assertEquals(7, minRemaining(WEBFORM_LAYOUT));
+
+    now.set(180_000);
+    assertEquals(50, minRemaining(WEBFORM_LAYOUT));
+    now.set(240_000);
+    assertTrue(Double.isNaN(minRemaining(WEBFORM_LAYOUT)));
+  }
+
+  @Test
+  public void shouldCountLimiterErrorAsFailOpen() throws Exception {
+    mockRateLimitException(badRequestException());
+
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+
+    assertEquals(1, verdicts("ERROR").count());
+    assertEquals(1, calls("ERROR").count());
+  }
+
+  @Test
+  public void shouldCountCircuitOpenWithoutTimingCall() throws Exception {
+    mockRateLimitException(circuitBreakerOpenException);
+
+    rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+
+    assertEquals(1, verdicts("CIRCUIT_OPEN").count());
+    assertNull(registry.find(RateLimiterMetrics.CALLS).timer());
+  }
+
+  private RateLimitResponse remaining(int limitRemaining) {
+    LimitStatus status =
+        LimitStatus.builder().code(LimitStatus.CODE_OK).limitRemaining(limitRemaining).build();
+    return new RateLimitResponse(LimitStatus.CODE_OK, List.of(status), null);
+  }
+
+  private Counter verdicts(String verdict) {
+    return registry
+        .get(RateLimiterMetrics.VERDICTS)
+        .tag(RateLimiterMetrics.TAG_CHECK, "webform")
+        .tag(RateLimiterMetrics.TAG_LAYOUT, WEBFORM_LAYOUT)
+        .tag(RateLimiterMetrics.TAG_VERDICT, verdict)
+        .counter();
+  }
+
+  private Timer calls(String outcome) {
+    return registry
+        .get(RateLimiterMetrics.CALLS)
+        .tag(RateLimiterMetrics.TAG_CHECK, "webform")
+        .tag(RateLimiterMetrics.TAG_OUTCOME, outcome)
+        .timer();
+  }
+
+  private double minRemaining(String layout) {
+    return registry
+        .get(RateLimiterMetrics.MIN_REMAINING)
+        .tag(RateLimiterMetrics.TAG_LAYOUT, layout)
+        .gauge()
+        .value();
+  }
+}
@@ -1,6 +1,9 @@
 package uk.gov.ons.ctp.integration.ratelimiter.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
@@ -10,6 +13,8 @@ import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import org.junit.Before;
@@ -56,9 +61,8 @@ public abstract class RateLimiterClientTestBase {
                   return runner.get();
                 } catch (Throwable t) {
                   // execute the circuitBreaker.run second argument (the fallback Function)
-                  fallback.apply(t);
+                  return fallback.apply(t);
                 }
-                return null;
               }
             })
         .when(circuitBreaker)
@@ -71,15 +75,20 @@ public abstract class RateLimiterClientTestBase {
     simulateCircuitBreaker();
   }
 
-  @Captor ArgumentCaptor<RateLimitRequest> limitRequestCaptor;
+  @Captor ArgumentCaptor<byte[]> limitRequestCaptor;
 
+  // The limiter request, as decoded from the json body posted to the limiter
   RateLimitRequest verifiedRequestSentToLimiter() {
-    verify(restClient).postResource(any(), limitRequestCaptor.capture(), any(), any());
-    return limitRequestCaptor.getValue();
+    verify(restClient).postResource(any(), limitRequestCaptor.capture(), any(), any(), any());
+    try {
+      return new ObjectMapper().readValue(limitRequestCaptor.getValue(), RateLimitRequest.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   void verifyEnvoyLimiterNotCalled() {
-    verify(restClient, never()).postResource(any(), limitRequestCaptor.capture(), any(), any());
+    verify(restClient, never()).postResource(any(), any(), any(), any(), any());
   }
 
   void verifyEntry(
@@ -102,6 +111,11 @@ public abstract class RateLimiterClientTestBase {
     return overTheLimitException(exampleRateLimitResponse());
   }
 
+  // The limiters response body, as the RestClient returns it
+  byte[] responseBody(RateLimitResponse resp) throws Exception {
+    return new ObjectMapper().writeValueAsBytes(resp);
+  }
+
   ResponseStatusException badRequestException() {
     return new ResponseStatusException(HttpStatus.BAD_REQUEST, "bad request", null);
   }
@@ -111,7 +125,18 @@ public abstract class RateLimiterClientTestBase {
     return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, corruptedJson, null);
   }
 
+  RateLimitExceededException verifyLimitBreach(ResponseStatusException expected, Throwable actual) {
+    assertTrue(actual instanceof RateLimitExceededException, "not a typed breach: " + actual);
+    RateLimitExceededException breach = (RateLimitExceededException) actual;
+    assertSame(expected, breach.getCause());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, breach.getStatus());
+    assertEquals(expected.getReason(), breach.getReason());
+    assertNotNull(breach.getRequest());
+    assertNotNull(breach.getLimiterResponse());
+    return breach;
+  }
+
   void mockRateLimitException(Throwable t) {
-    when(restClient.postResource(eq("/json"), any(), eq(RateLimitResponse.class))).thenThrow(t);
+    when(restClient.postResource(eq("/json"), any(), eq(byte[].class), any(), any())).thenThrow(t);
   }
 }
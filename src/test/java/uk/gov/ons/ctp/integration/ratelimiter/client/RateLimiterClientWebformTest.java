@@ -8,7 +8,6 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import uk.gov.ons.ctp.common.error.CTPException;
 import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
@@ -79,8 +78,7 @@ public class RateLimiterClientWebformTest extends RateLimiterClientTestBase {
       rateLimiterClient.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
       fail();
     } catch (ResponseStatusException e) {
-      assertEquals(failureException, e);
-      assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+      verifyLimitBreach(failureException, e);
     }
     verifiedRequestSentToLimiter();
   }
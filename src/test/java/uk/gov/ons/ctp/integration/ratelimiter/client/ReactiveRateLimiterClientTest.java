@@ -0,0 +1,192 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import java.util.function.Function;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.common.FixtureHelper;
+import uk.gov.ons.ctp.common.domain.CaseType;
+import uk.gov.ons.ctp.common.domain.UniquePropertyReferenceNumber;
+import uk.gov.ons.ctp.common.error.CTPException;
+import uk.gov.ons.ctp.integration.common.product.model.Product;
+import uk.gov.ons.ctp.integration.common.product.model.Product.DeliveryChannel;
+import uk.gov.ons.ctp.integration.common.product.model.Product.ProductGroup;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class contains unit tests for the reactive limiter client. */
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveRateLimiterClientTest {
+  private static final String AN_IPv4_ADDRESS = "123.111.222.23";
+
+  @Mock ReactiveRateLimiterTransport transport;
+  @Mock CallNotPermittedException circuitBreakerOpenException;
+  @Captor ArgumentCaptor<RateLimitRequest> limitRequestCaptor;
+
+  private Domain domain = Domain.RH;
+  private ReactiveRateLimiterClient client;
+
+  private Product product =
+      new Product(
+          "P1",
+          ProductGroup.QUESTIONNAIRE,
+          "Large print Welsh",
+          null,
+          true,
+          null,
+          DeliveryChannel.SMS,
+          null,
+          null,
+          null);
+
+  // Minimal circuit breaker which calls the fallback when the protected call errors
+  private ReactiveCircuitBreaker circuitBreaker =
+      new ReactiveCircuitBreaker() {
+        @Override
+        public <T> Mono<T> run(Mono<T> toRun, Function<Throwable, Mono<T>> fallback) {
+          return toRun.onErrorResume(fallback);
+        }
+
+        @Override
+        public <T> Flux<T> run(Flux<T> toRun, Function<Throwable, Flux<T>> fallback) {
+          return toRun.onErrorResume(fallback);
+        }
+      };
+
+  @Before
+  public void setUp() {
+    client = new ReactiveRateLimiterClient(transport, circuitBreaker, "password");
+  }
+
+  @Test
+  public void shouldPassFulfilmentBelowThreshold() {
+    when(transport.checkLimit(any(), any())).thenReturn(Mono.just(new RateLimitResponse()));
+
+    Throwable error =
+        errorFrom(
+            client.checkFulfilmentRateLimit(
+                domain,
+                product,
+                CaseType.HH,
+                AN_IPv4_ADDRESS,
+                new UniquePropertyReferenceNumber("24234234"),
+                "0171 3434"));
+
+    assertNull(error);
+    RateLimitRequest request = verifiedRequestSentToLimiter();
+    assertEquals(5, request.getDescriptors().size());
+  }
+
+  @Test
+  public void shouldNotCallLimiterUntilSubscribed() {
+    client.checkWebformRateLimit(domain, AN_IPv4_ADDRESS);
+    verify(transport, never()).checkLimit(any(), any());
+  }
+
+  @Test
+  public void shouldErrorWithLimitBreachAboveThreshold() throws Exception {
+    ResponseStatusException failureException = overTheLimitException();
+    when(transport.checkLimit(any(), any())).thenReturn(Mono.error(failureException));
+
+    Throwable error = errorFrom(client.checkWebformRateLimit(domain, AN_IPv4_ADDRESS));
+
+    assertTrue(error instanceof RateLimitExceededException);
+    RateLimitExceededException breach = (RateLimitExceededException) error;
+    assertSame(failureException, breach.getCause());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, breach.getStatus());
+    assertEquals(failureException.getReason(), breach.getReason());
+    assertEquals(verifiedRequestSentToLimiter(), breach.getRequest());
+  }
+
+  @Test
+  public void shouldSignalInvalidArgumentAsError() {
+    Throwable error = errorFrom(client.checkEqLaunchLimit(domain, AN_IPv4_ADDRESS, 0));
+
+    assertTrue(error instanceof CTPException);
+    assertTrue(error.getMessage().contains("'loadSheddingModulus' cannot be zero"));
+    verify(transport, never()).checkLimit(any(), any());
+  }
+
+  @Test
+  public void shouldSkipCheckForInvalidIpAddress() {
+    assertNull(errorFrom(client.checkEqLaunchLimit(domain, "badlyformattedIpAddress", 10)));
+    verify(transport, never()).checkLimit(any(), any());
+  }
+
+  @Test
+  public void shouldSendEqLaunchModulo() {
+    when(transport.checkLimit(any(), any())).thenReturn(Mono.empty());
+
+    assertNull(errorFrom(client.checkEqLaunchLimit(domain, "124.125.126.249", 23)));
+
+    LimitDescriptor descriptor = verifiedRequestSentToLimiter().getDescriptors().get(0);
+    assertEquals("EQLAUNCH", descriptor.getEntries().get(0).getValue());
+    assertEquals("19", descriptor.getEntries().get(1).getValue());
+  }
+
+  @Test
+  public void shouldQuietlyAcceptOtherLimiterError() {
+    when(transport.checkLimit(any(), any()))
+        .thenReturn(
+            Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "bad request", null)));
+
+    assertNull(errorFrom(client.checkWebformRateLimit(domain, AN_IPv4_ADDRESS)));
+  }
+
+  @Test
+  public void shouldQuietlyAcceptCorruptedLimiterJson() {
+    when(transport.checkLimit(any(), any()))
+        .thenReturn(
+            Mono.error(
+                new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "aoeu<.p#$%^", null)));
+
+    assertNull(errorFrom(client.checkWebformRateLimit(domain, AN_IPv4_ADDRESS)));
+  }
+
+  @Test
+  public void shouldQuietlyAcceptOpenCircuitBreaker() {
+    when(transport.checkLimit(any(), any())).thenReturn(Mono.error(circuitBreakerOpenException));
+
+    assertNull(errorFrom(client.checkWebformRateLimit(domain, AN_IPv4_ADDRESS)));
+  }
+
+  // Returns the error signalled by the Mono, or null if it completed normally
+  private Throwable errorFrom(Mono<Void> result) {
+    return result.then(Mono.<Throwable>empty()).onErrorResume(Mono::just).block();
+  }
+
+  private RateLimitRequest verifiedRequestSentToLimiter() {
+    verify(transport)
+        .checkLimit(limitRequestCaptor.capture(), eq(ResponseDetail.OVERALL_CODE));
+    return limitRequestCaptor.getValue();
+  }
+
+  private ResponseStatusException overTheLimitException() throws Exception {
+    RateLimitResponse resp = FixtureHelper.loadPackageFixtures(RateLimitResponse[].class).get(0);
+    String tooManyRequestsString = new ObjectMapper().writeValueAsString(resp);
+    return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, tooManyRequestsString, null);
+  }
+}
@@ -0,0 +1,168 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests counting hits in Redis under the limiter's keys. */
+public class RedisRateLimiterTransportTest {
+  private static final String LIMITS =
+      String.join(
+          "\n",
+          "domain: d",
+          "descriptors:",
+          "  - key: request",
+          "    value: WEBFORM",
+          "    descriptors:",
+          "      - key: ip",
+          "        rate_limit: {unit: minute, requests_per_unit: 3}",
+          "  - key: uprn",
+          "    rate_limit: {unit: hour, requests_per_unit: 100}");
+
+  // Ten minutes and ten seconds into an hour
+  private static final long NOW = 1000 * 3600_000L + 610_000;
+  private static final String WEBFORM_KEY = "rl_d_request_WEBFORM_ip_1.2.3.4_3600600";
+  private static final String UPRN_KEY = "rl_d_uprn_7_3600000";
+
+  private FakeRedisServer redis;
+  private JedisPool pool;
+  private RedisRateLimiterTransport transport;
+
+  @Before
+  public void setUp() throws Exception {
+    redis = FakeRedisServer.start();
+    pool = new JedisPool("127.0.0.1", redis.getPort());
+    transport =
+        new RedisRateLimiterTransport(
+            EnvoyLimitConfig.load(new StringReader(LIMITS)), pool, "rl_", 0, () -> NOW);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.close();
+    redis.close();
+  }
+
+  @Test
+  public void shouldBuildLimiterCacheKey() {
+    assertEquals(
+        WEBFORM_KEY,
+        transport.cacheKey("d", descriptor("request", "WEBFORM", "ip", "1.2.3.4"), 60, NOW));
+    assertEquals(UPRN_KEY, transport.cacheKey("d", descriptor("uprn", "7"), 3600, NOW));
+  }
+
+  @Test
+  public void shouldIncrementAndExpireEachLimitedDescriptor() {
+    RateLimitResponse response =
+        transport.checkLimit(
+            request(
+                2,
+                descriptor("request", "WEBFORM", "ip", "1.2.3.4"),
+                descriptor("uprn", "7"),
+                descriptor("other", "x")));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(1, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals("50s", response.getStatuses().get(0).getDurationUntilReset());
+    assertEquals(98, response.getStatuses().get(1).getLimitRemaining());
+    assertEquals("2990s", response.getStatuses().get(1).getDurationUntilReset());
+    assertNull(response.getStatuses().get(2).getCurrentLimit());
+
+    assertEquals("2", redis.get(WEBFORM_KEY));
+    assertEquals(60, redis.ttl(WEBFORM_KEY));
+    assertEquals("2", redis.get(UPRN_KEY));
+    assertEquals(3600, redis.ttl(UPRN_KEY));
+    assertEquals(
+        List.of(
+            List.of("INCRBY", WEBFORM_KEY, "2"),
+            List.of("EXPIRE", WEBFORM_KEY, "60"),
+            List.of("INCRBY", UPRN_KEY, "2"),
+            List.of("EXPIRE", UPRN_KEY, "3600")),
+        redis.getCommands());
+  }
+
+  @Test
+  public void shouldShareCountsWithLimiter() {
+    // As counted by the limiter
+    redis.set(WEBFORM_KEY, "3");
+
+    RateLimitExceededException exception =
+        assertThrows(
+            RateLimitExceededException.class,
+            () ->
+                transport.checkLimit(
+                    request(null, descriptor("request", "WEBFORM", "ip", "1.2.3.4"))));
+
+    LimitStatus status = exception.getLimiterResponse().getStatuses().get(0);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, status.getCode());
+    assertEquals(0, status.getLimitRemaining());
+    assertEquals(1, exception.getBreachedDescriptors().size());
+    assertEquals("4", redis.get(WEBFORM_KEY));
+  }
+
+  @Test
+  public void shouldAddExpirationJitter() {
+    transport =
+        new RedisRateLimiterTransport(
+            EnvoyLimitConfig.load(new StringReader(LIMITS)), pool, "rl_", 300, () -> NOW);
+
+    transport.checkLimit(request(null, descriptor("uprn", "7")));
+
+    long ttl = redis.ttl(UPRN_KEY);
+    assertTrue("ttl: " + ttl, ttl >= 3600 && ttl < 3900);
+  }
+
+  @Test
+  public void shouldNotCallRedisForUnlimitedRequest() {
+    RateLimitResponse response = transport.checkLimit(request(null, descriptor("other", "x")));
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(0, redis.getCommands().size());
+  }
+
+  @Test
+  public void shouldCloseOwnedPoolWhenClosed() {
+    EnvoyLimitConfig config = EnvoyLimitConfig.load(new StringReader(LIMITS));
+    transport.close();
+    assertFalse(pool.isClosed());
+
+    RedisRateLimiterTransport.owning(config, pool, "rl_", 0).close();
+    assertTrue(pool.isClosed());
+  }
+
+  @Test
+  public void shouldFailWhenRedisUnavailable() throws Exception {
+    redis.close();
+
+    assertThrows(
+        JedisException.class, () -> transport.checkLimit(request(null, descriptor("uprn", "7"))));
+  }
+
+  private RateLimitRequest request(Integer hitsAddend, LimitDescriptor... descriptors) {
+    return new RateLimitRequest("d", List.of(descriptors), hitsAddend);
+  }
+
+  private LimitDescriptor descriptor(String... keysAndValues) {
+    List<DescriptorEntry> entries = new ArrayList<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      entries.add(new DescriptorEntry(keysAndValues[i], keysAndValues[i + 1]));
+    }
+    return new LimitDescriptor(entries);
+  }
+}
@@ -0,0 +1,76 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.Test;
+import uk.gov.ons.ctp.integration.ratelimiter.model.CurrentLimit;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+
+public class ResetTimesTest {
+  // 10:30:00 on some day, in epoch millis
+  private static final long HALF_PAST_TEN = ((19000L * 24 + 10) * 3600 + 30 * 60) * 1000;
+
+  @Test
+  public void shouldParseProtobufJsonDurations() {
+    assertEquals(2310_000, ResetTimes.parseMillis("2310s"));
+    assertEquals(250, ResetTimes.parseMillis("0.250s"));
+    assertEquals(1, ResetTimes.parseMillis("0.000000001s"));
+    assertEquals(0, ResetTimes.parseMillis("0s"));
+  }
+
+  @Test
+  public void shouldRejectMissingOrMalformedDurations() {
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.parseMillis(null));
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.parseMillis("s"));
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.parseMillis("2310"));
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.parseMillis("abcs"));
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.parseMillis("-1s"));
+  }
+
+  @Test
+  public void shouldFormatAsProtobufDoes() {
+    assertEquals("2310s", ResetTimes.format(2310, 0));
+    assertEquals("0.250s", ResetTimes.format(0, 250_000_000));
+    assertEquals("1.000340s", ResetTimes.format(1, 340_000));
+    assertEquals("1.000000001s", ResetTimes.format(1, 1));
+    assertEquals("1.500s", ResetTimes.formatMillis(1500));
+  }
+
+  @Test
+  public void shouldSplitIntoSecondsAndNanos() {
+    assertArrayEquals(new long[] {2310, 0}, ResetTimes.parseSecondsAndNanos("2310s"));
+    assertArrayEquals(new long[] {1, 340_000}, ResetTimes.parseSecondsAndNanos("1.000340s"));
+    assertNull(ResetTimes.parseSecondsAndNanos("soon"));
+  }
+
+  @Test
+  public void shouldPreferLimiterDurationToWindowEnd() {
+    LimitStatus status = status("HOUR");
+    status.setDurationUntilReset("90s");
+    assertEquals(90_000, ResetTimes.millisUntilReset(status, HALF_PAST_TEN));
+  }
+
+  @Test
+  public void shouldFallBackToWindowEnd() {
+    assertEquals(30 * 60 * 1000, ResetTimes.millisUntilReset(status("HOUR"), HALF_PAST_TEN));
+    assertEquals(
+        ResetTimes.UNKNOWN, ResetTimes.millisUntilReset(status("FORTNIGHT"), HALF_PAST_TEN));
+    assertEquals(ResetTimes.UNKNOWN, ResetTimes.millisUntilReset(new LimitStatus(), HALF_PAST_TEN));
+  }
+
+  @Test
+  public void shouldRoundRetryAfterUp() {
+    assertEquals(0, ResetTimes.retryAfterSeconds(0));
+    assertEquals(1, ResetTimes.retryAfterSeconds(1));
+    assertEquals(2310, ResetTimes.retryAfterSeconds(2310_000));
+  }
+
+  private LimitStatus status(String unit) {
+    return LimitStatus.builder()
+        .code(LimitStatus.CODE_LIMIT_BREACHED)
+        .currentLimit(new CurrentLimit(10, unit))
+        .build();
+  }
+}
@@ -0,0 +1,209 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.config.SingleFlightSettings;
+import uk.gov.ons.ctp.integration.ratelimiter.config.SingleFlightSettings.FollowerPolicy;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+public class SingleFlightRateLimiterTransportTest {
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  private List<RateLimitRequest> limiterCalls = new ArrayList<>();
+  private CountDownLatch limiterEntered = new CountDownLatch(1);
+  private CountDownLatch releaseLimiter = new CountDownLatch(1);
+  private RuntimeException limiterFailure;
+
+  // Holds the first call until released, so that identical checks can arrive while it is in flight
+  private RateLimiterTransport limiter =
+      request -> {
+        synchronized (limiterCalls) {
+          limiterCalls.add(request);
+        }
+        limiterEntered.countDown();
+        try {
+          releaseLimiter.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        if (limiterFailure != null) {
+          throw limiterFailure;
+        }
+        return new RateLimitResponse(LimitStatus.CODE_OK, new ArrayList<>(), null);
+      };
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareCallBetweenIdenticalChecks() throws Exception {
+    SingleFlightRateLimiterTransport transport = singleFlight(FollowerPolicy.SHARE);
+
+    List<CompletableFuture<RateLimitResponse>> results = checkWithFollowers(transport, 2);
+
+    assertEquals(1, limiterCalls.size());
+    assertSame(results.get(0).get(), results.get(1).get());
+    assertSame(results.get(0).get(), results.get(2).get());
+    assertEquals(1, transport.getLimiterCallCount());
+    assertEquals(2, transport.getCollapsedCallCount());
+  }
+
+  @Test
+  public void shouldShareFailureBetweenIdenticalChecks() throws Exception {
+    limiterFailure = new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "{}");
+    SingleFlightRateLimiterTransport transport = singleFlight(FollowerPolicy.SHARE);
+
+    List<CompletableFuture<RateLimitResponse>> results = checkWithFollowers(transport, 1);
+
+    for (CompletableFuture<RateLimitResponse> result : results) {
+      ExecutionException e = assertThrows(ExecutionException.class, result::get);
+      assertSame(limiterFailure, e.getCause());
+    }
+    assertEquals(1, limiterCalls.size());
+  }
+
+  @Test
+  public void shouldReportFollowersInBackgroundWhenCounted() throws Exception {
+    List<Runnable> reports = new ArrayList<>();
+    SingleFlightRateLimiterTransport transport =
+        new SingleFlightRateLimiterTransport(limiter, settings(FollowerPolicy.COUNT), reports::add);
+
+    List<CompletableFuture<RateLimitResponse>> results = checkWithFollowers(transport, 2);
+    results.get(0).get();
+
+    // the leader has returned without waiting for the followers to be reported
+    assertEquals(1, limiterCalls.size());
+    assertEquals(1, reports.size());
+
+    reports.get(0).run();
+    assertEquals(2, limiterCalls.size());
+    RateLimitRequest report = limiterCalls.get(1);
+    assertEquals("respondenthome", report.getDomain());
+    assertEquals(request().getDescriptors(), report.getDescriptors());
+    assertEquals(2, report.getHitsAddend().intValue());
+  }
+
+  @Test
+  public void shouldMergeFollowerReportsWaitingToBeSent() throws Exception {
+    List<Runnable> reports = new ArrayList<>();
+    SingleFlightRateLimiterTransport transport =
+        new SingleFlightRateLimiterTransport(limiter, settings(FollowerPolicy.COUNT), reports::add);
+    checkWithFollowers(transport, 2);
+
+    limiterEntered = new CountDownLatch(1);
+    releaseLimiter = new CountDownLatch(1);
+    checkWithFollowers(transport, 1);
+
+    assertEquals(1, reports.size());
+    reports.get(0).run();
+    assertEquals(3, limiterCalls.size());
+    assertEquals(3, limiterCalls.get(2).getHitsAddend().intValue());
+  }
+
+  @Test
+  public void shouldNotShareCallBetweenDifferentWeights() throws Exception {
+    SingleFlightRateLimiterTransport transport = singleFlight(FollowerPolicy.SHARE);
+    RateLimitRequest weighted = request();
+    weighted.setHitsAddend(3);
+
+    CompletableFuture<RateLimitResponse> first =
+        CompletableFuture.supplyAsync(() -> transport.checkLimit(request()), executor);
+    limiterEntered.await(10, TimeUnit.SECONDS);
+    CompletableFuture<RateLimitResponse> second =
+        CompletableFuture.supplyAsync(() -> transport.checkLimit(weighted), executor);
+
+    // The weighted check reaches the limiter while the first is still in flight
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (limiterCallCount() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    releaseLimiter.countDown();
+    first.get();
+    second.get();
+
+    assertEquals(2, limiterCallCount());
+    assertEquals(3, limiterCalls.get(1).getHitsAddend().intValue());
+    assertEquals(0, transport.getCollapsedCallCount());
+  }
+
+  @Test
+  public void shouldNotShareCompletedCall() {
+    releaseLimiter.countDown();
+    SingleFlightRateLimiterTransport transport = singleFlight(FollowerPolicy.SHARE);
+
+    transport.checkLimit(request());
+    transport.checkLimit(request());
+
+    assertEquals(2, limiterCalls.size());
+    assertEquals(0, transport.getCollapsedCallCount());
+  }
+
+  // Starts a check, and then the given number of identical checks while it is in flight
+  private List<CompletableFuture<RateLimitResponse>> checkWithFollowers(
+      SingleFlightRateLimiterTransport transport, int followers) throws Exception {
+    long collapsed = transport.getCollapsedCallCount();
+    List<CompletableFuture<RateLimitResponse>> results = new ArrayList<>();
+    results.add(CompletableFuture.supplyAsync(() -> transport.checkLimit(request()), executor));
+    limiterEntered.await(10, TimeUnit.SECONDS);
+    for (int i = 0; i < followers; i++) {
+      results.add(CompletableFuture.supplyAsync(() -> transport.checkLimit(request()), executor));
+    }
+
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (transport.getCollapsedCallCount() - collapsed < followers
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    releaseLimiter.countDown();
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+        .handle((v, e) -> null)
+        .join();
+    return results;
+  }
+
+  private int limiterCallCount() {
+    synchronized (limiterCalls) {
+      return limiterCalls.size();
+    }
+  }
+
+  private SingleFlightRateLimiterTransport singleFlight(FollowerPolicy followerPolicy) {
+    return new SingleFlightRateLimiterTransport(limiter, settings(followerPolicy));
+  }
+
+  private SingleFlightSettings settings(FollowerPolicy followerPolicy) {
+    SingleFlightSettings settings = new SingleFlightSettings();
+    settings.setEnabled(true);
+    settings.setFollowerPolicy(followerPolicy);
+    return settings;
+  }
+
+  private RateLimitRequest request() {
+    LimitDescriptor fulfilment =
+        new LimitDescriptor(List.of(new DescriptorEntry("request", "FULFILMENT")));
+    LimitDescriptor uprn =
+        new LimitDescriptor(
+            List.of(
+                new DescriptorEntry("request", "FULFILMENT"), new DescriptorEntry("uprn", "1")));
+    return new RateLimitRequest("respondenthome", List.of(fulfilment, uprn), null);
+  }
+}
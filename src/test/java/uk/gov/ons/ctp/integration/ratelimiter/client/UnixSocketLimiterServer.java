@@ -0,0 +1,206 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/**
+ * Limiter which answers the '/json' endpoint over a Unix domain socket, checking requests with an
+ * {@link EmbeddedRateLimiterTransport}. Responses can be sent chunked, and connections can be
+ * closed after each response without warning, as an idle limiter connection would be.
+ *
+ * <p>This needs Java 16 or later, and opens the socket reflectively so that it compiles on Java 11.
+ */
+public class UnixSocketLimiterServer implements AutoCloseable {
+  private Path socketPath;
+  private ServerSocketChannel serverChannel;
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  private EmbeddedRateLimiterTransport engine;
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private AtomicInteger connections = new AtomicInteger();
+
+  private volatile boolean chunked;
+  private volatile boolean closeAfterResponse;
+  private volatile long latencyMillis;
+
+  /**
+   * Start a limiter listening on a new socket in a temporary directory.
+   *
+   * @param limits limits to check requests against.
+   * @return the running limiter.
+   * @throws Exception if the socket cannot be opened.
+   */
+  public static UnixSocketLimiterServer start(EnvoyLimitConfig limits) throws Exception {
+    UnixSocketLimiterServer server = new UnixSocketLimiterServer();
+    server.engine = new EmbeddedRateLimiterTransport(limits, 4, 1000);
+    server.socketPath = Files.createTempDirectory("limiter").resolve("limiter.sock");
+    ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+    SocketAddress address =
+        (SocketAddress)
+            Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class)
+                .invoke(null, server.socketPath);
+    server.serverChannel =
+        (ServerSocketChannel)
+            ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+    server.serverChannel.bind(address);
+    server.executor.execute(server::acceptConnections);
+    return server;
+  }
+
+  /** @return the path of the socket. */
+  public Path getSocketPath() {
+    return socketPath;
+  }
+
+  /** @return the number of connections accepted. */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /** @param chunked true to send response bodies with chunked transfer encoding. */
+  public void setChunked(boolean chunked) {
+    this.chunked = chunked;
+  }
+
+  /** @param closeAfterResponse true to close each connection after its first response. */
+  public void setCloseAfterResponse(boolean closeAfterResponse) {
+    this.closeAfterResponse = closeAfterResponse;
+  }
+
+  /** @param latency added before each response is sent. */
+  public void setLatency(Duration latency) {
+    this.latencyMillis = latency.toMillis();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverChannel.close();
+    executor.shutdownNow();
+    Files.deleteIfExists(socketPath);
+    Files.deleteIfExists(socketPath.getParent());
+  }
+
+  private void acceptConnections() {
+    while (serverChannel.isOpen()) {
+      try {
+        SocketChannel channel = serverChannel.accept();
+        connections.incrementAndGet();
+        executor.execute(() -> serve(channel));
+      } catch (IOException e) {
+        // Closed
+      }
+    }
+  }
+
+  private void serve(SocketChannel channel) {
+    try (channel;
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        OutputStream out = Channels.newOutputStream(channel)) {
+      while (true) {
+        byte[] body = readRequestBody(in);
+        if (body == null) {
+          return;
+        }
+        int status = 200;
+        RateLimitResponse response;
+        try {
+          response = engine.checkLimit(objectMapper.readValue(body, RateLimitRequest.class));
+        } catch (RateLimitExceededException e) {
+          status = 429;
+          response = e.getLimiterResponse();
+        }
+        pause();
+        writeResponse(out, status, objectMapper.writeValueAsBytes(response));
+        if (closeAfterResponse) {
+          return;
+        }
+      }
+    } catch (IOException e) {
+      // Disconnected
+    }
+  }
+
+  // Reads the request line and headers, then returns the body, or null if the client has gone
+  private byte[] readRequestBody(InputStream in) throws IOException {
+    String line = readLine(in);
+    if (line == null) {
+      return null;
+    }
+    int contentLength = 0;
+    while ((line = readLine(in)) != null && !line.isEmpty()) {
+      String header = line.toLowerCase(Locale.ROOT);
+      if (header.startsWith("content-length:")) {
+        contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+      }
+    }
+    return in.readNBytes(contentLength);
+  }
+
+  private void writeResponse(OutputStream out, int status, byte[] json) throws IOException {
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    String head = "HTTP/1.1 " + status + " X\r\nContent-Type: application/json\r\n";
+    if (chunked) {
+      head += "Transfer-Encoding: chunked\r\n\r\n";
+      response.write(head.getBytes(StandardCharsets.US_ASCII));
+      // Two chunks, the first with an extension, then trailers
+      int half = json.length / 2;
+      response.write((Integer.toHexString(half) + ";x=y\r\n").getBytes(StandardCharsets.US_ASCII));
+      response.write(json, 0, half);
+      response.write(
+          ("\r\n" + Integer.toHexString(json.length - half) + "\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      response.write(json, half, json.length - half);
+      response.write("\r\n0\r\nX-Trailer: t\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+    } else {
+      head += "Content-Length: " + json.length + "\r\n\r\n";
+      response.write(head.getBytes(StandardCharsets.US_ASCII));
+      response.write(json);
+    }
+    out.write(response.toByteArray());
+    out.flush();
+  }
+
+  private void pause() {
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        return null;
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,202 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import uk.gov.ons.ctp.integration.ratelimiter.client.RateLimiterClient.Domain;
+import uk.gov.ons.ctp.integration.ratelimiter.model.DescriptorEntry;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitDescriptor;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests calling a sidecar limiter over a Unix domain socket. Needs Java 16 or later. */
+public class UnixSocketRateLimiterTransportTest {
+  private UnixSocketLimiterServer limiter;
+  private UnixSocketRateLimiterTransport transport;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeTrue(UnixSocketRateLimiterTransport.isSupported());
+    limiter = UnixSocketLimiterServer.start(EnvoyLimitConfig.load(FakeEnvoyLimiterTest.limits()));
+    transport = new UnixSocketRateLimiterTransport(limiter.getSocketPath(), 2, 1024);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (transport != null) {
+      transport.close();
+    }
+    if (limiter != null) {
+      limiter.close();
+    }
+  }
+
+  @Test
+  public void shouldReuseConnectionForEachCall() {
+    for (int i = 1; i <= 10; i++) {
+      RateLimitResponse response = transport.checkLimit(webform("1", null));
+      assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+      assertEquals(100 - i, response.getStatuses().get(0).getLimitRemaining());
+    }
+
+    assertEquals(1, limiter.getConnections());
+  }
+
+  @Test
+  public void shouldReportBreachWithLimiterResponseAsReason() throws Exception {
+    ResponseStatusException exception =
+        assertThrows(ResponseStatusException.class, () -> transport.checkLimit(webform("1", 101)));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+    RateLimitResponse response =
+        RateLimitResponseDecoder.decode(exception.getReason(), ResponseDetail.LIMITS);
+    assertEquals(LimitStatus.CODE_LIMIT_BREACHED, response.getOverallCode());
+
+    // The connection is still usable after an error status
+    transport.checkLimit(webform("2", null));
+    assertEquals(1, limiter.getConnections());
+  }
+
+  @Test
+  public void shouldReadChunkedResponse() {
+    limiter.setChunked(true);
+
+    transport.checkLimit(webform("1", null));
+    RateLimitResponse response = transport.checkLimit(webform("1", null));
+
+    assertEquals(98, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals(1, limiter.getConnections());
+  }
+
+  @Test
+  public void shouldRetryWhenIdleConnectionWasClosed() throws Exception {
+    limiter.setCloseAfterResponse(true);
+    transport.checkLimit(webform("1", null));
+    // Let the limiter close the connection before it is reused
+    Thread.sleep(100);
+
+    RateLimitResponse response = transport.checkLimit(webform("1", null));
+
+    assertEquals(98, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals(2, limiter.getConnections());
+  }
+
+  @Test
+  public void shouldGrowBuffersForLargeRequests() {
+    transport.close();
+    transport = new UnixSocketRateLimiterTransport(limiter.getSocketPath(), 1, 8);
+    List<LimitDescriptor> descriptors = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      descriptors.add(webform(Integer.toString(i), null).getDescriptors().get(0));
+    }
+
+    RateLimitResponse response =
+        transport.checkLimit(new RateLimitRequest(Domain.RH.getDomainName(), descriptors, null));
+
+    assertEquals(50, response.getStatuses().size());
+  }
+
+  @Test
+  public void shouldNotOpenMoreConnectionsThanPoolSize() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        String ipAddress = Integer.toString(i);
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int j = 0; j < 20; j++) {
+                    transport.checkLimit(webform(ipAddress, null));
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertTrue("connections: " + limiter.getConnections(), limiter.getConnections() <= 2);
+  }
+
+  @Test
+  public void shouldFailWhenLimiterNotListening() throws Exception {
+    limiter.close();
+
+    assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform("1", null)));
+  }
+
+  @Test
+  public void shouldTimeOutSlowLimiterAndDropConnection() {
+    transport.close();
+    transport = new UnixSocketRateLimiterTransport(limiter.getSocketPath(), 1, 1024, 200);
+    limiter.setLatency(Duration.ofSeconds(2));
+
+    long start = System.nanoTime();
+    assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform("1", null)));
+
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    assertTrue("elapsed: " + elapsedMillis, elapsedMillis < 1500);
+    assertEquals(0, transport.getIdleCount());
+  }
+
+  @Test
+  public void shouldTimeOutWaitingForConnection() throws Exception {
+    transport.close();
+    transport = new UnixSocketRateLimiterTransport(limiter.getSocketPath(), 1, 1024, 200);
+    limiter.setLatency(Duration.ofSeconds(2));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> transport.checkLimit(webform("1", null)));
+      Thread.sleep(50);
+
+      long start = System.nanoTime();
+      assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform("2", null)));
+      assertTrue((System.nanoTime() - start) / 1_000_000 < 1500);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldNotKeepConnectionInUseWhenClosed() throws Exception {
+    limiter.setLatency(Duration.ofMillis(200));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<RateLimitResponse> inFlight =
+          executor.submit(() -> transport.checkLimit(webform("1", null)));
+      Thread.sleep(50);
+      transport.close();
+
+      assertEquals(LimitStatus.CODE_OK, inFlight.get().getOverallCode());
+      assertEquals(0, transport.getIdleCount());
+      assertThrows(IllegalStateException.class, () -> transport.checkLimit(webform("1", null)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private RateLimitRequest webform(String ipAddress, Integer hitsAddend) {
+    List<DescriptorEntry> entries =
+        List.of(
+            new DescriptorEntry("request", "WEBFORM"), new DescriptorEntry("ipAddress", ipAddress));
+    return new RateLimitRequest(
+        Domain.RH.getDomainName(), List.of(new LimitDescriptor(entries)), hitsAddend);
+  }
+}
@@ -0,0 +1,100 @@
+package uk.gov.ons.ctp.integration.ratelimiter.client;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import uk.gov.ons.ctp.integration.ratelimiter.model.LimitStatus;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitRequest;
+import uk.gov.ons.ctp.integration.ratelimiter.model.RateLimitResponse;
+
+/** This class tests the mapping of limiter http responses by the WebClient transport. */
+public class WebClientRateLimiterTransportTest {
+  private static final String OK_JSON =
+      "{\"overallCode\":\"OK\",\"statuses\":[{\"code\":\"OK\",\"limitRemaining\":99}]}";
+  private static final String OVER_LIMIT_JSON =
+      "{\"overallCode\":\"OVER_LIMIT\",\"statuses\":[{\"code\":\"OVER_LIMIT\"}]}";
+
+  private List<ClientRequest> requests = new ArrayList<>();
+
+  private WebClientRateLimiterTransport transportRespondingWith(HttpStatus status, String body) {
+    WebClient webClient =
+        WebClient.builder()
+            .baseUrl("http://limiter:8181")
+            .exchangeFunction(
+                request -> {
+                  requests.add(request);
+                  return Mono.just(
+                      ClientResponse.create(status)
+                          .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                          .body(body)
+                          .build());
+                })
+            .build();
+    return new WebClientRateLimiterTransport(webClient);
+  }
+
+  @Test
+  public void shouldPostToJsonEndpointAndDecodeResponse() {
+    RateLimitResponse response =
+        transportRespondingWith(HttpStatus.OK, OK_JSON).checkLimit(new RateLimitRequest()).block();
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertEquals(99, response.getStatuses().get(0).getLimitRemaining());
+    assertEquals(1, requests.size());
+    assertEquals(HttpMethod.POST, requests.get(0).method());
+    assertEquals("/json", requests.get(0).url().getPath());
+  }
+
+  @Test
+  public void shouldDecodeOnlyTheDetailAskedFor() {
+    RateLimitResponse response =
+        transportRespondingWith(HttpStatus.OK, OK_JSON)
+            .checkLimit(new RateLimitRequest(), ResponseDetail.OVERALL_CODE)
+            .block();
+
+    assertEquals(LimitStatus.CODE_OK, response.getOverallCode());
+    assertNull(response.getStatuses());
+  }
+
+  @Test
+  public void shouldPutLimiterResponseIntoReasonOfTooManyRequests() {
+    ResponseStatusException e =
+        errorFrom(transportRespondingWith(HttpStatus.TOO_MANY_REQUESTS, OVER_LIMIT_JSON));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+    assertEquals(OVER_LIMIT_JSON, e.getReason());
+  }
+
+  @Test
+  public void shouldErrorWithStatusOfOtherFailures() {
+    ResponseStatusException e =
+        errorFrom(transportRespondingWith(HttpStatus.SERVICE_UNAVAILABLE, "down"));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+    assertTrue(e.getReason().contains("down"));
+  }
+
+  private ResponseStatusException errorFrom(WebClientRateLimiterTransport transport) {
+    try {
+      transport.checkLimit(new RateLimitRequest()).block();
+      fail();
+      return null;
+    } catch (ResponseStatusException e) {
+      return e;
+    }
+  }
+}
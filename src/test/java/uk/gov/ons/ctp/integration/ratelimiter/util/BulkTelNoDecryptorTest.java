@@ -0,0 +1,135 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BulkTelNoDecryptorTest {
+  private static final String NL = System.lineSeparator();
+
+  private Encryptor encryptor = new Encryptor("password");
+  private BulkTelNoDecryptor decryptor = new BulkTelNoDecryptor("password", 4);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    decryptor.close();
+  }
+
+  @Test
+  public void shouldDecryptValue() throws Exception {
+    assertEquals("0171 3434", decryptor.decryptValue(encryptor.encrypt("0171 3434")));
+    // sample from EncryptorTest, generated by openssl
+    assertEquals("rob", decryptor.decryptValue("U2FsdGVkX1/BLHViDnYcmmf+6W0JCcISt3SttPVP1lM="));
+  }
+
+  @Test
+  public void shouldRejectUndecryptableValues() {
+    assertThrows(GeneralSecurityException.class, () -> decryptor.decryptValue("not base64!"));
+    assertThrows(GeneralSecurityException.class, () -> decryptor.decryptValue("QUJD"));
+    BulkTelNoDecryptor wrongPassword = new BulkTelNoDecryptor("wrong", 1);
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> wrongPassword.decryptValue(encryptor.encrypt("0171 3434")));
+  }
+
+  @Test
+  public void shouldDecryptJsonAndBreachDescriptions() throws Exception {
+    String logs =
+        "{\"uprn\":1,\"encrypted-telNo\":\""
+            + encryptor.encrypt("0171 3434")
+            + "\"}"
+            + NL
+            + "Rate limit breached: (1) deliveryChannel=SMS, encrypted-telNo="
+            + encryptor.encrypt("0798 356 789")
+            + NL
+            + "no telephone number here"
+            + NL;
+
+    StringWriter output = new StringWriter();
+    BulkTelNoDecryptor.Summary summary =
+        decryptor.decrypt(new BufferedReader(new StringReader(logs)), output);
+
+    assertEquals(
+        "{\"uprn\":1,\"decrypted-telNo\":\"0171 3434\"}"
+            + NL
+            + "Rate limit breached: (1) deliveryChannel=SMS, decrypted-telNo=0798 356 789"
+            + NL
+            + "no telephone number here"
+            + NL,
+        output.toString());
+    assertEquals(3, summary.getLines());
+    assertEquals(2, summary.getDecrypted());
+    assertEquals(0, summary.getFailed());
+  }
+
+  @Test
+  public void shouldLeaveUndecryptableValuesUnchanged() throws Exception {
+    String logs = "{\"encrypted-telNo\":\"QUJD\"}" + NL;
+
+    StringWriter output = new StringWriter();
+    BulkTelNoDecryptor.Summary summary =
+        decryptor.decrypt(new BufferedReader(new StringReader(logs)), output);
+
+    assertEquals(logs, output.toString());
+    assertEquals(1, summary.getFailed());
+  }
+
+  @Test
+  public void shouldKeepOrderAcrossChunks() throws Exception {
+    StringBuilder logs = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 5500; i++) {
+      logs.append("encrypted-telNo=").append(encryptor.encrypt("0171 " + i)).append(NL);
+      expected.append("decrypted-telNo=0171 ").append(i).append(NL);
+    }
+
+    StringWriter output = new StringWriter();
+    BulkTelNoDecryptor.Summary summary =
+        decryptor.decrypt(new BufferedReader(new StringReader(logs.toString())), output);
+
+    assertEquals(expected.toString(), output.toString());
+    assertEquals(5500, summary.getDecrypted());
+  }
+
+  @Test
+  public void shouldDecryptMappedFilesWithoutSplittingLines() throws Exception {
+    // Small chunks and mappings, so that lines cross their boundaries
+    decryptor.close();
+    decryptor = new BulkTelNoDecryptor("password", 2, 100, 1000);
+    StringBuilder logs = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      String padding = "x".repeat(i % 7 == 0 ? 150 : i % 10);
+      logs.append(padding).append(" encrypted-telNo=").append(encryptor.encrypt("0171 " + i));
+      logs.append(i % 2 == 0 ? "\n" : "\r\n");
+      expected.append(padding).append(" decrypted-telNo=0171 ").append(i).append(NL);
+    }
+    Path first = folder.newFile().toPath();
+    Files.write(first, logs.toString().getBytes(UTF_8));
+    Path second = folder.newFile().toPath();
+    Files.write(second, ("encrypted-telNo=" + encryptor.encrypt("0798 356 789")).getBytes(UTF_8));
+    Path output = folder.newFile().toPath();
+
+    BulkTelNoDecryptor.Summary summary = decryptor.decrypt(List.of(first, second), output);
+
+    expected.append("decrypted-telNo=0798 356 789").append(NL);
+    assertEquals(expected.toString(), Files.readString(output, UTF_8));
+    assertEquals(201, summary.getLines());
+    assertEquals(201, summary.getDecrypted());
+  }
+}
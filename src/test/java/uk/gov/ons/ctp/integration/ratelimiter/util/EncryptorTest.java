@@ -3,6 +3,15 @@ package uk.gov.ons.ctp.integration.ratelimiter.util;
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.Test;
 
 public class EncryptorTest {
@@ -54,4 +63,41 @@ public class EncryptorTest {
   public void shouldRejectEncryptionWithNullPassword() throws Exception {
     Encryptor.aesEncrypt(null, "123");
   }
+
+  @Test
+  public void shouldEncryptWithReusedInstance() throws Exception {
+    Encryptor encryptor = new Encryptor("password");
+    for (String value : List.of("", "123", "0798 356 789", "a longer value of more than a block")) {
+      assertEquals(value, encryptor.decrypt(encryptor.encrypt(value)));
+      assertEquals(value, Encryptor.decrypt("password", encryptor.encrypt(value)));
+    }
+  }
+
+  @Test
+  public void shouldUseNewSaltForEachEncryption() {
+    Encryptor encryptor = new Encryptor("password");
+    Set<String> encryptions = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      encryptions.add(encryptor.encrypt("0798 356 789"));
+    }
+    assertEquals(100, encryptions.size());
+  }
+
+  @Test
+  public void shouldEncryptConcurrently() throws Exception {
+    Encryptor encryptor = new Encryptor("yFk6_]&FBDy,eeYK");
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results =
+          IntStream.range(0, 400)
+              .mapToObj(i -> "0798 " + i)
+              .map(v -> executor.submit(() -> v.equals(encryptor.decrypt(encryptor.encrypt(v)))))
+              .collect(Collectors.toList());
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,52 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.Test;
+
+public class Ipv4Test {
+
+  @Test
+  public void shouldParseValidAddresses() {
+    assertEquals(0x7b6fde17L, Ipv4.parse("123.111.222.23"));
+    assertEquals(0L, Ipv4.parse("0.0.0.0"));
+    assertEquals(0xffffffffL, Ipv4.parse("255.255.255.255"));
+    assertEquals(0x0a000001L, Ipv4.parse("10.0.0.1"));
+  }
+
+  @Test
+  public void shouldRejectInvalidAddresses() {
+    String[] invalid = {
+      null,
+      "",
+      " ",
+      "badlyformatted",
+      "1.2.3",
+      "1.2.3.4.5",
+      "1.2.3.4.",
+      ".1.2.3",
+      "1..2.3",
+      "256.1.1.1",
+      "1.1.1.256",
+      "1.1.1.1000",
+      "01.1.1.1",
+      "1.1.1.00",
+      " 1.1.1.1",
+      "1.1.1.1 ",
+      "1.1.1.-1",
+      "1.1.1.1a",
+      "\u0661.1.1.1",
+      "2001:DB8::21f:5bff:febf:ce22:8a2e"
+    };
+    for (String address : invalid) {
+      assertEquals(Ipv4.INVALID, Ipv4.parse(address), address);
+    }
+  }
+
+  @Test
+  public void shouldExtractLastOctet() {
+    assertEquals(23, Ipv4.lastOctet(Ipv4.parse("123.111.222.23")));
+    assertEquals(255, Ipv4.lastOctet(Ipv4.parse("255.255.255.255")));
+    assertEquals(0, Ipv4.lastOctet(Ipv4.parse("124.125.126.0")));
+  }
+}
@@ -0,0 +1,85 @@
+package uk.gov.ons.ctp.integration.ratelimiter.util;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.Test;
+
+public class PseudonymiserTest {
+  //
+  // generated from:
+  // echo -n "$VALUE" | openssl dgst -sha256 -hmac "$SECRET" -binary | head -c 16 | base64
+  // (converted to url-safe base64 without padding)
+  //
+  private static final String PSEUDONYM = "Um3oMPesJAhBxjf_JN-_sQ";
+
+  @Test
+  public void shouldProduceKeyedHmacPseudonym() {
+    assertEquals(PSEUDONYM, new Pseudonymiser("secret", 10).pseudonymise("0798 356 789"));
+  }
+
+  @Test
+  public void shouldBeDeterministic() {
+    Pseudonymiser pseudonymiser = new Pseudonymiser("secret", 10);
+    assertEquals(pseudonymiser.pseudonymise("0171 3434"), pseudonymiser.pseudonymise("0171 3434"));
+    assertEquals(
+        pseudonymiser.pseudonymise("0171 3434"),
+        new Pseudonymiser("secret", 0).pseudonymise("0171 3434"));
+  }
+
+  @Test
+  public void shouldDependOnSecretAndValue() {
+    Pseudonymiser pseudonymiser = new Pseudonymiser("secret", 10);
+    assertNotEquals(
+        pseudonymiser.pseudonymise("0171 3434"), pseudonymiser.pseudonymise("0171 3435"));
+    assertNotEquals(
+        pseudonymiser.pseudonymise("0171 3434"),
+        new Pseudonymiser("other", 10).pseudonymise("0171 3434"));
+  }
+
+  @Test
+  public void shouldGiveSamePseudonymsAfterEviction() {
+    Pseudonymiser pseudonymiser = new Pseudonymiser("secret", 2);
+    String first = pseudonymiser.pseudonymise("1");
+    pseudonymiser.pseudonymise("2");
+    pseudonymiser.pseudonymise("3");
+    assertEquals(first, pseudonymiser.pseudonymise("1"));
+  }
+
+  @Test
+  public void shouldBoundCache() {
+    Pseudonymiser pseudonymiser = new Pseudonymiser("secret", 3);
+    for (int i = 0; i < 10; i++) {
+      pseudonymiser.pseudonymise(Integer.toString(i));
+    }
+    assertEquals(3, pseudonymiser.getCachedCount());
+
+    Pseudonymiser uncached = new Pseudonymiser("secret", 0);
+    uncached.pseudonymise("1");
+    assertEquals(0, uncached.getCachedCount());
+  }
+
+  @Test
+  public void shouldKeepRepeatedValueCachedWhileOthersChurn() {
+    Pseudonymiser pseudonymiser = new Pseudonymiser("secret", 4);
+    pseudonymiser.pseudonymise("0171 3434");
+    for (int i = 0; i < 1000; i++) {
+      pseudonymiser.pseudonymise("0798 " + i);
+      pseudonymiser.pseudonymise("0171 3434");
+      assertTrue(pseudonymiser.isCached("0171 3434"));
+    }
+    assertEquals(4, pseudonymiser.getCachedCount());
+  }
+
+  @Test
+  public void shouldPassNullThrough() {
+    assertNull(new Pseudonymiser("secret", 10).pseudonymise(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptySecret() {
+    new Pseudonymiser("", 10);
+  }
+}